@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.jmh;
+
+import clojure.lang.IPersistentMap;
+import com.appsflyer.donkey.client.ring.RingResponseAdapter;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.impl.HttpResponseImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures converting a client {@link HttpResponse} to a Ring response map.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientResponseAdapterBenchmark {
+  
+  private AsyncResult<HttpResponse<Buffer>> result;
+  
+  @Setup
+  public void setup() {
+    MultiMap headers = MultiMap.caseInsensitiveMultiMap()
+                               .add("Content-Type", "application/json")
+                               .add("Content-Length", "1000")
+                               .add("Cache-Control", "no-cache")
+                               .add("Date", "Sun, 18 Oct 2020 10:00:00 GMT")
+                               .add("Server", "Donkey");
+    Buffer body = Buffer.buffer("{\"id\":123,\"name\":\"donkey\"}".repeat(40));
+    result = Future.succeededFuture(
+        new HttpResponseImpl<>(HttpVersion.HTTP_1_1, 200, "OK", headers,
+                               MultiMap.caseInsensitiveMultiMap(), List.of(), body, List.of()));
+  }
+  
+  @Benchmark
+  public IPersistentMap handle() {
+    Promise<IPersistentMap> promise = Promise.promise();
+    RingResponseAdapter.create(promise).handle(result);
+    return promise.future().result();
+  }
+}
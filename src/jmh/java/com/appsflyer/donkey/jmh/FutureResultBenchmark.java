@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.jmh;
+
+import clojure.lang.AFn;
+import clojure.lang.IFn;
+import com.appsflyer.donkey.FutureResult;
+import io.vertx.core.Future;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures chaining handlers on a {@link FutureResult}, the way a Clojure
+ * client call is usually consumed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FutureResultBenchmark {
+  
+  private static final IFn inc = new AFn() {
+    @Override
+    public Object invoke(Object arg) {
+      return (Long) arg + 1;
+    }
+  };
+  
+  private static final IFn recover = new AFn() {
+    @Override
+    public Object invoke(Object arg) {
+      return 0L;
+    }
+  };
+  
+  private static final IFn complete = new AFn() {
+    @Override
+    public Object invoke(Object value, Object ex) {
+      return ex == null ? value : ex;
+    }
+  };
+  
+  private Long value;
+  
+  @Setup
+  public void setup() {
+    value = 1L;
+  }
+  
+  @Benchmark
+  public Object chain() {
+    return FutureResult.create(value)
+                       .onSuccess(inc)
+                       .onSuccess(inc)
+                       .onFail(recover)
+                       .onComplete(complete)
+                       .deref();
+  }
+  
+  @Benchmark
+  public Object chainVertxFuture() {
+    return FutureResult.create(Future.succeededFuture(value))
+                       .onSuccess(inc)
+                       .onSuccess(inc)
+                       .onFail(recover)
+                       .onComplete(complete)
+                       .deref();
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.jmh;
+
+import clojure.lang.IPersistentMap;
+import clojure.lang.Keyword;
+import clojure.lang.RT;
+import com.appsflyer.donkey.server.ring.middleware.JsonBodyDeserializer;
+import com.appsflyer.donkey.server.ring.middleware.JsonBodySerializer;
+import com.appsflyer.donkey.server.ring.middleware.RingMiddleware;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import jsonista.jackson.KeywordSerializer;
+import jsonista.jackson.PersistentHashMapDeserializer;
+import jsonista.jackson.PersistentVectorDeserializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.appsflyer.donkey.server.ring.handler.RingRequestField.BODY;
+
+/**
+ * Measures the JSON body middleware with a mapper that reads and writes
+ * Clojure data structures, the same way jsonista does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBodyBenchmark {
+  
+  private RingMiddleware deserializer;
+  private RingMiddleware serializer;
+  private IPersistentMap request;
+  private IPersistentMap response;
+  
+  @Setup
+  public void setup() {
+    var clojureModule = new SimpleModule("Clojure")
+        .addDeserializer(List.class, new PersistentVectorDeserializer())
+        .addDeserializer(Map.class, new PersistentHashMapDeserializer())
+        .addSerializer(Keyword.class, new KeywordSerializer(false))
+        .addKeySerializer(Keyword.class, new KeywordSerializer(true));
+    var mapper = new ObjectMapper().registerModule(clojureModule);
+    
+    deserializer = JsonBodyDeserializer.create(mapper);
+    serializer = JsonBodySerializer.create(mapper);
+    
+    var user = RT.map(Keyword.intern("id"), 123,
+                      Keyword.intern("name"), "donkey",
+                      Keyword.intern("active"), true,
+                      Keyword.intern("score"), 98.6,
+                      Keyword.intern("tags"), RT.vector("a", "b", "c"));
+    var entity = RT.map(Keyword.intern("users"), RT.vector(user, user, user, user, user),
+                        Keyword.intern("total"), 5);
+    
+    response = RT.map(BODY.keyword(), entity);
+    request = RT.map(BODY.keyword(), serializer.handle(response).valAt(BODY.keyword()));
+  }
+  
+  @Benchmark
+  public IPersistentMap deserialize() {
+    return deserializer.handle(request);
+  }
+  
+  @Benchmark
+  public IPersistentMap serialize() {
+    return serializer.handle(response);
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.jmh;
+
+import clojure.lang.IPersistentMap;
+import clojure.lang.RT;
+import com.appsflyer.donkey.server.ring.middleware.QueryParamsParser;
+import com.appsflyer.donkey.server.ring.middleware.RingMiddleware;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.appsflyer.donkey.server.ring.handler.RingRequestField.QUERY_STRING;
+
+/**
+ * Measures parsing the query string into the {@code :query-params} map,
+ * with and without keywordizing the keys.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryParamsParserBenchmark {
+  
+  @Param({"false", "true"})
+  public boolean keywordizeKeys;
+  
+  private RingMiddleware middleware;
+  private IPersistentMap request;
+  
+  @Setup
+  public void setup() {
+    middleware = QueryParamsParser.create(
+        new QueryParamsParser.Options().keywordizeKeys(keywordizeKeys));
+    request = RT.map(QUERY_STRING.keyword(),
+                     "q=donkey%20benchmark&fields=name&fields=email&limit=10&offset=20&sort=desc");
+  }
+  
+  @Benchmark
+  public IPersistentMap handle() {
+    return middleware.handle(request);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.jmh;
+
+import clojure.lang.IPersistentMap;
+import com.appsflyer.donkey.server.ring.handler.RingHandler;
+import com.appsflyer.donkey.server.ring.handler.RingRequestAdapter;
+import io.vertx.core.MultiMap;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.ext.web.RoutingContext;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.appsflyer.donkey.server.ring.handler.RingRequestField.*;
+
+/**
+ * Measures converting a request to a Ring request map. The map is lazy, so
+ * there's one benchmark that looks up the fields a typical handler uses, and
+ * one that materializes the whole map.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RingRequestAdapterBenchmark {
+  
+  private RingHandler adapter;
+  private RoutingContext ctx;
+  
+  @Setup
+  public void setup() {
+    MultiMap headers = MultiMap.caseInsensitiveMultiMap()
+                               .add("Host", "localhost:8080")
+                               .add("User-Agent", "jmh")
+                               .add("Accept", "application/json")
+                               .add("Accept-Encoding", "gzip, deflate")
+                               .add("Content-Type", "application/json")
+                               .add("Content-Length", "0")
+                               .add("Connection", "keep-alive")
+                               .add("X-Request-Id", "c2a4e2d8-6d3e-4b3f-9e0b-1f1a7a1c5b2e");
+    
+    HttpServerRequest request = Stubs.stub(HttpServerRequest.class, Map.of(
+        "method", HttpMethod.GET,
+        "version", HttpVersion.HTTP_1_1,
+        "scheme", "http",
+        "host", "localhost:8080",
+        "path", "/api/v1/users/123",
+        "query", "fields=name&fields=email&limit=10",
+        "headers", headers,
+        "getHeader", (Stubs.Answer) args -> headers.get((String) args[0]),
+        "remoteAddress", SocketAddress.inetSocketAddress(54321, "127.0.0.1"),
+        "localAddress", SocketAddress.inetSocketAddress(8080, "127.0.0.1")));
+    
+    Map<String, Object> data = new HashMap<>();
+    ctx = Stubs.stub(RoutingContext.class, Map.of(
+        "request", request,
+        "pathParams", Map.of("id", "123"),
+        "get", (Stubs.Answer) args -> data.get((String) args[0]),
+        "put", (Stubs.Answer) args -> {
+          data.put((String) args[0], args[1]);
+          return null;
+        }));
+    
+    adapter = RingRequestAdapter.create();
+  }
+  
+  @Benchmark
+  public void lookupFields(Blackhole blackhole) {
+    adapter.handle(ctx);
+    IPersistentMap request = ctx.get(RingHandler.RING_HANDLER_RESULT);
+    blackhole.consume(request.valAt(URI.keyword()));
+    blackhole.consume(request.valAt(REQUEST_METHOD.keyword()));
+    blackhole.consume(request.valAt(PATH_PARAMS.keyword()));
+    blackhole.consume(request.valAt(QUERY_STRING.keyword()));
+  }
+  
+  @Benchmark
+  public int materialize() {
+    adapter.handle(ctx);
+    IPersistentMap request = ctx.get(RingHandler.RING_HANDLER_RESULT);
+    return request.count();
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.jmh;
+
+import clojure.lang.IPersistentMap;
+import clojure.lang.RT;
+import com.appsflyer.donkey.server.ring.handler.RingHandler;
+import com.appsflyer.donkey.server.ring.handler.RingResponseAdapter;
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.appsflyer.donkey.server.ring.handler.RingResponseField.*;
+
+/**
+ * Measures writing a Ring response map to the server response, with a
+ * {@code String} or a {@code byte[]} body.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RingResponseAdapterBenchmark {
+  
+  @Param({"string", "bytes"})
+  public String bodyType;
+  
+  private RingHandler adapter;
+  private RoutingContext ctx;
+  private MultiMap headers;
+  private Buffer written;
+  
+  @Setup
+  public void setup() {
+    String body = "{\"id\":123,\"name\":\"donkey\",\"tags\":[\"a\",\"b\",\"c\"]}".repeat(20);
+    IPersistentMap response = RT.map(
+        STATUS.keyword(), 200,
+        HEADERS.keyword(), RT.map("content-type", "application/json",
+                                  "cache-control", "no-cache",
+                                  "x-request-id", "c2a4e2d8-6d3e-4b3f-9e0b-1f1a7a1c5b2e"),
+        BODY.keyword(), "bytes".equals(bodyType) ?
+                        body.getBytes(StandardCharsets.UTF_8) : body);
+    
+    headers = MultiMap.caseInsensitiveMultiMap();
+    HttpServerResponse serverResponse = Stubs.stub(HttpServerResponse.class, Map.of(
+        "headers", headers,
+        "putHeader", (Stubs.Answer) args -> {
+          headers.set((CharSequence) args[0], (CharSequence) args[1]);
+          return null;
+        },
+        "end", (Stubs.Answer) args -> {
+          written = (Buffer) args[0];
+          return Future.succeededFuture();
+        }));
+    
+    ctx = Stubs.stub(RoutingContext.class, Map.of(
+        "response", serverResponse,
+        "get", (Stubs.Answer) args -> response));
+    
+    adapter = RingResponseAdapter.create();
+  }
+  
+  @Benchmark
+  public Buffer handle() {
+    headers.clear();
+    adapter.handle(ctx);
+    return written;
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.jmh;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Creates lightweight implementations of Vert.x interfaces for benchmarks.
+ * <p></p>
+ * Mocking libraries record every invocation, which would dominate the
+ * measurement. A stub answers a method call by looking up its name in a map.
+ * A value that is an {@link Answer} is invoked with the call arguments.
+ * Fluent methods that are not in the map return the stub itself, and any other
+ * method returns {@code null} (or the primitive default).
+ */
+final class Stubs {
+  
+  @FunctionalInterface
+  interface Answer {
+    Object apply(Object[] args);
+  }
+  
+  private Stubs() {}
+  
+  static <T> T stub(Class<T> type, Map<String, Object> answers) {
+    Objects.requireNonNull(answers, "Answers map cannot be null");
+    Object proxy = Proxy.newProxyInstance(
+        type.getClassLoader(),
+        new Class<?>[]{type},
+        (self, method, args) -> {
+          var answer = answers.get(method.getName());
+          if (answer instanceof Answer) {
+            return ((Answer) answer).apply(args);
+          }
+          if (answer != null) {
+            return answer;
+          }
+          Class<?> returnType = method.getReturnType();
+          if (returnType.isInstance(self)) {
+            return self;
+          }
+          if (returnType == boolean.class) {
+            return false;
+          }
+          if (returnType == int.class) {
+            return 0;
+          }
+          if (returnType == long.class) {
+            return 0L;
+          }
+          return null;
+        });
+    
+    return type.cast(proxy);
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.jmh;
+
+import clojure.lang.IPersistentMap;
+import com.appsflyer.donkey.util.TypeConverter;
+import io.vertx.core.MultiMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures converting request / response headers to a Clojure map.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TypeConverterBenchmark {
+  
+  private MultiMap headers;
+  
+  @Setup
+  public void setup() {
+    headers = MultiMap.caseInsensitiveMultiMap()
+                      .add("Host", "localhost:8080")
+                      .add("User-Agent", "jmh")
+                      .add("Accept", "application/json")
+                      .add("Accept-Encoding", "gzip, deflate")
+                      .add("Content-Type", "application/json")
+                      .add("Content-Length", "0")
+                      .add("Connection", "keep-alive")
+                      .add("Cookie", "a=1")
+                      .add("Cookie", "b=2");
+  }
+  
+  @Benchmark
+  public IPersistentMap toPersistentMap() {
+    return TypeConverter.toPersistentMap(headers);
+  }
+}
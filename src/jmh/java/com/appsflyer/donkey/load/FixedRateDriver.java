@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.load;
+
+import com.appsflyer.donkey.client.ring.RingClient;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.web.client.HttpRequest;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.appsflyer.donkey.client.ring.RingResponseField.STATUS;
+
+/**
+ * Sends requests at a fixed rate, regardless of how fast the server responds.
+ * <p></p>
+ * The latency of a request is measured from the time it was <i>supposed</i>
+ * to be sent according to the schedule, not from the time it was actually
+ * sent. When the server (or the client) falls behind, the time requests spend
+ * waiting to be sent is part of their latency. This corrects for
+ * "coordinated omission", where a load generator that waits for responses
+ * hides exactly the stalls it should be measuring.
+ */
+final class FixedRateDriver {
+  
+  /**
+   * The results of a single run.
+   */
+  static final class Result {
+    
+    private final Histogram histogram;
+    private final long durationNanos;
+    private final long errors;
+    private final long incomplete;
+    
+    private Result(Histogram histogram, long durationNanos, long errors, long incomplete) {
+      this.histogram = histogram;
+      this.durationNanos = durationNanos;
+      this.errors = errors;
+      this.incomplete = incomplete;
+    }
+    
+    /**
+     * Latency in nanoseconds.
+     */
+    Histogram histogram() {
+      return histogram;
+    }
+    
+    long errors() {
+      return errors;
+    }
+    
+    /**
+     * The number of requests that didn't complete within the drain timeout
+     * after the run ended. They are not part of the histogram.
+     */
+    long incomplete() {
+      return incomplete;
+    }
+    
+    double throughput() {
+      return histogram.getTotalCount() / (durationNanos / 1e9);
+    }
+  }
+  
+  static FixedRateDriver create(RingClient client, HttpRequest<Buffer> request, int rate) {
+    return new FixedRateDriver(client, request, rate);
+  }
+  
+  private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+  
+  private final RingClient client;
+  private final HttpRequest<Buffer> request;
+  private final long intervalNanos;
+  private final Recorder recorder = new Recorder(3);
+  private final AtomicLong inFlight = new AtomicLong();
+  private final LongAdder errors = new LongAdder();
+  
+  private FixedRateDriver(RingClient client, HttpRequest<Buffer> request, int rate) {
+    if (rate < 1) {
+      throw new IllegalArgumentException("Rate must be greater than 0");
+    }
+    this.client = client;
+    this.request = request;
+    intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+  }
+  
+  /**
+   * Sends requests for the given duration, waits for the outstanding
+   * responses, and returns the latency of the requests that were sent.
+   */
+  Result run(long duration, TimeUnit unit) throws InterruptedException {
+    recorder.reset();
+    errors.reset();
+    
+    long start = System.nanoTime();
+    long end = start + unit.toNanos(duration);
+    for (long i = 0; ; i++) {
+      long intendedStart = start + (i * intervalNanos);
+      if (intendedStart >= end) {
+        break;
+      }
+      long now;
+      while ((now = System.nanoTime()) < intendedStart) {
+        LockSupport.parkNanos(intendedStart - now);
+      }
+      send(intendedStart);
+    }
+    awaitInFlight(end + DRAIN_TIMEOUT_NANOS);
+    
+    return new Result(recorder.getIntervalHistogram(),
+                      System.nanoTime() - start,
+                      errors.sum(),
+                      inFlight.get());
+  }
+  
+  private void send(long intendedStart) {
+    inFlight.incrementAndGet();
+    client.send(request).onComplete(res -> {
+      recorder.recordValue(System.nanoTime() - intendedStart);
+      if (res.failed() || (Integer) res.result().valAt(STATUS.keyword()) >= 500) {
+        errors.increment();
+      }
+      inFlight.decrementAndGet();
+    });
+  }
+  
+  private void awaitInFlight(long deadline) throws InterruptedException {
+    while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.load;
+
+import clojure.lang.Keyword;
+import clojure.lang.RT;
+import com.appsflyer.donkey.VertxFactory;
+import com.appsflyer.donkey.client.ClientConfig;
+import com.appsflyer.donkey.client.ring.RingClient;
+import com.appsflyer.donkey.server.Server;
+import com.appsflyer.donkey.server.ServerConfig;
+import com.appsflyer.donkey.server.ServerImpl;
+import com.appsflyer.donkey.server.exception.ServerInitializationException;
+import com.appsflyer.donkey.server.ring.route.RingRouteCreatorFactory;
+import com.appsflyer.donkey.server.route.RouteDefinition;
+import com.appsflyer.donkey.server.route.RouteList;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.ext.web.client.WebClientOptions;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * An end to end load test. It starts a {@link ServerImpl} with a route per
+ * {@link Scenario}, and drives each scenario with a {@link RingClient} over
+ * the loopback interface at a fixed request rate.
+ * <p></p>
+ * A summary of the latency percentiles is printed when a scenario completes,
+ * and the full percentile distribution is written to
+ * {@code <output>/<scenario>-<rate>.hgrm}. The files can be plotted with
+ * the HdrHistogram plotter to compare runs with different settings.
+ * <p></p>
+ * Options are passed as {@code --name value} pairs:
+ * <ul>
+ *   <li>{@code --scenarios} Comma separated list of scenarios to run.
+ *   Defaults to all of them: {@code non-blocking,blocking,virtual,json,static}</li>
+ *   <li>{@code --rate} Requests per second. Defaults to 1000.</li>
+ *   <li>{@code --duration} Seconds to run each scenario. Defaults to 30.</li>
+ *   <li>{@code --warmup} Seconds to run each scenario before measuring.
+ *   Defaults to 10.</li>
+ *   <li>{@code --event-loops} Number of server event loops. Defaults to the
+ *   number of available processors.</li>
+ *   <li>{@code --instances} Number of server verticle instances.
+ *   Defaults to 1.</li>
+ *   <li>{@code --worker-threads} Size of the server worker pool that runs
+ *   blocking handlers. Defaults to 20.</li>
+ *   <li>{@code --blocking-delay-ms} How long the blocking and virtual handlers sleep.
+ *   Defaults to 5.</li>
+ *   <li>{@code --connections} Maximum number of client connections.
+ *   Defaults to 64.</li>
+ *   <li>{@code --port} Defaults to 16980.</li>
+ *   <li>{@code --output} Directory of the histogram files.
+ *   Defaults to {@code target/load-test}.</li>
+ * </ul>
+ */
+public final class LoadTest {
+  
+  static final class Options {
+    
+    private final Map<String, String> values;
+    
+    private Options(Map<String, String> values) {
+      this.values = values;
+    }
+    
+    static Options parse(String[] args) {
+      if (args.length % 2 != 0) {
+        throw new IllegalArgumentException(
+            "Options must be given as '--name value' pairs: " + Arrays.toString(args));
+      }
+      Map<String, String> values = new HashMap<>();
+      for (var i = 0; i < args.length; i += 2) {
+        if (!args[i].startsWith("--")) {
+          throw new IllegalArgumentException("Invalid option name: " + args[i]);
+        }
+        values.put(args[i].substring(2), args[i + 1]);
+      }
+      return new Options(values);
+    }
+    
+    private int intValue(String name, int defaultValue) {
+      var value = values.get(name);
+      return value == null ? defaultValue : Integer.parseInt(value);
+    }
+    
+    List<Scenario> scenarios() {
+      var value = values.get("scenarios");
+      if (value == null) {
+        return List.of(Scenario.values());
+      }
+      return Arrays.stream(value.split(","))
+                   .map(Scenario::fromName)
+                   .collect(Collectors.toList());
+    }
+    
+    int rate() {
+      return intValue("rate", 1000);
+    }
+    
+    int duration() {
+      return intValue("duration", 30);
+    }
+    
+    int warmup() {
+      return intValue("warmup", 10);
+    }
+    
+    int eventLoops() {
+      return intValue("event-loops", Runtime.getRuntime().availableProcessors());
+    }
+    
+    int instances() {
+      return intValue("instances", 1);
+    }
+    
+    int workerThreads() {
+      return intValue("worker-threads", 20);
+    }
+    
+    long blockingDelayMs() {
+      return intValue("blocking-delay-ms", 5);
+    }
+    
+    int connections() {
+      return intValue("connections", 64);
+    }
+    
+    int port() {
+      return intValue("port", 16980);
+    }
+    
+    Path output() {
+      return Path.of(values.getOrDefault("output", "target/load-test"));
+    }
+  }
+  
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+  
+  private LoadTest() {}
+  
+  public static void main(String[] args) throws Exception {
+    var opts = Options.parse(args);
+    List<Scenario> scenarios = opts.scenarios();
+    Files.createDirectories(opts.output());
+    
+    Server server = startServer(opts, scenarios);
+    Vertx clientVertx = VertxFactory.create(new VertxOptions().setEventLoopPoolSize(2));
+    RingClient client = RingClient.create(
+        ClientConfig.builder()
+                    .vertx(clientVertx)
+                    .clientOptions(new WebClientOptions()
+                                       .setDefaultHost("localhost")
+                                       .setDefaultPort(opts.port())
+                                       .setMaxPoolSize(opts.connections())
+                                       .setMaxWaitQueueSize(-1))
+                    .build());
+    
+    System.out.printf("event-loops=%d instances=%d worker-threads=%d connections=%d rate=%d/s%n",
+                      opts.eventLoops(), opts.instances(), opts.workerThreads(),
+                      opts.connections(), opts.rate());
+    try {
+      for (Scenario scenario : scenarios) {
+        run(scenario, client, opts);
+      }
+    } finally {
+      client.shutdown();
+      clientVertx.close();
+      server.shutdownSync();
+    }
+  }
+  
+  private static Server startServer(Options opts, List<Scenario> scenarios)
+      throws ServerInitializationException {
+    List<RouteDefinition> routes = scenarios.stream()
+                                            .map(s -> s.route(opts))
+                                            .collect(Collectors.toList());
+    Vertx vertx = VertxFactory.create(
+        new VertxOptions()
+            .setEventLoopPoolSize(opts.eventLoops())
+            .setWorkerPoolSize(opts.workerThreads()));
+    
+    Server server = ServerImpl.create(
+        ServerConfig.builder()
+                    .vertx(vertx)
+                    .instances(opts.instances())
+                    .serverOptions(new HttpServerOptions().setPort(opts.port()))
+                    .routeCreatorFactory(RingRouteCreatorFactory.create())
+                    .routeList(RouteList.from(routes))
+                    .build());
+    server.startSync();
+    return server;
+  }
+  
+  private static void run(Scenario scenario, RingClient client, Options opts)
+      throws InterruptedException, IOException {
+    var request = client.request(RT.map(Keyword.intern("method"), Keyword.intern("get"),
+                                        Keyword.intern("uri"), scenario.path()));
+    var driver = FixedRateDriver.create(client, request, opts.rate());
+    
+    driver.run(opts.warmup(), TimeUnit.SECONDS);
+    FixedRateDriver.Result result = driver.run(opts.duration(), TimeUnit.SECONDS);
+    
+    printSummary(scenario, result);
+    var file = opts.output().resolve(String.format("%s-%d.hgrm", scenario.displayName(), opts.rate()));
+    try (var out = new PrintStream(Files.newOutputStream(file))) {
+      // Values are recorded in nanoseconds and written in milliseconds
+      result.histogram().outputPercentileDistribution(out, 1_000_000.0);
+    }
+  }
+  
+  private static void printSummary(Scenario scenario, FixedRateDriver.Result result) {
+    Histogram histogram = result.histogram();
+    var summary = new StringBuilder(
+        String.format("%-14s requests=%d errors=%d incomplete=%d throughput=%.1f/s",
+                      scenario.displayName(), histogram.getTotalCount(),
+                      result.errors(), result.incomplete(), result.throughput()));
+    for (double percentile : PERCENTILES) {
+      summary.append(String.format(" p%s=%.3fms", percentileLabel(percentile),
+                                   histogram.getValueAtPercentile(percentile) / 1e6));
+    }
+    summary.append(String.format(" max=%.3fms", histogram.getMaxValue() / 1e6));
+    System.out.println(summary);
+  }
+  
+  private static String percentileLabel(double percentile) {
+    return percentile == Math.rint(percentile) ?
+           String.valueOf((long) percentile) :
+           String.valueOf(percentile);
+  }
+}
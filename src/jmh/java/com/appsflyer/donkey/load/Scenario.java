@@ -0,0 +1,176 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.load;
+
+import clojure.lang.IPersistentMap;
+import clojure.lang.Keyword;
+import clojure.lang.RT;
+import com.appsflyer.donkey.server.handler.StaticResourcesConfig;
+import com.appsflyer.donkey.server.handler.StaticResourcesHandler;
+import com.appsflyer.donkey.server.ring.handler.RingHandler;
+import com.appsflyer.donkey.server.ring.middleware.JsonBodySerializer;
+import com.appsflyer.donkey.server.ring.middleware.RingMiddleware;
+import com.appsflyer.donkey.server.route.HandlerMode;
+import com.appsflyer.donkey.server.route.PathDefinition;
+import com.appsflyer.donkey.server.route.RouteDefinition;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import jsonista.jackson.KeywordSerializer;
+
+import static com.appsflyer.donkey.server.ring.handler.RingHandler.RING_HANDLER_RESULT;
+import static com.appsflyer.donkey.server.ring.handler.RingResponseField.*;
+import static com.appsflyer.donkey.server.route.PathDefinition.MatchType.REGEX;
+import static io.vertx.core.http.HttpMethod.GET;
+
+/**
+ * The routes the load test server exposes. Each scenario is driven
+ * separately, so the results of one don't affect the next.
+ */
+enum Scenario {
+  
+  /**
+   * A Ring handler that runs on the event loop and returns a short text body.
+   */
+  NON_BLOCKING("/non-blocking") {
+    @Override
+    RouteDefinition route(LoadTest.Options opts) {
+      return RouteDefinition.create()
+                            .path(path())
+                            .addMethod(GET)
+                            .handler(respond(TEXT_RESPONSE));
+    }
+  },
+  /**
+   * A Ring handler that runs on a worker thread, and sleeps for
+   * {@code --blocking-delay-ms} to simulate a call to a database.
+   */
+  BLOCKING("/blocking") {
+    @Override
+    RouteDefinition route(LoadTest.Options opts) {
+      return RouteDefinition.create()
+                            .path(path())
+                            .addMethod(GET)
+                            .handlerMode(HandlerMode.BLOCKING)
+                            .handler(sleepAndRespond(opts.blockingDelayMs(), TEXT_RESPONSE));
+    }
+  },
+  /**
+   * The same as {@link #BLOCKING}, but the handler runs on a virtual thread.
+   */
+  VIRTUAL("/virtual") {
+    @Override
+    RouteDefinition route(LoadTest.Options opts) {
+      return RouteDefinition.create()
+                            .path(path())
+                            .addMethod(GET)
+                            .handlerMode(HandlerMode.VIRTUAL)
+                            .handler(sleepAndRespond(opts.blockingDelayMs(), TEXT_RESPONSE));
+    }
+  },
+  /**
+   * A Ring handler that returns a Clojure map which is serialized to JSON.
+   */
+  JSON("/json") {
+    @Override
+    RouteDefinition route(LoadTest.Options opts) {
+      var clojureModule = new SimpleModule("Clojure")
+          .addSerializer(Keyword.class, new KeywordSerializer(false))
+          .addKeySerializer(Keyword.class, new KeywordSerializer(true));
+      RingMiddleware serializer =
+          JsonBodySerializer.create(new ObjectMapper().registerModule(clojureModule));
+      
+      var user = RT.map(Keyword.intern("id"), 123,
+                        Keyword.intern("name"), "donkey",
+                        Keyword.intern("active"), true,
+                        Keyword.intern("tags"), RT.vector("a", "b", "c"));
+      IPersistentMap response = RT.map(
+          STATUS.keyword(), 200,
+          HEADERS.keyword(), RT.map("content-type", "application/json"),
+          BODY.keyword(), RT.map(Keyword.intern("users"), RT.vector(user, user, user),
+                                 Keyword.intern("total"), 3));
+      
+      return RouteDefinition.create()
+                            .path(path())
+                            .addMethod(GET)
+                            .handler((RingHandler) ctx -> {
+                              ctx.put(RING_HANDLER_RESULT, serializer.handle(response));
+                              ctx.next();
+                            });
+    }
+  },
+  /**
+   * A file served by the static resources handler.
+   */
+  STATIC("/home.html") {
+    @Override
+    RouteDefinition route(LoadTest.Options opts) {
+      var config = new StaticResourcesConfig.Builder()
+          .resourcesRoot("public")
+          .enableCaching(true)
+          .build();
+      
+      return RouteDefinition.create()
+                            .path(PathDefinition.create("/home\\.html", REGEX))
+                            .addMethod(GET)
+                            .handler(StaticResourcesHandler.create(config));
+    }
+  };
+  
+  private static final IPersistentMap TEXT_RESPONSE = RT.map(
+      STATUS.keyword(), 200,
+      HEADERS.keyword(), RT.map("content-type", "text/plain"),
+      BODY.keyword(), "Hello, World!");
+  
+  private static RingHandler respond(IPersistentMap response) {
+    return ctx -> {
+      ctx.put(RING_HANDLER_RESULT, response);
+      ctx.next();
+    };
+  }
+  
+  private static RingHandler sleepAndRespond(long delay, IPersistentMap response) {
+    return ctx -> {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      ctx.put(RING_HANDLER_RESULT, response);
+      ctx.next();
+    };
+  }
+  
+  static Scenario fromName(String name) {
+    return valueOf(name.trim().toUpperCase().replace('-', '_'));
+  }
+  
+  private final String path;
+  
+  Scenario(String path) {
+    this.path = path;
+  }
+  
+  String path() {
+    return path;
+  }
+  
+  String displayName() {
+    return name().toLowerCase().replace('_', '-');
+  }
+  
+  abstract RouteDefinition route(LoadTest.Options opts);
+}
@@ -17,12 +17,15 @@
 
 (ns com.appsflyer.donkey.client
   (:require [com.appsflyer.donkey.request])
-  (:import (com.appsflyer.donkey.client ClientConfig Client)
+  (:import (com.appsflyer.donkey.client ClientConfig SendOptions RetryPolicy RetryBudget
+                                        CircuitBreakerConfig)
+           (com.appsflyer.donkey.client.ring ClojureRequestField RingClient)
            (com.appsflyer.donkey.request AsyncRequest)
-           (io.vertx.core.http HttpClientOptions)
+           (io.vertx.core.http HttpClientOptions HttpVersion)
            (io.vertx.core.net ProxyOptions ProxyType)
            (io.vertx.ext.web.client WebClientOptions)
-           (clojure.lang IPersistentMap)))
+           (clojure.lang IPersistentMap)
+           (java.util.function IntPredicate Predicate)))
 
 (defn- ^ProxyType keyword->ProxyType [type]
   (ProxyType/valueOf (-> type name .toUpperCase)))
@@ -33,6 +36,31 @@
     (.setPort (:port opts))
     (.setType (keyword->ProxyType (:proxy-type opts)))))
 
+(defn- ^HttpVersion keyword->HttpVersion [protocol-version]
+  (case protocol-version
+    :http1.0 HttpVersion/HTTP_1_0
+    :http1.1 HttpVersion/HTTP_1_1
+    :http2 HttpVersion/HTTP_2))
+
+(defn- ^HttpClientOptions add-http2-options
+  "Sets the HTTP/2 connection pool options. They only take effect when the
+  `:protocol-version` is `:http2`."
+  [^HttpClientOptions client-options
+   {:keys [ssl
+           keep-alive-timeout-seconds
+           http2-multiplexing-limit
+           http2-max-pool-size
+           http2-connection-window-size
+           h2c-prior-knowledge]}]
+  (cond->
+    client-options
+    ssl (.setUseAlpn true)
+    keep-alive-timeout-seconds (.setHttp2KeepAliveTimeout (int keep-alive-timeout-seconds))
+    http2-multiplexing-limit (.setHttp2MultiplexingLimit (int http2-multiplexing-limit))
+    http2-max-pool-size (.setHttp2MaxPoolSize (int http2-max-pool-size))
+    http2-connection-window-size (.setHttp2ConnectionWindowSize (int http2-connection-window-size))
+    h2c-prior-knowledge (.setHttp2ClearTextUpgrade false)))
+
 (defn- ^HttpClientOptions map->HttpClientOptions
   "Creates and returns an HttpClientOptions object from the opts map.
   The client options are used to define global default settings that will be
@@ -52,13 +80,20 @@
            debug
            proxy-options
            compression
-           ssl]
+           ssl
+           protocol-version
+           max-pool-size
+           max-wait-queue-size
+           pool-cleaner-period-ms
+           pipelining
+           pipelining-limit]
     :or   {force-sni         true
            enable-user-agent false
            keep-alive        false
            debug             false
            follow-redirects  true
-           user-agent        "Donkey-Client"}}]
+           user-agent        "Donkey-Client"}
+    :as   opts}]
 
   (cond->
     (doto (WebClientOptions.)
@@ -77,7 +112,35 @@
     idle-timeout-seconds (.setIdleTimeout (int idle-timeout-seconds))
     compression (.setTryUseCompression true)
     ssl (.setSsl true)
-    (and ssl (not default-port)) (.setDefaultPort (int 443))))
+    (and ssl (not default-port)) (.setDefaultPort (int 443))
+    max-pool-size (.setMaxPoolSize (int max-pool-size))
+    max-wait-queue-size (.setMaxWaitQueueSize (int max-wait-queue-size))
+    pool-cleaner-period-ms (.setPoolCleanerPeriod (int pool-cleaner-period-ms))
+    (boolean? pipelining) (.setPipelining ^boolean pipelining)
+    pipelining-limit (.setPipeliningLimit (int pipelining-limit))
+    protocol-version (.setProtocolVersion (keyword->HttpVersion protocol-version))
+    (= :http2 protocol-version) (add-http2-options opts)))
+
+(defn ^CircuitBreakerConfig map->CircuitBreakerConfig
+  "Creates and returns a CircuitBreakerConfig object from the
+  `:circuit-breaker` client option. See the CircuitBreakerConfig docs for
+  more information."
+  [{:keys [failure-rate-threshold
+           slow-call-rate-threshold
+           slow-call-duration-ms
+           window-size
+           minimum-calls
+           open-duration-ms
+           half-open-calls]}]
+  (cond-> (CircuitBreakerConfig/builder)
+    failure-rate-threshold (.failureRateThreshold (double failure-rate-threshold))
+    slow-call-rate-threshold (.slowCallRateThreshold (double slow-call-rate-threshold))
+    slow-call-duration-ms (.slowCallDurationMillis (long slow-call-duration-ms))
+    window-size (.windowSize (int window-size))
+    minimum-calls (.minimumCalls (int minimum-calls))
+    open-duration-ms (.openDurationMillis (long open-duration-ms))
+    half-open-calls (.halfOpenCalls (int half-open-calls))
+    true (.build)))
 
 (defn ^ClientConfig map->ClientConfig
   "Creates and returns a ClientConfig object from the opts map.
@@ -86,8 +149,51 @@
   (-> (ClientConfig/builder)
       (.vertx (:vertx opts))
       (.clientOptions (map->HttpClientOptions opts))
+      (.coalesceRequests (boolean (:coalesce-requests opts)))
+      (cond->
+        (:retry-budget opts) (.retryBudget (let [{:keys [ratio max-tokens]} (:retry-budget opts)]
+                                             (RetryBudget/create (double ratio) (int max-tokens))))
+        (:circuit-breaker opts) (.circuitBreakerConfig (map->CircuitBreakerConfig (:circuit-breaker opts)))
+        (:metric-registry opts) (.metricRegistry (:metric-registry opts))
+        (:metrics-prefix opts) (.metricsPrefix (:metrics-prefix opts))
+        (:response-cache opts) (.responseCacheMaxBytes (long (get-in opts [:response-cache :max-bytes]))))
       .build))
 
+(defn ^RetryPolicy map->RetryPolicy
+  "Creates and returns a RetryPolicy object from the `:retry` request option.
+  See the RetryPolicy docs for more information."
+  [{:keys [max-retries backoff-ms max-backoff-ms non-idempotent statuses retry-on]}]
+  (cond-> (RetryPolicy/builder)
+    max-retries (.maxRetries (int max-retries))
+    backoff-ms (.initialBackoffMillis (long backoff-ms))
+    max-backoff-ms (.maxBackoffMillis (long max-backoff-ms))
+    (boolean? non-idempotent) (.retryNonIdempotent ^boolean non-idempotent)
+    statuses (.statusPredicate (reify IntPredicate
+                                 (test [_ status] (boolean (statuses status)))))
+    retry-on (.exceptionPredicate (reify Predicate
+                                    (test [_ ex] (boolean (retry-on ex)))))
+    true (.build)))
+
+(defn ^SendOptions map->SendOptions
+  "Creates and returns a SendOptions object from the request opts map, and
+  the client that sends the request. See the SendOptions docs for more
+  information."
+  [^RingClient client opts]
+  (let [request-key (.requestKey client opts)]
+    (if (or request-key (.requiresRequestOptions client)
+            (:as opts) (:deadline-ms opts) (:hedge opts) (:retry opts))
+      (let [{:keys [after-ms max]} (:hedge opts)]
+        (cond-> (-> (SendOptions/builder)
+                    (.bodyType (.from ClojureRequestField/AS ^IPersistentMap opts))
+                    (.deadlineMillis (long (:deadline-ms opts 0)))
+                    (.hedgeAfterMillis (long (or after-ms 0)))
+                    (.maxHedges (int (or max 0)))
+                    (.requestKey request-key)
+                    (.requestOptions (.requestOptions client opts)))
+          (:retry opts) (.retryPolicy (map->RetryPolicy (:retry opts)))
+          true (.build)))
+      (SendOptions/defaults))))
+
 (defprotocol HttpClient
   (request [this opts]
     "Creates an asynchronous HTTP request. Returns an instance of AsyncRequest.
@@ -146,13 +252,69 @@
       where credentials is the base64 encoding of id and password joined by a
       colon. The map must contain these fields:
       - id [string] The id used for the authentication.
-      - password [string] The password used for the authentication.")
+      - password [string] The password used for the authentication.
+
+    :as [keyword] How the response `:body` is returned. One of:
+      - :bytes The body is read into a byte[]. This is the default.
+      - :buffer The body is read into a Vert.x `Buffer`, without copying it to
+        a byte[].
+      - :stream The response is returned as soon as the headers arrive, and the
+        body is an `InputStream` that is fed from the connection as the data
+        arrives. The connection is paused while the data isn't read. The
+        stream should be read outside the event loop, and closed when it's not
+        read to the end. The request is sent with the client's options, but
+        bypasses the interceptors of the underlying Vert.x WebClient. Form
+        submissions always read the body into a byte[].
+
+    :deadline-ms [int] The overall time in milliseconds the request may take,
+      including connecting, following redirects and hedged requests. The
+      request fails with a `DeadlineExceededException` and is cancelled when
+      there's no response by then. With `:as :stream` the deadline applies up
+      to the arrival of the headers. Defaults to no deadline.
+
+    :hedge [map] Sends another copy of the request when there's no response
+      after a while, and completes with whichever response arrives first. The
+      requests that are still in flight are cancelled. Should only be used with
+      idempotent requests. Requests with a streamed body or `:as :stream` are not
+      hedged. The map must contain these fields:
+      - after-ms [int] The time in milliseconds to wait for a response before
+        sending another copy of the request.
+      - max [int] The maximum number of copies to send in addition to the
+        original request.
+      The latency threshold is usually set to a high percentile (e.g p95) of
+      the latency of the server, so that only the slowest requests are
+      hedged.
+
+    :retry [map] Sends the request again when it fails with a transient error,
+      or the response has a retryable status. Only requests with an idempotent
+      method (GET, HEAD, OPTIONS, PUT, DELETE, TRACE) are retried unless
+      `:non-idempotent` is true. Requests with a streamed body are not retried.
+      The time to wait before each retry grows exponentially, and is randomized
+      so that clients don't retry at the same time. Retries are limited by the
+      `:retry-budget` of the client. All the fields are optional:
+      - max-retries [int] The maximum number of retries. Defaults to 2.
+      - backoff-ms [int] The maximum time to wait before the first retry. It's
+        doubled with each retry. Defaults to 50.
+      - max-backoff-ms [int] The maximum time to wait before a retry. Defaults
+        to 1000.
+      - non-idempotent [boolean] Whether to retry requests with a non idempotent
+        method, such as POST. Defaults to false.
+      - statuses [fn] A predicate of the response status code, usually a set.
+        Defaults to #{502 503 504}.
+      - retry-on [fn] A predicate of the exception the request failed with.
+        Defaults to connection errors and timeouts. A full connection pool is
+        not retried.
+      When the request also has a `:deadline-ms`, it covers all the retries.
+      Form submissions are not hedged or retried, and have no deadline.")
   (stop [this]
     "Stops the client and releases any resources associated with it."))
 
-(deftype DonkeyClient [^Client impl]
+(deftype DonkeyClient [^RingClient impl]
   HttpClient
   (request [_this opts]
-    (AsyncRequest. impl (.request ^Client impl ^IPersistentMap opts)))
+    (AsyncRequest.
+      impl
+      (.request impl ^IPersistentMap opts)
+      (map->SendOptions impl opts)))
   (stop [_this]
     (.shutdown impl)))
@@ -21,6 +21,7 @@
             [com.appsflyer.donkey.server :as server]
             [com.appsflyer.donkey.client :as client]
             [com.appsflyer.donkey.metrics :as metrics]
+            [com.appsflyer.donkey.dns :as dns]
             [com.appsflyer.donkey.donkey-spec :as donkey-spec])
   (:import (com.appsflyer.donkey.server ServerImpl)
            (com.appsflyer.donkey.client.ring RingClient)
@@ -49,11 +50,44 @@
           arguments - a `request` map, `respond` function, and `raise` function.
           The handler must call the `respond` function with a Ring response map,
           or the `raise` function with an exception.
-          When `:handler-mode` is `:blocking` the handler must accept a single
-          argument - a `request` map. It should return a Ring response map.
-
-      - :handler-mode [keyword=:non-blocking] `:blocking` or `:non-blocking`.
-          See `:handler` description for usage.
+          When `:handler-mode` is `:blocking` or `:virtual` the handler must
+          accept a single argument - a `request` map. It should return a Ring
+          response map.
+
+      - :handler-mode [keyword=:non-blocking] `:blocking`, `:virtual` or
+          `:non-blocking`. See `:handler` description for usage. `:virtual`
+          runs each request on its own virtual thread instead of on the
+          worker pool, so the number of concurrent blocking calls is not
+          limited by `:worker-threads`. Virtual threads require Java 21, on
+          earlier versions the handler runs on the worker pool.
+
+      - :worker-pool [map] Run a `:blocking` handler on a dedicated pool of
+          threads instead of the shared worker pool, so a slow route can't
+          starve the other blocking routes. Routes with the same `:name` share
+          the pool, and must have the same `:size` and `:max-queue`.
+          - :name [string] Required. The name of the pool. It is used in the
+              names of the threads and of the pool metrics.
+          - :size [int] Required. The number of threads in the pool.
+          - :max-queue [int] The maximum number of requests waiting for a
+              thread. Requests that arrive when the queue is full are rejected
+              with `503 Service Unavailable`. Unbounded by default.
+
+      - :body-mode [keyword=:buffered] `:buffered`, `:stream` or `:json`. Determines how
+          the request body is made available to the handler. When `:buffered`
+          the entire body is read into memory before the handler is called,
+          and `:body` is a `byte[]`. When `:stream` the handler is called as
+          soon as the request headers arrive, and `:body` is an `InputStream`
+          that is fed as data arrives from the client. The connection is
+          paused when the handler falls behind, so large uploads are never
+          fully held in memory. Reading from the stream blocks until data is
+          available, so it must not be read on the event loop. It is
+          recommended to use it with `:handler-mode :blocking`.
+          When `:json` the body is checked to be valid JSON on the event loop
+          as data arrives, and `:body` holds the received chunks as a
+          `Buffer`. It must be used with the `make-deserialize-middleware`
+          middleware, which parses the body with its `ObjectMapper`. A
+          malformed body is rejected with `400 Bad Request` as soon as it's
+          found.
 
       - :path [string] Used in matching a request to a route. The path is the
           first element that's examined when matching a request to a route. It is
@@ -189,6 +223,28 @@
       use this option when it is known that multiple consecutive requests will
       be made from the same client.
 
+    :ssl [map] Serve HTTPS. The map should include either a :key-store-path
+      and a :key-store-password, or a :key-path and a :cert-path of PEM files.
+      - :key-store-type [keyword=:jks] Either :jks or :pkcs12.
+      Paths are resolved on the file system and then on the classpath.
+
+    :http2 [boolean=false] Negotiate HTTP/2 (h2) with clients using ALPN. Only
+      applies when :ssl is set. Clear text connections always accept HTTP/2
+      (h2c), either with prior knowledge or with an HTTP/1.1 upgrade request.
+      With HTTP/2 many concurrent requests are multiplexed over one connection.
+
+    :http2-max-concurrent-streams [int=100] The maximum number of concurrent
+      requests on an HTTP/2 connection.
+
+    :http2-initial-window-size [int=65535] The initial flow control window size
+      in bytes of each HTTP/2 stream.
+
+    :http2-connection-window-size [int] The flow control window size in bytes
+      of an HTTP/2 connection. Defaults to the HTTP/2 default of 65535.
+
+    :http2-header-table-size [int=4096] The size in bytes of the HPACK header
+      compression table.
+
     :tcp-no-delay [boolean=true] Determines whether packets are sent to the
       client as soon as they are available, even if there is only a small amount
       of data.
@@ -222,6 +278,34 @@
 
     :content-type-header [boolean=false] Sets the response content type
       automatically according to the best 'Accept' header match.
+
+    :route-matcher [keyword=:linear] How requests are matched to routes.
+      Supported values are:
+      - :linear Routes are tried one at a time in the order they were defined.
+      - :radix-tree Routes with a :simple path are compiled into a prefix tree,
+       so matching a request takes time proportional to the length of its path
+       rather than to the number of routes. When more than one path matches,
+       the most specific one is tried first. Routes with a :regex path are
+       tried afterwards, in the order they were defined.
+
+    :load-shedding [map] Reject requests with 503 and a Retry-After header
+      before they reach a route when the server is overloaded. Each instance
+      tracks its own event loop lag and number of requests in flight. Requests
+      are rejected while the event loop lags, or when the number of requests
+      in flight reached an adaptive concurrency limit. Rejected requests don't
+      go through the :error-handlers. An empty map enables it with the
+      defaults. The map can include:
+      - :algorithm [keyword=:aimd] How the concurrency limit is adjusted.
+        :aimd grows the limit by 1 while requests are faster than
+        :latency-threshold-ms, and cuts it by 10% otherwise. :gradient follows
+        the ratio between the long term and the recent request latency.
+      - :initial-limit [int=100]
+      - :min-limit [int=10]
+      - :max-limit [int=1000]
+      - :max-event-loop-lag-ms [int=100] Requests are rejected while the event
+        loop lags by more than this.
+      - :latency-threshold-ms [int=1000] Only used by :aimd.
+      - :retry-after-seconds [int=1] The Retry-After header value.
     ")
 
   (create-client [_this] [_this opts]
@@ -277,6 +361,98 @@
       - :host [string] The host to connect to.
       - :port [int] The port to connect to.
       - :proxy-type [keyword] :http, :socks4, or :socks5
+
+    :max-pool-size [int=5] The maximum number of HTTP/1.x connections per host.
+      Requests that are sent when all the connections are in use wait in a
+      queue until one is available.
+
+    :max-wait-queue-size [int=-1] The maximum number of requests per host
+      that can wait for a connection. When the queue is full, new requests fail
+      immediately, and the cause of the exception is an
+      `io.vertx.core.http.ConnectionPoolTooBusyException`. -1 means the queue
+      is unbounded.
+
+    :pool-cleaner-period-ms [int=1000] How often idle connections that timed
+      out are removed from the pool. 0 disables it.
+
+    :pipelining [boolean=false] Send more than one request on an HTTP/1.1
+      connection without waiting for the previous response. Only takes effect
+      when :keep-alive is true.
+
+    :pipelining-limit [int=10] The maximum number of requests sent on a
+      connection before the first response is received.
+
+    :coalesce-requests [boolean=false] Collapse identical GET and HEAD
+      requests that are in flight at the same time into a single request. Two
+      requests are identical when they have the same host, port, uri, query
+      parameters and headers. All of them complete with the same response map,
+      so its :body must not be mutated.
+
+    :retry-budget [map] Limits the retries of requests with a `:retry` option,
+      so that a failing host isn't flooded with them. Each host has a token
+      bucket that starts full. Every request deposits `:ratio` tokens, and
+      every retry takes one. A request isn't retried when there are no tokens
+      left. Defaults to {:ratio 0.2 :max-tokens 10}.
+      - ratio [double] The ratio of retries to requests. Between 0 and 1.
+      - max-tokens [int] The capacity of the bucket.
+
+    :circuit-breaker [map] Guards the requests to each host with a circuit
+      breaker. It opens when too many of the last requests to the host failed
+      (with an exception or a 5xx status) or were slow. While it's open,
+      requests fail immediately with a `CircuitBreakerOpenException` instead
+      of waiting on a degraded host. After :open-duration-ms it lets
+      :half-open-calls requests through, and closes if all of them succeed.
+      The state of each breaker is reported to the :metric-registry of the
+      Donkey instance, under `<prefix>.http.clients.circuit-breaker.<host>:<port>`.
+      At most 1000 hosts have a breaker. Beyond that a closed breaker is
+      dropped with its metrics, and its host starts over with a new one.
+      All the fields are optional:
+      - failure-rate-threshold [double=0.5] The ratio of failed requests that
+        opens the breaker.
+      - slow-call-rate-threshold [double=1.0] The ratio of slow requests that
+        opens the breaker.
+      - slow-call-duration-ms [int=60000] The duration after which a request
+        is slow.
+      - window-size [int=100] The number of last requests the rates are
+        computed on.
+      - minimum-calls [int=20] The number of requests required to compute
+        the rates.
+      - open-duration-ms [int=10000] How long the breaker stays open before
+        letting requests through.
+      - half-open-calls [int=5] The number of requests that are let through
+        when the breaker is half open.
+
+    :response-cache [map] Keeps the responses of GET requests in memory, and
+      serves them without a network round trip while they are fresh according
+      to their `Cache-Control: max-age` or `Expires` headers. Stale responses
+      with an `ETag` or `Last-Modified` header are revalidated with a
+      conditional request, so an unchanged response transfers only a 304.
+      Responses with `no-store` are not cached. Requests with :deadline-ms,
+      :hedge, :retry or `:as :stream` bypass the cache. Requests that differ
+      only in `:idle-timeout-seconds` share a cached response, and each
+      response gets its own copy of the cached body.
+      - max-bytes [int] Required. The maximum size of the cached responses.
+        The least recently used responses are evicted first.
+
+    :protocol-version [keyword=:http1.1] One of :http1.0, :http1.1 or :http2.
+      With :http2 concurrent requests to the same host are multiplexed over a
+      small number of connections. HTTPS connections negotiate HTTP/2 with ALPN,
+      and fall back to HTTP/1.1 if the server doesn't support it. HTTP/2
+      connections are always kept alive, for :keep-alive-timeout-seconds.
+
+    :h2c-prior-knowledge [boolean=false] Send clear text HTTP/2 requests
+      directly, instead of upgrading an HTTP/1.1 connection first. Only use it
+      when all the servers are known to support h2c.
+
+    :http2-multiplexing-limit [int=-1] The maximum number of concurrent
+      requests on a single HTTP/2 connection. -1 uses the server's
+      max concurrent streams setting.
+
+    :http2-max-pool-size [int=1] The maximum number of HTTP/2 connections per
+      host.
+
+    :http2-connection-window-size [int] The flow control window size in bytes
+      of an HTTP/2 connection. Defaults to the HTTP/2 default of 65535.
     ")
   (destroy [this]
     "Releases all the underlining resources associated with this instance.
@@ -310,8 +486,8 @@
 (defn- ^VertxOptions map->VertxOptions
   "Creates and returns a VertxOptions object from the opts map.
   The vertx options are used to initialize the Vertx object which is an
-  integral part of the server and client. It allows configuring thread pools
-  and metrics."
+  integral part of the server and client. It allows configuring thread pools,
+  metrics and DNS resolution."
   [opts]
   (let [vertx-options (VertxOptions.)]
     (.setPreferNativeTransport vertx-options true)
@@ -320,6 +496,8 @@
       (.setWorkerPoolSize vertx-options (int worker-threads)))
     (when (:metric-registry opts)
       (.setMetricsOptions vertx-options (metrics/map->MetricsOptions opts)))
+    (when-let [address-resolver (:address-resolver opts)]
+      (.setAddressResolverOptions vertx-options (dns/map->AddressResolverOptions address-resolver)))
     vertx-options))
 
 (defn ^Donkey create-donkey
@@ -345,6 +523,30 @@
   :metric-registry [MetricRegistry] Instance of Dropwizard MetricRegistry where
     metrics will be reported to.
 
+  :address-resolver [map] Configures how the host names of client requests are
+    resolved. Resolved addresses are cached, so high rate clients don't send
+    DNS queries on the hot path. All the fields are optional:
+    - servers [seq] The DNS servers as `host:port` strings. Defaults to the
+      servers of the OS (e.g /etc/resolv.conf).
+    - hosts-path [string] The path of an alternative hosts file.
+    - cache-min-ttl-seconds [int=0] The minimum time a resolved address is
+      cached, regardless of the TTL of the DNS record. Raising it reduces the
+      number of DNS queries for records with a very short TTL.
+    - cache-max-ttl-seconds [int=Integer/MAX_VALUE] The maximum time a resolved
+      address is cached.
+    - cache-negative-ttl-seconds [int=0] How long a failed resolution is
+      cached. 0 disables negative caching.
+    - query-timeout-ms [int=5000] The timeout of a DNS query.
+    - max-queries [int=4] The maximum number of queries sent to resolve a name.
+    - search-domains [seq] The domains appended to names that have less than
+      :ndots dots. Defaults to the search domains of the OS.
+    - ndots [int] See :search-domains. Defaults to the OS setting.
+    - rotate-servers [boolean=false] Spread the DNS queries over the servers
+      instead of always trying them in order.
+    - round-robin-addresses [boolean=false] When a host name resolves to
+      several addresses, each new client connection uses the next one, so the
+      load is spread across all of them, rather than always using the first.
+
   :debug [boolean=false] Enable debug mode. Debug mode is not suitable for production
     use since it outputs a large amount of logs. Use with discretion.
   "
@@ -357,6 +559,6 @@
 
      (->Donkey
        (assoc
-         (select-keys opts [:debug])
+         (select-keys opts [:debug :metric-registry :metrics-prefix])
          :vertx
          (-> opts map->VertxOptions VertxFactory/create))))))
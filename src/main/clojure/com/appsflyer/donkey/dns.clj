@@ -0,0 +1,45 @@
+;
+; Copyright 2020 AppsFlyer
+;
+; Licensed under the Apache License, Version 2.0 (the "License")
+; you may not use this file except in compliance with the License.
+; You may obtain a copy of the License at
+;
+;     http://www.apache.org/licenses/LICENSE-2.0
+;
+; Unless required by applicable law or agreed to in writing, software
+; distributed under the License is distributed on an "AS IS" BASIS,
+; WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+; See the License for the specific language governing permissions and
+; limitations under the License.
+;
+
+(ns com.appsflyer.donkey.dns
+  (:import (io.vertx.core.dns AddressResolverOptions)))
+
+(defn ^AddressResolverOptions map->AddressResolverOptions
+  "Creates and returns an AddressResolverOptions object from the
+  `:address-resolver` map. Keys that are missing keep the Vert.x defaults."
+  [{:keys [servers
+           hosts-path
+           cache-min-ttl-seconds
+           cache-max-ttl-seconds
+           cache-negative-ttl-seconds
+           query-timeout-ms
+           max-queries
+           search-domains
+           ndots
+           rotate-servers
+           round-robin-addresses]}]
+  (cond-> (AddressResolverOptions.)
+    servers (.setServers (vec servers))
+    hosts-path (.setHostsPath ^String hosts-path)
+    cache-min-ttl-seconds (.setCacheMinTimeToLive (int cache-min-ttl-seconds))
+    cache-max-ttl-seconds (.setCacheMaxTimeToLive (int cache-max-ttl-seconds))
+    cache-negative-ttl-seconds (.setCacheNegativeTimeToLive (int cache-negative-ttl-seconds))
+    query-timeout-ms (.setQueryTimeout (long query-timeout-ms))
+    max-queries (.setMaxQueries (int max-queries))
+    search-domains (.setSearchDomains (vec search-domains))
+    ndots (.setNdots (int ndots))
+    (boolean? rotate-servers) (.setRotateServers ^boolean rotate-servers)
+    (boolean? round-robin-addresses) (.setRoundRobinInetAddress ^boolean round-robin-addresses)))
@@ -35,11 +35,34 @@
 (s/def ::worker-threads #(s/int-in-range? 1 500 %))
 (s/def ::event-loops #(s/int-in-range? 1 (* 2 (CpuCoreSensor/availableProcessors)) %))
 (s/def ::debug boolean?)
+(s/def :address-resolver/servers (s/coll-of ::not-blank))
+(s/def :address-resolver/hosts-path ::not-blank)
+(s/def :address-resolver/cache-min-ttl-seconds ::int>=0)
+(s/def :address-resolver/cache-max-ttl-seconds ::int>=0)
+(s/def :address-resolver/cache-negative-ttl-seconds ::int>=0)
+(s/def :address-resolver/query-timeout-ms pos-int?)
+(s/def :address-resolver/max-queries pos-int?)
+(s/def :address-resolver/search-domains (s/coll-of ::not-blank))
+(s/def :address-resolver/ndots pos-int?)
+(s/def :address-resolver/rotate-servers boolean?)
+(s/def :address-resolver/round-robin-addresses boolean?)
+(s/def ::address-resolver (s/keys :opt-un [:address-resolver/servers
+                                           :address-resolver/hosts-path
+                                           :address-resolver/cache-min-ttl-seconds
+                                           :address-resolver/cache-max-ttl-seconds
+                                           :address-resolver/cache-negative-ttl-seconds
+                                           :address-resolver/query-timeout-ms
+                                           :address-resolver/max-queries
+                                           :address-resolver/search-domains
+                                           :address-resolver/ndots
+                                           :address-resolver/rotate-servers
+                                           :address-resolver/round-robin-addresses]))
 
 (s/def ::donkey-config (s/keys :opt-un [::metrics-prefix
                                         ::metric-registry
                                         ::worker-threads
                                         ::event-loops
+                                        ::address-resolver
                                         ::debug]))
 
 (s/def ::handler fn?)
@@ -60,8 +83,14 @@
 (s/def ::methods (s/coll-of ::method))
 (s/def ::consumes ::strings)
 (s/def ::produces ::strings)
-(s/def ::handler-mode #{:blocking :non-blocking})
+(s/def ::handler-mode #{:blocking :non-blocking :virtual})
+(s/def ::body-mode #{:buffered :stream :json})
 (s/def ::match-type #{:simple :regex})
+(s/def :worker-pool/name ::not-blank)
+(s/def :worker-pool/size pos-int?)
+(s/def :worker-pool/max-queue nat-int?)
+(s/def ::worker-pool (s/keys :req-un [:worker-pool/name :worker-pool/size]
+                             :opt-un [:worker-pool/max-queue]))
 
 (s/def :server/route (s/keys :req-un [::handler]
                              :opt-un [::path
@@ -69,6 +98,8 @@
                                       ::consumes
                                       ::produces
                                       ::handler-mode
+                                      ::body-mode
+                                      ::worker-pool
                                       ::match-type
                                       ::middleware]))
 
@@ -103,12 +134,41 @@
 (s/def ::date-header boolean?)
 (s/def ::content-type-header boolean?)
 (s/def ::server-header boolean?)
+(s/def ::route-matcher #{:linear :radix-tree})
 (s/def ::tcp-no-delay boolean?)
 (s/def ::tcp-quick-ack boolean?)
 (s/def ::tcp-fast-open boolean?)
 (s/def ::socket-linger-seconds ::int>=0)
 (s/def ::accept-backlog pos-int?)
 (s/def ::idle-timeout-seconds ::int>=0)
+(s/def :ssl/key-store-path ::not-blank)
+(s/def :ssl/key-store-password string?)
+(s/def :ssl/key-store-type #{:jks :pkcs12})
+(s/def :ssl/key-path ::not-blank)
+(s/def :ssl/cert-path ::not-blank)
+(s/def :server/ssl (s/or :key-store (s/keys :req-un [:ssl/key-store-path]
+                                            :opt-un [:ssl/key-store-password
+                                                     :ssl/key-store-type])
+                         :pem (s/keys :req-un [:ssl/key-path :ssl/cert-path])))
+(s/def ::http2 boolean?)
+(s/def ::http2-initial-window-size pos-int?)
+(s/def ::http2-connection-window-size pos-int?)
+(s/def ::http2-max-concurrent-streams pos-int?)
+(s/def ::http2-header-table-size ::int>=0)
+(s/def :load-shedding/algorithm #{:aimd :gradient})
+(s/def :load-shedding/initial-limit pos-int?)
+(s/def :load-shedding/min-limit pos-int?)
+(s/def :load-shedding/max-limit pos-int?)
+(s/def :load-shedding/max-event-loop-lag-ms pos-int?)
+(s/def :load-shedding/latency-threshold-ms pos-int?)
+(s/def :load-shedding/retry-after-seconds ::int>=0)
+(s/def ::load-shedding (s/keys :opt-un [:load-shedding/algorithm
+                                        :load-shedding/initial-limit
+                                        :load-shedding/min-limit
+                                        :load-shedding/max-limit
+                                        :load-shedding/max-event-loop-lag-ms
+                                        :load-shedding/latency-threshold-ms
+                                        :load-shedding/retry-after-seconds]))
 (s/def :server/routes (s/coll-of :server/route :distinct true :min-count 1))
 (s/def ::error-handlers (s/map-of #(s/int-in-range? 400 600 %) fn?))
 
@@ -122,6 +182,14 @@
                                         ::date-header
                                         ::content-type-header
                                         ::server-header
+                                        ::route-matcher
+                                        ::load-shedding
+                                        :server/ssl
+                                        ::http2
+                                        ::http2-initial-window-size
+                                        ::http2-connection-window-size
+                                        ::http2-max-concurrent-streams
+                                        ::http2-header-table-size
                                         ::tcp-no-delay
                                         ::tcp-quick-ack
                                         ::tcp-fast-open
@@ -145,6 +213,36 @@
 (s/def ::proxy-options (s/keys :req-un [::host ::port ::proxy-type]))
 (s/def ::force-sni boolean?)
 (s/def ::ssl boolean?)
+(s/def ::max-pool-size pos-int?)
+(s/def ::max-wait-queue-size (s/or :unbounded #{-1} :size ::int>=0))
+(s/def ::pool-cleaner-period-ms ::int>=0)
+(s/def ::pipelining boolean?)
+(s/def ::pipelining-limit pos-int?)
+(s/def ::coalesce-requests boolean?)
+(s/def ::rate (s/double-in :min 0 :max 1 :NaN? false))
+(s/def :retry-budget/ratio ::rate)
+(s/def :retry-budget/max-tokens pos-int?)
+(s/def ::retry-budget (s/keys :req-un [:retry-budget/ratio :retry-budget/max-tokens]))
+(s/def :response-cache/max-bytes pos-int?)
+(s/def ::response-cache (s/keys :req-un [:response-cache/max-bytes]))
+(s/def :circuit-breaker/failure-rate-threshold ::rate)
+(s/def :circuit-breaker/slow-call-rate-threshold ::rate)
+(s/def :circuit-breaker/slow-call-duration-ms pos-int?)
+(s/def :circuit-breaker/window-size pos-int?)
+(s/def :circuit-breaker/minimum-calls pos-int?)
+(s/def :circuit-breaker/open-duration-ms pos-int?)
+(s/def :circuit-breaker/half-open-calls pos-int?)
+(s/def ::circuit-breaker (s/keys :opt-un [:circuit-breaker/failure-rate-threshold
+                                          :circuit-breaker/slow-call-rate-threshold
+                                          :circuit-breaker/slow-call-duration-ms
+                                          :circuit-breaker/window-size
+                                          :circuit-breaker/minimum-calls
+                                          :circuit-breaker/open-duration-ms
+                                          :circuit-breaker/half-open-calls]))
+(s/def ::protocol-version #{:http1.0 :http1.1 :http2})
+(s/def ::http2-multiplexing-limit (s/or :unlimited #{-1} :limit pos-int?))
+(s/def ::http2-max-pool-size pos-int?)
+(s/def ::h2c-prior-knowledge boolean?)
 
 (s/def ::client-config (s/keys :opt-un [::compression
                                         ::default-host
@@ -159,7 +257,21 @@
                                         ::user-agent
                                         ::enable-user-agent
                                         ::proxy-options
-                                        ::ssl]))
+                                        ::ssl
+                                        ::max-pool-size
+                                        ::max-wait-queue-size
+                                        ::pool-cleaner-period-ms
+                                        ::pipelining
+                                        ::pipelining-limit
+                                        ::coalesce-requests
+                                        ::retry-budget
+                                        ::circuit-breaker
+                                        ::response-cache
+                                        ::protocol-version
+                                        ::http2-multiplexing-limit
+                                        ::http2-max-pool-size
+                                        ::http2-connection-window-size
+                                        ::h2c-prior-knowledge]))
 
 
 ;; ------- Client Request Specification ------- ;;
@@ -170,6 +282,23 @@
 (s/def ::basic-auth-options (s/map-of #{"id" "password"} ::not-blank))
 (s/def ::query-params (s/every string? :kind map?))
 (s/def ::headers (s/every string? :kind map?))
+(s/def ::as #{:bytes :buffer :stream})
+(s/def ::deadline-ms pos-int?)
+(s/def :hedge/after-ms pos-int?)
+(s/def :hedge/max pos-int?)
+(s/def ::hedge (s/keys :req-un [:hedge/after-ms :hedge/max]))
+(s/def :retry/max-retries pos-int?)
+(s/def :retry/backoff-ms pos-int?)
+(s/def :retry/max-backoff-ms pos-int?)
+(s/def :retry/non-idempotent boolean?)
+(s/def :retry/statuses ifn?)
+(s/def :retry/retry-on ifn?)
+(s/def ::retry (s/keys :opt-un [:retry/max-retries
+                                :retry/backoff-ms
+                                :retry/max-backoff-ms
+                                :retry/non-idempotent
+                                :retry/statuses
+                                :retry/retry-on]))
 
 (s/def ::client-request (s/keys :req-un [::method]
                                 :opt-un [::uri
@@ -179,4 +308,8 @@
                                          ::bearer-token
                                          ::basic-auth-options
                                          ::query-params
-                                         ::headers]))
+                                         ::headers
+                                         ::as
+                                         ::deadline-ms
+                                         ::hedge
+                                         ::retry]))
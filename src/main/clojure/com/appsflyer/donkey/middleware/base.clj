@@ -16,7 +16,8 @@
 ;
 
 (ns com.appsflyer.donkey.middleware.base
-  (:import (com.appsflyer.donkey.server.ring.middleware RingMiddleware)))
+  (:import (com.appsflyer.donkey.server.ring.middleware RingMiddleware RingMiddlewareChain)
+           (com.appsflyer.donkey.server.ring.handler RingResponseAdapter)))
 
 (defn- normalize-middleware [exec]
   (if (instance? RingMiddleware exec)
@@ -29,6 +30,16 @@
         (ex-info
           "middleware must be a function or implement RingMiddleware" {:arg exec})))))
 
+(defn- handle-response
+  "Applies `middleware` to the `response`. If it throws then the response is
+  dropped, so a pooled buffer body it owns is released before rethrowing."
+  [^RingMiddleware middleware response]
+  (try
+    (.handle middleware response)
+    (catch Exception ex
+      (RingResponseAdapter/releaseBody (:body response))
+      (throw ex))))
+
 (defn make-ring-request-middleware
   "Returns a function that will call `handler` with the result of applying
   `middleware` to the `request`.
@@ -94,14 +105,16 @@
   - :handler [fn] The next handler function. Can be used to recover from the
   exception.
   - respond [fn] Only for the three arity middleware.
-  - raise [fn] Only for the three arity middleware."
+  - raise [fn] Only for the three arity middleware.
+  If `middleware` throws, a Netty `ByteBuf` or `ByteBufHolder` body of the
+  response it was called with is released, before the exception is handled."
   [{:keys [middleware handler ex-handler]}]
   (let [^RingMiddleware -middleware (normalize-middleware middleware)]
     (if (fn? ex-handler)
       (fn
         ([request]
          (try
-           (.handle -middleware (handler request))
+           (handle-response -middleware (handler request))
            (catch Exception ex
              (ex-handler {:cause   ex
                           :request request
@@ -112,7 +125,7 @@
              request
              (fn [response]
                (try
-                 (respond (.handle -middleware response))
+                 (respond (handle-response -middleware response))
                  (catch Exception ex
                    (ex-handler {:cause   ex
                                 :handler handler
@@ -128,13 +141,67 @@
                           :raise   raise})))))
       (fn
         ([request]
-         (.handle -middleware (handler request)))
+         (handle-response -middleware (handler request)))
         ([request respond raise]
          (handler
            request
            (fn [response]
              (try
-               (respond (.handle -middleware response))
+               (respond (handle-response -middleware response))
                (catch Exception ex
                  (raise ex))))
            raise))))))
+
+(defn ring-request-middleware
+  "Returns a middleware, i.e a function that takes a handler, that applies
+  `middleware` to the request with `make-ring-request-middleware`.
+  Accepts the same map as `make-ring-request-middleware`, without the
+  `:handler`.
+  Consecutive middleware that were created without an `:ex-handler` are fused
+  by `fuse-middleware`."
+  [{:keys [middleware ex-handler] :as opts}]
+  (cond-> (fn [handler]
+            (make-ring-request-middleware (assoc opts :handler handler)))
+    (nil? ex-handler) (with-meta {::request (normalize-middleware middleware)})))
+
+(defn ring-response-middleware
+  "Returns a middleware, i.e a function that takes a handler, that applies
+  `middleware` to the response with `make-ring-response-middleware`.
+  Accepts the same map as `make-ring-response-middleware`, without the
+  `:handler`.
+  Consecutive middleware that were created without an `:ex-handler` are fused
+  by `fuse-middleware`."
+  [{:keys [middleware ex-handler] :as opts}]
+  (cond-> (fn [handler]
+            (make-ring-response-middleware (assoc opts :handler handler)))
+    (nil? ex-handler) (with-meta {::response (normalize-middleware middleware)})))
+
+(defn- middleware-kind [middleware]
+  (let [m (meta middleware)]
+    (cond
+      (::request m) ::request
+      (::response m) ::response)))
+
+(defn- fuse [kind run]
+  (let [chain (RingMiddlewareChain/create (mapv (comp kind meta) run))]
+    (if (= kind ::request)
+      (ring-request-middleware {:middleware chain})
+      (ring-response-middleware {:middleware chain}))))
+
+(defn fuse-middleware
+  "Takes a sequence of middleware, and replaces each run of consecutive
+  request middleware, or consecutive response middleware, that were created
+  with `ring-request-middleware` or `ring-response-middleware` with a single
+  middleware. It applies all of them in a single loop with a
+  `RingMiddlewareChain`, instead of calling through a function and an
+  exception handler for each one.
+  Response middleware are applied to the response in reverse order, so they
+  are fused in reverse order.
+  Other middleware are returned as is."
+  [middleware]
+  (->> middleware
+       (partition-by middleware-kind)
+       (mapcat (fn [run]
+                 (if-let [kind (and (next run) (middleware-kind (first run)))]
+                   [(fuse kind (if (= kind ::response) (reverse run) run))]
+                   run)))))
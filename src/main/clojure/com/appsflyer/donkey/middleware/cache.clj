@@ -0,0 +1,87 @@
+;
+; Copyright 2020 AppsFlyer
+;
+; Licensed under the Apache License, Version 2.0 (the "License")
+; you may not use this file except in compliance with the License.
+; You may obtain a copy of the License at
+;
+;      http://www.apache.org/licenses/LICENSE-2.0
+;
+; Unless required by applicable law or agreed to in writing, software
+; distributed under the License is distributed on an "AS IS" BASIS,
+; WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+; See the License for the specific language governing permissions and
+; limitations under the License.
+;
+;
+(ns com.appsflyer.donkey.middleware.cache
+  (:import (com.appsflyer.donkey.server.ring.middleware ResponseCache ResponseCache$Options)
+           (java.util.concurrent CompletableFuture CompletionException)
+           (java.util.function Supplier BiConsumer)))
+
+(defn- unwrap [^Throwable ex]
+  (if (and (instance? CompletionException ex) (.getCause ex))
+    (.getCause ex)
+    ex))
+
+(defn- ^ResponseCache$Options map->Options [opts]
+  (cond-> (ResponseCache$Options.)
+    (:ttl-ms opts) (.ttlMillis (long (:ttl-ms opts)))
+    (:max-entries opts) (.maxEntries (int (:max-entries opts)))
+    (:max-bytes opts) (.maxBytes (long (:max-bytes opts)))
+    (:off-heap opts) (.offHeap (boolean (:off-heap opts)))))
+
+(defn cache-responses
+  "Returns a middleware that caches the responses of `GET` requests, and
+  serves them without calling the handler until they expire.
+  Only `200` responses without a `Set-Cookie` header, and with a string,
+  `byte[]`, `Buffer`, `ByteBuffer` or `ByteBuf` body are cached. Cached bodies are served as a `Buffer`, that is
+  shared by all the responses and must not be mutated.
+  Concurrent requests with the same key while the response isn't cached are
+  coalesced, and only the first one calls the handler. If its response can't
+  be cached, the other requests call the handler themselves.
+  The middleware should come before the middleware that serializes the
+  response body (e.g `make-serialize-middleware`), so the serialized body is
+  cached.
+
+  `opts` is a map with the following keys:
+  - :ttl-ms [int] Required. How long a response is served from the cache.
+  - :key-fn [fn] A function of the request map that returns the cache key.
+      Defaults to the `:uri` and `:query-string` of the request.
+  - :max-entries [int=1000] The maximum number of cached responses.
+  - :max-bytes [int=16MB] The maximum total size of the cached responses.
+      The least recently used responses are evicted first.
+  - :off-heap [boolean=false] Whether to store the response bodies in
+      direct memory, outside of the Java heap."
+  [{:keys [key-fn] :or {key-fn (juxt :uri :query-string)} :as opts}]
+  (let [cache (ResponseCache/create (map->Options opts))]
+    (fn [handler]
+      (fn
+        ([request]
+         (if (= :get (:request-method request))
+           (try
+             (.getBlocking cache
+                           (key-fn request)
+                           (reify Supplier
+                             (get [_this]
+                               (handler request))))
+             (catch CompletionException ex
+               (throw (unwrap ex))))
+           (handler request)))
+        ([request respond raise]
+         (if (= :get (:request-method request))
+           (-> cache
+               (.get (key-fn request)
+                     (reify Supplier
+                       (get [_this]
+                         (let [res (CompletableFuture.)]
+                           (handler request
+                                    #(.complete res %)
+                                    #(.completeExceptionally res %))
+                           res))))
+               (.whenComplete (reify BiConsumer
+                                (accept [_this response ex]
+                                  (if ex
+                                    (raise (unwrap ex))
+                                    (respond response))))))
+           (handler request respond raise)))))))
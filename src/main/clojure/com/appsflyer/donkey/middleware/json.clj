@@ -18,7 +18,8 @@
 (ns com.appsflyer.donkey.middleware.json
   (:require [jsonista.core :as jsonista]
             [com.appsflyer.donkey.middleware.base :as base])
-  (:import (com.appsflyer.donkey.server.ring.middleware JsonBodyDeserializer JsonBodySerializer)
+  (:import (com.appsflyer.donkey.server.ring.middleware JsonBodyDeserializer JsonBodySerializer
+                                                        JsonBodySerializer$Options)
            (com.fasterxml.jackson.databind ObjectMapper)
            (clojure.lang IFn)))
 
@@ -38,11 +39,8 @@
   ([]
    (make-deserialize-middleware {:mapper (jsonista/object-mapper {:decode-key-fn true})}))
   ([opts]
-   (let [deserializer (JsonBodyDeserializer/create ^ObjectMapper (:mapper opts))]
-     (fn [handler]
-       (base/make-ring-request-middleware {:middleware deserializer
-                                           :handler    handler
-                                           :ex-handler (:ex-handler opts)})))))
+   (base/ring-request-middleware {:middleware (JsonBodyDeserializer/create ^ObjectMapper (:mapper opts))
+                                  :ex-handler (:ex-handler opts)})))
 
 
 (defn ^IFn make-serialize-middleware
@@ -51,6 +49,13 @@
   `opts` is an optional map with the following keys:
   - :mapper [ObjectMapper] Custom mapper that will be used for serialization.
     By default all map keyword keys will be turned into strings
+  - :pooled-buffers [boolean=false] Serialize the body directly into a pooled
+    Netty buffer instead of a new `byte[]`. The body is then a Netty
+    `ByteBuf` that is released after it's written to the client, and
+    must not be kept by any middleware that comes after. It's also released
+    when a response middleware that comes after throws. A custom middleware
+    that drops the response should release it with
+    `RingResponseAdapter/releaseBody`.
   - :ex-handler [fn] A function that will be called if an exception is thrown.
   It will be called with a map with the following keys:
   - :cause [Exception] The caught exception
@@ -62,8 +67,8 @@
   ([]
    (make-serialize-middleware {:mapper (jsonista/object-mapper)}))
   ([opts]
-   (let [serializer (JsonBodySerializer/create ^ObjectMapper (:mapper opts))]
-     (fn [handler]
-       (base/make-ring-response-middleware {:middleware serializer
-                                            :handler    handler
-                                            :ex-handler (:ex-handler opts)})))))
+   (base/ring-response-middleware {:middleware (JsonBodySerializer/create
+                                                 ^ObjectMapper (:mapper opts (jsonista/object-mapper))
+                                                 (doto (JsonBodySerializer$Options.)
+                                                   (.pooledBuffers (boolean (:pooled-buffers opts)))))
+                                   :ex-handler (:ex-handler opts)})))
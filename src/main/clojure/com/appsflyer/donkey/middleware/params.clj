@@ -37,14 +37,12 @@
         available in the 3 argument arity."
   ([] (parse-query-params nil))
   ([{:keys [keywordize ex-handler] :or {keywordize false}}]
-   (fn [handler]
-     (base/make-ring-request-middleware
-       {:middleware (QueryParamsParser/create
-                      (doto
-                        (QueryParamsParser$Options.)
-                        (.keywordizeKeys (boolean keywordize))))
-        :handler    handler
-        :ex-handler ex-handler}))))
+   (base/ring-request-middleware
+     {:middleware (QueryParamsParser/create
+                    (doto
+                      (QueryParamsParser$Options.)
+                      (.keywordizeKeys (boolean keywordize))))
+      :ex-handler ex-handler})))
 
 (defn keywordize-form-params
   "Parses the request's `body` into a map of `form-params`.
@@ -59,8 +57,6 @@
         available in the 3 argument arity."
   ([] (keywordize-form-params {:deep true}))
   ([opts]
-   (fn [handler]
-     (base/make-ring-request-middleware
-       {:middleware (FormParamsKeywordizer/create (FormParamsKeywordizer$Options. (:deep opts)))
-        :handler    handler
-        :ex-handler (:ex-handler opts)}))))
+   (base/ring-request-middleware
+     {:middleware (FormParamsKeywordizer/create (FormParamsKeywordizer$Options. (:deep opts)))
+      :ex-handler (:ex-handler opts)})))
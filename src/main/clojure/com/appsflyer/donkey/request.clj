@@ -22,12 +22,21 @@
            (io.vertx.ext.web.client HttpRequest)
            (com.appsflyer.donkey FutureResult)
            (com.appsflyer.donkey.util TypeConverter)
-           (com.appsflyer.donkey.client Client)))
+           (com.appsflyer.donkey.client Client SendOptions)
+           (io.vertx.core.streams ReadStream)
+           (java.io File InputStream)
+           (java.nio.file Path)))
 
 (defprotocol Submittable
   (submit [this] [this body]
-    "Submit an asynchronous request with an optional body. The body should be a
-    string or a byte[].
+    "Submit an asynchronous request with an optional body. The body can be a
+    string, a byte[], a Vert.x Buffer, a java.nio.ByteBuffer or a Netty ByteBuf.
+    A java.io.File, a java.nio.file.Path, an InputStream or a Vert.x
+    ReadStream of Buffers are streamed to the server as they are read, rather
+    than read into memory first. A file is sent with a content-length header,
+    and an InputStream or ReadStream is sent chunked unless the request has a
+    content-length header. An InputStream is closed when the request completes.
+    A request with a streamed body can have a deadline, but is never hedged.
 
     Returns a FutureResult that will be notified if the request succeeds or
     fails.")
@@ -61,29 +70,35 @@
 
 (declare submit-with-body)
 
-(deftype AsyncRequest [^Client client ^HttpRequest req]
+(deftype AsyncRequest [^Client client ^HttpRequest req ^SendOptions options]
   Submittable
   (submit [_this]
-    (FutureResult/create (.send client req)))
+    (FutureResult/create (.send client req options)))
 
   (submit [_this body]
-    (FutureResult/create ^Future (submit-with-body client req body)))
+    (FutureResult/create ^Future (submit-with-body client req body options)))
 
   (submit-form [_this body]
     (FutureResult/create
-      (.sendForm client req (TypeConverter/toMultiMap ^IPersistentMap body))))
+      (.sendForm client req (TypeConverter/toMultiMap ^IPersistentMap body) options)))
 
   (submit-multipart-form [_this body]
     (FutureResult/create
-      (.sendMultiPartForm client req (TypeConverter/toMultipartForm ^IPersistentMap body)))))
+      (.sendMultiPartForm client req (TypeConverter/toMultipartForm ^IPersistentMap body) options))))
 
 (defn- handle-exception [^Throwable ex]
   (let [p (Promise/promise)]
     (.fail p ex)
     (.future p)))
 
-(defn- submit-with-body [^Client client ^AsyncRequest req ^Object body]
+(defn- submit-with-body
+  [^Client client ^HttpRequest req ^Object body ^SendOptions options]
   (try
-    (.send client req (TypeConverter/toBuffer ^Object body))
+    (cond
+      (instance? File body) (.sendFile client req (.toPath ^File body) options)
+      (instance? Path body) (.sendFile client req ^Path body options)
+      (instance? InputStream body) (.sendStream client req ^InputStream body options)
+      (instance? ReadStream body) (.sendStream client req ^ReadStream body options)
+      :else (.send client req (TypeConverter/toBuffer body) options))
     (catch Throwable ex
       (handle-exception ex))))
@@ -16,7 +16,8 @@
 ;
 
 (ns com.appsflyer.donkey.route
-  (:require [com.appsflyer.donkey.resources :as static-route])
+  (:require [com.appsflyer.donkey.resources :as static-route]
+            [com.appsflyer.donkey.middleware.base :as base])
   (:import (io.vertx.core Handler)
            (io.vertx.ext.web RoutingContext)
            (io.vertx.core.http HttpMethod)
@@ -24,8 +25,10 @@
            (com.appsflyer.donkey.server.route PathDefinition$MatchType
                                               RouteList
                                               HandlerMode
+                                              BodyMode
                                               PathDefinition
-                                              RouteDefinition)
+                                              RouteDefinition
+                                              WorkerPoolConfig)
            (com.appsflyer.donkey.server.ring.handler RingHandler)
            (com.appsflyer.donkey.server.exception StatusCodeAware)))
 
@@ -45,7 +48,14 @@
 (defn- ^HandlerMode keyword->HandlerMode [val]
   (case val
     :blocking HandlerMode/BLOCKING
-    :non-blocking HandlerMode/NON_BLOCKING))
+    :non-blocking HandlerMode/NON_BLOCKING
+    :virtual HandlerMode/VIRTUAL))
+
+(defn- ^BodyMode keyword->BodyMode [val]
+  (case val
+    :buffered BodyMode/BUFFERED
+    :stream BodyMode/STREAM
+    :json BodyMode/JSON))
 
 (defn- ^HttpMethod keyword->HttpMethod [method]
   (-> method
@@ -125,6 +135,10 @@
   create-handler :blocking [route-map]
   (->BlockingRouteHandler (:handler route-map)))
 
+(defmethod ^:private
+  create-handler :virtual [route-map]
+  (->BlockingRouteHandler (:handler route-map)))
+
 (defmethod ^:private
   create-handler :non-blocking [route-map]
   (->RouteHandler (:handler route-map)))
@@ -137,6 +151,18 @@
     (.handlerMode route (keyword->HandlerMode handler-mode)))
   route)
 
+(defn- add-body-mode [^RouteDefinition route route-map]
+  (when-let [body-mode (:body-mode route-map)]
+    (.bodyMode route (keyword->BodyMode body-mode)))
+  route)
+
+(defn- add-worker-pool [^RouteDefinition route route-map]
+  (when-let [{:keys [name size max-queue]} (:worker-pool route-map)]
+    (.workerPool route (if max-queue
+                         (WorkerPoolConfig/create name (int size) (int max-queue))
+                         (WorkerPoolConfig/create name (int size)))))
+  route)
+
 (defn- map->RouteDefinition [route-map]
   (->
     (RouteDefinition/create)
@@ -145,6 +171,8 @@
     (add-consumes route-map)
     (add-produces route-map)
     (add-handler-mode route-map)
+    (add-body-mode route-map)
+    (add-worker-pool route-map)
     (add-handler route-map)))
 
 (defn- compose-middleware
@@ -153,7 +181,9 @@
    function that is the composition of all the functions.
    In the simplest case where there's no middleware, it returns the route handler.
    If there's global or route middleware, then it applies the global middleware first,
-   then the route specific middleware, and finally the route handler."
+   then the route specific middleware, and finally the route handler.
+   Consecutive Java middleware are fused into a single function with
+   `base/fuse-middleware`, so they are compiled once per route."
   [{:keys [handler middleware]
     :or   {middleware []}}
    global-middleware]
@@ -162,7 +192,7 @@
                    middleware)]
     (if (empty? handlers)
       handler
-      (let [comp-fn (apply comp handlers)]
+      (let [comp-fn (apply comp (base/fuse-middleware handlers))]
         ; initialize the middleware
         (comp-fn handler)))))
 
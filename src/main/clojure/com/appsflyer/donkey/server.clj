@@ -19,14 +19,67 @@
   (:require [com.appsflyer.donkey.route :refer [map->RouteList]]
             [com.appsflyer.donkey.error-handler :refer [map->ErrorHandler]]
             [com.appsflyer.donkey.result])
-  (:import (io.vertx.core.http HttpServerOptions)
+  (:import (io.vertx.core.http HttpServerOptions HttpVersion)
+           (io.vertx.core.net JksOptions PfxOptions PemKeyCertOptions)
            (io.vertx.core.impl.cpu CpuCoreSensor)
            (com.appsflyer.donkey.server Server ServerConfig)
+           (com.appsflyer.donkey.server.handler LoadSheddingConfig$Builder
+                                                LoadSheddingConfig$Algorithm)
+           (java.time Duration)
            (com.appsflyer.donkey.server.exception ServerInitializationException
                                                   ServerShutdownException)
            (com.appsflyer.donkey.server.ring.route RingRouteCreatorFactory)
+           (com.appsflyer.donkey.server.router RouteMatcher)
            (com.appsflyer.donkey FutureResult)))
 
+(defn- ^HttpServerOptions add-ssl-options
+  "Sets the server's key and certificate from the `:ssl` map. Either a
+  `:key-store-path` (jks or pkcs12), or a `:key-path` and a `:cert-path` in PEM
+  format are required."
+  [^HttpServerOptions server-options
+   {:keys [key-store-path
+           key-store-password
+           key-store-type
+           key-path
+           cert-path]
+    :or   {key-store-type :jks}}]
+  (.setSsl server-options true)
+  (if key-store-path
+    (case key-store-type
+      :jks (.setKeyStoreOptions
+             server-options
+             (doto (JksOptions.)
+               (.setPath ^String key-store-path)
+               (.setPassword ^String key-store-password)))
+      :pkcs12 (.setPfxKeyCertOptions
+                server-options
+                (doto (PfxOptions.)
+                  (.setPath ^String key-store-path)
+                  (.setPassword ^String key-store-password))))
+    (.setPemKeyCertOptions
+      server-options
+      (doto (PemKeyCertOptions.)
+        (.setKeyPath ^String key-path)
+        (.setCertPath ^String cert-path)))))
+
+(defn- ^HttpServerOptions add-http2-settings
+  "Updates the initial HTTP/2 settings the server sends when a connection is
+  established. They apply to both h2 and h2c connections."
+  [^HttpServerOptions server-options
+   {:keys [http2-initial-window-size
+           http2-max-concurrent-streams
+           http2-header-table-size
+           http2-connection-window-size]}]
+  (cond->
+    (.getInitialSettings server-options)
+    http2-initial-window-size (.setInitialWindowSize (int http2-initial-window-size))
+    http2-max-concurrent-streams (.setMaxConcurrentStreams (long http2-max-concurrent-streams))
+    http2-header-table-size (.setHeaderTableSize (long http2-header-table-size)))
+  (cond->
+    server-options
+    http2-connection-window-size (.setHttp2ConnectionWindowSize
+                                   (int http2-connection-window-size))))
+
 (defn- ^HttpServerOptions map->HttpServerOptions
   "Creates and returns an HttpServerOptions object from the opts map.
   The server options are used to define basic things such as the host and port
@@ -42,25 +95,66 @@
            idle-timeout-seconds
            keep-alive
            compression
-           decompression]
+           decompression
+           ssl
+           http2]
     :or   {compression   true
            decompression true
-           debug         false}}]
+           debug         false
+           http2         false}
+    :as   opts}]
 
-  (cond->
-    (doto (HttpServerOptions.)
-      (.setCompressionSupported ^boolean compression)
-      (.setDecompressionSupported ^boolean decompression)
-      (.setLogActivity ^boolean debug))
-    port (.setPort (int port))
-    host (.setHost ^String host)
-    accept-backlog (.setAcceptBacklog (int accept-backlog))
-    socket-linger-seconds (.setSoLinger (int socket-linger-seconds))
-    idle-timeout-seconds (.setIdleTimeout (int idle-timeout-seconds))
-    (boolean? tcp-no-delay) (.setTcpNoDelay ^boolean tcp-no-delay)
-    (boolean? tcp-quick-ack) (.setTcpQuickAck ^boolean tcp-quick-ack)
-    (boolean? tcp-fast-open) (.setTcpFastOpen ^boolean tcp-fast-open)
-    (boolean? keep-alive) (.setTcpKeepAlive ^boolean keep-alive)))
+  (->
+    (cond->
+      (doto (HttpServerOptions.)
+        (.setCompressionSupported ^boolean compression)
+        (.setDecompressionSupported ^boolean decompression)
+        (.setLogActivity ^boolean debug))
+      port (.setPort (int port))
+      host (.setHost ^String host)
+      accept-backlog (.setAcceptBacklog (int accept-backlog))
+      socket-linger-seconds (.setSoLinger (int socket-linger-seconds))
+      idle-timeout-seconds (.setIdleTimeout (int idle-timeout-seconds))
+      (boolean? tcp-no-delay) (.setTcpNoDelay ^boolean tcp-no-delay)
+      (boolean? tcp-quick-ack) (.setTcpQuickAck ^boolean tcp-quick-ack)
+      (boolean? tcp-fast-open) (.setTcpFastOpen ^boolean tcp-fast-open)
+      (boolean? keep-alive) (.setTcpKeepAlive ^boolean keep-alive)
+      ssl (add-ssl-options ssl)
+      (and ssl http2) (-> (.setUseAlpn true)
+                          (.setAlpnVersions [HttpVersion/HTTP_2 HttpVersion/HTTP_1_1])))
+    (add-http2-settings opts)))
+
+(defn- ^RouteMatcher keyword->RouteMatcher [matcher]
+  (case matcher
+    :linear RouteMatcher/LINEAR
+    :radix-tree RouteMatcher/RADIX_TREE))
+
+(defn- ^LoadSheddingConfig$Algorithm keyword->Algorithm [algorithm]
+  (case algorithm
+    :aimd LoadSheddingConfig$Algorithm/AIMD
+    :gradient LoadSheddingConfig$Algorithm/GRADIENT))
+
+(defn- map->LoadSheddingConfig
+  "Creates and returns a LoadSheddingConfig object from the
+  `:load-shedding` map. Unset fields keep their default values."
+  [{:keys [algorithm
+           initial-limit
+           min-limit
+           max-limit
+           max-event-loop-lag-ms
+           latency-threshold-ms
+           retry-after-seconds]}]
+  (.build
+    ^LoadSheddingConfig$Builder
+    (cond->
+      (LoadSheddingConfig$Builder.)
+      algorithm (.algorithm (keyword->Algorithm algorithm))
+      initial-limit (.initialLimit (int initial-limit))
+      min-limit (.minLimit (int min-limit))
+      max-limit (.maxLimit (int max-limit))
+      max-event-loop-lag-ms (.maxEventLoopLag (Duration/ofMillis max-event-loop-lag-ms))
+      latency-threshold-ms (.latencyThreshold (Duration/ofMillis latency-threshold-ms))
+      retry-after-seconds (.retryAfter (Duration/ofSeconds retry-after-seconds)))))
 
 (defn ^ServerConfig map->ServerConfig
   "Creates and returns a ServerConfig object from the opts map."
@@ -68,19 +162,25 @@
            instances
            date-header
            content-type-header
-           server-header]
-    :or   {instances (CpuCoreSensor/availableProcessors)}
+           server-header
+           route-matcher
+           load-shedding]
+    :or   {instances     (CpuCoreSensor/availableProcessors)
+           route-matcher :linear}
     :as   opts}]
   (let [builder (doto (ServerConfig/builder)
                   (.serverOptions (map->HttpServerOptions opts))
                   (.routeCreatorFactory (RingRouteCreatorFactory/create))
                   (.routeList (map->RouteList opts))
+                  (.routeMatcher (keyword->RouteMatcher route-matcher))
                   (.errorHandler (map->ErrorHandler opts))
                   (.vertx vertx)
                   (.instances instances)
                   (.addDateHeader (boolean date-header))
                   (.addContentTypeHeader (boolean content-type-header))
                   (.addServerHeader (boolean server-header)))]
+    (when load-shedding
+      (.loadShedding builder (map->LoadSheddingConfig load-shedding)))
     (.build builder)))
 
 (defprotocol HttpServer
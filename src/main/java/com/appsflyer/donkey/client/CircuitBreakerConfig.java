@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client;
+
+/**
+ * Configures the circuit breaker the client keeps for each host.
+ * <p></p>
+ * The breaker records the outcome of the last {@code windowSize} requests to
+ * the host. Once there are at least {@code minimumCalls} of them, it opens when
+ * the ratio of failed requests reaches {@code failureRateThreshold}, or the
+ * ratio of requests that took longer than {@code slowCallDurationMillis} reaches
+ * {@code slowCallRateThreshold}. A request fails when it completes with an
+ * exception, or a {@code 5xx} status.
+ * <p></p>
+ * While the breaker is open, requests to the host fail immediately with a
+ * {@link com.appsflyer.donkey.client.exception.CircuitBreakerOpenException}.
+ * After {@code openDurationMillis} it's half open, and lets
+ * {@code halfOpenCalls} requests through. It closes when all of them succeed,
+ * and opens again as soon as one of them fails or is slow.
+ */
+public final class CircuitBreakerConfig {
+  
+  public static CircuitBreakerConfigBuilder builder() {
+    return new CircuitBreakerConfigBuilder();
+  }
+  
+  private double failureRateThreshold = 0.5;
+  private double slowCallRateThreshold = 1.0;
+  private long slowCallDurationMillis = 60_000;
+  private int windowSize = 100;
+  private int minimumCalls = 20;
+  private long openDurationMillis = 10_000;
+  private int halfOpenCalls = 5;
+  
+  private CircuitBreakerConfig() {}
+  
+  public double failureRateThreshold() {
+    return failureRateThreshold;
+  }
+  
+  public double slowCallRateThreshold() {
+    return slowCallRateThreshold;
+  }
+  
+  public long slowCallDurationMillis() {
+    return slowCallDurationMillis;
+  }
+  
+  public int windowSize() {
+    return windowSize;
+  }
+  
+  public int minimumCalls() {
+    return minimumCalls;
+  }
+  
+  public long openDurationMillis() {
+    return openDurationMillis;
+  }
+  
+  public int halfOpenCalls() {
+    return halfOpenCalls;
+  }
+  
+  public static final class CircuitBreakerConfigBuilder {
+    
+    private CircuitBreakerConfig instance;
+    
+    private CircuitBreakerConfigBuilder() {
+      instance = new CircuitBreakerConfig();
+    }
+    
+    public CircuitBreakerConfigBuilder failureRateThreshold(double val) {
+      instance.failureRateThreshold = val;
+      return this;
+    }
+    
+    public CircuitBreakerConfigBuilder slowCallRateThreshold(double val) {
+      instance.slowCallRateThreshold = val;
+      return this;
+    }
+    
+    public CircuitBreakerConfigBuilder slowCallDurationMillis(long val) {
+      instance.slowCallDurationMillis = val;
+      return this;
+    }
+    
+    public CircuitBreakerConfigBuilder windowSize(int val) {
+      instance.windowSize = val;
+      return this;
+    }
+    
+    public CircuitBreakerConfigBuilder minimumCalls(int val) {
+      instance.minimumCalls = val;
+      return this;
+    }
+    
+    public CircuitBreakerConfigBuilder openDurationMillis(long val) {
+      instance.openDurationMillis = val;
+      return this;
+    }
+    
+    public CircuitBreakerConfigBuilder halfOpenCalls(int val) {
+      instance.halfOpenCalls = val;
+      return this;
+    }
+    
+    public CircuitBreakerConfig build() {
+      assertValidState();
+      var res = instance;
+      instance = null;
+      return res;
+    }
+    
+    private void assertValidState() {
+      assertRate(instance.failureRateThreshold, "Failure rate threshold");
+      assertRate(instance.slowCallRateThreshold, "Slow call rate threshold");
+      assertPositive(instance.slowCallDurationMillis, "Slow call duration");
+      assertPositive(instance.windowSize, "Window size");
+      assertPositive(instance.minimumCalls, "Minimum calls");
+      assertPositive(instance.openDurationMillis, "Open duration");
+      assertPositive(instance.halfOpenCalls, "Half open calls");
+      if (instance.minimumCalls > instance.windowSize) {
+        throw new IllegalArgumentException("Minimum calls cannot be greater than the window size");
+      }
+    }
+    
+    private static void assertRate(double val, String name) {
+      if (!(val > 0 && val <= 1)) {
+        throw new IllegalArgumentException(name + " must be greater than 0 and at most 1");
+      }
+    }
+    
+    private static void assertPositive(long val, String name) {
+      if (val < 1) {
+        throw new IllegalArgumentException(name + " must be positive");
+      }
+    }
+  }
+}
@@ -20,9 +20,13 @@ package com.appsflyer.donkey.client;
 import io.vertx.core.Future;
 import io.vertx.core.MultiMap;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.web.client.HttpRequest;
 import io.vertx.ext.web.multipart.MultipartForm;
 
+import java.io.InputStream;
+import java.nio.file.Path;
+
 /**
  * @param <T> The type of the request options object
  * @param <R> The type of the response
@@ -35,9 +39,23 @@ public interface Client<T, R> {
   
   Future<R> send(HttpRequest<Buffer> request, Buffer body);
   
+  Future<R> send(HttpRequest<Buffer> request, SendOptions options);
+  
+  Future<R> send(HttpRequest<Buffer> request, Buffer body, SendOptions options);
+  
+  Future<R> sendStream(HttpRequest<Buffer> request, ReadStream<Buffer> body, SendOptions options);
+  
+  Future<R> sendStream(HttpRequest<Buffer> request, InputStream body, SendOptions options);
+  
+  Future<R> sendFile(HttpRequest<Buffer> request, Path body, SendOptions options);
+  
   Future<R> sendForm(HttpRequest<Buffer> request, MultiMap body);
   
+  Future<R> sendForm(HttpRequest<Buffer> request, MultiMap body, SendOptions options);
+  
   Future<R> sendMultiPartForm(HttpRequest<Buffer> request, MultipartForm body);
   
+  Future<R> sendMultiPartForm(HttpRequest<Buffer> request, MultipartForm body, SendOptions options);
+  
   void shutdown();
 }
@@ -17,8 +17,10 @@
 
 package com.appsflyer.donkey.client;
 
+import com.codahale.metrics.MetricRegistry;
 import io.vertx.core.Vertx;
 import io.vertx.ext.web.client.WebClientOptions;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Objects;
 
@@ -30,6 +32,12 @@ public final class ClientConfig {
   
   private Vertx vertx;
   private WebClientOptions clientOptions;
+  private boolean coalesceRequests;
+  private RetryBudget retryBudget;
+  private CircuitBreakerConfig circuitBreakerConfig;
+  private MetricRegistry metricRegistry;
+  private String metricsPrefix = "donkey";
+  private long responseCacheMaxBytes;
   
   private ClientConfig() {}
   
@@ -41,6 +49,53 @@ public final class ClientConfig {
     return clientOptions;
   }
   
+  /**
+   * Whether identical {@code GET} and {@code HEAD} requests that are in flight
+   * at the same time share a single exchange with the server. Requests are
+   * identical when they are sent with equal {@link SendOptions#requestKey()}.
+   */
+  public boolean coalesceRequests() {
+    return coalesceRequests;
+  }
+  
+  /**
+   * Limits the number of retries sent to each host.
+   * Defaults to {@link RetryBudget#create()}.
+   */
+  public RetryBudget retryBudget() {
+    return retryBudget;
+  }
+  
+  /**
+   * Configures a circuit breaker per host, or null if requests are not guarded
+   * by one.
+   */
+  public @Nullable CircuitBreakerConfig circuitBreakerConfig() {
+    return circuitBreakerConfig;
+  }
+  
+  /**
+   * The registry the client's own metrics, such as the state of the circuit
+   * breakers, are reported to. The connection pool metrics are reported by
+   * Vert.x.
+   */
+  public @Nullable MetricRegistry metricRegistry() {
+    return metricRegistry;
+  }
+  
+  public String metricsPrefix() {
+    return metricsPrefix;
+  }
+  
+  /**
+   * The maximum size in bytes of the responses kept in the client's response
+   * cache. Zero means responses are not cached. Only requests sent with a
+   * {@link SendOptions#requestKey()} are cached.
+   */
+  public long responseCacheMaxBytes() {
+    return responseCacheMaxBytes;
+  }
+  
   public static final class ClientConfigBuilder {
     
     private ClientConfig instance;
@@ -61,8 +116,43 @@ public final class ClientConfig {
       return this;
     }
     
+    public ClientConfigBuilder coalesceRequests(boolean val) {
+      instance.coalesceRequests = val;
+      return this;
+    }
+    
+    public ClientConfigBuilder retryBudget(RetryBudget retryBudget) {
+      Objects.requireNonNull(retryBudget, "Retry budget argument cannot be null");
+      instance.retryBudget = retryBudget;
+      return this;
+    }
+    
+    public ClientConfigBuilder circuitBreakerConfig(@Nullable CircuitBreakerConfig circuitBreakerConfig) {
+      instance.circuitBreakerConfig = circuitBreakerConfig;
+      return this;
+    }
+    
+    public ClientConfigBuilder metricRegistry(@Nullable MetricRegistry metricRegistry) {
+      instance.metricRegistry = metricRegistry;
+      return this;
+    }
+    
+    public ClientConfigBuilder metricsPrefix(String metricsPrefix) {
+      Objects.requireNonNull(metricsPrefix, "Metrics prefix argument cannot be null");
+      instance.metricsPrefix = metricsPrefix;
+      return this;
+    }
+    
+    public ClientConfigBuilder responseCacheMaxBytes(long val) {
+      instance.responseCacheMaxBytes = val;
+      return this;
+    }
+    
     public ClientConfig build() {
       assertValidState();
+      if (instance.retryBudget == null) {
+        instance.retryBudget = RetryBudget.create();
+      }
       var res = instance;
       instance = null;
       return res;
@@ -71,6 +161,9 @@ public final class ClientConfig {
     private void assertValidState() {
       Objects.requireNonNull(instance.vertx, "Vertx field is missing");
       Objects.requireNonNull(instance.clientOptions, "Client options field is missing");
+      if (instance.responseCacheMaxBytes < 0) {
+        throw new IllegalArgumentException("Response cache max bytes cannot be negative");
+      }
     }
   }
 }
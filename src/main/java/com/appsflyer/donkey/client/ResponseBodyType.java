@@ -0,0 +1,41 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client;
+
+/**
+ * The representation of a response body.
+ */
+public enum ResponseBodyType {
+  
+  /**
+   * The body is buffered, and copied to a {@code byte[]}.
+   */
+  BYTES,
+  
+  /**
+   * The body is buffered, and returned as a Vert.x {@link io.vertx.core.buffer.Buffer}
+   * without copying it.
+   */
+  BUFFER,
+  
+  /**
+   * The response is returned as soon as the headers arrive, and the body is an
+   * {@link java.io.InputStream} that is fed from the connection as the data
+   * arrives.
+   */
+  STREAM
+}
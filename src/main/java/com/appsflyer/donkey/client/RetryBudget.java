@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of retries sent to each host relative to the number of
+ * requests, so that a failing host isn't flooded with retries.
+ * <p></p>
+ * Every host has a token bucket that holds up to {@code maxTokens} tokens, and
+ * starts full. Every request deposits {@code ratio} tokens, and every retry
+ * withdraws one token. A retry is not sent when the bucket has less than one
+ * token. Over time at most {@code ratio} of the requests to a host are retries,
+ * while {@code maxTokens} allows some retries to hosts that are rarely called.
+ * <p></p>
+ * Only the buckets of hosts that were retried recently are kept. A bucket is
+ * dropped once it's full again, since a host without a bucket has a full one.
+ * At most {@value #MAX_HOSTS} buckets are kept, and when there are more hosts
+ * an arbitrary bucket is dropped, which resets its host to a full bucket.
+ */
+public final class RetryBudget {
+  
+  private static final long TOKEN = 1000;
+  private static final long DROPPED = -1;
+  static final int MAX_HOSTS = 10_000;
+  
+  /**
+   * @return A budget that allows retrying 20% of the requests, with up to
+   * 10 tokens per host.
+   */
+  public static RetryBudget create() {
+    return create(0.2, 10);
+  }
+  
+  public static RetryBudget create(double ratio, int maxTokens) {
+    return new RetryBudget(ratio, maxTokens);
+  }
+  
+  private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+  private final long deposit;
+  private final long capacity;
+  
+  private RetryBudget(double ratio, int maxTokens) {
+    if (ratio < 0 || ratio > 1) {
+      throw new IllegalArgumentException("Ratio must be between 0 and 1");
+    }
+    if (maxTokens < 1) {
+      throw new IllegalArgumentException("Max tokens must be positive");
+    }
+    deposit = Math.round(ratio * TOKEN);
+    capacity = maxTokens * TOKEN;
+  }
+  
+  /**
+   * Called when a request is sent to the host for the first time.
+   */
+  public void deposit(String host) {
+    AtomicLong bucket = buckets.get(host);
+    if (deposit == 0 || bucket == null) {
+      return;
+    }
+    long current;
+    long next;
+    do {
+      current = bucket.get();
+      if (current == DROPPED) {
+        return;
+      }
+      next = Math.min(capacity, current + deposit);
+      if (next == capacity) {
+        next = DROPPED;
+      }
+    } while (!bucket.compareAndSet(current, next));
+    if (next == DROPPED) {
+      buckets.remove(host, bucket);
+    }
+  }
+  
+  /**
+   * @return True if there are enough tokens to retry a request to the host.
+   */
+  public boolean tryWithdraw(String host) {
+    while (true) {
+      AtomicLong bucket = bucket(host);
+      long current = bucket.get();
+      if (current == DROPPED) {
+        buckets.remove(host, bucket);
+      } else if (current < TOKEN) {
+        return false;
+      } else if (bucket.compareAndSet(current, current - TOKEN)) {
+        return true;
+      }
+    }
+  }
+  
+  /**
+   * @return The number of whole tokens the host currently has.
+   */
+  public long tokens(String host) {
+    AtomicLong bucket = buckets.get(host);
+    long current = bucket == null ? DROPPED : bucket.get();
+    return (current == DROPPED ? capacity : current) / TOKEN;
+  }
+  
+  int hosts() {
+    return buckets.size();
+  }
+  
+  private AtomicLong bucket(String host) {
+    AtomicLong bucket = buckets.get(host);
+    if (bucket != null) {
+      return bucket;
+    }
+    if (buckets.size() >= MAX_HOSTS) {
+      Iterator<String> iterator = buckets.keySet().iterator();
+      if (iterator.hasNext()) {
+        iterator.next();
+        iterator.remove();
+      }
+    }
+    return buckets.computeIfAbsent(host, k -> new AtomicLong(capacity));
+  }
+}
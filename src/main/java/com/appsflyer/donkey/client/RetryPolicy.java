@@ -0,0 +1,185 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client;
+
+import io.vertx.core.VertxException;
+import io.vertx.core.http.ConnectionPoolTooBusyException;
+import io.vertx.core.http.HttpMethod;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Determines which failed requests are sent again, how many times, and how
+ * long to wait before each retry.
+ * <p></p>
+ * The wait time grows exponentially with each retry, and a random value between
+ * zero and the computed time is used ("full jitter"), so that clients that
+ * failed at the same time don't retry at the same time.
+ * Retries are also limited by the {@link RetryBudget} of the client.
+ */
+public final class RetryPolicy {
+  
+  private static final Set<HttpMethod> IDEMPOTENT_METHODS = Set.of(
+      HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS,
+      HttpMethod.PUT, HttpMethod.DELETE, HttpMethod.TRACE);
+  
+  public static RetryPolicyBuilder builder() {
+    return new RetryPolicyBuilder();
+  }
+  
+  /**
+   * The default exception predicate. Connection failures, resets and timeouts
+   * are retried. A full connection pool is not, because retrying would only add
+   * to its load.
+   */
+  public static boolean isTransient(Throwable ex) {
+    if (ex instanceof ConnectionPoolTooBusyException) {
+      return false;
+    }
+    return ex instanceof IOException || ex instanceof VertxException;
+  }
+  
+  private int maxRetries = 2;
+  private long initialBackoffMillis = 50;
+  private long maxBackoffMillis = 1000;
+  private boolean retryNonIdempotent;
+  private IntPredicate statusPredicate = status -> status == 502 || status == 503 || status == 504;
+  private Predicate<Throwable> exceptionPredicate = RetryPolicy::isTransient;
+  
+  private RetryPolicy() {}
+  
+  /**
+   * The maximum number of times a request is sent again after the first attempt.
+   */
+  public int maxRetries() {
+    return maxRetries;
+  }
+  
+  public long initialBackoffMillis() {
+    return initialBackoffMillis;
+  }
+  
+  public long maxBackoffMillis() {
+    return maxBackoffMillis;
+  }
+  
+  /**
+   * Whether requests with a non idempotent method such as {@code POST}
+   * are retried. Defaults to false.
+   */
+  public boolean retryNonIdempotent() {
+    return retryNonIdempotent;
+  }
+  
+  public boolean retries(HttpMethod method) {
+    return retryNonIdempotent || IDEMPOTENT_METHODS.contains(method);
+  }
+  
+  /**
+   * @return True if a response with the given status should be retried.
+   * By default {@code 502}, {@code 503} and {@code 504} are retried.
+   */
+  public boolean retries(int status) {
+    return statusPredicate.test(status);
+  }
+  
+  /**
+   * @return True if a request that failed with the given exception should
+   * be retried. See {@link #isTransient(Throwable)}.
+   */
+  public boolean retries(Throwable ex) {
+    return exceptionPredicate.test(ex);
+  }
+  
+  /**
+   * @param retry The zero based number of the retry.
+   * @return A random time to wait before the retry, between zero and
+   * {@code initialBackoffMillis * 2^retry}, capped at {@code maxBackoffMillis}.
+   */
+  public long backoffMillis(int retry) {
+    long ceiling = initialBackoffMillis << Math.min(retry, 30);
+    if (ceiling <= 0 || ceiling > maxBackoffMillis) {
+      ceiling = maxBackoffMillis;
+    }
+    return ceiling <= 1 ? 1 : ThreadLocalRandom.current().nextLong(1, ceiling + 1);
+  }
+  
+  public static final class RetryPolicyBuilder {
+    
+    private RetryPolicy instance;
+    
+    private RetryPolicyBuilder() {
+      instance = new RetryPolicy();
+    }
+    
+    public RetryPolicyBuilder maxRetries(int val) {
+      instance.maxRetries = val;
+      return this;
+    }
+    
+    public RetryPolicyBuilder initialBackoffMillis(long val) {
+      instance.initialBackoffMillis = val;
+      return this;
+    }
+    
+    public RetryPolicyBuilder maxBackoffMillis(long val) {
+      instance.maxBackoffMillis = val;
+      return this;
+    }
+    
+    public RetryPolicyBuilder retryNonIdempotent(boolean val) {
+      instance.retryNonIdempotent = val;
+      return this;
+    }
+    
+    public RetryPolicyBuilder statusPredicate(IntPredicate predicate) {
+      Objects.requireNonNull(predicate, "Status predicate argument cannot be null");
+      instance.statusPredicate = predicate;
+      return this;
+    }
+    
+    public RetryPolicyBuilder exceptionPredicate(Predicate<Throwable> predicate) {
+      Objects.requireNonNull(predicate, "Exception predicate argument cannot be null");
+      instance.exceptionPredicate = predicate;
+      return this;
+    }
+    
+    public RetryPolicy build() {
+      assertValidState();
+      var res = instance;
+      instance = null;
+      return res;
+    }
+    
+    private void assertValidState() {
+      if (instance.maxRetries < 1) {
+        throw new IllegalArgumentException("Max retries must be positive");
+      }
+      if (instance.initialBackoffMillis < 1) {
+        throw new IllegalArgumentException("Initial backoff must be positive");
+      }
+      if (instance.maxBackoffMillis < instance.initialBackoffMillis) {
+        throw new IllegalArgumentException("Max backoff cannot be less than the initial backoff");
+      }
+    }
+  }
+}
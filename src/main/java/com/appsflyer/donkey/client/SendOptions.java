@@ -0,0 +1,186 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client;
+
+import io.vertx.core.http.RequestOptions;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+
+/**
+ * Options that apply to a single exchange with the server, in addition to
+ * the request itself.
+ */
+public final class SendOptions {
+  
+  private static final SendOptions DEFAULT = builder().build();
+  
+  public static SendOptionsBuilder builder() {
+    return new SendOptionsBuilder();
+  }
+  
+  /**
+   * @return Options that return the body as a {@code byte[]}, without
+   * a deadline, hedging or retries.
+   */
+  public static SendOptions defaults() {
+    return DEFAULT;
+  }
+  
+  private ResponseBodyType bodyType = ResponseBodyType.BYTES;
+  private long deadlineMillis;
+  private long hedgeAfterMillis;
+  private int maxHedges;
+  private RetryPolicy retryPolicy;
+  private Object requestKey;
+  private RequestOptions requestOptions;
+  
+  private SendOptions() {}
+  
+  public ResponseBodyType bodyType() {
+    return bodyType;
+  }
+  
+  /**
+   * The overall time in milliseconds the exchange may take, including
+   * connecting, redirects and hedged requests. Zero means there is no deadline.
+   */
+  public long deadlineMillis() {
+    return deadlineMillis;
+  }
+  
+  /**
+   * The time in milliseconds after which another copy of the request is sent
+   * if there's no response yet.
+   */
+  public long hedgeAfterMillis() {
+    return hedgeAfterMillis;
+  }
+  
+  /**
+   * The maximum number of copies of the request that are sent in addition
+   * to the original one. Zero means the request is not hedged.
+   */
+  public int maxHedges() {
+    return maxHedges;
+  }
+  
+  /**
+   * The policy of retrying the request when it fails, or null if it's not retried.
+   */
+  public @Nullable RetryPolicy retryPolicy() {
+    return retryPolicy;
+  }
+  
+  /**
+   * Identifies requests that would get the same response, or null if the
+   * request's response cannot be shared. Requests with equal keys may be
+   * coalesced, and their responses cached, when the client is configured to.
+   */
+  public @Nullable Object requestKey() {
+    return requestKey;
+  }
+  
+  /**
+   * The method, address, uri and timeout of the request, or null if they
+   * aren't needed. The headers and query parameters are read from the request
+   * itself. Required when the exchange has a deadline, is hedged or retried,
+   * or the response body is streamed, since the request is then sent by the
+   * underlying {@link io.vertx.core.http.HttpClient}. Also required when the
+   * client has circuit breakers, which are kept per host.
+   */
+  public @Nullable RequestOptions requestOptions() {
+    return requestOptions;
+  }
+  
+  /**
+   * @return True if the exchange has a deadline, is hedged or retried.
+   */
+  public boolean hasExchangePolicy() {
+    return deadlineMillis > 0 || maxHedges > 0 || retryPolicy != null;
+  }
+  
+  public static final class SendOptionsBuilder {
+    
+    private SendOptions instance;
+    
+    private SendOptionsBuilder() {
+      instance = new SendOptions();
+    }
+    
+    public SendOptionsBuilder bodyType(ResponseBodyType bodyType) {
+      Objects.requireNonNull(bodyType, "Body type argument cannot be null");
+      instance.bodyType = bodyType;
+      return this;
+    }
+    
+    public SendOptionsBuilder deadlineMillis(long val) {
+      instance.deadlineMillis = val;
+      return this;
+    }
+    
+    public SendOptionsBuilder hedgeAfterMillis(long val) {
+      instance.hedgeAfterMillis = val;
+      return this;
+    }
+    
+    public SendOptionsBuilder maxHedges(int val) {
+      instance.maxHedges = val;
+      return this;
+    }
+    
+    public SendOptionsBuilder retryPolicy(@Nullable RetryPolicy retryPolicy) {
+      instance.retryPolicy = retryPolicy;
+      return this;
+    }
+    
+    public SendOptionsBuilder requestKey(@Nullable Object requestKey) {
+      instance.requestKey = requestKey;
+      return this;
+    }
+    
+    public SendOptionsBuilder requestOptions(@Nullable RequestOptions requestOptions) {
+      instance.requestOptions = requestOptions;
+      return this;
+    }
+    
+    public SendOptions build() {
+      assertValidState();
+      var res = instance;
+      instance = null;
+      return res;
+    }
+    
+    private void assertValidState() {
+      if (instance.deadlineMillis < 0) {
+        throw new IllegalArgumentException("Deadline cannot be negative");
+      }
+      if (instance.maxHedges < 0) {
+        throw new IllegalArgumentException("Max hedges cannot be negative");
+      }
+      if (instance.maxHedges > 0 && instance.hedgeAfterMillis < 1) {
+        throw new IllegalArgumentException("Hedging requires a positive delay");
+      }
+      if (instance.requestOptions == null
+          && (instance.hasExchangePolicy() || instance.bodyType == ResponseBodyType.STREAM)) {
+        throw new IllegalArgumentException(
+            "Request options are required when the exchange has a deadline, is hedged, "
+            + "retried, or the response body is streamed");
+      }
+    }
+  }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client.exception;
+
+/**
+ * Thrown when an exchange with the server didn't complete before its deadline.
+ */
+public class DeadlineExceededException extends RuntimeException {
+  
+  private static final long serialVersionUID = 4212749153946287310L;
+  
+  public DeadlineExceededException(String message) {
+    super(message);
+  }
+}
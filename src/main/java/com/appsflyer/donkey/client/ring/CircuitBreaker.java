@@ -0,0 +1,181 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client.ring;
+
+import com.appsflyer.donkey.client.CircuitBreakerConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The circuit breaker of a single host. See {@link CircuitBreakerConfig}.
+ * <p></p>
+ * The outcomes of the last requests are kept in a ring buffer, with running
+ * counts of the failed and slow ones, so recording an outcome and computing
+ * the rates is constant time.
+ * <p></p>
+ * Every state change starts a new epoch. A request is admitted with a permit
+ * that holds the current epoch, and its outcome is only recorded if the
+ * breaker is still in the same epoch when it completes. That way requests
+ * that were admitted while closed don't count as the probes of a half open
+ * breaker, and late probes of a previous round are ignored.
+ */
+final class CircuitBreaker {
+  
+  enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+  
+  /**
+   * Returned by {@link #tryAcquire(long)} when a request may not be sent.
+   */
+  static final long REJECTED = -1;
+  
+  private static final byte FAILED = 1;
+  private static final byte SLOW = 2;
+  
+  private final CircuitBreakerConfig config;
+  private final long slowCallNanos;
+  private final long openNanos;
+  private final byte[] window;
+  private int next;
+  private int calls;
+  private int failures;
+  private int slowCalls;
+  private State state = State.CLOSED;
+  private long stateChangedAt;
+  private long epoch;
+  private int probesLeft;
+  private int probeSuccesses;
+  
+  CircuitBreaker(CircuitBreakerConfig config) {
+    this.config = config;
+    slowCallNanos = TimeUnit.MILLISECONDS.toNanos(config.slowCallDurationMillis());
+    openNanos = TimeUnit.MILLISECONDS.toNanos(config.openDurationMillis());
+    window = new byte[config.windowSize()];
+  }
+  
+  /**
+   * @param now The current value of {@link System#nanoTime()}.
+   * @return The permit of the request that should be passed to
+   * {@link #onComplete(long, boolean, long, long)}, or {@link #REJECTED} if
+   * the request may not be sent.
+   */
+  synchronized long tryAcquire(long now) {
+    if (state == State.CLOSED) {
+      return epoch;
+    }
+    // A half open breaker whose probes never completed
+    // starts another round of probing.
+    if (now - stateChangedAt >= openNanos) {
+      transition(State.HALF_OPEN, now);
+      probesLeft = config.halfOpenCalls();
+      probeSuccesses = 0;
+    }
+    if (state == State.HALF_OPEN && probesLeft > 0) {
+      probesLeft--;
+      return epoch;
+    }
+    return REJECTED;
+  }
+  
+  /**
+   * Records the outcome of a request that was allowed by {@link #tryAcquire(long)}.
+   * The outcome is ignored if the breaker changed its state since.
+   */
+  synchronized void onComplete(long permit, boolean failed, long durationNanos, long now) {
+    if (permit != epoch) {
+      return;
+    }
+    boolean slow = durationNanos >= slowCallNanos;
+    if (state == State.HALF_OPEN) {
+      if (failed || slow) {
+        transition(State.OPEN, now);
+      } else if (++probeSuccesses >= config.halfOpenCalls()) {
+        transition(State.CLOSED, now);
+        clearWindow();
+      }
+    } else if (state == State.CLOSED) {
+      record(failed, slow);
+      if (calls >= config.minimumCalls()
+          && (failures >= config.failureRateThreshold() * calls
+              || slowCalls >= config.slowCallRateThreshold() * calls)) {
+        transition(State.OPEN, now);
+      }
+    }
+  }
+  
+  /**
+   * Called instead of {@link #onComplete(long, boolean, long, long)} when the
+   * request was cancelled, so its outcome says nothing about the host. A
+   * cancelled probe is given back, so another request can take its place.
+   */
+  synchronized void onCancel(long permit) {
+    if (permit == epoch && state == State.HALF_OPEN) {
+      probesLeft++;
+    }
+  }
+  
+  synchronized State state() {
+    return state;
+  }
+  
+  synchronized double failureRate() {
+    return calls == 0 ? 0 : (double) failures / calls;
+  }
+  
+  synchronized double slowCallRate() {
+    return calls == 0 ? 0 : (double) slowCalls / calls;
+  }
+  
+  private void record(boolean failed, boolean slow) {
+    byte evicted = window[next];
+    if (calls == window.length) {
+      if ((evicted & FAILED) != 0) {
+        failures--;
+      }
+      if ((evicted & SLOW) != 0) {
+        slowCalls--;
+      }
+    } else {
+      calls++;
+    }
+    byte outcome = 0;
+    if (failed) {
+      outcome |= FAILED;
+      failures++;
+    }
+    if (slow) {
+      outcome |= SLOW;
+      slowCalls++;
+    }
+    window[next] = outcome;
+    next = (next + 1) % window.length;
+  }
+  
+  private void clearWindow() {
+    next = 0;
+    calls = 0;
+    failures = 0;
+    slowCalls = 0;
+  }
+  
+  private void transition(State state, long now) {
+    this.state = state;
+    stateChangedAt = now;
+    epoch++;
+  }
+}
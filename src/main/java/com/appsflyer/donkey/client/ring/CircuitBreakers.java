@@ -0,0 +1,215 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client.ring;
+
+import clojure.lang.IPersistentMap;
+import com.appsflyer.donkey.client.CircuitBreakerConfig;
+import com.appsflyer.donkey.client.exception.CircuitBreakerOpenException;
+import com.appsflyer.donkey.client.exception.DeadlineExceededException;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.core.Future;
+import io.vertx.ext.web.client.HttpResponse;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Guards the requests of a client with a {@link CircuitBreaker} per host.
+ * <p></p>
+ * When a metric registry is configured, the state of each breaker is reported
+ * under {@code <prefix>.http.clients.circuit-breaker.<host>:<port>}:
+ * <ul>
+ *   <li>{@code state} - 0 when closed, 1 when open and 2 when half open.</li>
+ *   <li>{@code failure-rate} and {@code slow-call-rate} of the current window.</li>
+ *   <li>{@code rejected} - the rate of requests that failed because the breaker was open.</li>
+ * </ul>
+ * The metrics are removed when the client is shut down.
+ * <p></p>
+ * At most {@value #MAX_HOSTS} breakers are kept. When there are more hosts
+ * a closed breaker is dropped, or an arbitrary one if they are all open,
+ * together with its metrics. A host whose breaker was dropped starts over
+ * with a new closed breaker.
+ */
+final class CircuitBreakers {
+  
+  static final int MAX_HOSTS = 1000;
+  
+  static CircuitBreakers create(CircuitBreakerConfig config,
+                                @Nullable MetricRegistry registry,
+                                String metricsPrefix) {
+    return new CircuitBreakers(config, registry, metricsPrefix);
+  }
+  
+  private final CircuitBreakerConfig config;
+  private final MetricRegistry registry;
+  private final String metricsPrefix;
+  private final Map<String, Entry> breakers = new ConcurrentHashMap<>();
+  
+  private CircuitBreakers(CircuitBreakerConfig config,
+                          @Nullable MetricRegistry registry,
+                          String metricsPrefix) {
+    this.config = config;
+    this.registry = registry;
+    this.metricsPrefix = metricsPrefix;
+  }
+  
+  /**
+   * Sends the request if the breaker of the host allows it, and records its
+   * outcome. Otherwise returns a failed future without sending it.
+   * <p></p>
+   * A request that was cancelled, because another hedged request completed
+   * first or because the deadline of the exchange passed, is not recorded.
+   */
+  <T> Future<T> execute(String host, Supplier<Future<T>> send) {
+    Entry entry = entry(host);
+    long start = System.nanoTime();
+    long permit = entry.breaker.tryAcquire(start);
+    if (permit == CircuitBreaker.REJECTED) {
+      if (entry.rejected != null) {
+        entry.rejected.mark();
+      }
+      return Future.failedFuture(
+          new CircuitBreakerOpenException("Circuit breaker of " + host + " is open"));
+    }
+    return send.get().onComplete(ar -> {
+      if (ar.failed() && isCancellation(ar.cause())) {
+        entry.breaker.onCancel(permit);
+        return;
+      }
+      long end = System.nanoTime();
+      entry.breaker.onComplete(permit, ar.failed() || isServerError(ar.result()), end - start, end);
+    });
+  }
+  
+  CircuitBreaker.State state(String host) {
+    return entry(host).breaker.state();
+  }
+  
+  /**
+   * Removes the metrics of the breakers from the registry.
+   */
+  void close() {
+    breakers.values().forEach(this::removeMetrics);
+    breakers.clear();
+  }
+  
+  int hosts() {
+    return breakers.size();
+  }
+  
+  /**
+   * The request may fail with the cancellation cause itself, or with an
+   * exception it caused.
+   */
+  private static boolean isCancellation(Throwable ex) {
+    for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+      if (cause instanceof CancellationException || cause instanceof DeadlineExceededException) {
+        return true;
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * @param response Either a Ring response map or a Vert.x {@link HttpResponse}.
+   */
+  private static boolean isServerError(Object response) {
+    if (response instanceof HttpResponse) {
+      return ((HttpResponse<?>) response).statusCode() >= 500;
+    }
+    Object status = ((IPersistentMap) response).valAt(RingResponseField.STATUS.keyword());
+    return status instanceof Number && ((Number) status).intValue() >= 500;
+  }
+  
+  private Entry entry(String host) {
+    Entry entry = breakers.get(host);
+    if (entry != null) {
+      return entry;
+    }
+    if (breakers.size() >= MAX_HOSTS) {
+      evict();
+    }
+    return breakers.computeIfAbsent(host, this::newEntry);
+  }
+  
+  /**
+   * Drops a closed breaker if there is one, so that open breakers keep
+   * protecting their hosts. Requests in flight still complete on the
+   * dropped breaker.
+   */
+  private void evict() {
+    Map.Entry<String, Entry> victim = null;
+    for (Map.Entry<String, Entry> next : breakers.entrySet()) {
+      if (victim == null) {
+        victim = next;
+      }
+      if (next.getValue().breaker.state() == CircuitBreaker.State.CLOSED) {
+        victim = next;
+        break;
+      }
+    }
+    if (victim != null && breakers.remove(victim.getKey(), victim.getValue())) {
+      removeMetrics(victim.getValue());
+    }
+  }
+  
+  /**
+   * Only removes the entry's own metrics, and not those of a new entry of
+   * the same host.
+   */
+  private void removeMetrics(Entry entry) {
+    if (registry != null && !entry.metrics.isEmpty()) {
+      registry.removeMatching((name, metric) -> entry.metrics.contains(metric));
+    }
+  }
+  
+  private Entry newEntry(String host) {
+    var breaker = new CircuitBreaker(config);
+    if (registry == null) {
+      return new Entry(breaker, null, List.of());
+    }
+    String name = MetricRegistry.name(metricsPrefix, "http.clients.circuit-breaker", host);
+    Gauge<Integer> state = registry.gauge(
+        MetricRegistry.name(name, "state"), () -> () -> breaker.state().ordinal());
+    Gauge<Double> failureRate = registry.gauge(
+        MetricRegistry.name(name, "failure-rate"), () -> breaker::failureRate);
+    Gauge<Double> slowCallRate = registry.gauge(
+        MetricRegistry.name(name, "slow-call-rate"), () -> breaker::slowCallRate);
+    Meter rejected = registry.meter(MetricRegistry.name(name, "rejected"));
+    return new Entry(breaker, rejected, List.of(state, failureRate, slowCallRate, rejected));
+  }
+  
+  private static final class Entry {
+    
+    private final CircuitBreaker breaker;
+    private final Meter rejected;
+    private final List<Metric> metrics;
+    
+    private Entry(CircuitBreaker breaker, @Nullable Meter rejected, List<Metric> metrics) {
+      this.breaker = breaker;
+      this.rejected = rejected;
+      this.metrics = metrics;
+    }
+  }
+}
@@ -20,10 +20,15 @@ package com.appsflyer.donkey.client.ring;
 import clojure.lang.IPersistentMap;
 import clojure.lang.Keyword;
 import com.appsflyer.donkey.ValueExtractor;
+import com.appsflyer.donkey.client.ResponseBodyType;
 import com.appsflyer.donkey.server.ring.handler.HttpMethodMapping;
 import io.vertx.core.http.HttpMethod;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
 /**
  * The Enum class encapsulates the logic of extracting data from a Clojure
  * map representing a client request.
@@ -110,6 +115,25 @@ public enum ClojureRequestField implements ValueExtractor<IPersistentMap> {
     public IPersistentMap from(IPersistentMap req) {
       return (IPersistentMap) req.valAt(keyword(), null);
     }
+  },
+  AS("as") {
+    @Override
+    public ResponseBodyType from(IPersistentMap req) {
+      var as = req.valAt(keyword(), null);
+      if (as == null) {
+        return ResponseBodyType.BYTES;
+      }
+      for (ResponseBodyType type : ResponseBodyType.values()) {
+        if (as instanceof Keyword && type.name().equalsIgnoreCase(((Keyword) as).getName())) {
+          return type;
+        }
+      }
+      var allowed = Arrays.stream(ResponseBodyType.values())
+                          .map(type -> ":" + type.name().toLowerCase(Locale.ROOT))
+                          .collect(Collectors.joining(", "));
+      throw new IllegalArgumentException(
+          String.format("Invalid %s value %s. Must be one of %s", keyword(), as, allowed));
+    }
   };
   
   private final Keyword keyword;
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client.ring;
+
+import io.vertx.core.http.HttpClientRequest;
+
+/**
+ * A handle to the {@link HttpClientRequest} that is currently sent as part of
+ * an exchange, that can be used to cancel it. The request changes when a
+ * redirect is followed.
+ */
+final class ExchangeHandle {
+  
+  private HttpClientRequest request;
+  private Throwable cancellation;
+  
+  /**
+   * Sets the request that is being sent. If the exchange was already
+   * cancelled then the request is reset immediately.
+   */
+  void attach(HttpClientRequest request) {
+    Throwable cause;
+    synchronized (this) {
+      cause = cancellation;
+      if (cause == null) {
+        this.request = request;
+        return;
+      }
+    }
+    request.reset(0, cause);
+  }
+  
+  synchronized boolean isCancelled() {
+    return cancellation != null;
+  }
+  
+  /**
+   * Resets the request that is being sent, and any request that is attached
+   * later on. The connection is closed, or in the case of HTTP/2 only the
+   * stream is.
+   */
+  void cancel(Throwable cause) {
+    HttpClientRequest current;
+    synchronized (this) {
+      if (cancellation != null) {
+        return;
+      }
+      cancellation = cause;
+      current = request;
+      request = null;
+    }
+    if (current != null) {
+      current.reset(0, cause);
+    }
+  }
+}
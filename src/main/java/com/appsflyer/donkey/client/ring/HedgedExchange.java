@@ -0,0 +1,167 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client.ring;
+
+import com.appsflyer.donkey.client.SendOptions;
+import com.appsflyer.donkey.client.exception.DeadlineExceededException;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs an exchange with a deadline, and optionally hedges it by sending
+ * another copy of the request every {@link SendOptions#hedgeAfterMillis()}
+ * while there's no response, up to {@link SendOptions#maxHedges()} times.
+ * <p></p>
+ * The first response that arrives completes the exchange, and the requests
+ * that are still in flight are cancelled. The exchange fails when all the
+ * requests that were sent failed, or when the deadline passes first.
+ * Timers are scheduled on the Vert.x timer, so no thread is blocked waiting.
+ *
+ * @param <R> The type of the response
+ */
+final class HedgedExchange<R> {
+  
+  /**
+   * @param hedged    Whether the request can be sent more than once.
+   * @param attempt   Sends a copy of the request. The request should be
+   *                  attached to the handle it's given so it can be cancelled.
+   * @param onDiscard Called with a response that arrived after the exchange
+   *                  was already completed, to release its resources.
+   */
+  static <R> Future<R> execute(Vertx vertx,
+                               SendOptions options,
+                               boolean hedged,
+                               Function<ExchangeHandle, Future<R>> attempt,
+                               Consumer<R> onDiscard) {
+    return new HedgedExchange<>(vertx, options, hedged, attempt, onDiscard).start();
+  }
+  
+  private final Vertx vertx;
+  private final SendOptions options;
+  private final Function<ExchangeHandle, Future<R>> attempt;
+  private final Consumer<R> onDiscard;
+  private final Promise<R> promise = Promise.promise();
+  private final List<ExchangeHandle> inFlight = new ArrayList<>(2);
+  private int hedgesLeft;
+  private long deadlineTimer = -1;
+  private long hedgeTimer = -1;
+  private boolean done;
+  
+  private HedgedExchange(Vertx vertx,
+                         SendOptions options,
+                         boolean hedged,
+                         Function<ExchangeHandle, Future<R>> attempt,
+                         Consumer<R> onDiscard) {
+    this.vertx = vertx;
+    this.options = options;
+    this.attempt = attempt;
+    this.onDiscard = onDiscard;
+    hedgesLeft = hedged ? options.maxHedges() : 0;
+  }
+  
+  private Future<R> start() {
+    long deadline = options.deadlineMillis();
+    if (deadline > 0) {
+      deadlineTimer = vertx.setTimer(deadline, id -> expire(deadline));
+    }
+    send();
+    return promise.future();
+  }
+  
+  private void send() {
+    var handle = new ExchangeHandle();
+    synchronized (this) {
+      if (done) {
+        return;
+      }
+      inFlight.add(handle);
+      if (hedgesLeft > 0) {
+        hedgesLeft--;
+        hedgeTimer = vertx.setTimer(options.hedgeAfterMillis(), id -> send());
+      }
+    }
+    Future<R> future;
+    try {
+      future = attempt.apply(handle);
+    } catch (RuntimeException ex) {
+      future = Future.failedFuture(ex);
+    }
+    future.onComplete(ar -> complete(handle, ar));
+  }
+  
+  private void complete(ExchangeHandle handle, AsyncResult<R> ar) {
+    List<ExchangeHandle> losers;
+    synchronized (this) {
+      if (done) {
+        if (ar.succeeded()) {
+          onDiscard.accept(ar.result());
+        }
+        return;
+      }
+      inFlight.remove(handle);
+      // A failed request is not replaced by a hedge,
+      // so the exchange fails when there are none left in flight.
+      if (ar.failed() && !inFlight.isEmpty()) {
+        return;
+      }
+      losers = finish();
+    }
+    var cause = new CancellationException("Another request completed first");
+    losers.forEach(loser -> loser.cancel(cause));
+    promise.handle(ar);
+  }
+  
+  private void expire(long deadline) {
+    List<ExchangeHandle> cancelled;
+    synchronized (this) {
+      if (done) {
+        return;
+      }
+      deadlineTimer = -1;
+      cancelled = finish();
+    }
+    var cause = new DeadlineExceededException("The exchange did not complete within " + deadline + "ms");
+    cancelled.forEach(handle -> handle.cancel(cause));
+    promise.fail(cause);
+  }
+  
+  /**
+   * Must be called while holding the lock.
+   *
+   * @return The handles of the requests that are still in flight.
+   */
+  private List<ExchangeHandle> finish() {
+    done = true;
+    if (deadlineTimer != -1) {
+      vertx.cancelTimer(deadlineTimer);
+    }
+    if (hedgeTimer != -1) {
+      vertx.cancelTimer(hedgeTimer);
+    }
+    var res = new ArrayList<>(inFlight);
+    inFlight.clear();
+    return res;
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client.ring;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.web.client.HttpRequest;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Collapses identical requests that are in flight at the same time into a
+ * single exchange with the server ("single flight").
+ * <p></p>
+ * Only requests without a body that have a key are coalesced, and requests
+ * are identical when their keys are equal. See {@link RequestKey} for the key
+ * of {@code GET} and {@code HEAD} requests. The first request is sent, and
+ * requests that arrive before its response get the same {@link Future}.
+ * Once the response arrives the next request is sent again.
+ *
+ * @param <T> The type of the response
+ */
+final class RequestCoalescer<T> {
+  
+  private final Map<Object, Future<T>> inFlight = new ConcurrentHashMap<>();
+  
+  static <T> RequestCoalescer<T> create() {
+    return new RequestCoalescer<>();
+  }
+  
+  private RequestCoalescer() {}
+  
+  /**
+   * @param sender Sends the request, if there's no identical one in flight.
+   */
+  Future<T> send(@Nullable Object key,
+                 HttpRequest<Buffer> request,
+                 Function<HttpRequest<Buffer>, Future<T>> sender) {
+    if (key == null) {
+      return sender.apply(request);
+    }
+    
+    Future<T> existing = inFlight.get(key);
+    if (existing != null) {
+      return existing;
+    }
+    // Register the exchange before sending the request, so that requests
+    // on other threads can attach to it. If another thread won the race we
+    // use its exchange instead.
+    Promise<T> promise = Promise.promise();
+    Future<T> future = promise.future();
+    existing = inFlight.putIfAbsent(key, future);
+    if (existing != null) {
+      return existing;
+    }
+    future.onComplete(v -> inFlight.remove(key, future));
+    sender.apply(request).onComplete(promise);
+    return future;
+  }
+  
+  int inFlight() {
+    return inFlight.size();
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client.ring;
+
+import clojure.lang.IPersistentMap;
+import io.vertx.core.http.HttpMethod;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import static com.appsflyer.donkey.client.ring.ClojureRequestField.*;
+
+/**
+ * Identifies {@code GET} and {@code HEAD} requests that would get the same
+ * response. The key is built from the request map, and two requests are
+ * identical when they have the same method, url, scheme, host, port, uri,
+ * query parameters, headers, credentials and timeout. Requests with different
+ * timeouts are never identical, so a request doesn't wait on an exchange
+ * that may take longer than its own timeout, nor fail earlier than it.
+ * The timeout doesn't change the response itself, so it's left out of
+ * {@link #withoutTimeout()}.
+ */
+public final class RequestKey {
+  
+  private final HttpMethod method;
+  private final List<Object> fields;
+  private final @Nullable Long timeout;
+  
+  /**
+   * @return The key of the request, or null if it's not a
+   * {@code GET} or {@code HEAD} request.
+   */
+  public static @Nullable RequestKey of(IPersistentMap opts) {
+    var method = (HttpMethod) METHOD.from(opts);
+    if (!HttpMethod.GET.equals(method) && !HttpMethod.HEAD.equals(method)) {
+      return null;
+    }
+    return new RequestKey(method, Arrays.asList(URL.from(opts),
+                                                SSL.from(opts),
+                                                HOST.from(opts),
+                                                PORT.from(opts),
+                                                URI.from(opts),
+                                                QUERY_PARAMS.from(opts),
+                                                HEADERS.from(opts),
+                                                BASIC_AUTH.from(opts),
+                                                BEARER_TOKEN.from(opts)),
+                          (Long) TIMEOUT.from(opts));
+  }
+  
+  private RequestKey(HttpMethod method, List<Object> fields, @Nullable Long timeout) {
+    this.method = method;
+    this.fields = fields;
+    this.timeout = timeout;
+  }
+  
+  HttpMethod method() {
+    return method;
+  }
+  
+  /**
+   * @return A key that is equal for requests that differ only in their timeout.
+   */
+  RequestKey withoutTimeout() {
+    return timeout == null ? this : new RequestKey(method, fields, null);
+  }
+  
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof RequestKey)) {
+      return false;
+    }
+    var other = (RequestKey) o;
+    return method.equals(other.method) && fields.equals(other.fields) && Objects.equals(timeout, other.timeout);
+  }
+  
+  @Override
+  public int hashCode() {
+    return 31 * (31 * method.hashCode() + fields.hashCode()) + Objects.hashCode(timeout);
+  }
+  
+  @Override
+  public String toString() {
+    return method.name() + ' ' + fields + (timeout == null ? "" : " timeout=" + timeout);
+  }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client.ring;
+
+import clojure.lang.IPersistentMap;
+import com.appsflyer.donkey.client.ResponseBodyType;
+import com.appsflyer.donkey.util.TypeConverter;
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.ext.web.client.HttpRequest;
+import io.vertx.ext.web.client.HttpResponse;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static com.appsflyer.donkey.util.TypeConverter.toPersistentMap;
+
+/**
+ * An in memory cache of {@code GET} responses, as a private HTTP cache.
+ * <p></p>
+ * A {@code 200} response is stored unless its {@code Cache-Control} has
+ * {@code no-store}, or it has no freshness information and no validator.
+ * The freshness lifetime is taken from {@code max-age}, or from
+ * {@code Expires} relative to {@code Date}, minus the response's {@code Age}.
+ * No heuristic freshness is used. A fresh response is served without
+ * contacting the server. A stale response with an {@code ETag} or
+ * {@code Last-Modified} header is revalidated with a conditional request,
+ * and a {@code 304} response refreshes it without transferring the body.
+ * The headers of the {@code 304} response replace those of the stored
+ * response, and its freshness is computed from the merged headers.
+ * <p></p>
+ * Requests that differ only in their timeout share the same response. The
+ * cache is bounded by the size of the bodies and headers it holds, and
+ * evicts the least recently used responses first. Concurrent misses for the
+ * same request share a single exchange with the server, through a
+ * {@link RequestCoalescer}. Each response gets its own copy of the body.
+ */
+final class ResponseCache {
+  
+  /**
+   * Rough size of an entry without its body and headers.
+   */
+  private static final int ENTRY_OVERHEAD = 128;
+  
+  static ResponseCache create(long maxBytes) {
+    return new ResponseCache(maxBytes);
+  }
+  
+  private final long maxBytes;
+  private final LinkedHashMap<RequestKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final RequestCoalescer<Entry> coalescer = RequestCoalescer.create();
+  private long size;
+  
+  private ResponseCache(long maxBytes) {
+    if (maxBytes < 1) {
+      throw new IllegalArgumentException("Max bytes must be positive");
+    }
+    this.maxBytes = maxBytes;
+  }
+  
+  /**
+   * @return True if the response of the request with the given key may be
+   * served from the cache.
+   */
+  static boolean isCacheable(@Nullable Object key, HttpRequest<Buffer> request) {
+    return key instanceof RequestKey
+           && HttpMethod.GET.equals(((RequestKey) key).method())
+           && !CacheControl.parse(request.headers()).noStore;
+  }
+  
+  /**
+   * Completes with a cached response if there's a fresh one. Otherwise the
+   * request is sent with the {@code sender}, as a conditional request if
+   * there's a stale response that can be revalidated.
+   *
+   * @param key      The key of the request.
+   * @param request  A request for which {@link #isCacheable(Object, HttpRequest)} is true.
+   * @param bodyType Either {@link ResponseBodyType#BYTES} or {@link ResponseBodyType#BUFFER}.
+   */
+  Future<IPersistentMap> send(RequestKey key,
+                              HttpRequest<Buffer> request,
+                              ResponseBodyType bodyType,
+                              Function<HttpRequest<Buffer>, Future<HttpResponse<Buffer>>> sender) {
+    RequestKey storedKey = key.withoutTimeout();
+    Entry entry = get(storedKey);
+    if (entry != null
+        && entry.isFresh(System.currentTimeMillis())
+        && !CacheControl.parse(request.headers()).noCache) {
+      return Future.succeededFuture(entry.toRing(bodyType));
+    }
+    // Requests are only coalesced with requests that have the same timeout
+    return coalescer.send(key, request, req -> fetch(storedKey, req, entry, sender))
+                    .map(res -> res.toRing(bodyType));
+  }
+  
+  synchronized int size() {
+    return entries.size();
+  }
+  
+  synchronized long bytes() {
+    return size;
+  }
+  
+  /**
+   * @return The response, that is stored if it may be.
+   */
+  private Future<Entry> fetch(RequestKey key,
+                              HttpRequest<Buffer> request,
+                              @Nullable Entry stale,
+                              Function<HttpRequest<Buffer>, Future<HttpResponse<Buffer>>> sender) {
+    HttpRequest<Buffer> sent = request;
+    if (stale != null && stale.hasValidator()) {
+      sent = request.copy();
+      if (stale.etag != null) {
+        sent.putHeader(HttpHeaders.IF_NONE_MATCH.toString(), stale.etag);
+      }
+      if (stale.lastModified != null) {
+        sent.putHeader(HttpHeaders.IF_MODIFIED_SINCE.toString(), stale.lastModified);
+      }
+    }
+    boolean conditional = sent != request;
+    return sender.apply(sent).map(res -> {
+      long now = System.currentTimeMillis();
+      if (conditional && res.statusCode() == 304) {
+        Entry revalidated = stale.revalidated(res.headers(), now);
+        put(key, revalidated);
+        return revalidated;
+      }
+      var entry = new Entry(res, now);
+      store(key, entry);
+      return entry;
+    });
+  }
+  
+  private void store(RequestKey key, Entry entry) {
+    if (entry.status != 200) {
+      return;
+    }
+    var cacheControl = CacheControl.parse(entry.headers);
+    if (cacheControl.noStore || "*".equals(entry.headers.get(HttpHeaders.VARY))) {
+      remove(key);
+      return;
+    }
+    if (entry.expiresAt <= entry.storedAt && !entry.hasValidator()) {
+      remove(key);
+      return;
+    }
+    put(key, entry);
+  }
+  
+  private synchronized @Nullable Entry get(RequestKey key) {
+    return entries.get(key);
+  }
+  
+  private synchronized void put(RequestKey key, Entry entry) {
+    if (entry.bytes > maxBytes) {
+      remove(key);
+      return;
+    }
+    Entry previous = entries.put(key, entry);
+    if (previous != null) {
+      size -= previous.bytes;
+    }
+    size += entry.bytes;
+    var iterator = entries.values().iterator();
+    while (size > maxBytes && iterator.hasNext()) {
+      size -= iterator.next().bytes;
+      iterator.remove();
+    }
+  }
+  
+  private synchronized void remove(RequestKey key) {
+    Entry previous = entries.remove(key);
+    if (previous != null) {
+      size -= previous.bytes;
+    }
+  }
+  
+  /**
+   * @return The freshness lifetime of the response in milliseconds. Zero or
+   * less means the response is stale when it's received.
+   */
+  static long freshnessMillis(MultiMap headers, long now) {
+    var cacheControl = CacheControl.parse(headers);
+    if (cacheControl.noCache) {
+      return 0;
+    }
+    long lifetime;
+    if (cacheControl.maxAge >= 0) {
+      lifetime = cacheControl.maxAge * 1000;
+    } else {
+      String expires = headers.get(HttpHeaders.EXPIRES);
+      if (expires == null) {
+        return 0;
+      }
+      long expiresAt = parseDate(expires);
+      if (expiresAt < 0) {
+        return 0;
+      }
+      long date = parseDate(headers.get(HttpHeaders.DATE));
+      lifetime = expiresAt - (date < 0 ? now : date);
+    }
+    return lifetime - parseSeconds(headers.get("age"), 0) * 1000;
+  }
+  
+  private static long parseDate(@Nullable String value) {
+    if (value == null) {
+      return -1;
+    }
+    try {
+      return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+    } catch (DateTimeParseException ex) {
+      return -1;
+    }
+  }
+  
+  private static long parseSeconds(@Nullable String value, long defaultValue) {
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException ex) {
+      return defaultValue;
+    }
+  }
+  
+  /**
+   * A response, and when it expires. Entries are never modified, so they
+   * can be shared between threads.
+   */
+  private static final class Entry {
+    
+    private static final byte[] EMPTY_BODY = new byte[0];
+    
+    /**
+     * Headers of a {@code 304} response that describe the connection or its
+     * own empty body, rather than the stored response.
+     */
+    private static final Set<String> NOT_REVALIDATED_HEADERS =
+        Set.of("content-length", "transfer-encoding", "connection", "keep-alive");
+    
+    private final int status;
+    private final MultiMap headers;
+    private final @Nullable IPersistentMap ringHeaders;
+    private final @Nullable Buffer body;
+    private final String etag;
+    private final String lastModified;
+    private final long storedAt;
+    private final long expiresAt;
+    private final long bytes;
+    
+    private Entry(HttpResponse<Buffer> response, long now) {
+      this(response.statusCode(), response.headers(), response.body(),
+           now, now + freshnessMillis(response.headers(), now));
+    }
+    
+    private Entry(int status, MultiMap headers, @Nullable Buffer body, long storedAt, long expiresAt) {
+      this.status = status;
+      this.headers = headers;
+      ringHeaders = headers.isEmpty() ? null : toPersistentMap(headers, TypeConverter::stringJoiner);
+      this.body = body;
+      etag = headers.get(HttpHeaders.ETAG);
+      lastModified = headers.get(HttpHeaders.LAST_MODIFIED);
+      this.storedAt = storedAt;
+      this.expiresAt = expiresAt;
+      long headersSize = 0;
+      for (Map.Entry<String, String> header : headers) {
+        headersSize += header.getKey().length() + header.getValue().length();
+      }
+      bytes = ENTRY_OVERHEAD + headersSize + (body == null ? 0 : body.length());
+    }
+    
+    private boolean isFresh(long now) {
+      return now < expiresAt;
+    }
+    
+    private boolean hasValidator() {
+      return etag != null || lastModified != null;
+    }
+    
+    /**
+     * @return A copy of the entry, whose headers are updated with those of a
+     * {@code 304} response, and whose freshness is computed from the merged
+     * headers. See RFC 9111 section 4.3.4.
+     */
+    private Entry revalidated(MultiMap notModified, long now) {
+      MultiMap merged = MultiMap.caseInsensitiveMultiMap().addAll(headers);
+      for (String name : notModified.names()) {
+        if (!NOT_REVALIDATED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+          merged.set(name, notModified.getAll(name));
+        }
+      }
+      return new Entry(status, merged, body, now, now + freshnessMillis(merged, now));
+    }
+    
+    /**
+     * @param bodyType Either {@link ResponseBodyType#BYTES} or {@link ResponseBodyType#BUFFER}.
+     * @return A Ring response with a copy of the body.
+     */
+    private IPersistentMap toRing(ResponseBodyType bodyType) {
+      Object ringBody;
+      if (bodyType == ResponseBodyType.BUFFER) {
+        ringBody = body == null ? Buffer.buffer(0) : body.copy();
+      } else {
+        ringBody = body == null ? EMPTY_BODY : body.getBytes();
+      }
+      if (ringHeaders == null) {
+        return toPersistentMap(new Object[]{
+            RingResponseField.STATUS.keyword(), status,
+            RingResponseField.BODY.keyword(), ringBody});
+      }
+      return toPersistentMap(new Object[]{
+          RingResponseField.STATUS.keyword(), status,
+          RingResponseField.HEADERS.keyword(), ringHeaders,
+          RingResponseField.BODY.keyword(), ringBody});
+    }
+  }
+  
+  /**
+   * The {@code Cache-Control} directives the cache uses.
+   */
+  private static final class CacheControl {
+    
+    private static final CacheControl NONE = new CacheControl(false, false, -1);
+    
+    private final boolean noStore;
+    private final boolean noCache;
+    private final long maxAge;
+    
+    private CacheControl(boolean noStore, boolean noCache, long maxAge) {
+      this.noStore = noStore;
+      this.noCache = noCache;
+      this.maxAge = maxAge;
+    }
+    
+    private static CacheControl parse(MultiMap headers) {
+      List<String> values = headers.getAll(HttpHeaders.CACHE_CONTROL);
+      if (values.isEmpty()) {
+        return "no-cache".equalsIgnoreCase(headers.get("pragma")) ?
+               new CacheControl(false, true, -1) : NONE;
+      }
+      boolean noStore = false;
+      boolean noCache = false;
+      long maxAge = -1;
+      for (String value : values) {
+        for (String directive : value.split(",")) {
+          String name = directive.trim().toLowerCase(Locale.ROOT);
+          if (name.equals("no-store")) {
+            noStore = true;
+          } else if (name.startsWith("no-cache")) {
+            noCache = true;
+          } else if (name.startsWith("max-age=")) {
+            maxAge = parseSeconds(name.substring("max-age=".length()).replace("\"", ""), -1);
+          }
+        }
+      }
+      return new CacheControl(noStore, noCache, maxAge);
+    }
+  }
+}
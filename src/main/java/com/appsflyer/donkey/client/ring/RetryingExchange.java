@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client.ring;
+
+import clojure.lang.IPersistentMap;
+import com.appsflyer.donkey.client.RetryBudget;
+import com.appsflyer.donkey.client.RetryPolicy;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Sends a request again when it fails according to a {@link RetryPolicy}.
+ * The backoff between retries is scheduled on the Vert.x timer, and every
+ * retry withdraws a token from the host's {@link RetryBudget}. When the
+ * budget is exhausted the last result is returned as is.
+ * <p></p>
+ * Retries stop when the exchange is cancelled, e.g when its deadline passed.
+ */
+final class RetryingExchange {
+  
+  /**
+   * @param host      The key of the host in the retry budget.
+   * @param handle    The handle of the exchange the retries are part of.
+   * @param attempt   Sends the request once.
+   * @param onDiscard Called with a response that is retried, to release its resources.
+   */
+  static Future<IPersistentMap> execute(Vertx vertx,
+                                        RetryPolicy policy,
+                                        RetryBudget budget,
+                                        String host,
+                                        ExchangeHandle handle,
+                                        Supplier<Future<IPersistentMap>> attempt,
+                                        Consumer<IPersistentMap> onDiscard) {
+    return new RetryingExchange(vertx, policy, budget, host, handle, attempt, onDiscard).start();
+  }
+  
+  private final Vertx vertx;
+  private final RetryPolicy policy;
+  private final RetryBudget budget;
+  private final String host;
+  private final ExchangeHandle handle;
+  private final Supplier<Future<IPersistentMap>> attempt;
+  private final Consumer<IPersistentMap> onDiscard;
+  private final Promise<IPersistentMap> promise = Promise.promise();
+  
+  private RetryingExchange(Vertx vertx,
+                           RetryPolicy policy,
+                           RetryBudget budget,
+                           String host,
+                           ExchangeHandle handle,
+                           Supplier<Future<IPersistentMap>> attempt,
+                           Consumer<IPersistentMap> onDiscard) {
+    this.vertx = vertx;
+    this.policy = policy;
+    this.budget = budget;
+    this.host = host;
+    this.handle = handle;
+    this.attempt = attempt;
+    this.onDiscard = onDiscard;
+  }
+  
+  private Future<IPersistentMap> start() {
+    send(0);
+    return promise.future();
+  }
+  
+  private void send(int retry) {
+    attempt.get().onComplete(ar -> {
+      if (retry < policy.maxRetries()
+          && isRetryable(ar)
+          && !handle.isCancelled()
+          && budget.tryWithdraw(host)) {
+        if (ar.succeeded()) {
+          onDiscard.accept(ar.result());
+        }
+        vertx.setTimer(policy.backoffMillis(retry), id -> {
+          if (handle.isCancelled()) {
+            promise.handle(ar);
+          } else {
+            send(retry + 1);
+          }
+        });
+      } else {
+        promise.handle(ar);
+      }
+    });
+  }
+  
+  private boolean isRetryable(AsyncResult<IPersistentMap> ar) {
+    if (ar.failed()) {
+      return policy.retries(ar.cause());
+    }
+    Object status = ar.result().valAt(RingResponseField.STATUS.keyword());
+    return status instanceof Number && policy.retries(((Number) status).intValue());
+  }
+}
@@ -20,13 +20,33 @@ package com.appsflyer.donkey.client.ring;
 import clojure.lang.IPersistentMap;
 import com.appsflyer.donkey.client.Client;
 import com.appsflyer.donkey.client.ClientConfig;
+import com.appsflyer.donkey.client.ResponseBodyType;
+import com.appsflyer.donkey.client.RetryBudget;
+import com.appsflyer.donkey.client.RetryPolicy;
+import com.appsflyer.donkey.client.SendOptions;
+import com.appsflyer.donkey.client.exception.CircuitBreakerOpenException;
+import com.appsflyer.donkey.util.InputStreamReadStream;
 import io.vertx.core.Future;
 import io.vertx.core.MultiMap;
 import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.RequestOptions;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.web.client.HttpRequest;
 import io.vertx.ext.web.client.WebClient;
 import io.vertx.ext.web.multipart.MultipartForm;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.function.Supplier;
 
 public final class RingClient implements Client<IPersistentMap, IPersistentMap> {
   
@@ -34,47 +54,322 @@ public final class RingClient implements Client<IPersistentMap, IPersistentMap>
     return new RingClient(config);
   }
   
+  private final Vertx vertx;
   private final WebClient client;
   private final RingRequestFactory requestFactory;
+  private final StreamingResponseSender streamingSender;
+  private final RequestCoalescer<IPersistentMap> coalescer;
+  private final RetryBudget retryBudget;
+  private final CircuitBreakers circuitBreakers;
+  private final ResponseCache responseCache;
   
   private RingClient(ClientConfig config) {
-    client = WebClient.create(config.vertx(), config.clientOptions());
-    requestFactory = RingRequestFactory.create(client);
+    vertx = config.vertx();
+    HttpClient httpClient = config.vertx().createHttpClient(config.clientOptions());
+    client = WebClient.wrap(httpClient, config.clientOptions());
+    requestFactory = RingRequestFactory.create(client, config.clientOptions());
+    streamingSender = StreamingResponseSender.create(httpClient);
+    coalescer = config.coalesceRequests() ? RequestCoalescer.create() : null;
+    retryBudget = config.retryBudget();
+    circuitBreakers = config.circuitBreakerConfig() == null ? null :
+        CircuitBreakers.create(config.circuitBreakerConfig(), config.metricRegistry(), config.metricsPrefix());
+    responseCache = config.responseCacheMaxBytes() > 0 ? ResponseCache.create(config.responseCacheMaxBytes()) : null;
   }
   
   public HttpRequest<Buffer> request(IPersistentMap opts) {
     return requestFactory.create(opts);
   }
   
+  /**
+   * @return The key of the request that {@link #request(IPersistentMap)} makes
+   * from the same {@code opts}, or null if the client neither coalesces nor
+   * caches requests. See {@link SendOptions#requestKey()}.
+   */
+  public @Nullable RequestKey requestKey(IPersistentMap opts) {
+    return coalescer == null && responseCache == null ? null : RequestKey.of(opts);
+  }
+  
+  /**
+   * @return The method, address, uri and timeout of the request that
+   * {@link #request(IPersistentMap)} makes from the same {@code opts}.
+   * See {@link SendOptions#requestOptions()}.
+   */
+  public RequestOptions requestOptions(IPersistentMap opts) {
+    return requestFactory.requestOptions(opts);
+  }
+  
+  /**
+   * @return True if every request has to be sent with
+   * {@link SendOptions#requestOptions()}, because the client has circuit breakers.
+   */
+  public boolean requiresRequestOptions() {
+    return circuitBreakers != null;
+  }
+  
   public Future<IPersistentMap> send(HttpRequest<Buffer> request) {
-    Promise<IPersistentMap> promise = Promise.promise();
-    request.send(RingResponseAdapter.create(promise));
-    return promise.future();
+    return send(request, SendOptions.defaults());
+  }
+  
+  private Future<IPersistentMap> doSend(HttpRequest<Buffer> request, @Nullable RequestOptions target) {
+    return guard(target, () -> {
+      Promise<IPersistentMap> promise = Promise.promise();
+      request.send(RingResponseAdapter.create(promise));
+      return promise.future();
+    });
   }
   
   public Future<IPersistentMap> send(HttpRequest<Buffer> request, Buffer body) {
+    return send(request, body, SendOptions.defaults());
+  }
+  
+  public Future<IPersistentMap> send(HttpRequest<Buffer> request, SendOptions options) {
+    ResponseBodyType bodyType = options.bodyType();
+    if (options.hasExchangePolicy()) {
+      return exchange(request, null, options);
+    }
+    Object key = options.requestKey();
+    RequestOptions target = options.requestOptions();
+    if ((bodyType == ResponseBodyType.BYTES || bodyType == ResponseBodyType.BUFFER)
+        && responseCache != null && ResponseCache.isCacheable(key, request)) {
+      return responseCache.send((RequestKey) key, request, bodyType, req -> guard(target, req::send));
+    }
+    if (bodyType == ResponseBodyType.BYTES) {
+      return coalescer == null ? doSend(request, target) : coalescer.send(key, request, req -> doSend(req, target));
+    }
+    return guard(target, () -> {
+      if (bodyType == ResponseBodyType.STREAM) {
+        return streamingSender.send(request, target, null);
+      }
+      Promise<IPersistentMap> promise = Promise.promise();
+      request.send(RingResponseAdapter.create(promise, bodyType));
+      return promise.future();
+    });
+  }
+  
+  public Future<IPersistentMap> send(HttpRequest<Buffer> request, Buffer body, SendOptions options) {
+    ResponseBodyType bodyType = options.bodyType();
+    if (options.hasExchangePolicy()) {
+      return exchange(request, body, options);
+    }
+    RequestOptions target = options.requestOptions();
+    return guard(target, () -> {
+      if (bodyType == ResponseBodyType.STREAM) {
+        return streamingSender.send(request, target, body);
+      }
+      Promise<IPersistentMap> promise = Promise.promise();
+      request.sendBuffer(body, RingResponseAdapter.create(promise, bodyType));
+      return promise.future();
+    });
+  }
+  
+  /**
+   * Sends a request that has a deadline, is hedged or retried. Each hedged
+   * request is retried separately, and the deadline applies to all of them.
+   */
+  private Future<IPersistentMap> exchange(HttpRequest<Buffer> request,
+                                          @Nullable Buffer body,
+                                          SendOptions options) {
+    ResponseBodyType bodyType = options.bodyType();
+    RetryPolicy retryPolicy = options.retryPolicy();
+    RequestOptions target = Objects.requireNonNull(
+        options.requestOptions(), "Request options are required by an exchange");
+    if (retryPolicy == null || !retryPolicy.retries(target.getMethod())) {
+      return HedgedExchange.execute(
+          vertx, options, bodyType != ResponseBodyType.STREAM,
+          handle -> sendAttempt(request, target, body, bodyType, handle), RingClient::discard);
+    }
+    String host = hostOf(target);
+    retryBudget.deposit(host);
+    return HedgedExchange.execute(
+        vertx, options, bodyType != ResponseBodyType.STREAM,
+        handle -> RetryingExchange.execute(
+            vertx, retryPolicy, retryBudget, host, handle,
+            () -> sendAttempt(request, target, body, bodyType, handle), RingClient::discard),
+        RingClient::discard);
+  }
+  
+  /**
+   * Sends the request as one attempt of an exchange that has a deadline, is
+   * hedged or retried. The attempt's {@link io.vertx.core.http.HttpClientRequest}
+   * is attached to the handle when it's sent, so it can be cancelled.
+   */
+  private Future<IPersistentMap> sendAttempt(HttpRequest<Buffer> request,
+                                             RequestOptions target,
+                                             @Nullable Buffer body,
+                                             ResponseBodyType bodyType,
+                                             ExchangeHandle handle) {
+    return guard(target, () -> streamingSender.send(request, target, body, bodyType, null, handle));
+  }
+  
+  /**
+   * Sends the request if the circuit breaker of its host allows it.
+   */
+  private <T> Future<T> guard(@Nullable RequestOptions target, Supplier<Future<T>> send) {
+    if (circuitBreakers == null) {
+      return send.get();
+    }
+    if (target == null) {
+      return Future.failedFuture(new IllegalArgumentException(
+          "Request options are required when the client has circuit breakers"));
+    }
+    return circuitBreakers.execute(hostOf(target), send);
+  }
+  
+  private static String hostOf(RequestOptions target) {
+    return target.getHost() + ':' + target.getPort();
+  }
+  
+  /**
+   * Closes the body of a streamed response that arrived too late.
+   */
+  private static void discard(IPersistentMap response) {
+    Object body = response.valAt(RingResponseField.BODY.keyword());
+    if (body instanceof Closeable) {
+      try {
+        ((Closeable) body).close();
+      } catch (IOException ignored) {
+        // Closing the stream only resumes and releases the connection
+      }
+    }
+  }
+  
+  public Future<IPersistentMap> sendStream(
+      HttpRequest<Buffer> request, ReadStream<Buffer> body, SendOptions options) {
+    return sendStream(request, body, options, null);
+  }
+  
+  /**
+   * The input stream is read on a worker thread while the request is being
+   * sent, and closed when the exchange is over.
+   */
+  public Future<IPersistentMap> sendStream(
+      HttpRequest<Buffer> request, InputStream body, SendOptions options) {
+    var stream = InputStreamReadStream.create(vertx, body);
+    return sendStream(request, stream, options, stream::close);
+  }
+  
+  /**
+   * The file is read asynchronously while the request is being sent, and the
+   * request has a {@code content-length} header with the size of the file
+   * unless one was already set.
+   */
+  public Future<IPersistentMap> sendFile(
+      HttpRequest<Buffer> request, Path body, SendOptions options) {
+    var fileSystem = vertx.fileSystem();
+    String path = body.toString();
+    return fileSystem
+        .props(path)
+        .compose(props -> fileSystem
+            .open(path, new OpenOptions().setRead(true).setWrite(false).setCreate(false))
+            .compose(file -> {
+              // The request can be sent more than once,
+              // so the header is added to a copy of it.
+              HttpRequest<Buffer> copy = request.copy();
+              if (!copy.headers().contains(HttpHeaders.CONTENT_LENGTH)) {
+                copy.putHeader(HttpHeaders.CONTENT_LENGTH.toString(), String.valueOf(props.size()));
+              }
+              return sendStream(copy, file, options, file::close);
+            }));
+  }
+  
+  /**
+   * A streamed body can only be read once, so the request is never hedged
+   * or retried, though it can have a deadline.
+   *
+   * @param onExchangeEnd Called when the response was fully received, or the
+   *                      request failed. A streamed response completes when
+   *                      the headers arrive, while the body may still be uploading.
+   */
+  private Future<IPersistentMap> sendStream(HttpRequest<Buffer> request,
+                                            ReadStream<Buffer> body,
+                                            SendOptions options,
+                                            @Nullable Runnable onExchangeEnd) {
+    if (options.deadlineMillis() > 0) {
+      return HedgedExchange.execute(
+          vertx, options, false,
+          handle -> sendStream(request, options.requestOptions(), body, options.bodyType(), onExchangeEnd, handle),
+          RingClient::discard);
+    }
+    return sendStream(request, options.requestOptions(), body, options.bodyType(), onExchangeEnd, null);
+  }
+  
+  private Future<IPersistentMap> sendStream(HttpRequest<Buffer> request,
+                                            @Nullable RequestOptions target,
+                                            ReadStream<Buffer> body,
+                                            ResponseBodyType bodyType,
+                                            @Nullable Runnable onExchangeEnd,
+                                            @Nullable ExchangeHandle handle) {
+    if (circuitBreakers != null) {
+      // Otherwise the exchange ends when the request completes
+      return guard(target, () -> doSendStream(request, target, body, bodyType, onExchangeEnd, handle))
+          .onFailure(ex -> {
+            if (onExchangeEnd != null && (target == null || ex instanceof CircuitBreakerOpenException)) {
+              onExchangeEnd.run();
+            }
+          });
+    }
+    return doSendStream(request, target, body, bodyType, onExchangeEnd, handle);
+  }
+  
+  private Future<IPersistentMap> doSendStream(HttpRequest<Buffer> request,
+                                              @Nullable RequestOptions target,
+                                              ReadStream<Buffer> body,
+                                              ResponseBodyType bodyType,
+                                              @Nullable Runnable onExchangeEnd,
+                                              @Nullable ExchangeHandle handle) {
+    if (target != null && (bodyType == ResponseBodyType.STREAM || handle != null)) {
+      return streamingSender.send(request, target, body, bodyType, onExchangeEnd, handle);
+    }
     Promise<IPersistentMap> promise = Promise.promise();
-    request.sendBuffer(body, RingResponseAdapter.create(promise));
+    request.sendStream(body, RingResponseAdapter.create(promise, bodyType));
+    if (onExchangeEnd != null) {
+      promise.future().onComplete(v -> onExchangeEnd.run());
+    }
     return promise.future();
   }
   
   public Future<IPersistentMap> sendForm(HttpRequest<Buffer> request, MultiMap body) {
-    Promise<IPersistentMap> promise = Promise.promise();
-    //Required to avoid NPE. See: https://github.com/vert-x3/vertx-web/issues/1832
-    request.headers();
-    request.sendForm(body, RingResponseAdapter.create(promise));
-    return promise.future();
+    return sendForm(request, body, SendOptions.defaults());
+  }
+  
+  /**
+   * A form is never hedged or retried, and has no deadline, so only the
+   * {@link SendOptions#requestOptions()} apply.
+   */
+  public Future<IPersistentMap> sendForm(HttpRequest<Buffer> request, MultiMap body, SendOptions options) {
+    return guard(options.requestOptions(), () -> {
+      Promise<IPersistentMap> promise = Promise.promise();
+      //Required to avoid NPE. See: https://github.com/vert-x3/vertx-web/issues/1832
+      request.headers();
+      request.sendForm(body, RingResponseAdapter.create(promise));
+      return promise.future();
+    });
   }
   
   public Future<IPersistentMap> sendMultiPartForm(HttpRequest<Buffer> request, MultipartForm body) {
-    Promise<IPersistentMap> promise = Promise.promise();
-    //Required to avoid NPE. See: https://github.com/vert-x3/vertx-web/issues/1832
-    request.sendMultipartForm(body, RingResponseAdapter.create(promise));
-    return promise.future();
+    return sendMultiPartForm(request, body, SendOptions.defaults());
+  }
+  
+  /**
+   * A form is never hedged or retried, and has no deadline, so only the
+   * {@link SendOptions#requestOptions()} apply.
+   */
+  public Future<IPersistentMap> sendMultiPartForm(HttpRequest<Buffer> request,
+                                                  MultipartForm body,
+                                                  SendOptions options) {
+    return guard(options.requestOptions(), () -> {
+      Promise<IPersistentMap> promise = Promise.promise();
+      //Required to avoid NPE. See: https://github.com/vert-x3/vertx-web/issues/1832
+      request.sendMultipartForm(body, RingResponseAdapter.create(promise));
+      return promise.future();
+    });
   }
   
   public void shutdown() {
     client.close();
+    if (circuitBreakers != null) {
+      circuitBreakers.close();
+    }
   }
   
 }
@@ -21,8 +21,10 @@ import clojure.lang.IMapEntry;
 import clojure.lang.IPersistentMap;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.RequestOptions;
 import io.vertx.ext.web.client.HttpRequest;
 import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.WebClientOptions;
 
 import java.util.Objects;
 
@@ -34,13 +36,23 @@ import static com.appsflyer.donkey.client.ring.ClojureRequestField.*;
 public final class RingRequestFactory implements RequestFactory<IPersistentMap> {
   
   public static RingRequestFactory create(WebClient client) {
-    return new RingRequestFactory(client);
+    return create(client, new WebClientOptions());
+  }
+  
+  /**
+   * @param options The options the client was created with. Their defaults
+   *                are used by {@link #requestOptions(IPersistentMap)}.
+   */
+  public static RingRequestFactory create(WebClient client, WebClientOptions options) {
+    return new RingRequestFactory(client, options);
   }
   
   private final WebClient client;
+  private final WebClientOptions options;
   
-  private RingRequestFactory(WebClient client) {
+  private RingRequestFactory(WebClient client, WebClientOptions options) {
     this.client = client;
+    this.options = options;
   }
   
   @Override
@@ -68,6 +80,38 @@ public final class RingRequestFactory implements RequestFactory<IPersistentMap>
     return request;
   }
   
+  /**
+   * Describes the request that {@link #create(IPersistentMap)} makes from the
+   * same {@code opts}, with the client's defaults for the host, port, ssl and
+   * redirects when they are missing. The headers and query parameters are not
+   * included, they should be read from the request itself.
+   */
+  public RequestOptions requestOptions(IPersistentMap opts) {
+    var method = (HttpMethod) METHOD.from(opts);
+    Objects.requireNonNull(method, "HTTP request method is missing");
+    
+    var res = new RequestOptions()
+        .setMethod(method)
+        .setFollowRedirects(options.isFollowRedirects());
+    var url = (String) URL.from(opts);
+    if (url == null) {
+      var host = (String) HOST.from(opts);
+      var port = (Integer) PORT.from(opts);
+      var ssl = (Boolean) SSL.from(opts);
+      res.setHost(host == null ? options.getDefaultHost() : host)
+         .setPort(port == null ? options.getDefaultPort() : port)
+         .setSsl(ssl == null ? options.isSsl() : ssl)
+         .setURI((String) URI.from(opts));
+    } else {
+      res.setAbsoluteURI(url);
+    }
+    var timeout = (Long) TIMEOUT.from(opts);
+    if (timeout != null) {
+      res.setTimeout(timeout * 1000);
+    }
+    return res;
+  }
+  
   private void addPort(HttpRequest<Buffer> request, IPersistentMap opts) {
     var port = (Integer) PORT.from(opts);
     if (port != null) {
@@ -18,6 +18,7 @@
 package com.appsflyer.donkey.client.ring;
 
 import clojure.lang.IPersistentMap;
+import com.appsflyer.donkey.client.ResponseBodyType;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
 import io.vertx.core.Promise;
@@ -34,14 +35,29 @@ import static com.appsflyer.donkey.util.TypeConverter.toPersistentMap;
  */
 public final class RingResponseAdapter implements Handler<AsyncResult<HttpResponse<Buffer>>> {
   
+  private static final Buffer EMPTY_BUFFER = Buffer.buffer(0);
+  
   public static RingResponseAdapter create(Promise<IPersistentMap> promise) {
-    return new RingResponseAdapter(promise);
+    return new RingResponseAdapter(promise, ResponseBodyType.BYTES);
+  }
+  
+  /**
+   * @param bodyType Either {@link ResponseBodyType#BYTES} or {@link ResponseBodyType#BUFFER}.
+   * Streamed responses are not handled by this class.
+   */
+  public static RingResponseAdapter create(Promise<IPersistentMap> promise, ResponseBodyType bodyType) {
+    if (bodyType == ResponseBodyType.STREAM) {
+      throw new IllegalArgumentException("Streamed responses are not supported");
+    }
+    return new RingResponseAdapter(promise, bodyType);
   }
   
   private final Promise<IPersistentMap> promise;
+  private final ResponseBodyType bodyType;
   
-  private RingResponseAdapter(Promise<IPersistentMap> promise) {
+  private RingResponseAdapter(Promise<IPersistentMap> promise, ResponseBodyType bodyType) {
     this.promise = promise;
+    this.bodyType = bodyType;
   }
   
   @Override
@@ -53,7 +69,7 @@ public final class RingResponseAdapter implements Handler<AsyncResult<HttpRespon
       var valueIndex = 0;
       for (var i = 0; i < fields.length; i++) {
         var field = fields[i];
-        Object v = field.from(res);
+        Object v = field == RingResponseField.BODY ? body(res) : field.from(res);
         if (v != null) {
           values[valueIndex] = field.keyword();
           values[valueIndex + 1] = v;
@@ -72,4 +88,12 @@ public final class RingResponseAdapter implements Handler<AsyncResult<HttpRespon
       promise.fail(event.cause());
     }
   }
+  
+  private Object body(HttpResponse<Buffer> res) {
+    if (bodyType == ResponseBodyType.BUFFER) {
+      Buffer body = res.body();
+      return body == null ? EMPTY_BUFFER : body;
+    }
+    return RingResponseField.BODY.from(res);
+  }
 }
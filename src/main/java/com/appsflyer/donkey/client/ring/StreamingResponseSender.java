@@ -0,0 +1,189 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client.ring;
+
+import clojure.lang.IPersistentMap;
+import com.appsflyer.donkey.client.ResponseBodyType;
+import com.appsflyer.donkey.util.ReadStreamInputStream;
+import com.appsflyer.donkey.util.TypeConverter;
+import io.netty.handler.codec.http.QueryStringEncoder;
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.RequestOptions;
+import io.vertx.core.streams.Pipe;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.web.client.HttpRequest;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+
+import static com.appsflyer.donkey.util.TypeConverter.toPersistentMap;
+
+/**
+ * Sends a request with the underlying {@link HttpClient}, and completes the
+ * response as soon as its headers arrive, or once its body was read when the
+ * response is buffered.
+ * <p></p>
+ * {@link io.vertx.ext.web.client.WebClient} always reads the whole body before
+ * completing the response. Here the {@code :body} of the Ring response is a
+ * {@link ReadStreamInputStream} that is fed from the connection, and pauses it
+ * when the reader falls behind. The stream should be read on a thread other
+ * than the event loop, and closed if it isn't read to the end, otherwise the
+ * connection is not returned to the pool.
+ * <p></p>
+ * The request is sent with the method, address and timeout of the
+ * {@link RequestOptions} that were made from the same request map, and the
+ * headers and query parameters that were set on the {@link HttpRequest}.
+ * Both include the defaults of the
+ * {@link io.vertx.ext.web.client.WebClientOptions} such as the user agent and
+ * the default host and port. The {@link HttpClient} is created with the same
+ * options, so compression and the connection pool settings apply as well.
+ * The request does not go through the interceptors of the
+ * {@link io.vertx.ext.web.client.WebClient}.
+ * <p></p>
+ * Each attempt of an exchange that has a deadline, is hedged or retried is
+ * sent here as well, since its {@link io.vertx.core.http.HttpClientRequest}
+ * has to be attached to the {@link ExchangeHandle} so it can be cancelled,
+ * and the WebClient doesn't expose it.
+ */
+final class StreamingResponseSender {
+  
+  static StreamingResponseSender create(HttpClient client) {
+    return new StreamingResponseSender(client);
+  }
+  
+  private final HttpClient client;
+  
+  private StreamingResponseSender(HttpClient client) {
+    this.client = client;
+  }
+  
+  Future<IPersistentMap> send(HttpRequest<Buffer> request, RequestOptions target, @Nullable Object body) {
+    return send(request, target, body, ResponseBodyType.STREAM, null, null);
+  }
+  
+  /**
+   * @param target        The method, address, uri and timeout of the request.
+   * @param body          Either null, a {@link Buffer}, or a {@link ReadStream} of buffers.
+   * @param bodyType      How the body of the response is returned.
+   * @param onExchangeEnd Called when the response body was fully received,
+   *                      or when the request failed.
+   * @param handle        Cancels the request when the exchange has a deadline.
+   */
+  @SuppressWarnings("unchecked")
+  Future<IPersistentMap> send(HttpRequest<Buffer> request,
+                              RequestOptions target,
+                              @Nullable Object body,
+                              ResponseBodyType bodyType,
+                              @Nullable Runnable onExchangeEnd,
+                              @Nullable ExchangeHandle handle) {
+    // The stream is paused until the request is ready to be written.
+    Pipe<Buffer> pipe = body instanceof ReadStream ? ((ReadStream<Buffer>) body).pipe() : null;
+    return client.request(requestOptions(request, target))
+                 .onFailure(ex -> {
+                   if (pipe != null) {
+                     pipe.close();
+                   }
+                   run(onExchangeEnd);
+                 })
+                 .compose(req -> {
+                   if (handle != null) {
+                     handle.attach(req);
+                   }
+                   Future<IPersistentMap> res;
+                   if (bodyType == ResponseBodyType.STREAM) {
+                     res = req.response()
+                              .onFailure(ex -> run(onExchangeEnd))
+                              .map(response -> {
+                                response.end().onComplete(v -> run(onExchangeEnd));
+                                // The body handlers have to be set before returning to the event loop,
+                                // or data that arrives in the meantime would be lost.
+                                return toRingResponse(response, ReadStreamInputStream.create(
+                                    Vertx.currentContext(), response));
+                              });
+                   } else {
+                     res = req.response()
+                              .compose(response -> response.body().map(buffer -> toRingResponse(
+                                  response, bodyType == ResponseBodyType.BUFFER ? buffer : buffer.getBytes())))
+                              .onComplete(v -> run(onExchangeEnd));
+                   }
+                   if (pipe != null) {
+                     if (!req.headers().contains(HttpHeaders.CONTENT_LENGTH)) {
+                       req.setChunked(true);
+                     }
+                     pipe.endOnFailure(false)
+                         .to(req, ar -> {
+                           if (ar.failed()) {
+                             req.reset(0, ar.cause());
+                           }
+                         });
+                   } else if (body == null) {
+                     req.end();
+                   } else {
+                     req.end((Buffer) body);
+                   }
+                   return res;
+                 });
+  }
+  
+  private static void run(@Nullable Runnable runnable) {
+    if (runnable != null) {
+      runnable.run();
+    }
+  }
+  
+  private static RequestOptions requestOptions(HttpRequest<Buffer> request, RequestOptions target) {
+    // The query parameters of the request include those in the target's uri.
+    String uri = target.getURI();
+    int query = uri.indexOf('?');
+    if (query >= 0) {
+      uri = uri.substring(0, query);
+    }
+    MultiMap params = request.queryParams();
+    if (!params.isEmpty()) {
+      var encoder = new QueryStringEncoder(uri);
+      for (Map.Entry<String, String> param : params) {
+        encoder.addParam(param.getKey(), param.getValue());
+      }
+      uri = encoder.toString();
+    }
+    return new RequestOptions(target)
+        .setURI(uri)
+        .setHeaders(MultiMap.caseInsensitiveMultiMap().addAll(request.headers()));
+  }
+  
+  /**
+   * @param body Either a {@link ReadStreamInputStream}, a {@link Buffer} or a {@code byte[]}.
+   */
+  private static IPersistentMap toRingResponse(HttpClientResponse res, Object body) {
+    MultiMap headers = res.headers();
+    if (headers.isEmpty()) {
+      return toPersistentMap(new Object[]{
+          RingResponseField.STATUS.keyword(), res.statusCode(),
+          RingResponseField.BODY.keyword(), body});
+    }
+    return toPersistentMap(new Object[]{
+        RingResponseField.STATUS.keyword(), res.statusCode(),
+        RingResponseField.HEADERS.keyword(), toPersistentMap(headers, TypeConverter::stringJoiner),
+        RingResponseField.BODY.keyword(), body});
+  }
+}
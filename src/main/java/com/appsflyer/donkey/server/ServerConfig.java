@@ -18,8 +18,10 @@
 package com.appsflyer.donkey.server;
 
 import com.appsflyer.donkey.server.handler.ErrorHandler;
+import com.appsflyer.donkey.server.handler.LoadSheddingConfig;
 import com.appsflyer.donkey.server.route.RouteCreatorFactory;
 import com.appsflyer.donkey.server.route.RouteList;
+import com.appsflyer.donkey.server.router.RouteMatcher;
 import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpServerOptions;
 
@@ -39,11 +41,13 @@ public final class ServerConfig {
   private HttpServerOptions serverOptions;
   private RouteCreatorFactory routeCreatorFactory;
   private RouteList routeList;
+  private RouteMatcher routeMatcher = RouteMatcher.LINEAR;
   private ErrorHandler<?> errorHandler;
   private int instances;
   private boolean addDateHeader;
   private boolean addContentTypeHeader;
   private boolean addServerHeader;
+  private LoadSheddingConfig loadShedding;
   
   private ServerConfig() {}
   
@@ -63,6 +67,10 @@ public final class ServerConfig {
     return routeList;
   }
   
+  public RouteMatcher routeMatcher() {
+    return routeMatcher;
+  }
+  
   ErrorHandler<?> errorHandler() {
     return errorHandler;
   }
@@ -83,6 +91,14 @@ public final class ServerConfig {
     return addServerHeader;
   }
   
+  /**
+   * @return The admission controller configuration,
+   * or {@code null} when load shedding is disabled.
+   */
+  LoadSheddingConfig loadShedding() {
+    return loadShedding;
+  }
+  
   public static final class ServerConfigBuilder {
     
     public static ServerConfigBuilder create() {
@@ -115,6 +131,11 @@ public final class ServerConfig {
       return this;
     }
   
+    public ServerConfigBuilder routeMatcher(RouteMatcher routeMatcher) {
+      instance.routeMatcher = routeMatcher;
+      return this;
+    }
+  
     public ServerConfigBuilder errorHandler(ErrorHandler<?> errorHandler) {
       instance.errorHandler = errorHandler;
       return this;
@@ -140,6 +161,11 @@ public final class ServerConfig {
       return this;
     }
     
+    public ServerConfigBuilder loadShedding(LoadSheddingConfig loadShedding) {
+      instance.loadShedding = loadShedding;
+      return this;
+    }
+    
     public ServerConfig build() {
       assertValidState();
       var res = instance;
@@ -152,6 +178,7 @@ public final class ServerConfig {
       Objects.requireNonNull(instance.serverOptions, "Server options is missing");
       Objects.requireNonNull(instance.routeCreatorFactory, "Route creator factory is missing");
       Objects.requireNonNull(instance.routeList, "Route definition list is missing");
+      Objects.requireNonNull(instance.routeMatcher, "Route matcher is missing");
       if (instance.instances < 1) {
         throw new IllegalArgumentException("Number of instances must be greater than 0");
       }
@@ -20,6 +20,7 @@ package com.appsflyer.donkey.server;
 import com.appsflyer.donkey.server.exception.ServerInitializationException;
 import com.appsflyer.donkey.server.exception.ServerShutdownException;
 import com.appsflyer.donkey.server.handler.DateHeaderHandler;
+import com.appsflyer.donkey.server.handler.LoadSheddingHandler;
 import com.appsflyer.donkey.server.handler.ServerHeaderHandler;
 import com.appsflyer.donkey.server.route.RouteDefinition;
 import io.vertx.core.DeploymentOptions;
@@ -66,6 +67,12 @@ public final class ServerImpl implements Server {
     if (config.addServerHeader()) {
       handlers.add(ServerHeaderHandler.create());
     }
+    // Handlers are added to the front of the list one after the other,
+    // so the last one runs first. Load shedding has to run before anything
+    // else is done with the request.
+    if (config.loadShedding() != null) {
+      handlers.add(LoadSheddingHandler.create(config.loadShedding()));
+    }
   
     handlers.stream()
             .map(h -> RouteDefinition.create().handler(h))
@@ -18,17 +18,27 @@
 package com.appsflyer.donkey.server;
 
 import com.appsflyer.donkey.server.handler.ErrorHandler;
+import com.appsflyer.donkey.server.handler.WorkerPool;
+import com.appsflyer.donkey.server.route.RouteDefinition;
+import com.appsflyer.donkey.server.route.WorkerPoolConfig;
 import com.appsflyer.donkey.server.router.RouterFactoryImpl;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.ext.web.Router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
 public class ServerVerticle extends AbstractVerticle {
   
   private static final Logger logger = LoggerFactory.getLogger(ServerVerticle.class.getName());
   private final ServerConfig config;
+  private final List<WorkerPool> workerPools = new ArrayList<>();
   
   ServerVerticle(ServerConfig config) {
     this.config = config;
@@ -36,11 +46,21 @@ public class ServerVerticle extends AbstractVerticle {
   
   @Override
   public void start(Promise<Void> promise) {
+    Router router;
+    try {
+      acquireWorkerPools();
+      router = createRouter();
+    } catch (RuntimeException ex) {
+      releaseWorkerPools();
+      promise.fail(ex);
+      return;
+    }
     vertx.createHttpServer(config.serverOptions())
-         .requestHandler(createRouter())
+         .requestHandler(router)
          .listen(res -> {
            if (res.failed()) {
              logger.error(res.cause().getMessage(), res.cause());
+             releaseWorkerPools();
              promise.fail(res.cause());
            } else {
              promise.complete();
@@ -48,8 +68,35 @@ public class ServerVerticle extends AbstractVerticle {
          });
   }
   
+  @Override
+  public void stop(Promise<Void> promise) {
+    releaseWorkerPools().onComplete(v -> promise.complete());
+  }
+  
+  /**
+   * Acquires the worker pools of the routes, so they are created with the
+   * server and fail it if two routes define the same pool differently.
+   */
+  private void acquireWorkerPools() {
+    for (RouteDefinition rd : config.routeList().routes()) {
+      WorkerPoolConfig workerPool = rd.workerPool();
+      if (workerPool != null) {
+        workerPools.add(WorkerPool.acquire(vertx, workerPool));
+      }
+    }
+  }
+  
+  @SuppressWarnings("rawtypes")
+  private Future<?> releaseWorkerPools() {
+    List<Future> closed = workerPools.stream()
+                                     .map(WorkerPool::release)
+                                     .collect(Collectors.toList());
+    workerPools.clear();
+    return CompositeFuture.join(closed);
+  }
+  
   private Router createRouter() {
-    var router = RouterFactoryImpl.create(vertx, config.routeList())
+    var router = RouterFactoryImpl.create(vertx, config.routeList(), config.routeMatcher())
                                   .withRouteCreator(config.routeCreatorFactory());
     ErrorHandler<?> errorHandler = config.errorHandler();
     if (errorHandler != null) {
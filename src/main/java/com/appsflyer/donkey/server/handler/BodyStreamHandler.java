@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.appsflyer.donkey.server.handler;
+
+import com.appsflyer.donkey.util.ReadStreamInputStream;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+
+import java.io.InputStream;
+
+/**
+ * Handler that exposes the request body as an {@link InputStream} instead of
+ * buffering it in memory.
+ * <p>
+ * The stream is added to the {@link RoutingContext} under
+ * {@link #BODY_STREAM}. It is closed when the response ends, so any part of
+ * the body that was not consumed by the handler is discarded.
+ * <p>
+ * Must be added to a route before any asynchronous handler, otherwise
+ * some of the body may be lost.
+ */
+public final class BodyStreamHandler implements Handler<RoutingContext> {
+  
+  public static final String BODY_STREAM = "BODY_STREAM";
+  
+  public static BodyStreamHandler create() {
+    return new BodyStreamHandler();
+  }
+  
+  private BodyStreamHandler() {}
+  
+  @Override
+  public void handle(RoutingContext ctx) {
+    var request = ctx.request();
+    if (request.isEnded()) {
+      ctx.put(BODY_STREAM, InputStream.nullInputStream());
+    } else {
+      var stream = ReadStreamInputStream.create(ctx.vertx().getOrCreateContext(), request);
+      ctx.addEndHandler(v -> stream.close());
+      ctx.put(BODY_STREAM, stream);
+    }
+    ctx.next();
+  }
+}
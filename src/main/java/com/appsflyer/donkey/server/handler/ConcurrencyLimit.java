@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.handler;
+
+/**
+ * A concurrency limit that adapts to the latency of completed requests.
+ * Implementations are thread safe.
+ */
+interface ConcurrencyLimit {
+  
+  static ConcurrencyLimit create(LoadSheddingConfig config) {
+    switch (config.algorithm()) {
+      case GRADIENT:
+        return new GradientLimit(config);
+      case AIMD:
+      default:
+        return new AimdLimit(config);
+    }
+  }
+  
+  /**
+   * @return The current number of requests that can be processed concurrently.
+   */
+  int limit();
+  
+  /**
+   * Update the limit after a request completes.
+   *
+   * @param latencyNanos The time it took to process the request.
+   * @param inFlight     The number of requests in flight when it completed.
+   * @param congested    Whether the event loop is lagging.
+   */
+  void onSample(long latencyNanos, int inFlight, boolean congested);
+  
+  final class AimdLimit implements ConcurrencyLimit {
+    
+    private static final double BACKOFF_RATIO = 0.9;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private volatile int limit;
+    
+    private AimdLimit(LoadSheddingConfig config) {
+      minLimit = config.minLimit();
+      maxLimit = config.maxLimit();
+      latencyThresholdNanos = config.latencyThreshold().toNanos();
+      limit = config.initialLimit();
+    }
+    
+    @Override
+    public int limit() {
+      return limit;
+    }
+    
+    @Override
+    public synchronized void onSample(long latencyNanos, int inFlight, boolean congested) {
+      if (congested || latencyNanos > latencyThresholdNanos) {
+        limit = Math.max(minLimit, (int) (limit * BACKOFF_RATIO));
+      } else if (inFlight * 2 >= limit) {
+        // Only grow when the limit is actually being used, otherwise a lightly
+        // loaded server would end up with a limit that doesn't protect it.
+        limit = Math.min(maxLimit, limit + 1);
+      }
+    }
+  }
+  
+  final class GradientLimit implements ConcurrencyLimit {
+    
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double LONG_WINDOW_FACTOR = 2.0 / (600 + 1);
+    private final int minLimit;
+    private final int maxLimit;
+    private double estimatedLimit;
+    private double longLatency;
+    private volatile int limit;
+    
+    private GradientLimit(LoadSheddingConfig config) {
+      minLimit = config.minLimit();
+      maxLimit = config.maxLimit();
+      estimatedLimit = config.initialLimit();
+      limit = config.initialLimit();
+    }
+    
+    @Override
+    public int limit() {
+      return limit;
+    }
+    
+    @Override
+    public synchronized void onSample(long latencyNanos, int inFlight, boolean congested) {
+      double latency = Math.max(1, latencyNanos);
+      if (longLatency == 0) {
+        longLatency = latency;
+      } else {
+        longLatency += (latency - longLatency) * LONG_WINDOW_FACTOR;
+      }
+      // After a long period of overload the long term average is inflated.
+      // Let it drift back towards the current latency so the limit can recover.
+      if (longLatency / latency > 2) {
+        longLatency *= 0.95;
+      }
+      if (!congested && inFlight * 2 < estimatedLimit) {
+        return;
+      }
+      
+      double gradient = congested ?
+          MIN_GRADIENT :
+          Math.max(MIN_GRADIENT, Math.min(1.0, TOLERANCE * longLatency / latency));
+      double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+      newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+      estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+      limit = (int) estimatedLimit;
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.handler;
+
+import io.vertx.core.Context;
+import io.vertx.ext.web.RoutingContext;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * A routing context for handlers that run off the event loop. Calls to
+ * {@link RoutingContext#next()} and {@link RoutingContext#fail} are
+ * dispatched to the event loop context that received the request, and every
+ * other call is delegated as is.
+ * <p></p>
+ * It's a {@link Proxy} of the public {@link RoutingContext} interface, so it
+ * doesn't depend on the implementation classes of Vert.x Web.
+ */
+final class ContextBoundRoutingContext implements InvocationHandler {
+  
+  static RoutingContext create(RoutingContext ctx, Context context) {
+    return (RoutingContext) Proxy.newProxyInstance(
+        RoutingContext.class.getClassLoader(),
+        new Class<?>[]{RoutingContext.class},
+        new ContextBoundRoutingContext(ctx, context));
+  }
+  
+  private final RoutingContext ctx;
+  private final Context context;
+  
+  private ContextBoundRoutingContext(RoutingContext ctx, Context context) {
+    this.ctx = ctx;
+    this.context = context;
+  }
+  
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    String name = method.getName();
+    if (method.getDeclaringClass() == Object.class) {
+      if ("equals".equals(name)) {
+        return proxy == args[0];
+      }
+      if ("hashCode".equals(name)) {
+        return System.identityHashCode(proxy);
+      }
+      return "ContextBoundRoutingContext(" + ctx + ')';
+    }
+    if ("next".equals(name) && method.getParameterCount() == 0) {
+      context.runOnContext(v -> ctx.next());
+      return null;
+    }
+    if ("fail".equals(name)) {
+      context.runOnContext(v -> fail(args));
+      return null;
+    }
+    Object res;
+    try {
+      res = method.invoke(ctx, args);
+    } catch (InvocationTargetException ex) {
+      throw ex.getCause();
+    }
+    // Fluent methods return the context, which must not escape
+    // because calling `next()` on it would run on the current thread.
+    return res == ctx ? proxy : res;
+  }
+  
+  private void fail(Object[] args) {
+    if (args.length == 2) {
+      ctx.fail((int) args[0], (Throwable) args[1]);
+    } else if (args[0] instanceof Throwable) {
+      ctx.fail((Throwable) args[0]);
+    } else {
+      ctx.fail((int) args[0]);
+    }
+  }
+}
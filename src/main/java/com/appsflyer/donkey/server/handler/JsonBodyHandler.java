@@ -0,0 +1,181 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.handler;
+
+import com.appsflyer.donkey.server.exception.DeserializationException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.web.RoutingContext;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Handler that checks a JSON request body as it arrives, instead of after
+ * it's been buffered in memory.
+ * <p>
+ * Each chunk of the body is fed to Jackson's non-blocking parser on the event
+ * loop, and added to a {@link CompositeByteBuf} without being copied. When
+ * the request ends, the body is added to the {@link RoutingContext} under
+ * {@link #JSON_BODY} as a {@link Buffer}, and the next handler is called.
+ * The body is bound to a value by
+ * {@link com.appsflyer.donkey.server.ring.middleware.JsonBodyDeserializer},
+ * with its own {@code ObjectMapper} and its features.
+ * <p>
+ * The parser only rejects input that no {@code ObjectMapper} can be configured
+ * to read, so it allows every {@link JsonReadFeature} it supports. The
+ * exception are numbers with a leading decimal point, e.g {@code .5}, which
+ * are always rejected.
+ * <p>
+ * The request fails with {@code 400} as soon as the body is found to be
+ * malformed. Must be added to a route before any asynchronous handler,
+ * otherwise some of the body may be lost.
+ */
+public final class JsonBodyHandler implements Handler<RoutingContext> {
+  
+  public static final String JSON_BODY = "JSON_BODY";
+  private static final JsonFactory JSON_FACTORY = lenientFactory();
+  
+  public static JsonBodyHandler create() {
+    return new JsonBodyHandler();
+  }
+  
+  private static JsonFactory lenientFactory() {
+    var builder = JsonFactory.builder();
+    for (JsonReadFeature feature : JsonReadFeature.values()) {
+      builder.enable(feature);
+    }
+    return builder.build();
+  }
+  
+  private JsonBodyHandler() {}
+  
+  @Override
+  public void handle(RoutingContext ctx) {
+    var request = ctx.request();
+    if (request.isEnded()) {
+      ctx.next();
+      return;
+    }
+    Validator validator;
+    try {
+      validator = new Validator();
+    } catch (IOException ex) {
+      ctx.fail(ex);
+      return;
+    }
+    request.exceptionHandler(ctx::fail)
+           .handler(chunk -> {
+             if (!ctx.failed()) {
+               try {
+                 validator.feed(chunk);
+               } catch (IOException ex) {
+                 fail(ctx, ex);
+               }
+             }
+           })
+           .endHandler(v -> {
+             if (ctx.failed()) {
+               return;
+             }
+             try {
+               Buffer body = validator.end();
+               if (body != null) {
+                 ctx.put(JSON_BODY, body);
+               }
+               ctx.next();
+             } catch (IOException ex) {
+               fail(ctx, ex);
+             }
+           });
+  }
+  
+  private static void fail(RoutingContext ctx, IOException ex) {
+    var cause = new DeserializationException(ex.getMessage(), ex);
+    ctx.fail(cause.code(), cause);
+  }
+  
+  /**
+   * Feeds chunks of the body to a non-blocking parser, that skips the tokens
+   * as soon as they are complete, and keeps the chunks.
+   * <p>
+   * The chunks are unpooled copies of the data read from the connection, so
+   * they don't have to be released. Chunks that are not backed by an array
+   * are copied to a scratch array before they are parsed, that is reused for
+   * the next chunks.
+   */
+  private static final class Validator {
+    
+    private static final int INITIAL_SCRATCH_SIZE = 8 * 1024;
+    
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final CompositeByteBuf body = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+    private byte[] scratch = new byte[0];
+    private boolean empty = true;
+    
+    private Validator() throws IOException {
+      parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+      feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+    
+    private void feed(Buffer chunk) throws IOException {
+      ByteBuf buf = chunk.getByteBuf();
+      int length = buf.readableBytes();
+      if (length == 0) {
+        return;
+      }
+      if (buf.hasArray()) {
+        int start = buf.arrayOffset() + buf.readerIndex();
+        feeder.feedInput(buf.array(), start, start + length);
+      } else {
+        if (scratch.length < length) {
+          scratch = new byte[Math.max(length, Math.max(INITIAL_SCRATCH_SIZE, scratch.length * 2))];
+        }
+        buf.getBytes(buf.readerIndex(), scratch, 0, length);
+        feeder.feedInput(scratch, 0, length);
+      }
+      body.addComponent(true, buf);
+      drain();
+    }
+    
+    /**
+     * @return The body, or {@code null} if it has no tokens.
+     */
+    private @Nullable Buffer end() throws IOException {
+      feeder.endOfInput();
+      drain();
+      parser.close();
+      return empty ? null : Buffer.buffer(body);
+    }
+    
+    private void drain() throws IOException {
+      JsonToken token;
+      while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+        empty = false;
+      }
+    }
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.handler;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Configuration of the server's admission controller.
+ * See {@link LoadSheddingHandler}.
+ */
+public final class LoadSheddingConfig {
+  
+  /**
+   * The algorithm used to adjust the concurrency limit.
+   */
+  public enum Algorithm {
+    /**
+     * Additive increase, multiplicative decrease. The limit grows by 1 while
+     * requests complete within the latency threshold, and is cut by 10% when a
+     * request is slower than the threshold or the event loop lags.
+     */
+    AIMD,
+    /**
+     * The limit follows the ratio between the long term average latency and
+     * the latency of recent requests. It shrinks as soon as requests start
+     * queueing, without having to define a latency threshold.
+     */
+    GRADIENT
+  }
+  
+  private Algorithm algorithm = Algorithm.AIMD;
+  private int initialLimit = 100;
+  private int minLimit = 10;
+  private int maxLimit = 1000;
+  private Duration maxEventLoopLag = Duration.ofMillis(100);
+  private Duration latencyThreshold = Duration.ofSeconds(1);
+  private Duration retryAfter = Duration.ofSeconds(1);
+  
+  /**
+   * The algorithm used to adjust the concurrency limit.
+   * Defaults to {@link Algorithm#AIMD}.
+   */
+  Algorithm algorithm() {
+    return algorithm;
+  }
+  
+  /**
+   * The number of concurrent requests allowed per verticle before any
+   * request completes. Defaults to 100.
+   */
+  int initialLimit() {
+    return initialLimit;
+  }
+  
+  /**
+   * The lowest the concurrency limit can go. Defaults to 10.
+   */
+  int minLimit() {
+    return minLimit;
+  }
+  
+  /**
+   * The highest the concurrency limit can go. Defaults to 1000.
+   */
+  int maxLimit() {
+    return maxLimit;
+  }
+  
+  /**
+   * New requests are rejected while the event loop lags by more than this
+   * duration. Defaults to 100 milliseconds.
+   */
+  Duration maxEventLoopLag() {
+    return maxEventLoopLag;
+  }
+  
+  /**
+   * A request that takes longer than this duration is a sign of congestion,
+   * and decreases the limit. Only used by {@link Algorithm#AIMD}.
+   * Defaults to 1 second.
+   */
+  Duration latencyThreshold() {
+    return latencyThreshold;
+  }
+  
+  /**
+   * The value of the {@code Retry-After} header of rejected requests, rounded
+   * up to whole seconds. Defaults to 1 second.
+   */
+  Duration retryAfter() {
+    return retryAfter;
+  }
+  
+  public static class Builder {
+    
+    private LoadSheddingConfig instance;
+    
+    public Builder() {
+      instance = new LoadSheddingConfig();
+    }
+    
+    public Builder algorithm(Algorithm algorithm) {
+      Objects.requireNonNull(algorithm, "algorithm cannot be null");
+      instance.algorithm = algorithm;
+      return this;
+    }
+    
+    public Builder initialLimit(int limit) {
+      instance.initialLimit = limit;
+      return this;
+    }
+    
+    public Builder minLimit(int limit) {
+      instance.minLimit = limit;
+      return this;
+    }
+    
+    public Builder maxLimit(int limit) {
+      instance.maxLimit = limit;
+      return this;
+    }
+    
+    public Builder maxEventLoopLag(Duration duration) {
+      Objects.requireNonNull(duration, "maxEventLoopLag cannot be null");
+      instance.maxEventLoopLag = duration;
+      return this;
+    }
+    
+    public Builder latencyThreshold(Duration duration) {
+      Objects.requireNonNull(duration, "latencyThreshold cannot be null");
+      instance.latencyThreshold = duration;
+      return this;
+    }
+    
+    public Builder retryAfter(Duration duration) {
+      Objects.requireNonNull(duration, "retryAfter cannot be null");
+      instance.retryAfter = duration;
+      return this;
+    }
+    
+    public LoadSheddingConfig build() {
+      assertValidState();
+      var res = instance;
+      instance = null;
+      return res;
+    }
+    
+    private void assertValidState() {
+      if (instance.minLimit < 1) {
+        throw new IllegalArgumentException("min limit must be greater than 0");
+      }
+      if (instance.maxLimit < instance.minLimit) {
+        throw new IllegalArgumentException("max limit cannot be less than min limit");
+      }
+      if (instance.initialLimit < instance.minLimit || instance.initialLimit > instance.maxLimit) {
+        throw new IllegalArgumentException("initial limit must be between min limit and max limit");
+      }
+      if (instance.maxEventLoopLag.isNegative() || instance.maxEventLoopLag.isZero()) {
+        throw new IllegalArgumentException("max event loop lag must be positive");
+      }
+      if (instance.latencyThreshold.isNegative() || instance.latencyThreshold.isZero()) {
+        throw new IllegalArgumentException("latency threshold must be positive");
+      }
+      if (instance.retryAfter.isNegative()) {
+        throw new IllegalArgumentException("retry after cannot be negative");
+      }
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.handler;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+
+/**
+ * Admission controller that rejects requests before they reach a route when
+ * the server is overloaded.
+ * <p></p>
+ * Each verticle keeps its own count of in flight requests and its own
+ * {@link ConcurrencyLimit}, and measures the lag of its event loop with a
+ * timer. A request is rejected with {@code 503 Service Unavailable} and a
+ * {@code Retry-After} header when the event loop lags by more than
+ * {@link LoadSheddingConfig#maxEventLoopLag()}, or when the number of
+ * requests in flight reached the limit. Rejecting a request early is much
+ * cheaper than processing it, so the latency of the requests that are
+ * admitted stays bounded. Rejected requests don't go through the server's
+ * error handlers.
+ * <p></p>
+ * The handler should be the first one in the route list.
+ */
+public final class LoadSheddingHandler implements Handler<RoutingContext> {
+  
+  private static final String RETRY_AFTER_HEADER = "Retry-After";
+  private static final long LAG_PROBE_INTERVAL_MILLIS = 50;
+  
+  public static LoadSheddingHandler create(LoadSheddingConfig config) {
+    return new LoadSheddingHandler(config);
+  }
+  
+  private final LoadSheddingConfig config;
+  private final long maxLagNanos;
+  private final String retryAfter;
+  // Key of the verticle's admission state in the context data.
+  private final Object stateKey = new Object();
+  
+  private LoadSheddingHandler(LoadSheddingConfig config) {
+    Objects.requireNonNull(config, "Load shedding config cannot be null");
+    this.config = config;
+    maxLagNanos = config.maxEventLoopLag().toNanos();
+    long retryAfterMillis = config.retryAfter().toMillis();
+    retryAfter = String.valueOf(TimeUnit.MILLISECONDS.toSeconds(retryAfterMillis + 999));
+  }
+  
+  @Override
+  public void handle(RoutingContext ctx) {
+    AdmissionState state = state(ctx.vertx());
+    if (!state.tryAcquire()) {
+      reject(ctx);
+      return;
+    }
+    
+    long start = System.nanoTime();
+    ctx.addEndHandler(v -> state.release(System.nanoTime() - start));
+    ctx.next();
+  }
+  
+  /**
+   * The response is written here rather than failing the context. Otherwise
+   * every rejected request would go through the error handlers, and be logged
+   * as an unhandled failure when there's no handler for 503, which is exactly
+   * the kind of work we want to avoid while overloaded.
+   */
+  private void reject(RoutingContext ctx) {
+    ctx.response()
+       .setStatusCode(SERVICE_UNAVAILABLE.code())
+       .putHeader(RETRY_AFTER_HEADER, retryAfter)
+       .end();
+  }
+  
+  private AdmissionState state(Vertx vertx) {
+    Context context = vertx.getOrCreateContext();
+    AdmissionState state = context.get(stateKey);
+    if (state == null) {
+      state = new AdmissionState(vertx);
+      context.put(stateKey, state);
+      state.probeLag();
+    }
+    return state;
+  }
+  
+  private final class AdmissionState {
+    
+    private final Vertx vertx;
+    private final ConcurrencyLimit limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile long lagNanos;
+    
+    private AdmissionState(Vertx vertx) {
+      this.vertx = vertx;
+      limit = ConcurrencyLimit.create(config);
+    }
+    
+    private boolean tryAcquire() {
+      if (lagNanos > maxLagNanos) {
+        return false;
+      }
+      int current;
+      do {
+        current = inFlight.get();
+        if (current >= limit.limit()) {
+          return false;
+        }
+      } while (!inFlight.compareAndSet(current, current + 1));
+      return true;
+    }
+    
+    private void release(long latencyNanos) {
+      int current = inFlight.getAndDecrement();
+      limit.onSample(latencyNanos, current, lagNanos > maxLagNanos);
+    }
+    
+    /**
+     * Measures how late a timer fires compared to when it was scheduled.
+     * The timer runs on the verticle's event loop, so the delay is the time
+     * events wait in its queue.
+     */
+    private void probeLag() {
+      long scheduled = System.nanoTime();
+      vertx.setTimer(LAG_PROBE_INTERVAL_MILLIS, id -> {
+        long expected = scheduled + TimeUnit.MILLISECONDS.toNanos(LAG_PROBE_INTERVAL_MILLIS);
+        lagNanos = Math.max(0, System.nanoTime() - expected);
+        probeLag();
+      });
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.handler;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Handler that runs a blocking handler on a new virtual thread per request.
+ * <p></p>
+ * Unlike {@link io.vertx.ext.web.Route#blockingHandler(Handler)} the handler
+ * doesn't occupy a thread of the worker pool while it's blocked, so the
+ * number of concurrent blocking calls isn't limited by the pool size.
+ * Calls to {@link RoutingContext#next()} and {@link RoutingContext#fail(Throwable)}
+ * are dispatched back to the event loop context of the request.
+ * <p></p>
+ * Virtual threads are available from Java 21. Check
+ * {@link #virtualThreadsSupported()} before creating the handler.
+ */
+public final class VirtualThreadHandler implements Handler<RoutingContext> {
+  
+  /**
+   * @throws IllegalStateException If the runtime doesn't support virtual threads.
+   */
+  public static VirtualThreadHandler create(Handler<RoutingContext> handler) {
+    if (!virtualThreadsSupported()) {
+      throw new IllegalStateException(
+          String.format("Virtual threads require Java 21, found Java %d", Runtime.version().feature()));
+    }
+    return new VirtualThreadHandler(handler);
+  }
+  
+  /**
+   * @return Whether the runtime supports virtual threads.
+   */
+  public static boolean virtualThreadsSupported() {
+    return ExecutorHolder.executor != null;
+  }
+  
+  private final Handler<RoutingContext> handler;
+  
+  private VirtualThreadHandler(Handler<RoutingContext> handler) {
+    Objects.requireNonNull(handler, "Handler cannot be null");
+    this.handler = handler;
+  }
+  
+  @Override
+  public void handle(RoutingContext ctx) {
+    Context context = ctx.vertx().getOrCreateContext();
+    RoutingContext bound = ContextBoundRoutingContext.create(ctx, context);
+    
+    ExecutorHolder.executor.execute(() -> {
+      try {
+        handler.handle(bound);
+      } catch (Throwable ex) {
+        bound.fail(ex);
+      }
+    });
+  }
+  
+  private static final class ExecutorHolder {
+    
+    private static final Executor executor;
+    
+    static {
+      Executor virtualExecutor;
+      try {
+        virtualExecutor = (Executor) Executors.class
+            .getMethod("newVirtualThreadPerTaskExecutor")
+            .invoke(null);
+      } catch (ReflectiveOperationException ex) {
+        virtualExecutor = null;
+      }
+      executor = virtualExecutor;
+    }
+  }
+}
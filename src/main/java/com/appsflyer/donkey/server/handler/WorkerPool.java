@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.handler;
+
+import com.appsflyer.donkey.server.route.WorkerPoolConfig;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A named worker executor, and the number of tasks waiting for one of its
+ * threads.
+ * <p></p>
+ * Pools are shared by name per {@link Vertx} instance, so every route and
+ * verticle instance that uses the same name runs on the same threads and
+ * is limited by the same queue. A name can only be used with one size and
+ * max queue.
+ * <p></p>
+ * Pools are reference counted. Each server verticle acquires the pools of
+ * its routes when it starts, and releases them when it stops. The executor
+ * is closed when the last reference is released.
+ */
+public final class WorkerPool implements Shareable {
+  
+  private static final String POOLS_MAP_NAME = "__donkey.worker-pools";
+  
+  /**
+   * Returns the pool with the name of the config, and creates it if it
+   * doesn't exist yet. It should be released when it's no longer used.
+   *
+   * @throws IllegalArgumentException If a pool with the same name but a
+   *                                  different size or max queue exists.
+   */
+  public static WorkerPool acquire(Vertx vertx, WorkerPoolConfig config) {
+    synchronized (WorkerPool.class) {
+      WorkerPool pool = get(vertx, config);
+      pool.references++;
+      return pool;
+    }
+  }
+  
+  /**
+   * Returns the pool with the name of the config, and creates it if it
+   * doesn't exist yet, without acquiring it.
+   *
+   * @throws IllegalArgumentException If a pool with the same name but a
+   *                                  different size or max queue exists.
+   */
+  static WorkerPool get(Vertx vertx, WorkerPoolConfig config) {
+    synchronized (WorkerPool.class) {
+      LocalMap<String, WorkerPool> pools = pools(vertx);
+      WorkerPool pool = pools.get(config.name());
+      if (pool == null) {
+        pool = new WorkerPool(vertx, config);
+        pools.put(config.name(), pool);
+      } else if (pool.config.size() != config.size() || pool.config.maxQueue() != config.maxQueue()) {
+        throw new IllegalArgumentException(String.format(
+            "Worker pool '%s' is already defined with size %d and max queue %d, found size %d and max queue %d",
+            config.name(), pool.config.size(), pool.config.maxQueue(), config.size(), config.maxQueue()));
+      }
+      return pool;
+    }
+  }
+  
+  private static LocalMap<String, WorkerPool> pools(Vertx vertx) {
+    return vertx.sharedData().getLocalMap(POOLS_MAP_NAME);
+  }
+  
+  private final Vertx vertx;
+  private final WorkerPoolConfig config;
+  private final WorkerExecutor executor;
+  private final AtomicInteger queued = new AtomicInteger();
+  private int references;
+  
+  private WorkerPool(Vertx vertx, WorkerPoolConfig config) {
+    this.vertx = vertx;
+    this.config = config;
+    executor = vertx.createSharedWorkerExecutor(config.name(), config.size());
+  }
+  
+  /**
+   * Releases a reference that was acquired with
+   * {@link #acquire(Vertx, WorkerPoolConfig)}. The executor is closed when
+   * there are no references left.
+   */
+  public Future<Void> release() {
+    synchronized (WorkerPool.class) {
+      if (--references > 0) {
+        return Future.succeededFuture();
+      }
+      pools(vertx).remove(config.name(), this);
+    }
+    return executor.close();
+  }
+  
+  WorkerExecutor executor() {
+    return executor;
+  }
+  
+  /**
+   * @return {@code true} if the task can be queued, or {@code false} if the
+   * queue is full.
+   */
+  boolean tryEnqueue() {
+    int current;
+    do {
+      current = queued.get();
+      if (current >= config.maxQueue()) {
+        return false;
+      }
+    } while (!queued.compareAndSet(current, current + 1));
+    return true;
+  }
+  
+  /**
+   * Called when a queued task starts running on one of the pool's threads.
+   */
+  void dequeue() {
+    queued.decrementAndGet();
+  }
+}
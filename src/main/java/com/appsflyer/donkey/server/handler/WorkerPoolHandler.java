@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.handler;
+
+import com.appsflyer.donkey.server.route.WorkerPoolConfig;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.Route;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.Objects;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+
+/**
+ * Handler that runs a blocking handler on a dedicated worker pool.
+ * <p></p>
+ * It works like {@link Route#blockingHandler(Handler, boolean)} with
+ * {@code ordered = false}, except that the handler runs on the pool described
+ * by the {@link WorkerPoolConfig} instead of the shared Vert.x worker pool.
+ * When the pool's queue is full the request fails with
+ * {@code 503 Service Unavailable}.
+ * <p></p>
+ * The pool is created when the first request arrives. Vert.x reports its
+ * metrics under {@code pools.worker.<name>}, including the queue size and the
+ * time tasks wait in the queue.
+ */
+public final class WorkerPoolHandler implements Handler<RoutingContext> {
+  
+  public static WorkerPoolHandler create(WorkerPoolConfig config, Handler<RoutingContext> handler) {
+    return new WorkerPoolHandler(config, handler);
+  }
+  
+  private final WorkerPoolConfig config;
+  private final Handler<RoutingContext> handler;
+  private volatile WorkerPool pool;
+  
+  private WorkerPoolHandler(WorkerPoolConfig config, Handler<RoutingContext> handler) {
+    Objects.requireNonNull(config, "Worker pool config cannot be null");
+    Objects.requireNonNull(handler, "Handler cannot be null");
+    this.config = config;
+    this.handler = handler;
+  }
+  
+  @Override
+  public void handle(RoutingContext ctx) {
+    WorkerPool workerPool = pool(ctx);
+    if (!workerPool.tryEnqueue()) {
+      ctx.fail(SERVICE_UNAVAILABLE.code());
+      return;
+    }
+    
+    RoutingContext bound = ContextBoundRoutingContext.create(ctx, ctx.vertx().getOrCreateContext());
+    workerPool.executor().executeBlocking(promise -> {
+      workerPool.dequeue();
+      handler.handle(bound);
+      promise.complete();
+    }, false, res -> {
+      if (res.failed()) {
+        ctx.fail(res.cause());
+      }
+    });
+  }
+  
+  private WorkerPool pool(RoutingContext ctx) {
+    WorkerPool res = pool;
+    if (res == null) {
+      res = WorkerPool.get(ctx.vertx(), config);
+      pool = res;
+    }
+    return res;
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.appsflyer.donkey.server.ring.handler;
+
+import clojure.lang.ISeq;
+import clojure.lang.RT;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.appsflyer.donkey.util.TypeConverter.toBuffer;
+
+/**
+ * Writes a response body that is produced incrementally as a chunked
+ * response. Supported bodies are an {@link InputStream}, an {@link ISeq}
+ * (e.g a lazy seq), and an {@link Iterator}. The elements of a seq or an
+ * iterator can be any type that is supported as a response body, such as
+ * {@code String} or {@code byte[]}. A {@code ByteBuf} element is released
+ * once it was written.
+ * <p>
+ * The body is consumed on a worker thread, because reading the stream or
+ * realizing the seq may block. Only one batch of data is read at a time, and
+ * the next one is read when the previous one was handed to the connection.
+ * When the connection's write queue is full the writer waits for it to
+ * drain, so a slow client doesn't cause the entire body to be buffered in
+ * memory.
+ * <p>
+ * The body is closed when it was fully written, when it failed, or when the
+ * connection was closed, if it implements {@link AutoCloseable}. It's closed
+ * once, even when the connection is closed while the writer waits for the
+ * write queue to drain.
+ */
+final class ChunkedResponseWriter {
+  
+  private static final Logger logger = LoggerFactory.getLogger(ChunkedResponseWriter.class.getName());
+  
+  /**
+   * The number of bytes that are read on a worker thread before they
+   * are written to the response.
+   */
+  private static final int BATCH_SIZE = 16 * 1024;
+  private static final Object END = new Object();
+  
+  /**
+   * @return True if the body is of a type that should be streamed
+   */
+  static boolean isStreamable(Object body) {
+    return body instanceof InputStream
+        || body instanceof ISeq
+        || body instanceof Iterator;
+  }
+  
+  static void write(Vertx vertx, HttpServerResponse response, Object body) {
+    new ChunkedResponseWriter(vertx, response, body).start();
+  }
+  
+  private final Vertx vertx;
+  private final HttpServerResponse response;
+  private final Object body;
+  private final byte[] readBuffer;
+  private Object remaining;
+  /**
+   * The {@code ByteBuf} elements of the batch that was read last, that
+   * should be released once it's written.
+   */
+  private List<ByteBuf> owned = List.of();
+  private boolean closed;
+  
+  private ChunkedResponseWriter(Vertx vertx, HttpServerResponse response, Object body) {
+    this.vertx = vertx;
+    this.response = response;
+    this.body = body;
+    readBuffer = body instanceof InputStream ? new byte[BATCH_SIZE] : null;
+    remaining = body;
+  }
+  
+  private void start() {
+    if (!response.headers().contains(HttpHeaders.CONTENT_LENGTH)) {
+      response.setChunked(true);
+    }
+    // A drain handler that is waiting for the write queue never
+    // fires if the client disconnects, so the body is closed here.
+    response.closeHandler(v -> close());
+    response.exceptionHandler(ex -> {
+      logger.debug("Failed to write response body: {}", ex.getMessage());
+      close();
+    });
+    writeNextBatch();
+  }
+  
+  private void writeNextBatch() {
+    if (closed || response.closed()) {
+      close();
+      return;
+    }
+    vertx.<Buffer>executeBlocking(promise -> {
+           try {
+             promise.complete(readBatch());
+           } catch (Exception ex) {
+             releaseOwned();
+             promise.fail(ex);
+           }
+         }, false)
+         .onSuccess(this::onBatch)
+         .onFailure(this::onFailure);
+  }
+  
+  private void onBatch(@Nullable Buffer batch) {
+    if (batch == null) {
+      close();
+      if (!response.closed()) {
+        response.end();
+      }
+      return;
+    }
+    if (closed || response.closed()) {
+      releaseOwned();
+      close();
+      return;
+    }
+    List<ByteBuf> written = owned;
+    owned = List.of();
+    response.write(batch)
+            .onComplete(v -> written.forEach(ByteBuf::release));
+    if (response.writeQueueFull()) {
+      response.drainHandler(v -> {
+        response.drainHandler(null);
+        writeNextBatch();
+      });
+    } else {
+      writeNextBatch();
+    }
+  }
+  
+  private void onFailure(Throwable ex) {
+    // Reading a body that was already closed, because the connection
+    // was closed or failed, is expected to fail.
+    boolean expected = closed || response.closed();
+    close();
+    if (!expected) {
+      logger.error("Failed to write response body: {}", ex.getMessage(), ex);
+    }
+    if (response.closed()) {
+      return;
+    }
+    if (response.headWritten()) {
+      // The status was already sent, all we can do is let the client know
+      // the response is incomplete.
+      response.reset();
+    } else {
+      response.setChunked(false)
+              .setStatusCode(500)
+              .end();
+    }
+  }
+  
+  /**
+   * Runs on a worker thread.
+   *
+   * @return The next batch of data, or null if the body was fully consumed.
+   */
+  @Nullable
+  private Buffer readBatch() throws IOException {
+    if (readBuffer != null) {
+      int read = ((InputStream) body).read(readBuffer);
+      return read < 0 ? null : Buffer.buffer(read).appendBytes(readBuffer, 0, read);
+    }
+    
+    var chunks = new ArrayList<ByteBuf>();
+    int size = 0;
+    Object chunk;
+    while (size < BATCH_SIZE && (chunk = nextChunk()) != END) {
+      if (chunk == null) {
+        continue;
+      }
+      if (chunk instanceof ByteBuf) {
+        if (owned.isEmpty()) {
+          owned = new ArrayList<>();
+        }
+        owned.add((ByteBuf) chunk);
+      }
+      var buffer = toBuffer(chunk);
+      if (buffer.length() > 0) {
+        chunks.add(buffer.getByteBuf());
+        size += buffer.length();
+      }
+    }
+    if (chunks.isEmpty()) {
+      return null;
+    }
+    if (chunks.size() == 1) {
+      return Buffer.buffer(chunks.get(0));
+    }
+    return Buffer.buffer(Unpooled.wrappedBuffer(chunks.toArray(new ByteBuf[0])));
+  }
+  
+  /**
+   * @return The next element of the seq or iterator, or {@link #END}
+   * if there are no more elements.
+   */
+  @Nullable
+  private Object nextChunk() {
+    if (body instanceof ISeq) {
+      // Using `more` rather than `next` so the following element
+      // of a lazy seq is not realized before it's needed.
+      ISeq seq = RT.seq(remaining);
+      if (seq == null) {
+        return END;
+      }
+      remaining = seq.more();
+      return seq.first();
+    }
+    var iterator = (Iterator<?>) body;
+    return iterator.hasNext() ? iterator.next() : END;
+  }
+  
+  private void releaseOwned() {
+    owned.forEach(ByteBuf::release);
+    owned = List.of();
+  }
+  
+  /**
+   * Runs on the event loop.
+   */
+  private void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (body instanceof AutoCloseable) {
+      try {
+        ((AutoCloseable) body).close();
+      } catch (Exception ex) {
+        logger.warn("Failed to close response body: {}", ex.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.appsflyer.donkey.server.ring.handler;
+
+import clojure.lang.*;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A Ring request map that is backed by a {@link RoutingContext}.
+ * <p></p>
+ * Each {@link RingRequestField} is computed the first time it is looked up,
+ * and the result is memoized. Handlers that only read a few fields (e.g
+ * {@code :uri} and {@code :path-params}) never pay for converting the headers,
+ * walking the SSL session, etc'.
+ * <p></p>
+ * Associating a key returns a new lazy map that shares the memoized fields
+ * and keeps the new entries on top of them. Operations that need to know
+ * all the entries in the map, such as iteration, counting, or dissociating a
+ * key, materialize it into a regular persistent map.
+ * <p></p>
+ * {@link #asTransient()} returns a transient view with the same laziness,
+ * so middleware can associate several keys and persist the map once.
+ * <p></p>
+ * The persistent map can be read from several threads at once, e.g when
+ * it's handed to a future. Each field is computed at most once, and the
+ * computed value is safely published to every thread that reads it. Like any
+ * Clojure transient, the transient view must only be used by one thread.
+ */
+public final class LazyRequestMap extends APersistentMap implements IObj, IEditableCollection {
+  
+  private static final long serialVersionUID = 1556392938411723454L;
+  private static final RingRequestField[] FIELDS = RingRequestField.values();
+  private static final Object NOT_FOUND = new Object();
+  
+  public static LazyRequestMap create(RoutingContext ctx) {
+    return new LazyRequestMap(new Fields(ctx), PersistentArrayMap.EMPTY);
+  }
+  
+  private final transient Fields fields;
+  private final IPersistentMap overrides;
+  private volatile IPersistentMap materialized;
+  
+  private LazyRequestMap(Fields fields, IPersistentMap overrides) {
+    this.fields = fields;
+    this.overrides = overrides;
+  }
+  
+  @Override
+  public Object valAt(Object key) {
+    return valAt(key, null);
+  }
+  
+  @Override
+  public Object valAt(Object key, Object notFound) {
+    IPersistentMap materialized = this.materialized;
+    if (materialized != null) {
+      return materialized.valAt(key, notFound);
+    }
+    var entry = overrides.entryAt(key);
+    if (entry != null) {
+      return entry.val();
+    }
+    var field = RingRequestField.fromKeyword(key);
+    if (field != null) {
+      var v = fields.get(field);
+      if (v != null) {
+        return v;
+      }
+    }
+    return notFound;
+  }
+  
+  @Override
+  public boolean containsKey(Object key) {
+    return valAt(key, NOT_FOUND) != NOT_FOUND;
+  }
+  
+  @Override
+  public IMapEntry entryAt(Object key) {
+    var v = valAt(key, NOT_FOUND);
+    return v == NOT_FOUND ? null : MapEntry.create(key, v);
+  }
+  
+  @Override
+  public IPersistentMap assoc(Object key, Object val) {
+    IPersistentMap materialized = this.materialized;
+    if (materialized != null) {
+      return materialized.assoc(key, val);
+    }
+    return new LazyRequestMap(fields, overrides.assoc(key, val));
+  }
+  
+  @Override
+  public IPersistentMap assocEx(Object key, Object val) {
+    if (containsKey(key)) {
+      throw Util.runtimeException("Key already present");
+    }
+    return assoc(key, val);
+  }
+  
+  @Override
+  public IPersistentMap without(Object key) {
+    return materialize().without(key);
+  }
+  
+  @Override
+  public int count() {
+    return materialize().count();
+  }
+  
+  @Override
+  public ISeq seq() {
+    return materialize().seq();
+  }
+  
+  @Override
+  public IPersistentCollection empty() {
+    return PersistentArrayMap.EMPTY;
+  }
+  
+  @SuppressWarnings("rawtypes")
+  @Override
+  public Iterator iterator() {
+    return ((Iterable) materialize()).iterator();
+  }
+  
+  @Override
+  public IPersistentMap meta() {
+    return null;
+  }
+  
+  @Override
+  public IObj withMeta(IPersistentMap meta) {
+    return ((IObj) materialize()).withMeta(meta);
+  }
+  
+  @Override
+  public ITransientMap asTransient() {
+    IPersistentMap materialized = this.materialized;
+    if (materialized != null) {
+      return (ITransientMap) ((IEditableCollection) materialized).asTransient();
+    }
+    return new TransientLazyRequestMap(fields, (ITransientMap) ((IEditableCollection) overrides).asTransient());
+  }
+  
+  private Object writeReplace() {
+    return materialize();
+  }
+  
+  /**
+   * Computes all the fields that were not looked up yet, and merges them with
+   * the entries that were associated with this map. Threads that materialize
+   * the map at the same time build equal maps, since the fields are only
+   * computed once, and one of them is kept.
+   */
+  private IPersistentMap materialize() {
+    IPersistentMap materialized = this.materialized;
+    if (materialized == null) {
+      ITransientMap res = PersistentHashMap.EMPTY.asTransient();
+      for (RingRequestField field : FIELDS) {
+        var v = fields.get(field);
+        if (v != null) {
+          res = res.assoc(field.keyword(), v);
+        }
+      }
+      for (var obj : (Iterable<?>) overrides) {
+        var entry = (IMapEntry) obj;
+        res = res.assoc(entry.key(), entry.val());
+      }
+      materialized = res.persistent();
+      this.materialized = materialized;
+    }
+    return materialized;
+  }
+  
+  /**
+   * A transient {@link LazyRequestMap}. Associated entries are kept in a
+   * transient map on top of the shared fields, and {@link #persistent()}
+   * returns a new lazy map. Dissociating a key or counting the entries
+   * materializes it, like in the persistent map.
+   */
+  private static final class TransientLazyRequestMap implements ITransientMap, ITransientAssociative2 {
+    
+    private final Fields fields;
+    private ITransientMap overrides;
+    private ITransientMap materialized;
+    private boolean editable = true;
+    
+    private TransientLazyRequestMap(Fields fields, ITransientMap overrides) {
+      this.fields = fields;
+      this.overrides = overrides;
+    }
+    
+    @Override
+    public Object valAt(Object key) {
+      return valAt(key, null);
+    }
+    
+    @Override
+    public Object valAt(Object key, Object notFound) {
+      ensureEditable();
+      if (materialized != null) {
+        return materialized.valAt(key, notFound);
+      }
+      var v = overrides.valAt(key, NOT_FOUND);
+      if (v != NOT_FOUND) {
+        return v;
+      }
+      var field = RingRequestField.fromKeyword(key);
+      if (field != null) {
+        v = fields.get(field);
+        if (v != null) {
+          return v;
+        }
+      }
+      return notFound;
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+      return valAt(key, NOT_FOUND) != NOT_FOUND;
+    }
+    
+    @Override
+    public IMapEntry entryAt(Object key) {
+      var v = valAt(key, NOT_FOUND);
+      return v == NOT_FOUND ? null : MapEntry.create(key, v);
+    }
+    
+    @Override
+    public ITransientMap assoc(Object key, Object val) {
+      ensureEditable();
+      if (materialized != null) {
+        materialized = materialized.assoc(key, val);
+      } else {
+        overrides = overrides.assoc(key, val);
+      }
+      return this;
+    }
+    
+    @Override
+    public ITransientMap without(Object key) {
+      materialize();
+      materialized = materialized.without(key);
+      return this;
+    }
+    
+    @Override
+    public ITransientMap conj(Object val) {
+      if (val instanceof Map.Entry) {
+        var entry = (Map.Entry<?, ?>) val;
+        return assoc(entry.getKey(), entry.getValue());
+      }
+      if (val instanceof IPersistentVector) {
+        var vector = (IPersistentVector) val;
+        if (vector.count() != 2) {
+          throw new IllegalArgumentException("Vector arg to map conj must be a pair");
+        }
+        return assoc(vector.nth(0), vector.nth(1));
+      }
+      ITransientMap res = this;
+      for (ISeq seq = RT.seq(val); seq != null; seq = seq.next()) {
+        var entry = (Map.Entry<?, ?>) seq.first();
+        res = res.assoc(entry.getKey(), entry.getValue());
+      }
+      return res;
+    }
+    
+    @Override
+    public int count() {
+      materialize();
+      return materialized.count();
+    }
+    
+    @Override
+    public IPersistentMap persistent() {
+      ensureEditable();
+      editable = false;
+      if (materialized != null) {
+        return materialized.persistent();
+      }
+      return new LazyRequestMap(fields, overrides.persistent());
+    }
+    
+    private void materialize() {
+      ensureEditable();
+      if (materialized == null) {
+        var map = new LazyRequestMap(fields, overrides.persistent()).materialize();
+        materialized = (ITransientMap) ((IEditableCollection) map).asTransient();
+      }
+    }
+    
+    private void ensureEditable() {
+      if (!editable) {
+        throw new IllegalAccessError("Transient used after persistent! call");
+      }
+    }
+  }
+  
+  /**
+   * Memoized field values. The instance is shared between all the maps that
+   * are derived from the same request, which may be read by several threads.
+   * <p></p>
+   * A computed value is read without locking. A field that wasn't computed
+   * yet is computed while holding the lock, so it's computed only once even
+   * if it has side effects, such as the body stream.
+   */
+  private static final class Fields {
+    
+    /**
+     * Stands for a field that was computed and is missing from the request.
+     */
+    private static final Object NIL = new Object();
+    
+    private final RoutingContext ctx;
+    private final AtomicReferenceArray<Object> values = new AtomicReferenceArray<>(FIELDS.length);
+    
+    private Fields(RoutingContext ctx) {
+      this.ctx = ctx;
+    }
+    
+    private Object get(RingRequestField field) {
+      int i = field.ordinal();
+      Object v = values.get(i);
+      if (v == null) {
+        v = compute(field);
+      }
+      return v == NIL ? null : v;
+    }
+    
+    private synchronized Object compute(RingRequestField field) {
+      int i = field.ordinal();
+      Object v = values.get(i);
+      if (v == null) {
+        v = field.from(ctx);
+        if (v == null) {
+          v = NIL;
+        }
+        values.set(i, v);
+      }
+      return v;
+    }
+  }
+}
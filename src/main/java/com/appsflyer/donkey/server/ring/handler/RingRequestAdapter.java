@@ -19,12 +19,13 @@ package com.appsflyer.donkey.server.ring.handler;
 
 import io.vertx.ext.web.RoutingContext;
 
-import static com.appsflyer.donkey.util.TypeConverter.toPersistentMap;
-
 /**
  * Handler responsible for converting an {@link io.vertx.core.http.HttpServerRequest}
  * to a Ring compliant Clojure map.
  * <p></p>
+ * The request map is a {@link LazyRequestMap}, i.e fields are only computed
+ * when they are first looked up.
+ * <p></p>
  * See the Ring <a href="https://github.com/ring-clojure/ring/blob/master/SPEC">specification</a> for more details.
  */
 public final class RingRequestAdapter implements RingHandler {
@@ -37,28 +38,7 @@ public final class RingRequestAdapter implements RingHandler {
   
   @Override
   public void handle(RoutingContext ctx) {
-    RingRequestField[] fields = RingRequestField.values();
-    var values = new Object[fields.length * 2];
-    
-    var valueIndex = 0;
-    for (int i = 0; i < fields.length; i++) {
-      var field = fields[i];
-      Object v = field.from(ctx);
-      if (v != null) {
-        values[valueIndex] = field.keyword();
-        values[valueIndex + 1] = v;
-        valueIndex += 2;
-      }
-    }
-    
-    if (valueIndex == values.length) {
-      ctx.put(RING_HANDLER_RESULT, toPersistentMap(values));
-    } else {
-      var copy = new Object[valueIndex];
-      System.arraycopy(values, 0, copy, 0, valueIndex);
-      ctx.put(RING_HANDLER_RESULT, toPersistentMap(copy));
-    }
-    
+    ctx.put(RING_HANDLER_RESULT, LazyRequestMap.create(ctx));
     ctx.next();
   }
 }
@@ -21,6 +21,8 @@ import clojure.lang.IPersistentMap;
 import clojure.lang.Keyword;
 import clojure.lang.RT;
 import com.appsflyer.donkey.ValueExtractor;
+import com.appsflyer.donkey.server.handler.BodyStreamHandler;
+import com.appsflyer.donkey.server.handler.JsonBodyHandler;
 import com.appsflyer.donkey.util.TypeConverter;
 import io.vertx.core.MultiMap;
 import io.vertx.core.buffer.Buffer;
@@ -30,6 +32,7 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.net.ssl.SSLPeerUnverifiedException;
 import java.security.cert.Certificate;
+import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.function.Function;
@@ -45,15 +48,24 @@ import static com.appsflyer.donkey.util.TypeConverter.toUrlDecodedPersistentMap;
  */
 public enum RingRequestField implements ValueExtractor<RoutingContext> {
   
+  /**
+   * A byte[] when the body is buffered, an InputStream when it is streamed,
+   * or the parsed JSON tokens in JSON mode.
+   * See {@link com.appsflyer.donkey.server.route.BodyMode}
+   */
   BODY("body") {
     @Nullable
     @Override
-    public byte[] from(RoutingContext ctx) {
+    public Object from(RoutingContext ctx) {
       Buffer body = ctx.getBody();
       if (body != null) {
         return body.getBytes();
       }
-      return null;
+      Object stream = ctx.get(BodyStreamHandler.BODY_STREAM);
+      if (stream != null) {
+        return stream;
+      }
+      return ctx.get(JsonBodyHandler.JSON_BODY);
     }
   },
   CLIENT_CERT("ssl-client-cert") {
@@ -199,6 +211,23 @@ public enum RingRequestField implements ValueExtractor<RoutingContext> {
     }
   };
   
+  private static final Map<Keyword, RingRequestField> keywordToField = new HashMap<>();
+  
+  static {
+    for (RingRequestField field : values()) {
+      keywordToField.put(field.keyword, field);
+    }
+  }
+  
+  /**
+   * @return The field that corresponds to the given Keyword,
+   * or null if there is no such field.
+   */
+  @Nullable
+  public static RingRequestField fromKeyword(Object keyword) {
+    return keywordToField.get(keyword);
+  }
+  
   private final Keyword keyword;
   
   RingRequestField(String field) {
@@ -19,6 +19,10 @@ package com.appsflyer.donkey.server.ring.handler;
 
 import clojure.lang.IMapEntry;
 import clojure.lang.IPersistentMap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.util.ReferenceCounted;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.ext.web.RoutingContext;
 import org.slf4j.Logger;
@@ -38,6 +42,19 @@ public final class RingResponseAdapter implements RingHandler {
     return new RingResponseAdapter();
   }
   
+  /**
+   * Releases a response body that is not going to be sent, if it's a
+   * {@link ByteBuf} or {@link ByteBufHolder}. Such a body is owned by the
+   * response, so it has to be released by whoever drops the response, e.g.
+   * when a middleware fails and the response is replaced.
+   */
+  public static void releaseBody(Object body) {
+    if ((body instanceof ByteBuf || body instanceof ByteBufHolder)
+        && ((ReferenceCounted) body).refCnt() > 0) {
+      ((ReferenceCounted) body).release();
+    }
+  }
+  
   private RingResponseAdapter() {}
   
   @Override
@@ -50,9 +67,14 @@ public final class RingResponseAdapter implements RingHandler {
     }
     
     HttpServerResponse serverResponse = ctx.response();
-    addHeaders(serverResponse, ringResponse);
-    setStatus(serverResponse, ringResponse);
-    sendResponse(serverResponse, ringResponse);
+    try {
+      addHeaders(serverResponse, ringResponse);
+      setStatus(serverResponse, ringResponse);
+    } catch (RuntimeException ex) {
+      releaseBody(BODY.from(ringResponse));
+      throw ex;
+    }
+    sendResponse(ctx, ringResponse);
   }
   
   private void addHeaders(HttpServerResponse serverResponse, IPersistentMap ringResponse) {
@@ -69,15 +91,38 @@ public final class RingResponseAdapter implements RingHandler {
     serverResponse.setStatusCode((Integer) STATUS.from(ringResponse));
   }
   
-  private void sendResponse(HttpServerResponse serverResponse, IPersistentMap ringResponse) {
+  private void sendResponse(RoutingContext ctx, IPersistentMap ringResponse) {
+    var serverResponse = ctx.response();
     var body = BODY.from(ringResponse);
     if (body instanceof File) {
       sendFile(serverResponse, (File) body);
+    } else if (body instanceof ByteBuf) {
+      sendOwned(serverResponse, (ByteBuf) body, (ByteBuf) body);
+    } else if (body instanceof ByteBufHolder) {
+      sendOwned(serverResponse, ((ByteBufHolder) body).content(), (ByteBufHolder) body);
+    } else if (ChunkedResponseWriter.isStreamable(body)) {
+      ChunkedResponseWriter.write(ctx.vertx(), serverResponse, body);
     } else {
       serverResponse.end(toBuffer(body));
     }
   }
   
+  /**
+   * A {@link ByteBuf} or {@link ByteBufHolder} body is handed over to the
+   * response, and is released once it's written, or when writing it failed.
+   * Vert.x doesn't release it, because it writes a derived buffer that
+   * doesn't own a reference.
+   */
+  private void sendOwned(HttpServerResponse serverResponse, ByteBuf content, ReferenceCounted owner) {
+    try {
+      serverResponse.end(toBuffer(content))
+                    .onComplete(v -> owner.release());
+    } catch (RuntimeException ex) {
+      owner.release();
+      throw ex;
+    }
+  }
+  
   private void sendFile(HttpServerResponse serverResponse, File file) {
     try {
       serverResponse.sendFile(file.getCanonicalPath(), 0, file.length())
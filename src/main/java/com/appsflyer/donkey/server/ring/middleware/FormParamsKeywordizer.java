@@ -18,10 +18,11 @@
 package com.appsflyer.donkey.server.ring.middleware;
 
 import clojure.lang.*;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Objects;
 
-public final class FormParamsKeywordizer implements RingMiddleware {
+public final class FormParamsKeywordizer implements TransientRingMiddleware {
   
   public static RingMiddleware create(Options options) {
     return new FormParamsKeywordizer(options);
@@ -45,17 +46,30 @@ public final class FormParamsKeywordizer implements RingMiddleware {
   public IPersistentMap handle(IPersistentMap request) {
     Objects.requireNonNull(request, "Request map cannot be null");
     
+    IPersistentMap formParams = keywordizedFormParams(request);
+    return formParams == null ? request : request.assoc(FORM_PARAMS, formParams);
+  }
+  
+  @Override
+  public ITransientMap handleTransient(ITransientMap request) {
+    Objects.requireNonNull(request, "Request map cannot be null");
+    
+    IPersistentMap formParams = keywordizedFormParams(request);
+    return formParams == null ? request : request.assoc(FORM_PARAMS, formParams);
+  }
+  
+  private @Nullable IPersistentMap keywordizedFormParams(ILookup request) {
     Object formParams = request.valAt(FORM_PARAMS, null);
     
     if (formParams == null) {
-      return request;
+      return null;
     }
     
     int size = ((Counted) formParams).count();
     if (size == 0) {
-      return request;
+      return null;
     }
-    return request.assoc(FORM_PARAMS, keywordize((IPersistentMap) formParams));
+    return keywordize((IPersistentMap) formParams);
   }
   
   private IPersistentMap keywordize(IPersistentMap map) {
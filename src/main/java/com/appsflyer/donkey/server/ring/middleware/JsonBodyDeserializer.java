@@ -18,15 +18,20 @@
 package com.appsflyer.donkey.server.ring.middleware;
 
 import clojure.lang.IPersistentMap;
+import clojure.lang.ITransientMap;
 import com.appsflyer.donkey.server.exception.DeserializationException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.vertx.core.buffer.Buffer;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Objects;
 
 import static com.appsflyer.donkey.server.ring.handler.RingRequestField.BODY;
 
-public final class JsonBodyDeserializer implements RingMiddleware {
+public final class JsonBodyDeserializer implements TransientRingMiddleware {
   
   public static RingMiddleware create(ObjectMapper mapper) {
     return new JsonBodyDeserializer(mapper);
@@ -38,17 +43,49 @@ public final class JsonBodyDeserializer implements RingMiddleware {
     this.mapper = mapper;
   }
   
-  @SuppressWarnings("OverlyBroadCatchBlock")
   @Override
   public IPersistentMap handle(IPersistentMap request) {
     Objects.requireNonNull(request, "Request map cannot be null");
-    var body = (byte[]) request.valAt(BODY.keyword(), null);
+    var body = request.valAt(BODY.keyword(), null);
     if (body == null) {
       return request;
     }
+    return request.assoc(BODY.keyword(), deserialize(body));
+  }
+  
+  @Override
+  public ITransientMap handleTransient(ITransientMap request) {
+    Objects.requireNonNull(request, "Request map cannot be null");
+    var body = request.valAt(BODY.keyword(), null);
+    if (body == null) {
+      return request;
+    }
+    return request.assoc(BODY.keyword(), deserialize(body));
+  }
+  
+  /**
+   * Reads the body without copying it first. It can be a {@code byte[]}, an
+   * {@link InputStream}, a {@link Buffer}, or a {@link ByteBuf}. In
+   * {@link com.appsflyer.donkey.server.route.BodyMode#JSON} mode it's a
+   * {@link Buffer} of the chunks that were received.
+   */
+  @SuppressWarnings("OverlyBroadCatchBlock")
+  private Object deserialize(Object body) {
     try {
-      var entity = mapper.readValue(body, Object.class);
-      return request.assoc(BODY.keyword(), entity);
+      if (body instanceof byte[]) {
+        return mapper.readValue((byte[]) body, Object.class);
+      }
+      if (body instanceof Buffer) {
+        return deserialize(((Buffer) body).getByteBuf());
+      }
+      if (body instanceof ByteBuf) {
+        var buf = (ByteBuf) body;
+        if (buf.hasArray()) {
+          return mapper.readValue(buf.array(), buf.arrayOffset() + buf.readerIndex(), buf.readableBytes(), Object.class);
+        }
+        return mapper.readValue((InputStream) new ByteBufInputStream(buf.duplicate()), Object.class);
+      }
+      return mapper.readValue((InputStream) body, Object.class);
     } catch (IOException e) {
       throw new DeserializationException(e.getMessage(), e);
     }
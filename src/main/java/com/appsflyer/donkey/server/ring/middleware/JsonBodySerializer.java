@@ -18,27 +18,55 @@
 package com.appsflyer.donkey.server.ring.middleware;
 
 import clojure.lang.IPersistentMap;
+import clojure.lang.ITransientMap;
 import com.appsflyer.donkey.server.exception.SerializationException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Objects;
 
 import static com.appsflyer.donkey.server.ring.handler.RingResponseField.BODY;
 
-public final class JsonBodySerializer implements RingMiddleware {
+public final class JsonBodySerializer implements TransientRingMiddleware {
+  
+  public static class Options {
+    
+    private static final Options DEFAULT = new Options();
+    private boolean pooledBuffers;
+    
+    /**
+     * Whether the body is serialized directly into a pooled buffer, instead
+     * of a new {@code byte[]}. The body is then a {@link ByteBuf}, that
+     * is released by the
+     * {@link com.appsflyer.donkey.server.ring.handler.RingResponseAdapter}
+     * once it's written.
+     */
+    public Options pooledBuffers(boolean pooledBuffers) {
+      this.pooledBuffers = pooledBuffers;
+      return this;
+    }
+  }
   
   public static RingMiddleware create(ObjectMapper mapper) {
-    return new JsonBodySerializer(mapper);
+    return new JsonBodySerializer(mapper, Options.DEFAULT);
+  }
+  
+  public static RingMiddleware create(ObjectMapper mapper, Options opts) {
+    return new JsonBodySerializer(mapper, opts);
   }
   
   private final ObjectMapper mapper;
+  private final boolean pooledBuffers;
   
-  private JsonBodySerializer(ObjectMapper mapper) {
+  private JsonBodySerializer(ObjectMapper mapper, Options opts) {
     this.mapper = mapper;
+    pooledBuffers = opts.pooledBuffers;
   }
   
-  @SuppressWarnings("OverlyBroadCatchBlock")
   @Override
   public IPersistentMap handle(IPersistentMap response) {
     Objects.requireNonNull(response, "Response map cannot be null");
@@ -46,11 +74,44 @@ public final class JsonBodySerializer implements RingMiddleware {
     if (body == null) {
       return response;
     }
-    
+    return response.assoc(BODY.keyword(), serialize(body));
+  }
+  
+  @Override
+  public ITransientMap handleTransient(ITransientMap response) {
+    Objects.requireNonNull(response, "Response map cannot be null");
+    var body = response.valAt(BODY.keyword(), null);
+    if (body == null) {
+      return response;
+    }
+    return response.assoc(BODY.keyword(), serialize(body));
+  }
+  
+  private Object serialize(Object body) {
+    return pooledBuffers ? serializeToBuffer(body) : serializeToBytes(body);
+  }
+  
+  @SuppressWarnings("OverlyBroadCatchBlock")
+  private byte[] serializeToBytes(Object body) {
+    try {
+      return mapper.writeValueAsBytes(body);
+    } catch (IOException e) {
+      throw new SerializationException(e.getMessage(), e);
+    }
+  }
+  
+  @SuppressWarnings("OverlyBroadCatchBlock")
+  private ByteBuf serializeToBuffer(Object body) {
+    ByteBuf buf = ByteBufAllocator.DEFAULT.buffer();
     try {
-      return response.assoc(BODY.keyword(), mapper.writeValueAsBytes(body));
+      mapper.writeValue((OutputStream) new ByteBufOutputStream(buf), body);
+      return buf;
     } catch (IOException e) {
+      buf.release();
       throw new SerializationException(e.getMessage(), e);
+    } catch (RuntimeException e) {
+      buf.release();
+      throw e;
     }
   }
 }
@@ -17,10 +17,13 @@
 
 package com.appsflyer.donkey.server.ring.middleware;
 
+import clojure.lang.ILookup;
 import clojure.lang.IPersistentMap;
+import clojure.lang.ITransientMap;
 import clojure.lang.Keyword;
 import clojure.lang.RT;
 import io.netty.handler.codec.http.QueryStringDecoder;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.List;
 import java.util.Map;
@@ -30,7 +33,7 @@ import java.util.function.Function;
 import static com.appsflyer.donkey.server.ring.handler.RingRequestField.QUERY_STRING;
 import static com.appsflyer.donkey.util.TypeConverter.toVector;
 
-public final class QueryParamsParser implements RingMiddleware {
+public final class QueryParamsParser implements TransientRingMiddleware {
   
   public static class Options {
     
@@ -52,6 +55,7 @@ public final class QueryParamsParser implements RingMiddleware {
   }
   
   private static final Keyword QUERY_PARAMS = Keyword.intern("query-params");
+  private static final Object NOT_FOUND = new Object();
   
   private final Function<String, ?> mappingFunc;
   
@@ -65,13 +69,30 @@ public final class QueryParamsParser implements RingMiddleware {
   public IPersistentMap handle(IPersistentMap request) {
     Objects.requireNonNull(request, "Request map cannot be null");
     
-    if (request.containsKey(QUERY_PARAMS)) {
-      return request;
+    Object queryParams = parse(request);
+    return queryParams == null ? request : request.assoc(QUERY_PARAMS, queryParams);
+  }
+  
+  @Override
+  public ITransientMap handleTransient(ITransientMap request) {
+    Objects.requireNonNull(request, "Request map cannot be null");
+    
+    Object queryParams = parse(request);
+    return queryParams == null ? request : request.assoc(QUERY_PARAMS, queryParams);
+  }
+  
+  /**
+   * @return The query params map, or {@code null} if the request already has
+   * one, or it doesn't have a query string.
+   */
+  private @Nullable Object parse(ILookup request) {
+    if (request.valAt(QUERY_PARAMS, NOT_FOUND) != NOT_FOUND) {
+      return null;
     }
     
     var queryString = (String) request.valAt(QUERY_STRING.keyword(), null);
     if (queryString == null || queryString.isBlank()) {
-      return request;
+      return null;
     }
     
     Map<String, List<String>> decodedParams =
@@ -90,6 +111,6 @@ public final class QueryParamsParser implements RingMiddleware {
       valueIndex += 2;
     }
     
-    return request.assoc(QUERY_PARAMS, RT.mapUniqueKeys(values));
+    return RT.mapUniqueKeys(values);
   }
 }
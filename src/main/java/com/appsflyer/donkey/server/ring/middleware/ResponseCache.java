@@ -0,0 +1,386 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.ring.middleware;
+
+import clojure.lang.IMapEntry;
+import clojure.lang.IPersistentMap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCounted;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import static com.appsflyer.donkey.server.ring.handler.RingResponseField.*;
+import static com.appsflyer.donkey.util.TypeConverter.toBuffer;
+
+/**
+ * A cache of serialized Ring responses, used by the response cache middleware
+ * to skip the route handler while a response is fresh.
+ * <p>
+ * A response is stored with its body converted to a {@link Buffer}, and the
+ * same {@code Buffer} is returned on every hit. It's written to the
+ * connection as is by the
+ * {@link com.appsflyer.donkey.server.ring.handler.RingResponseAdapter}, which
+ * doesn't modify it.
+ * Only {@code 200} responses without a {@code Set-Cookie} header, and with a
+ * {@code String}, {@code byte[]}, {@code Buffer}, {@code ByteBuffer},
+ * {@code ByteBuf} or {@code ByteBufHolder} body are stored. A {@code ByteBuf} or {@code ByteBufHolder} body is
+ * released once it's copied to the cache.
+ * <p>
+ * Concurrent misses for the same key are coalesced. Only the first one calls
+ * the handler, and the others complete with its response.
+ */
+public final class ResponseCache {
+  
+  public static class Options {
+    
+    private long ttlMillis = 1000;
+    private int maxEntries = 1000;
+    private long maxBytes = 16 * 1024 * 1024;
+    private boolean offHeap;
+    
+    /**
+     * How long a response is served from the cache after it's stored.
+     */
+    public Options ttlMillis(long ttlMillis) {
+      this.ttlMillis = ttlMillis;
+      return this;
+    }
+    
+    public Options maxEntries(int maxEntries) {
+      this.maxEntries = maxEntries;
+      return this;
+    }
+    
+    /**
+     * The maximum total size of the cached responses. The least recently used
+     * responses are evicted first.
+     */
+    public Options maxBytes(long maxBytes) {
+      this.maxBytes = maxBytes;
+      return this;
+    }
+    
+    /**
+     * Whether response bodies are stored in direct memory, outside of the
+     * Java heap.
+     */
+    public Options offHeap(boolean offHeap) {
+      this.offHeap = offHeap;
+      return this;
+    }
+  }
+  
+  /**
+   * Rough size of an entry without its body and headers.
+   */
+  private static final int ENTRY_OVERHEAD = 128;
+  
+  public static ResponseCache create(Options opts) {
+    return new ResponseCache(opts);
+  }
+  
+  private final long ttlNanos;
+  private final int maxEntries;
+  private final long maxBytes;
+  private final boolean offHeap;
+  private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<Object, CompletableFuture<IPersistentMap>> inFlight = new ConcurrentHashMap<>();
+  private long size;
+  
+  private ResponseCache(Options opts) {
+    Objects.requireNonNull(opts, "Options cannot be null");
+    if (opts.ttlMillis < 1) {
+      throw new IllegalArgumentException("TTL must be positive");
+    }
+    if (opts.maxEntries < 1) {
+      throw new IllegalArgumentException("Max entries must be positive");
+    }
+    if (opts.maxBytes < 1) {
+      throw new IllegalArgumentException("Max bytes must be positive");
+    }
+    ttlNanos = opts.ttlMillis * 1_000_000;
+    maxEntries = opts.maxEntries;
+    maxBytes = opts.maxBytes;
+    offHeap = opts.offHeap;
+  }
+  
+  /**
+   * Completes with the response cached under {@code key} if there's a fresh
+   * one. Otherwise, if a response for the key is already being computed, the
+   * returned future completes with it. If neither, the response is computed
+   * with the {@code handler} and stored.
+   * <p>
+   * When the response of a concurrent miss can't be stored, e.g. because its
+   * body is a stream, the {@code handler} is called instead. It's called on
+   * the Vert.x context this method was called on, or on the thread that
+   * completed the other miss when there's no context.
+   *
+   * @param handler Called on a miss. Returns a future that completes with the
+   *                Ring response, or fails with the exception of the handler.
+   * @return A future that completes with the Ring response. When the response
+   * was stored, its body is a {@link Buffer}.
+   */
+  public CompletableFuture<IPersistentMap> get(Object key,
+                                               Supplier<CompletableFuture<IPersistentMap>> handler) {
+    Objects.requireNonNull(key, "Key cannot be null");
+    Entry entry = lookup(key, System.nanoTime());
+    if (entry != null) {
+      return CompletableFuture.completedFuture(entry.response);
+    }
+    
+    var shared = new CompletableFuture<IPersistentMap>();
+    CompletableFuture<IPersistentMap> existing = inFlight.putIfAbsent(key, shared);
+    if (existing != null) {
+      Context context = Vertx.currentContext();
+      return existing.thenCompose(res -> {
+        if (res != null) {
+          return CompletableFuture.completedFuture(res);
+        }
+        if (context == null) {
+          return load(handler);
+        }
+        var result = new CompletableFuture<IPersistentMap>();
+        context.runOnContext(v -> load(handler).whenComplete((r, ex) -> {
+          if (ex != null) {
+            result.completeExceptionally(ex);
+          } else {
+            result.complete(r);
+          }
+        }));
+        return result;
+      });
+    }
+    
+    var result = new CompletableFuture<IPersistentMap>();
+    load(handler).whenComplete((res, ex) -> {
+      if (ex != null) {
+        fail(key, shared, ex);
+        result.completeExceptionally(ex);
+      } else {
+        IPersistentMap stored = complete(key, shared, res);
+        result.complete(stored != null ? stored : res);
+      }
+    });
+    return result;
+  }
+  
+  /**
+   * Like {@link #get(Object, Supplier)}, for a handler that returns the
+   * response. The calling thread waits while a concurrent miss for the same
+   * key is computed. When its response can't be stored the {@code handler}
+   * is called on the calling thread.
+   *
+   * @throws java.util.concurrent.CompletionException If a concurrent miss failed.
+   */
+  public IPersistentMap getBlocking(Object key, Supplier<IPersistentMap> handler) {
+    Objects.requireNonNull(key, "Key cannot be null");
+    Entry entry = lookup(key, System.nanoTime());
+    if (entry != null) {
+      return entry.response;
+    }
+    
+    var shared = new CompletableFuture<IPersistentMap>();
+    CompletableFuture<IPersistentMap> existing = inFlight.putIfAbsent(key, shared);
+    if (existing != null) {
+      IPersistentMap res = existing.join();
+      return res != null ? res : handler.get();
+    }
+    
+    IPersistentMap res;
+    try {
+      res = handler.get();
+    } catch (RuntimeException | Error ex) {
+      fail(key, shared, ex);
+      throw ex;
+    }
+    IPersistentMap stored = complete(key, shared, res);
+    return stored != null ? stored : res;
+  }
+  
+  private void fail(Object key, CompletableFuture<IPersistentMap> shared, Throwable ex) {
+    inFlight.remove(key, shared);
+    shared.completeExceptionally(ex);
+  }
+  
+  /**
+   * Stores the response of a miss, and shares it with the concurrent misses.
+   *
+   * @return The stored response, or {@code null} if it wasn't stored.
+   */
+  private @Nullable IPersistentMap complete(Object key,
+                                            CompletableFuture<IPersistentMap> shared,
+                                            IPersistentMap res) {
+    IPersistentMap stored;
+    try {
+      stored = store(key, res);
+    } catch (RuntimeException ex) {
+      stored = null;
+    }
+    inFlight.remove(key, shared);
+    shared.complete(stored);
+    return stored;
+  }
+  
+  public synchronized int size() {
+    return entries.size();
+  }
+  
+  public synchronized long bytes() {
+    return size;
+  }
+  
+  private static CompletableFuture<IPersistentMap> load(Supplier<CompletableFuture<IPersistentMap>> handler) {
+    try {
+      return handler.get();
+    } catch (Throwable ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+  }
+  
+  private static boolean isStorable(IPersistentMap response) {
+    if (response == null || (Integer) STATUS.from(response) != 200 || hasCookies(response)) {
+      return false;
+    }
+    Object body = response.valAt(BODY.keyword(), null);
+    return body == null
+        || body instanceof String
+        || body instanceof byte[]
+        || body instanceof Buffer
+        || body instanceof ByteBuffer
+        || body instanceof ByteBuf
+        || body instanceof ByteBufHolder;
+  }
+  
+  /**
+   * Responses that set cookies are specific to a client, and are not stored.
+   */
+  private static boolean hasCookies(IPersistentMap response) {
+    var headers = (IPersistentMap) HEADERS.from(response);
+    if (headers != null) {
+      for (var obj : headers) {
+        if ("set-cookie".equalsIgnoreCase(String.valueOf(((IMapEntry) obj).key()))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * @return The response with its body replaced by the stored copy, or
+   * {@code null} if it wasn't stored.
+   */
+  private @Nullable IPersistentMap store(Object key, IPersistentMap response) {
+    if (!isStorable(response)) {
+      return null;
+    }
+    Object original = BODY.from(response);
+    Buffer body = copy(original instanceof ByteBufHolder ?
+                       Buffer.buffer(((ByteBufHolder) original).content()) :
+                       toBuffer(original));
+    var entry = new Entry(response.assoc(BODY.keyword(), body),
+                          System.nanoTime() + ttlNanos,
+                          ENTRY_OVERHEAD + headersSize(response) + body.length());
+    if (entry.bytes > maxBytes) {
+      return null;
+    }
+    put(key, entry);
+    if (original instanceof ReferenceCounted) {
+      ((ReferenceCounted) original).release();
+    }
+    return entry.response;
+  }
+  
+  private Buffer copy(Buffer body) {
+    ByteBuf source = body.getByteBuf();
+    if (offHeap) {
+      ByteBuffer direct = ByteBuffer.allocateDirect(source.readableBytes());
+      source.getBytes(source.readerIndex(), direct);
+      direct.flip();
+      return Buffer.buffer(Unpooled.wrappedBuffer(direct));
+    }
+    var bytes = new byte[source.readableBytes()];
+    source.getBytes(source.readerIndex(), bytes);
+    return Buffer.buffer(Unpooled.wrappedBuffer(bytes));
+  }
+  
+  private static long headersSize(IPersistentMap response) {
+    var headers = (IPersistentMap) HEADERS.from(response);
+    long res = 0;
+    if (headers != null) {
+      for (var obj : headers) {
+        var header = (IMapEntry) obj;
+        res += String.valueOf(header.key()).length() + String.valueOf(header.val()).length();
+      }
+    }
+    return res;
+  }
+  
+  private synchronized @Nullable Entry lookup(Object key, long now) {
+    Entry entry = entries.get(key);
+    if (entry != null && now - entry.expiresAt >= 0) {
+      remove(key);
+      return null;
+    }
+    return entry;
+  }
+  
+  private synchronized void put(Object key, Entry entry) {
+    Entry previous = entries.put(key, entry);
+    if (previous != null) {
+      size -= previous.bytes;
+    }
+    size += entry.bytes;
+    var iterator = entries.values().iterator();
+    while ((size > maxBytes || entries.size() > maxEntries) && iterator.hasNext()) {
+      size -= iterator.next().bytes;
+      iterator.remove();
+    }
+  }
+  
+  private synchronized void remove(Object key) {
+    Entry previous = entries.remove(key);
+    if (previous != null) {
+      size -= previous.bytes;
+    }
+  }
+  
+  private static final class Entry {
+    
+    private final IPersistentMap response;
+    private final long expiresAt;
+    private final long bytes;
+    
+    private Entry(IPersistentMap response, long expiresAt, long bytes) {
+      this.response = response;
+      this.expiresAt = expiresAt;
+      this.bytes = bytes;
+    }
+  }
+}
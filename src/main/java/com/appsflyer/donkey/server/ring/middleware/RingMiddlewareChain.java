@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.ring.middleware;
+
+import clojure.lang.IEditableCollection;
+import clojure.lang.ILookup;
+import clojure.lang.IPersistentMap;
+import clojure.lang.ITransientMap;
+import com.appsflyer.donkey.server.ring.handler.RingResponseAdapter;
+
+import java.util.List;
+import java.util.Objects;
+
+import static com.appsflyer.donkey.server.ring.handler.RingResponseField.BODY;
+
+/**
+ * Applies a sequence of {@link RingMiddleware} in order, in a single loop.
+ * <p></p>
+ * The chain is compiled once, when a route is created, instead of nesting a
+ * function and an exception handler for each middleware. Consecutive
+ * {@link TransientRingMiddleware} are applied to one transient map, that is
+ * made persistent after the last of them.
+ */
+public final class RingMiddlewareChain implements RingMiddleware {
+  
+  public static RingMiddleware create(List<? extends RingMiddleware> middleware) {
+    return new RingMiddlewareChain(middleware);
+  }
+  
+  private final RingMiddleware[] middleware;
+  /**
+   * For each index, the index after the last middleware in the run of
+   * consecutive {@link TransientRingMiddleware} it starts.
+   */
+  private final int[] transientRunEnd;
+  
+  private RingMiddlewareChain(List<? extends RingMiddleware> middleware) {
+    Objects.requireNonNull(middleware, "Middleware list cannot be null");
+    this.middleware = middleware.toArray(new RingMiddleware[0]);
+    transientRunEnd = new int[this.middleware.length];
+    for (int i = this.middleware.length - 1; i >= 0; i--) {
+      Objects.requireNonNull(this.middleware[i], "Middleware cannot be null");
+      if (!(this.middleware[i] instanceof TransientRingMiddleware)) {
+        transientRunEnd[i] = i;
+      } else if (i + 1 < this.middleware.length && transientRunEnd[i + 1] > i + 1) {
+        transientRunEnd[i] = transientRunEnd[i + 1];
+      } else {
+        transientRunEnd[i] = i + 1;
+      }
+    }
+  }
+  
+  /**
+   * If a middleware fails after an earlier one in the chain set a
+   * {@link io.netty.buffer.ByteBuf} or {@link io.netty.buffer.ByteBufHolder}
+   * body, that body is released, since the response that owns it is dropped.
+   * The body of the given map is left to the caller.
+   */
+  @Override
+  public IPersistentMap handle(IPersistentMap map) {
+    Objects.requireNonNull(map, "Map cannot be null");
+    IPersistentMap res = map;
+    ILookup current = map;
+    int i = 0;
+    try {
+      while (i < middleware.length) {
+        int end = transientRunEnd[i];
+        if (end - i > 1 && res instanceof IEditableCollection) {
+          var editable = (ITransientMap) ((IEditableCollection) res).asTransient();
+          for (; i < end; i++) {
+            editable = ((TransientRingMiddleware) middleware[i]).handleTransient(editable);
+            current = editable;
+          }
+          res = editable.persistent();
+        } else {
+          res = middleware[i].handle(res);
+          i++;
+        }
+        current = res;
+      }
+    } catch (RuntimeException ex) {
+      Object body = current.valAt(BODY.keyword());
+      if (body != map.valAt(BODY.keyword())) {
+        RingResponseAdapter.releaseBody(body);
+      }
+      throw ex;
+    }
+    return res;
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.ring.middleware;
+
+import clojure.lang.ITransientMap;
+
+/**
+ * A {@link RingMiddleware} that can also be applied to a transient map.
+ * <p></p>
+ * {@link RingMiddlewareChain} applies consecutive transient middleware to the
+ * same transient map, so the map is made persistent once for all of them
+ * instead of once for each {@code assoc}.
+ */
+public interface TransientRingMiddleware extends RingMiddleware {
+  
+  /**
+   * Same as {@link #handle(clojure.lang.IPersistentMap)}, but updates the map
+   * in place. Like with any transient, the returned map must be used instead
+   * of the argument.
+   */
+  ITransientMap handleTransient(ITransientMap map);
+}
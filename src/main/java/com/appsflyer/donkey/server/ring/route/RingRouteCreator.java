@@ -47,12 +47,12 @@ public final class RingRouteCreator extends AbstractRouteCreator {
     setProduces(route, rd);
   
     if (rd.handler() instanceof RingHandler) {
-      addBodyHandler(route);
+      addBodyHandler(route, rd.bodyMode());
       route.handler(adapterFactory.requestAdapter());
-      addHandler(route, rd.handler(), rd.handlerMode());
+      addHandler(route, rd);
       route.handler(adapterFactory.responseAdapter());
     } else {
-      addHandler(route, rd.handler(), rd.handlerMode());
+      addHandler(route, rd);
     }
   }
 }
@@ -17,12 +17,18 @@
 
 package com.appsflyer.donkey.server.route;
 
+import com.appsflyer.donkey.server.handler.BodyStreamHandler;
+import com.appsflyer.donkey.server.handler.JsonBodyHandler;
+import com.appsflyer.donkey.server.handler.VirtualThreadHandler;
+import com.appsflyer.donkey.server.handler.WorkerPoolHandler;
 import io.vertx.core.Handler;
 import io.vertx.core.http.HttpMethod;
 import io.vertx.ext.web.Route;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
 import java.util.Set;
@@ -32,6 +38,7 @@ import static io.vertx.core.http.HttpMethod.*;
 
 public abstract class AbstractRouteCreator implements RouteCreator {
   
+  private static final Logger logger = LoggerFactory.getLogger(AbstractRouteCreator.class.getName());
   private static final Collection<HttpMethod> METHODS_WITH_BODY = Set.of(POST, PUT, PATCH);
   private final Router router;
   private final Collection<RouteDefinition> routeDefinitions;
@@ -92,15 +99,53 @@ public abstract class AbstractRouteCreator implements RouteCreator {
   
   @Override
   public void addBodyHandler(Route route) {
+    addBodyHandler(route, BodyMode.BUFFERED);
+  }
+  
+  @Override
+  public void addBodyHandler(Route route, BodyMode bodyMode) {
     if (hasBody(route)) {
-      route.handler(BodyHandler.create());
+      if (bodyMode == BodyMode.STREAM) {
+        route.handler(BodyStreamHandler.create());
+      } else if (bodyMode == BodyMode.JSON) {
+        route.handler(JsonBodyHandler.create());
+      } else {
+        route.handler(BodyHandler.create());
+      }
+    }
+  }
+  
+  @Override
+  public void addHandler(Route route, RouteDefinition rd) {
+    WorkerPoolConfig workerPool = rd.workerPool();
+    if (workerPool == null) {
+      addHandler(route, rd.handler(), rd.handlerMode());
+    } else if (rd.handlerMode() == HandlerMode.BLOCKING) {
+      route.handler(WorkerPoolHandler.create(workerPool, rd.handler()));
+    } else {
+      throw new IllegalArgumentException(
+          String.format("Worker pool '%s' can only be used with a %s handler, found %s",
+                        workerPool.name(), HandlerMode.BLOCKING, rd.handlerMode()));
     }
   }
   
+  /**
+   * A {@link HandlerMode#VIRTUAL} handler runs on the shared worker pool, like
+   * a {@link HandlerMode#BLOCKING} handler, when the runtime doesn't support
+   * virtual threads.
+   */
   @Override
   public void addHandler(Route route, Handler<RoutingContext> handler, HandlerMode handlerMode) {
     if (handlerMode == HandlerMode.BLOCKING) {
       route.blockingHandler(handler);
+    } else if (handlerMode == HandlerMode.VIRTUAL) {
+      if (VirtualThreadHandler.virtualThreadsSupported()) {
+        route.handler(VirtualThreadHandler.create(handler));
+      } else {
+        logger.warn("Virtual threads are not supported by Java {}. Route {} will run on the worker pool.",
+                    Runtime.version().feature(), route.getPath());
+        route.blockingHandler(handler);
+      }
     } else {
       route.handler(handler);
     }
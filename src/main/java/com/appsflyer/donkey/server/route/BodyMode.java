@@ -0,0 +1,45 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.appsflyer.donkey.server.route;
+
+/**
+ * Describes how the request body is made available to the handler.
+ * <p>
+ * By default the body mode is {@code BodyMode.BUFFERED}. The entire body is
+ * read into memory before the handler is called, and it is available as a
+ * {@code byte[]}.
+ * <p>
+ * In {@code BodyMode.STREAM} mode the handler is called as soon as the
+ * request headers arrive, and the body is available as an
+ * {@link java.io.InputStream} that is fed from the connection as data arrives.
+ * The connection is paused when the handler falls behind, so large uploads
+ * are never fully held in memory.
+ * Reading from the stream blocks the calling thread until data is available,
+ * therefore it should only be read off the event loop, e.g
+ * with {@code HandlerMode.BLOCKING}.
+ * <p>
+ * In {@code BodyMode.JSON} mode the body is checked to be valid JSON as data
+ * arrives, and a malformed body is rejected before all of it is received.
+ * The handler is called with the received chunks as a
+ * {@link io.vertx.core.buffer.Buffer} once the request ends, without copying
+ * them into one array. The body is turned into a value by the JSON
+ * deserialization middleware.
+ */
+public enum BodyMode {
+  BUFFERED, STREAM, JSON
+}
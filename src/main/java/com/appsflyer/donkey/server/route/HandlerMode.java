@@ -29,7 +29,15 @@ package com.appsflyer.donkey.server.route;
  * {@code HandlerMode.BLOCKING} mode should be used.
  * In that case the handler execution will be offloaded to a separate thread pool
  * leaving the event loop free to serve requests.
+ * <p>
+ * The {@code HandlerMode.VIRTUAL} mode is used for the same kind of handlers
+ * as {@code HandlerMode.BLOCKING}, but each request is executed on its own
+ * virtual thread instead of on the worker pool. It's a better fit for handlers
+ * that spend most of their time waiting on I/O (e.g a database call), because
+ * the number of concurrent requests is not limited by the size of the pool.
+ * Virtual threads require Java 21. On earlier versions the handler falls back
+ * to an unbounded pool of platform threads.
  */
 public enum HandlerMode {
-  BLOCKING, NON_BLOCKING
+  BLOCKING, NON_BLOCKING, VIRTUAL
 }
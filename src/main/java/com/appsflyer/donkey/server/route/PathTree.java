@@ -0,0 +1,219 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.appsflyer.donkey.server.route;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.appsflyer.donkey.server.route.PathDefinition.MatchType.SIMPLE;
+
+/**
+ * A prefix tree of path segments. Each path that is added to the tree is split
+ * into segments, where a segment can be either static (e.g {@code users}),
+ * a path variable (e.g {@code :id}), or a trailing wildcard ({@code *}) that
+ * matches the rest of the path.
+ * <p>
+ * Looking up a path takes time proportional to the number of its segments,
+ * rather than to the number of paths in the tree. When more than one path
+ * matches, the values are returned from the most specific match to the least
+ * specific one - a static segment is more specific than a path variable, which
+ * is more specific than a wildcard.
+ * <p>
+ * The tree is not thread safe while it's being built, but it's safe to look up
+ * paths concurrently once it was built.
+ *
+ * @param <T> The type of the values that are associated with the paths.
+ */
+public final class PathTree<T> {
+  
+  private static final char SEPARATOR = '/';
+  private static final char VARIABLE_PREFIX = ':';
+  private static final String WILDCARD = "*";
+  
+  public static <T> PathTree<T> create() {
+    return new PathTree<>();
+  }
+  
+  /**
+   * @return True if the path can be added to a tree. Only paths with a
+   * {@code SIMPLE} match type that consist of static segments, path
+   * variables that span an entire segment, and an optional trailing wildcard
+   * are supported.
+   */
+  public static boolean supports(PathDefinition path) {
+    if (path == null || path.matchType() != SIMPLE) {
+      return false;
+    }
+    var value = path.value();
+    if (value == null || value.isEmpty() || value.charAt(0) != SEPARATOR) {
+      return false;
+    }
+    var segments = split(value);
+    for (int i = 0; i < segments.size(); i++) {
+      var segment = segments.get(i);
+      if (WILDCARD.equals(segment)) {
+        if (i != segments.size() - 1) {
+          return false;
+        }
+      } else if (segment.indexOf('*') != -1 || segment.indexOf(VARIABLE_PREFIX, 1) != -1) {
+        return false;
+      } else if (isVariable(segment) && !isVariableName(segment)) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  private static boolean isVariable(String segment) {
+    return !segment.isEmpty() && segment.charAt(0) == VARIABLE_PREFIX;
+  }
+  
+  /**
+   * @return True if the segment is a path variable with a name made of
+   * letters, digits and underscores, e.g {@code :user_id}.
+   */
+  private static boolean isVariableName(String segment) {
+    if (segment.length() < 2) {
+      return false;
+    }
+    for (int i = 1; i < segment.length(); i++) {
+      char c = segment.charAt(i);
+      if (!(Character.isLetterOrDigit(c) && c < 128) && c != '_') {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  private final Node<T> root = new Node<>();
+  private int size;
+  
+  private PathTree() {}
+  
+  /**
+   * Associate the value with the path. Adding a value to a path that
+   * already exists appends it to the path's values.
+   *
+   * @throws IllegalArgumentException If the path is not supported.
+   * @see #supports(PathDefinition)
+   */
+  public PathTree<T> add(String path, T value) {
+    Objects.requireNonNull(value, "Value cannot be null");
+    if (!supports(PathDefinition.create(path))) {
+      throw new IllegalArgumentException(String.format("Unsupported path '%s'", path));
+    }
+    var node = root;
+    for (var segment : split(path)) {
+      if (WILDCARD.equals(segment)) {
+        node.wildcardValues.add(value);
+        size++;
+        return this;
+      }
+      if (isVariable(segment)) {
+        if (node.variable == null) {
+          node.variable = new Node<>();
+        }
+        node = node.variable;
+      } else {
+        node = node.children.computeIfAbsent(segment, k -> new Node<>());
+      }
+    }
+    node.values.add(value);
+    size++;
+    return this;
+  }
+  
+  /**
+   * @return The number of values in the tree.
+   */
+  public int size() {
+    return size;
+  }
+  
+  /**
+   * @param path A request path, e.g {@code /users/1}.
+   * @return The values of all the paths that match, ordered from the most
+   * specific match to the least specific one. An empty list is returned
+   * if there's no match.
+   */
+  public List<T> match(String path) {
+    if (path == null || path.isEmpty() || path.charAt(0) != SEPARATOR) {
+      return Collections.emptyList();
+    }
+    int end = path.length();
+    // A trailing separator is ignored, `/foo/` is the same as `/foo`.
+    if (end > 1 && path.charAt(end - 1) == SEPARATOR) {
+      end--;
+    }
+    List<T> res = new ArrayList<>(1);
+    match(root, path, 1, end, res);
+    return res;
+  }
+  
+  private static <T> void match(Node<T> node, String path, int start, int end, List<T> res) {
+    if (start >= end) {
+      res.addAll(node.values);
+      res.addAll(node.wildcardValues);
+      return;
+    }
+    int next = path.indexOf(SEPARATOR, start);
+    if (next == -1 || next > end) {
+      next = end;
+    }
+    if (!node.children.isEmpty()) {
+      var child = node.children.get(path.substring(start, next));
+      if (child != null) {
+        match(child, path, next + 1, end, res);
+      }
+    }
+    // A path variable cannot be empty
+    if (node.variable != null && next > start) {
+      match(node.variable, path, next + 1, end, res);
+    }
+    res.addAll(node.wildcardValues);
+  }
+  
+  private static List<String> split(String path) {
+    var res = new ArrayList<String>();
+    int end = path.length();
+    if (end > 1 && path.charAt(end - 1) == SEPARATOR) {
+      end--;
+    }
+    int start = 1;
+    while (start < end) {
+      int next = path.indexOf(SEPARATOR, start);
+      if (next == -1 || next > end) {
+        next = end;
+      }
+      res.add(path.substring(start, next));
+      start = next + 1;
+    }
+    return res;
+  }
+  
+  private static final class Node<T> {
+    private final Map<String, Node<T>> children = new HashMap<>();
+    private final List<T> values = new ArrayList<>(1);
+    private final List<T> wildcardValues = new ArrayList<>(1);
+    private Node<T> variable;
+  }
+}
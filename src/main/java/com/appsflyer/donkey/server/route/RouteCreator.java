@@ -36,5 +36,9 @@ public interface RouteCreator {
   
   void addBodyHandler(Route route);
   
+  void addBodyHandler(Route route, BodyMode bodyMode);
+  
+  void addHandler(Route route, RouteDefinition rd);
+  
   void addHandler(Route route, Handler<RoutingContext> handler, HandlerMode handlerMode);
 }
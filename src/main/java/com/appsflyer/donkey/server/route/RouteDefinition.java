@@ -40,6 +40,8 @@ public final class RouteDefinition {
   private final Collection<String> consumes = new HashSet<>(6);
   private final Collection<String> produces = new HashSet<>(6);
   private HandlerMode handlerMode = HandlerMode.NON_BLOCKING;
+  private BodyMode bodyMode = BodyMode.BUFFERED;
+  private WorkerPoolConfig workerPool;
   private Handler<RoutingContext> handler;
   private PathDefinition path;
   
@@ -129,4 +131,28 @@ public final class RouteDefinition {
     this.handlerMode = handlerMode;
     return this;
   }
+  
+  public BodyMode bodyMode() {
+    return bodyMode;
+  }
+  
+  public RouteDefinition bodyMode(BodyMode bodyMode) {
+    Objects.requireNonNull(bodyMode, "body mode cannot be null");
+    this.bodyMode = bodyMode;
+    return this;
+  }
+  
+  public WorkerPoolConfig workerPool() {
+    return workerPool;
+  }
+  
+  /**
+   * Run the handler on a dedicated worker pool instead of the shared Vert.x
+   * worker pool. Can only be used with {@code HandlerMode.BLOCKING}.
+   */
+  public RouteDefinition workerPool(WorkerPoolConfig workerPool) {
+    Objects.requireNonNull(workerPool, "worker pool cannot be null");
+    this.workerPool = workerPool;
+    return this;
+  }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.route;
+
+import java.util.Objects;
+
+/**
+ * Describes a dedicated worker pool for {@code HandlerMode.BLOCKING} routes.
+ * <p>
+ * By default all blocking routes share the Vert.x worker pool, so a single
+ * slow downstream service can occupy all the worker threads and starve
+ * every other blocking route. A route that has a worker pool runs its handler
+ * on a pool of its own. Routes that use the same pool name share the pool.
+ * <p>
+ * When {@code maxQueue} requests are already waiting for a thread of the pool,
+ * new requests are rejected with {@code 503 Service Unavailable} instead of
+ * being queued.
+ */
+public final class WorkerPoolConfig {
+  
+  public static WorkerPoolConfig create(String name, int size) {
+    return new WorkerPoolConfig(name, size, Integer.MAX_VALUE);
+  }
+  
+  public static WorkerPoolConfig create(String name, int size, int maxQueue) {
+    return new WorkerPoolConfig(name, size, maxQueue);
+  }
+  
+  private final String name;
+  private final int size;
+  private final int maxQueue;
+  
+  private WorkerPoolConfig(String name, int size, int maxQueue) {
+    Objects.requireNonNull(name, "Worker pool name cannot be null");
+    if (name.isBlank()) {
+      throw new IllegalArgumentException("Worker pool name cannot be blank");
+    }
+    if (size < 1) {
+      throw new IllegalArgumentException("Worker pool size must be greater than 0");
+    }
+    if (maxQueue < 0) {
+      throw new IllegalArgumentException("Worker pool max queue cannot be negative");
+    }
+    this.name = name;
+    this.size = size;
+    this.maxQueue = maxQueue;
+  }
+  
+  /**
+   * The name of the pool. It's used as the prefix of the pool's thread names,
+   * and in the pool's metrics.
+   */
+  public String name() {
+    return name;
+  }
+  
+  /**
+   * The number of threads in the pool.
+   */
+  public int size() {
+    return size;
+  }
+  
+  /**
+   * The maximum number of requests that can wait for a thread of the pool.
+   */
+  public int maxQueue() {
+    return maxQueue;
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.appsflyer.donkey.server.router;
+
+import com.appsflyer.donkey.server.route.PathTree;
+import com.appsflyer.donkey.server.route.RouteDefinition;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Dispatches a request to a {@link Router} that holds only the routes
+ * whose path matches the request in a {@link PathTree}. The router is
+ * responsible for matching the request's method, content type, etc', and for
+ * falling back to the next route when one doesn't match. If none of the routes
+ * match, the request continues to the routes that follow the dispatcher.
+ * <p>
+ * A router is created the first time a combination of paths is matched, and
+ * is reused for subsequent requests that match the same paths.
+ */
+final class PathTreeDispatcher implements Handler<RoutingContext> {
+  
+  static PathTreeDispatcher create(
+      PathTree<List<RouteDefinition>> tree,
+      Function<List<RouteDefinition>, Router> routerFactory) {
+    return new PathTreeDispatcher(tree, routerFactory);
+  }
+  
+  private final PathTree<List<RouteDefinition>> tree;
+  private final Function<List<RouteDefinition>, Router> routerFactory;
+  private final Map<List<List<RouteDefinition>>, Router> routers = new ConcurrentHashMap<>();
+  
+  private PathTreeDispatcher(
+      PathTree<List<RouteDefinition>> tree,
+      Function<List<RouteDefinition>, Router> routerFactory) {
+    Objects.requireNonNull(tree, "Path tree cannot be null");
+    Objects.requireNonNull(routerFactory, "Router factory cannot be null");
+    this.tree = tree;
+    this.routerFactory = routerFactory;
+  }
+  
+  @Override
+  public void handle(RoutingContext ctx) {
+    var matches = tree.match(ctx.normalizedPath());
+    if (matches.isEmpty()) {
+      ctx.next();
+    } else {
+      routers.computeIfAbsent(matches, this::createRouter).handleContext(ctx);
+    }
+  }
+  
+  private Router createRouter(List<List<RouteDefinition>> matches) {
+    List<RouteDefinition> routes = new ArrayList<>();
+    matches.forEach(routes::addAll);
+    return routerFactory.apply(routes);
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appsflyer.donkey.server.router;
+
+/**
+ * Determines how a request is matched to a route.
+ * <p>
+ * {@code RouteMatcher.LINEAR} (the default) adds every route to the
+ * {@link io.vertx.ext.web.Router}, which tries to match the routes one at a
+ * time in the order they were defined.
+ * <p>
+ * {@code RouteMatcher.RADIX_TREE} compiles the routes that have a simple path
+ * into a {@link com.appsflyer.donkey.server.route.PathTree}, so matching a
+ * request takes time proportional to the length of its path rather than to the
+ * number of routes. When more than one path matches a request the most
+ * specific one is tried first, e.g {@code /users/me} before
+ * {@code /users/:id}. Routes with a regular expression path are tried after
+ * the compiled routes, in the order they were defined.
+ */
+public enum RouteMatcher {
+  LINEAR, RADIX_TREE
+}
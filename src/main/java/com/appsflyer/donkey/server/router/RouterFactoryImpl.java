@@ -17,29 +17,44 @@
 
 package com.appsflyer.donkey.server.router;
 
+import com.appsflyer.donkey.server.route.PathTree;
 import com.appsflyer.donkey.server.route.RouteCreatorFactory;
 import com.appsflyer.donkey.server.handler.NotFoundErrorHandler;
 import com.appsflyer.donkey.server.handler.InternalServerErrorHandler;
+import com.appsflyer.donkey.server.route.RouteDefinition;
 import com.appsflyer.donkey.server.route.RouteList;
 import io.vertx.core.Vertx;
 import io.vertx.ext.web.Router;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 public final class RouterFactoryImpl implements RouterFactory {
   
   public static RouterFactory create(Vertx vertx, RouteList routeList) {
-    return new RouterFactoryImpl(vertx, routeList);
+    return create(vertx, routeList, RouteMatcher.LINEAR);
   }
   
+  public static RouterFactory create(Vertx vertx, RouteList routeList, RouteMatcher routeMatcher) {
+    return new RouterFactoryImpl(vertx, routeList, routeMatcher);
+  }
+  
+  private final Vertx vertx;
   private final Router router;
   private final RouteList routeList;
+  private final RouteMatcher routeMatcher;
   
-  private RouterFactoryImpl(Vertx vertx, RouteList routeList) {
+  private RouterFactoryImpl(Vertx vertx, RouteList routeList, RouteMatcher routeMatcher) {
     Objects.requireNonNull(vertx, "Vertx argument is missing");
     Objects.requireNonNull(routeList, "Route list argument is missing");
+    Objects.requireNonNull(routeMatcher, "Route matcher argument is missing");
     
+    this.vertx = vertx;
     this.routeList = routeList;
+    this.routeMatcher = routeMatcher;
     router = Router.router(vertx);
     router.errorHandler(500, InternalServerErrorHandler.create())
           .errorHandler(404, NotFoundErrorHandler.create());
@@ -47,6 +62,44 @@ public final class RouterFactoryImpl implements RouterFactory {
   
   @Override
   public Router withRouteCreator(RouteCreatorFactory routeCreatorFactory) {
+    if (routeMatcher == RouteMatcher.RADIX_TREE) {
+      return addRadixTreeRoutes(routeCreatorFactory);
+    }
     return routeCreatorFactory.newInstance(router, routeList).addRoutes();
   }
+  
+  /**
+   * Routes that have a path that's supported by {@link PathTree} are grouped
+   * by path and added to the tree. The tree is mounted in place of the first
+   * of those routes, and the rest of the routes are added as is, keeping their
+   * relative order.
+   */
+  private Router addRadixTreeRoutes(RouteCreatorFactory routeCreatorFactory) {
+    List<RouteDefinition> before = new ArrayList<>();
+    List<RouteDefinition> after = new ArrayList<>();
+    Map<String, List<RouteDefinition>> paths = new LinkedHashMap<>();
+    
+    for (var rd : routeList.routes()) {
+      if (PathTree.supports(rd.path())) {
+        paths.computeIfAbsent(rd.path().value(), k -> new ArrayList<>()).add(rd);
+      } else if (paths.isEmpty()) {
+        before.add(rd);
+      } else {
+        after.add(rd);
+      }
+    }
+    
+    routeCreatorFactory.newInstance(router, RouteList.from(before)).addRoutes();
+    
+    if (!paths.isEmpty()) {
+      PathTree<List<RouteDefinition>> tree = PathTree.create();
+      paths.forEach(tree::add);
+      router.route().handler(PathTreeDispatcher.create(
+          tree,
+          routes -> routeCreatorFactory.newInstance(Router.router(vertx), RouteList.from(routes))
+                                       .addRoutes()));
+    }
+    
+    return routeCreatorFactory.newInstance(router, RouteList.from(after)).addRoutes();
+  }
 }
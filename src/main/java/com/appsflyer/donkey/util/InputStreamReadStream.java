@@ -0,0 +1,185 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.util;
+
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * A Vert.x {@link ReadStream} that is fed by an {@link InputStream}.
+ * <p></p>
+ * The input stream is read on a worker thread, one chunk at a time, and
+ * the next chunk is only read when the stream is not paused. That way piping
+ * the stream to a slow connection doesn't read the entire input stream into
+ * memory. The input stream is closed when it was fully read, when reading
+ * failed, or when {@link #close()} is called.
+ */
+public final class InputStreamReadStream implements ReadStream<Buffer> {
+  
+  private static final Logger logger = LoggerFactory.getLogger(InputStreamReadStream.class.getName());
+  private static final int CHUNK_SIZE = 16 * 1024;
+  
+  public static InputStreamReadStream create(Vertx vertx, InputStream in) {
+    return new InputStreamReadStream(vertx, in);
+  }
+  
+  private final Context context;
+  private final InputStream in;
+  private Handler<Buffer> handler;
+  private Handler<Void> endHandler;
+  private Handler<Throwable> exceptionHandler;
+  private long demand = Long.MAX_VALUE;
+  private boolean reading;
+  private boolean closed;
+  
+  private InputStreamReadStream(Vertx vertx, InputStream in) {
+    Objects.requireNonNull(vertx, "Vertx cannot be null");
+    Objects.requireNonNull(in, "Input stream cannot be null");
+    context = vertx.getOrCreateContext();
+    this.in = in;
+  }
+  
+  @Override
+  public synchronized InputStreamReadStream handler(@Nullable Handler<Buffer> handler) {
+    this.handler = handler;
+    readNext();
+    return this;
+  }
+  
+  @Override
+  public synchronized InputStreamReadStream endHandler(@Nullable Handler<Void> endHandler) {
+    this.endHandler = endHandler;
+    return this;
+  }
+  
+  @Override
+  public synchronized InputStreamReadStream exceptionHandler(@Nullable Handler<Throwable> handler) {
+    exceptionHandler = handler;
+    return this;
+  }
+  
+  @Override
+  public synchronized InputStreamReadStream pause() {
+    demand = 0;
+    return this;
+  }
+  
+  @Override
+  public InputStreamReadStream resume() {
+    return fetch(Long.MAX_VALUE);
+  }
+  
+  @Override
+  public synchronized InputStreamReadStream fetch(long amount) {
+    if (amount > 0) {
+      demand += amount;
+      if (demand < 0) {
+        demand = Long.MAX_VALUE;
+      }
+      readNext();
+    }
+    return this;
+  }
+  
+  /**
+   * Closes the input stream. Data that was not read yet is discarded.
+   */
+  public synchronized void close() {
+    if (!closed) {
+      closed = true;
+      try {
+        in.close();
+      } catch (IOException ex) {
+        logger.warn("Failed to close input stream: {}", ex.getMessage());
+      }
+    }
+  }
+  
+  private void readNext() {
+    if (reading || closed || demand == 0 || handler == null) {
+      return;
+    }
+    reading = true;
+    context.<Buffer>executeBlocking(promise -> {
+      try {
+        promise.complete(readChunk());
+      } catch (IOException ex) {
+        promise.fail(ex);
+      }
+    }, false).onComplete(ar -> {
+      Handler<Buffer> dataHandler;
+      Handler<Void> onEnd;
+      Handler<Throwable> onFailure;
+      synchronized (this) {
+        reading = false;
+        if (closed) {
+          return;
+        }
+        dataHandler = handler;
+        onEnd = endHandler;
+        onFailure = exceptionHandler;
+        if (ar.failed() || ar.result() == null) {
+          close();
+        } else if (demand != Long.MAX_VALUE) {
+          demand--;
+        }
+      }
+      if (ar.failed()) {
+        if (onFailure != null) {
+          onFailure.handle(ar.cause());
+        }
+      } else if (ar.result() == null) {
+        if (onEnd != null) {
+          onEnd.handle(null);
+        }
+      } else {
+        if (dataHandler != null) {
+          dataHandler.handle(ar.result());
+        }
+        synchronized (this) {
+          readNext();
+        }
+      }
+    });
+  }
+  
+  /**
+   * Runs on a worker thread.
+   *
+   * @return The next chunk of data, or null if the input stream was fully read.
+   */
+  @Nullable
+  private Buffer readChunk() throws IOException {
+    var bytes = new byte[CHUNK_SIZE];
+    int read = in.read(bytes);
+    if (read < 0) {
+      return null;
+    }
+    return Buffer.buffer(Unpooled.wrappedBuffer(bytes, 0, read));
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.appsflyer.donkey.util;
+
+import io.vertx.core.Context;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link InputStream} that is fed by a Vert.x {@link ReadStream}.
+ * <p></p>
+ * Chunks of data are queued as they arrive from the stream, and the reading
+ * thread blocks until data is available. When the amount of queued data
+ * exceeds the high water mark the stream is paused, and it is resumed once
+ * the reader consumes enough data to go below the low water mark.
+ * <p></p>
+ * The instance must be created on the stream's context, and read from a
+ * different thread. Reading on the event loop would block it.
+ */
+public final class ReadStreamInputStream extends InputStream {
+  
+  public static final int DEFAULT_HIGH_WATER_MARK = 128 * 1024;
+  private static final Buffer END = Buffer.buffer();
+  
+  public static ReadStreamInputStream create(Context context, ReadStream<Buffer> stream) {
+    return create(context, stream, DEFAULT_HIGH_WATER_MARK);
+  }
+  
+  public static ReadStreamInputStream create(
+      Context context, ReadStream<Buffer> stream, int highWaterMark) {
+    return new ReadStreamInputStream(context, stream, highWaterMark);
+  }
+  
+  private final Context context;
+  private final ReadStream<Buffer> stream;
+  private final int highWaterMark;
+  private final int lowWaterMark;
+  private final BlockingQueue<Buffer> queue = new LinkedBlockingQueue<>();
+  private final AtomicInteger queuedBytes = new AtomicInteger();
+  private final AtomicBoolean paused = new AtomicBoolean();
+  private volatile boolean closed;
+  private volatile Throwable failure;
+  private Buffer current;
+  private int position;
+  
+  private ReadStreamInputStream(Context context, ReadStream<Buffer> stream, int highWaterMark) {
+    Objects.requireNonNull(context, "Context cannot be null");
+    Objects.requireNonNull(stream, "Stream cannot be null");
+    if (highWaterMark < 1) {
+      throw new IllegalArgumentException("High water mark must be greater than 0");
+    }
+    this.context = context;
+    this.stream = stream;
+    this.highWaterMark = highWaterMark;
+    lowWaterMark = highWaterMark / 2;
+    
+    stream.exceptionHandler(this::onFailure)
+          .endHandler(v -> queue.add(END))
+          .handler(this::onData);
+  }
+  
+  private void onData(Buffer chunk) {
+    if (closed) {
+      return;
+    }
+    queue.add(chunk);
+    if (queuedBytes.addAndGet(chunk.length()) >= highWaterMark
+        && paused.compareAndSet(false, true)) {
+      stream.pause();
+      // The reader may have drained the queue before it could see the
+      // stream was paused, in which case nobody else would resume it.
+      if (queuedBytes.get() <= lowWaterMark && paused.compareAndSet(true, false)) {
+        stream.resume();
+      }
+    }
+  }
+  
+  private void onFailure(Throwable ex) {
+    failure = ex;
+    queue.add(END);
+  }
+  
+  private void resume() {
+    context.runOnContext(v -> {
+      if (paused.compareAndSet(true, false)) {
+        stream.resume();
+      }
+    });
+  }
+  
+  /**
+   * @return The next chunk that has unread data, or null if the stream ended.
+   */
+  private Buffer nextChunk() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    while (current == null || position == current.length()) {
+      if (current == END) {
+        return null;
+      }
+      if (queue.isEmpty() && Context.isOnEventLoopThread()) {
+        // The data can only arrive on the event loop, so waiting for it
+        // here would block forever.
+        throw new IOException("Cannot block the event loop waiting for data");
+      }
+      try {
+        current = queue.take();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for data");
+      }
+      position = 0;
+      if (current == END) {
+        if (closed) {
+          throw new IOException("Stream closed");
+        }
+        if (failure != null) {
+          throw new IOException(failure.getMessage(), failure);
+        }
+        return null;
+      }
+      if (queuedBytes.addAndGet(-current.length()) <= lowWaterMark && paused.get()) {
+        resume();
+      }
+    }
+    return current;
+  }
+  
+  @Override
+  public int read() throws IOException {
+    Buffer chunk = nextChunk();
+    if (chunk == null) {
+      return -1;
+    }
+    return chunk.getByte(position++) & 0xff;
+  }
+  
+  @Override
+  public int read(byte[] bytes, int offset, int length) throws IOException {
+    Objects.checkFromIndexSize(offset, length, bytes.length);
+    if (length == 0) {
+      return 0;
+    }
+    Buffer chunk = nextChunk();
+    if (chunk == null) {
+      return -1;
+    }
+    int count = Math.min(length, chunk.length() - position);
+    chunk.getBytes(position, position + count, bytes, offset);
+    position += count;
+    return count;
+  }
+  
+  @Override
+  public int available() {
+    if (current == null || current == END) {
+      return 0;
+    }
+    return current.length() - position;
+  }
+  
+  /**
+   * Discards any queued data, as well as data that arrives after the stream
+   * is closed. A thread that is blocked reading from the stream is released
+   * with an {@link IOException}.
+   */
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      queue.clear();
+      queue.add(END);
+      resume();
+    }
+  }
+}
@@ -19,6 +19,8 @@ package com.appsflyer.donkey.util;
 
 import clojure.lang.*;
 import com.appsflyer.donkey.client.exception.UnsupportedDataTypeException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.QueryStringDecoder;
 import io.vertx.core.MultiMap;
 import io.vertx.core.buffer.Buffer;
@@ -26,6 +28,7 @@ import io.vertx.ext.web.multipart.MultipartForm;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.List;
@@ -118,12 +121,58 @@ public final class TypeConverter {
       }
     }
     
+    if (obj instanceof Buffer) {
+      return ((Buffer) obj).getBytes();
+    }
+    if (obj instanceof ByteBuffer) {
+      var byteBuffer = ((ByteBuffer) obj).duplicate();
+      var res = new byte[byteBuffer.remaining()];
+      byteBuffer.get(res);
+      return res;
+    }
+    if (obj instanceof ByteBuf) {
+      var byteBuf = (ByteBuf) obj;
+      var res = new byte[byteBuf.readableBytes()];
+      byteBuf.getBytes(byteBuf.readerIndex(), res);
+      return res;
+    }
+    
     throw new UnsupportedDataTypeException(String.format(
-        "Cannot create a byte[] from %s. Only String and InputStream are supported.",
+        "Cannot create a byte[] from %s. Only String, InputStream, Buffer, ByteBuffer " +
+            "and ByteBuf are supported.",
         obj.getClass().getCanonicalName()));
   }
   
+  /**
+   * Converts the argument to a {@link Buffer} without copying the data when
+   * possible. A {@link Buffer} is returned as is, and a {@code byte[]},
+   * {@link ByteBuffer} (heap or direct) or {@link ByteBuf} is wrapped.
+   * The readable bytes of a {@link ByteBuffer} or {@link ByteBuf} are
+   * determined when it is wrapped, and its position / reader index are not
+   * modified. The returned {@code Buffer} doesn't own a reference to a
+   * {@link ByteBuf}, so the caller is still responsible for releasing it once
+   * the {@code Buffer} was written, and must not modify the wrapped data
+   * until then. The server releases a {@code ByteBuf} response body for the
+   * handler.
+   *
+   * @param obj An object that can be converted to a Buffer
+   * @return Buffer representation of the argument
+   * @throws UnsupportedDataTypeException When argument type cannot be converted to a Buffer
+   */
   public static Buffer toBuffer(Object obj) {
+    if (obj instanceof Buffer) {
+      return (Buffer) obj;
+    }
+    if (obj instanceof byte[]) {
+      return Buffer.buffer(Unpooled.wrappedBuffer((byte[]) obj));
+    }
+    if (obj instanceof ByteBuffer) {
+      return Buffer.buffer(Unpooled.wrappedBuffer((ByteBuffer) obj));
+    }
+    if (obj instanceof ByteBuf) {
+      var byteBuf = (ByteBuf) obj;
+      return Buffer.buffer(byteBuf.slice(byteBuf.readerIndex(), byteBuf.readableBytes()));
+    }
     return Buffer.buffer(toBytes(obj));
   }
   
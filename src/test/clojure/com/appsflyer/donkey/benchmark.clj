@@ -23,6 +23,10 @@
             [ring.middleware.params :refer [wrap-params]]
             [ring.middleware.json :refer [wrap-json-body
                                           wrap-json-response]]
+            [com.appsflyer.donkey.core :as donkey]
+            [com.appsflyer.donkey.server :as server]
+            [com.appsflyer.donkey.client :as client]
+            [com.appsflyer.donkey.request :refer [submit]]
             [com.appsflyer.donkey.middleware.params :refer [parse-query-params]]
             [com.appsflyer.donkey.middleware.json :refer [make-serialize-middleware
                                                           make-deserialize-middleware]]
@@ -148,13 +152,59 @@
 
 ; =============================================================
 
+(def ^:private ^:const route-count 300)
+(def ^:private ^:const route-matcher-port 16970)
+
+(defn- bench-route-matcher
+  "Starts a server with `route-count` routes using the given `route-matcher`,
+  and benchmarks requesting the last route over a keep-alive connection.
+  The difference between the two matchers is the difference in the time it
+  takes to match the request to the route, since everything else is the same."
+  [route-matcher]
+  (let [donkey-core (donkey/create-donkey {:event-loops 1})
+        routes (vec (for [i (range route-count)]
+                      {:path    (str "/api/v1/resource-" i "/:id")
+                       :methods [:get]
+                       :handler (fn [_req respond _raise]
+                                  (respond {:status 200}))}))
+        donkey-server (donkey/create-server donkey-core {:port          route-matcher-port
+                                                         :instances     1
+                                                         :routes        routes
+                                                         :route-matcher route-matcher})
+        donkey-client (donkey/create-client donkey-core {:default-port route-matcher-port
+                                                         :keep-alive   true})
+        request (client/request donkey-client {:method :get
+                                               :uri    (str "/api/v1/resource-"
+                                                            (dec route-count)
+                                                            "/1")})]
+    (server/start-sync donkey-server)
+    (try
+      (cc/bench @(submit request))
+      (finally
+        (client/stop donkey-client)
+        (server/stop-sync donkey-server)))))
+
+(defn bench-linear-route-matcher []
+  (title bench-linear-route-matcher)
+  (bench-route-matcher :linear))
+
+; =============================================================
+
+(defn bench-radix-tree-route-matcher []
+  (title bench-radix-tree-route-matcher)
+  (bench-route-matcher :radix-tree))
+
+; =============================================================
+
 (defn- run-all []
   (bench-ring-wrap-keyword-params query-str)
   (bench-donkey-keywordize-query-params query-str)
   (bench-ring-wrap-json-body json-body)
   (bench-donkey-parse-json-body json-body)
   (bench-ring-wrap-json-response json-response)
-  (bench-donkey-serialize-json-response json-response))
+  (bench-donkey-serialize-json-response json-response)
+  (bench-linear-route-matcher)
+  (bench-radix-tree-route-matcher))
 
 (defn -main [& args]
   (let [ran (atom false)]
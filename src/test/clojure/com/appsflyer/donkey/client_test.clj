@@ -17,22 +17,37 @@
 
 (ns ^:integration com.appsflyer.donkey.client-test
   (:require [clojure.test :refer [deftest testing is use-fixtures]]
+            [clojure.java.io :as io]
             [com.appsflyer.donkey.middleware.params :as params]
             [com.appsflyer.donkey.test-helper :as helper]
             [com.appsflyer.donkey.routes :as routes]
             [com.appsflyer.donkey.core :as donkey]
-            [com.appsflyer.donkey.client :as client])
+            [com.appsflyer.donkey.client :as client]
+            [com.appsflyer.donkey.request :as request])
   (:import (io.netty.handler.codec.http HttpResponseStatus)
+           (io.vertx.core.http ConnectionPoolTooBusyException)
+           (com.codahale.metrics MetricRegistry Gauge)
            (clojure.lang ExceptionInfo)
-           (com.appsflyer.donkey.client.exception UnsupportedDataTypeException)
-           (java.nio.charset StandardCharsets)))
+           (com.appsflyer.donkey.client.exception UnsupportedDataTypeException DeadlineExceededException
+                                                  CircuitBreakerOpenException)
+           (java.nio.charset StandardCharsets)
+           (java.io InputStream ByteArrayInputStream File)
+           (java.util Arrays Random)
+           (io.vertx.core.buffer Buffer)
+           (com.appsflyer.donkey.client SendOptions DonkeyClient)))
 
 (def route-maps
   [routes/root-200
    routes/echo-route
    routes/explicit-consumes-json
    routes/explicit-produces-json
-   routes/redirects-to-root])
+   routes/redirects-to-root
+   routes/delayed-response
+   routes/chunked-body
+   routes/upload-echo
+   routes/fail-once
+   routes/internal-server-error
+   routes/cacheable])
 
 (use-fixtures :once
               helper/init-donkey
@@ -164,3 +179,285 @@
           (is (= 302 (:status res)))
           (client/stop helper/donkey-client))))))
 
+
+(deftest test-http2-prior-knowledge
+  (testing "it should send HTTP/2 clear text requests with :h2c-prior-knowledge"
+    (let [http2-client (donkey/create-client helper/donkey-core
+                                             (merge helper/default-client-options
+                                                    {:protocol-version         :http2
+                                                     :h2c-prior-knowledge      true
+                                                     :http2-max-pool-size      1
+                                                     :http2-multiplexing-limit 10}))]
+      (try
+        (let [responses (doall (repeatedly 20 #(-> http2-client
+                                                   (client/request {:method :get :uri "/echo"})
+                                                   request/submit)))]
+          (doseq [res responses]
+            (let [{:keys [status body]} @res]
+              (is (= 200 status))
+              (is (= "HTTP/2" (:protocol (read-string (String. ^bytes body StandardCharsets/UTF_8))))))))
+        (finally
+          (client/stop http2-client))))))
+
+(deftest test-wait-queue-fail-fast
+  (testing "it should fail requests immediately when the wait queue is full"
+    (let [pool-client (donkey/create-client helper/donkey-core
+                                            (merge helper/default-client-options
+                                                   {:keep-alive          true
+                                                    :max-pool-size       1
+                                                    :max-wait-queue-size 1}))]
+      (try
+        (let [results (->> #(-> pool-client
+                                (client/request {:method :get :uri "/delayed-response"})
+                                request/submit)
+                           (repeatedly 4)
+                           doall
+                           (map (fn [res] (try @res (catch ExceptionInfo ex ex)))))
+              rejected (filter #(instance? ExceptionInfo %) results)]
+          (is (some #(= 200 (:status %)) results))
+          (is (seq rejected))
+          (is (every? #(instance? ConnectionPoolTooBusyException (ex-cause %)) rejected)))
+        (finally
+          (client/stop pool-client))))))
+
+(deftest test-pool-metrics
+  (testing "it should report the connection pool metrics of each host"
+    (let [registry (MetricRegistry.)
+          metrics-donkey (donkey/create-donkey {:metric-registry registry})
+          pool-client (donkey/create-client metrics-donkey
+                                            (merge helper/default-client-options
+                                                   {:max-pool-size 2}))]
+      (try
+        (is (= 200 (:status @(-> pool-client
+                                 (client/request {:method :get :uri "/"})
+                                 request/submit))))
+        (let [endpoint (str "donkey.http.clients.endpoint."
+                            helper/DEFAULT-HOST ":" helper/DEFAULT-PORT)
+              names (set (.getNames registry))]
+          (is (contains? names (str endpoint ".queue-size")))
+          (is (contains? names (str endpoint ".in-use")))
+          (is (contains? names (str endpoint ".queue-delay")))
+          (is (= 2 (.getValue ^Gauge (get (.getGauges registry)
+                                          "donkey.http.clients.connections.max-pool-size")))))
+        (finally
+          @(donkey/destroy metrics-donkey))))))
+
+(deftest test-coalesce-requests
+  (testing "it should complete identical in flight requests with the same response"
+    (let [coalescing-client (donkey/create-client helper/donkey-core
+                                                  (merge helper/default-client-options
+                                                         {:coalesce-requests true}))]
+      (try
+        (let [responses (->> #(-> coalescing-client
+                                  (client/request {:method :get :uri "/delayed-response"})
+                                  request/submit)
+                             (repeatedly 5)
+                             doall
+                             (map deref))]
+          (is (every? #(= 200 (:status %)) responses))
+          (is (every? #(identical? (first responses) %) responses)))
+        (finally
+          (client/stop coalescing-client))))))
+
+(deftest test-request-key
+  (testing "it should only build a request key when the client coalesces or caches requests"
+    (let [opts {:method :get :uri "/"}
+          coalescing-client (donkey/create-client helper/donkey-core
+                                                  (merge helper/default-client-options
+                                                         {:coalesce-requests true}))]
+      (try
+        (is (identical? (SendOptions/defaults)
+                        (client/map->SendOptions (.-impl helper/donkey-client) opts)))
+        (is (some? (.requestKey (client/map->SendOptions (.-impl ^DonkeyClient coalescing-client) opts))))
+        (finally
+          (client/stop coalescing-client))))))
+
+(deftest test-buffer-response-body
+  (testing "it should return the body as a Buffer with :as :buffer"
+    (let [res @(helper/make-request {:method :get :uri "/echo" :as :buffer})]
+      (is (= 200 (:status res)))
+      (is (instance? Buffer (:body res)))
+      (is (= "/echo" (:uri (read-string (.toString ^Buffer (:body res)))))))))
+
+(deftest test-deadline
+  (testing "it should fail the request when there's no response before the deadline"
+    (let [ex @(helper/make-request {:method      :get
+                                    :uri         (:path routes/delayed-response)
+                                    :deadline-ms 50})]
+      (is (instance? ExceptionInfo ex))
+      (is (instance? DeadlineExceededException (ex-cause ex)))))
+
+  (testing "it should return the response when it arrives before the deadline"
+    (let [res @(helper/make-request {:method      :get
+                                     :uri         (:path routes/delayed-response)
+                                     :deadline-ms 5000})]
+      (is (= 200 (:status res))))))
+
+(deftest test-hedged-request
+  (testing "it should return the first response of a hedged request"
+    (let [res @(helper/make-request {:method :get
+                                     :uri    (:path routes/delayed-response)
+                                     :hedge  {:after-ms 50 :max 2}})]
+      (is (= 200 (:status res)))))
+
+  (testing "it should fail with the deadline when none of the hedged requests respond in time"
+    (let [ex @(helper/make-request {:method      :get
+                                    :uri         (:path routes/delayed-response)
+                                    :hedge       {:after-ms 20 :max 1}
+                                    :deadline-ms 100})]
+      (is (instance? DeadlineExceededException (ex-cause ex))))))
+
+(deftest test-retry
+  (testing "it should retry a request that fails with a retryable status"
+    (let [res @(helper/make-request {:method :get
+                                     :uri    "/fail-once/retried"
+                                     :retry  {:backoff-ms 10}})]
+      (is (= 200 (:status res)))
+      (is (= "retried" (String. ^bytes (:body res) StandardCharsets/UTF_8)))))
+
+  (testing "it should not retry a status that isn't retryable"
+    (let [res @(helper/make-request {:method :get
+                                     :uri    "/fail-once/not-retryable"
+                                     :retry  {:backoff-ms 10 :statuses #{500}}})]
+      (is (= 503 (:status res)))))
+
+  (testing "it should not retry a non idempotent request by default"
+    (let [res @(helper/make-request {:method :post
+                                     :uri    "/fail-once/post"
+                                     :retry  {:backoff-ms 10}})]
+      (is (= 503 (:status res))))))
+
+(deftest test-circuit-breaker
+  (testing "it should fail requests immediately while the circuit breaker is open"
+    (let [registry (MetricRegistry.)
+          metrics-donkey (donkey/create-donkey {:metric-registry registry})
+          breaker-client (donkey/create-client metrics-donkey
+                                               (merge helper/default-client-options
+                                                      {:circuit-breaker {:window-size      4
+                                                                         :minimum-calls    4
+                                                                         :open-duration-ms 60000}}))
+          submit #(-> breaker-client
+                      (client/request {:method :get :uri (:path routes/internal-server-error)})
+                      request/submit
+                      deref)
+          state-gauge (str "donkey.http.clients.circuit-breaker."
+                           helper/DEFAULT-HOST ":" helper/DEFAULT-PORT ".state")]
+      (try
+        (dotimes [_ 4]
+          (is (= 500 (:status (submit)))))
+        (is (= 1 (.getValue ^Gauge (get (.getGauges registry) state-gauge))))
+        (let [ex (submit)]
+          (is (instance? ExceptionInfo ex))
+          (is (instance? CircuitBreakerOpenException (ex-cause ex))))
+        (finally
+          @(donkey/destroy metrics-donkey))))))
+
+(deftest test-response-cache
+  (let [cache-client (donkey/create-client helper/donkey-core
+                                           (merge helper/default-client-options
+                                                  {:response-cache {:max-bytes 65536}}))
+        submit #(-> cache-client
+                    (client/request {:method :get :uri %})
+                    request/submit
+                    deref)
+        body #(String. ^bytes (:body %) StandardCharsets/UTF_8)]
+    (try
+      (testing "it should serve a fresh response from the cache"
+        (let [first-res (submit "/cacheable/max-age")
+              second-res (submit "/cacheable/max-age")]
+          (is (= 200 (:status first-res) (:status second-res)))
+          (is (= "max-age" (body first-res) (body second-res)))
+          (is (= [["max-age" nil]] @routes/cacheable-requests))))
+
+      (testing "it should revalidate a stale response with If-None-Match"
+        (let [first-res (submit "/cacheable/etag")
+              second-res (submit "/cacheable/etag")]
+          (is (= 200 (:status first-res) (:status second-res)))
+          (is (= "etag" (body first-res) (body second-res)))
+          (is (= [["etag" nil] ["etag" "\"v1\""]]
+                 (rest @routes/cacheable-requests)))))
+      (finally
+        (client/stop cache-client)))))
+
+(deftest test-stream-response-body
+  (testing "it should return the body as an InputStream with :as :stream"
+    (let [res @(helper/make-request {:method :get :uri "/chunked-body/seq" :as :stream})
+          body (:body res)]
+      (is (= 200 (:status res)))
+      (is (= "chunked" (get-in res [:headers "transfer-encoding"])))
+      (is (instance? InputStream body))
+      (with-open [^InputStream stream body]
+        (is (= (apply str (map #(str "chunk-" % "\n") (range 10000)))
+               (slurp stream))))))
+
+  (testing "it should send the query parameters of a streamed request"
+    (let [res @(helper/make-request {:method       :post
+                                     :uri          "/echo"
+                                     :query-params {"foo" "bar"}
+                                     :as           :stream}
+                                    "hello")
+          echo (read-string (slurp (:body res)))]
+      (is (= 200 (:status res)))
+      (is (= :post (:request-method echo)))
+      (is (= "foo=bar" (:query-string echo)))))
+
+  (testing "it should send a streamed request with the client's options"
+    (let [stream-client (donkey/create-client helper/donkey-core
+                                              (merge helper/default-client-options
+                                                     {:enable-user-agent true
+                                                      :user-agent        "stream-client"
+                                                      :compression       true}))]
+      (try
+        (let [res @(-> stream-client
+                       (client/request {:method :get :uri "/echo" :as :stream})
+                       request/submit)
+              echo (read-string (slurp (:body res)))]
+          (is (= 200 (:status res)))
+          (is (= "stream-client" (get-in echo [:headers "user-agent"])))
+          (is (re-find #"gzip" (get-in echo [:headers "accept-encoding"]))))
+        (finally
+          (client/stop stream-client))))))
+
+(deftest test-invalid-response-body-type
+  (testing "it should list the valid values when :as is invalid"
+    (is (thrown-with-msg? IllegalArgumentException
+                          #"Invalid :as value :json. Must be one of :bytes, :buffer, :stream"
+                          (helper/make-request {:method :get :uri "/echo" :as :json})))))
+
+(defn- random-bytes ^bytes [size]
+  (let [bytes (byte-array size)]
+    (.nextBytes (Random.) bytes)
+    bytes))
+
+(defn- temp-file ^File [^bytes content]
+  (let [file (File/createTempFile "donkey-upload" ".bin")]
+    (.deleteOnExit file)
+    (io/copy content file)
+    file))
+
+(deftest test-stream-request-body
+  (let [content (random-bytes (* 256 1024))
+        file (temp-file content)
+        request-opts {:method :post :uri "/upload-echo"}]
+
+    (testing "it should send a File with a content-length header"
+      (let [{:keys [status headers body]} @(helper/make-request request-opts file)]
+        (is (= 200 status))
+        (is (= (str (alength content)) (get headers "x-content-length")))
+        (is (Arrays/equals content ^bytes body))))
+
+    (testing "it should send a Path with a :stream response"
+      (let [{:keys [status body]} @(helper/make-request
+                                     (assoc request-opts :as :stream)
+                                     (.toPath file))]
+        (is (= 200 status))
+        (with-open [^InputStream stream body]
+          (is (Arrays/equals content (.readAllBytes stream))))))
+
+    (testing "it should send an InputStream as a chunked request"
+      (let [{:keys [status headers body]} @(helper/make-request
+                                             request-opts
+                                             (ByteArrayInputStream. content))]
+        (is (= 200 status))
+        (is (= "chunked" (get headers "x-transfer-encoding")))
+        (is (Arrays/equals content ^bytes body))))))
@@ -24,14 +24,56 @@
             [com.appsflyer.donkey.server :refer [start-sync stop-sync]]
             [com.appsflyer.donkey.client :refer [request]]
             [com.appsflyer.donkey.request :refer [submit]]
+            [com.appsflyer.donkey.dns :as dns]
             [com.appsflyer.donkey.test-helper :as helper])
   (:import (com.appsflyer.donkey.core Donkey)
-           (java.net ConnectException)))
+           (io.vertx.core.http HttpVersion)
+           (io.vertx.ext.web.client WebClient WebClientOptions HttpResponse)
+           (java.net ConnectException)
+           (java.io File)))
 
 (deftest test-create-donkey
   (testing "it should create a Donkey instance"
     (is (instance? Donkey (create-donkey)))))
 
+(deftest test-address-resolver-options
+  (testing "it should convert the :address-resolver map to AddressResolverOptions"
+    (let [opts (dns/map->AddressResolverOptions {:servers                    ["10.0.0.1:53"]
+                                                 :cache-min-ttl-seconds      30
+                                                 :cache-max-ttl-seconds      300
+                                                 :cache-negative-ttl-seconds 5
+                                                 :query-timeout-ms           1000
+                                                 :max-queries                2
+                                                 :search-domains             ["svc.local"]
+                                                 :ndots                      2
+                                                 :rotate-servers             true
+                                                 :round-robin-addresses      true})]
+      (is (= ["10.0.0.1:53"] (.getServers opts)))
+      (is (= 30 (.getCacheMinTimeToLive opts)))
+      (is (= 300 (.getCacheMaxTimeToLive opts)))
+      (is (= 5 (.getCacheNegativeTimeToLive opts)))
+      (is (= 1000 (.getQueryTimeout opts)))
+      (is (= 2 (.getMaxQueries opts)))
+      (is (= ["svc.local"] (.getSearchDomains opts)))
+      (is (= 2 (.getNdots opts)))
+      (is (.isRotateServers opts))
+      (is (.isRoundRobinInetAddress opts))))
+
+  (testing "it should resolve host names with the configured resolver"
+    (let [hosts (doto (File/createTempFile "hosts" nil) .deleteOnExit)
+          _ (spit hosts "127.0.0.1 donkey.resolver.test\n")
+          donkey (create-donkey {:address-resolver {:hosts-path            (.getAbsolutePath hosts)
+                                                    :round-robin-addresses true}})
+          server (create-server donkey {:port   helper/DEFAULT-PORT
+                                        :routes [{:handler (fn [_ res _] (res {:status 200}))}]})
+          client (create-client donkey {:default-host "donkey.resolver.test"
+                                        :default-port helper/DEFAULT-PORT})]
+      (try
+        (start-sync server)
+        (is (= 200 (-> client (request {:method :get}) submit deref :status)))
+        (finally
+          @(destroy donkey))))))
+
 (deftest test-destroy-donkey
   (testing "it should release all resources associated with the Donkey instance"
     (let [make-client #(create-client % {:default-port helper/DEFAULT-PORT})
@@ -58,3 +100,69 @@
                                 ex-cause
                                 ex-cause
                                 type))))))
+
+(deftest test-load-shedding
+  (testing "it should reject requests above the concurrency limit with 503 and Retry-After"
+    (let [started (promise)
+          release (promise)
+          donkey (create-donkey)
+          ;; The limit applies to each instance separately
+          server (create-server donkey {:port          helper/DEFAULT-PORT
+                                        :instances     1
+                                        :routes        [{:handler-mode :blocking
+                                                         :handler      (fn [_req]
+                                                                         (deliver started true)
+                                                                         (deref release 5000 nil)
+                                                                         {:status 200})}]
+                                        :load-shedding {:initial-limit       1
+                                                        :min-limit           1
+                                                        :max-limit           1
+                                                        :retry-after-seconds 2}})
+          client (create-client donkey {:default-port helper/DEFAULT-PORT})
+          call-server #(-> client (request {:method :get}) submit)]
+
+      (start-sync server)
+      (let [admitted (call-server)]
+        (is (true? (deref started 5000 false)))
+        (let [rejected @(call-server)]
+          (is (= 503 (:status rejected)))
+          (is (= "2" (get-in rejected [:headers "Retry-After"]))))
+        (deliver release true)
+        (is (= 200 (:status @admitted))))
+
+      @(destroy donkey))))
+
+(deftest test-http2-over-tls
+  (testing "it should negotiate HTTP/2 with ALPN when :http2 and :ssl are set"
+    (let [donkey (create-donkey)
+          server (create-server donkey {:port   helper/DEFAULT-PORT
+                                        :ssl    {:key-store-path     "server-keystore.jks"
+                                                 :key-store-password "wibble"}
+                                        :http2  true
+                                        :routes [{:handler (fn [req res _]
+                                                             (res {:status 200
+                                                                   :body   (:protocol req)}))}]})
+          client (WebClient/create
+                   (-> donkey .-config :vertx)
+                   (doto (WebClientOptions.)
+                     (.setDefaultHost helper/DEFAULT-HOST)
+                     (.setDefaultPort (int helper/DEFAULT-PORT))
+                     (.setSsl true)
+                     (.setTrustAll true)
+                     (.setVerifyHost false)
+                     (.setUseAlpn true)
+                     (.setProtocolVersion HttpVersion/HTTP_2)))]
+
+      (start-sync server)
+      (let [^HttpResponse res (-> client
+                                  (.get "/")
+                                  .send
+                                  .toCompletionStage
+                                  .toCompletableFuture
+                                  deref)]
+        (is (= 200 (.statusCode res)))
+        (is (= HttpVersion/HTTP_2 (.version res)))
+        (is (= "HTTP/2" (.bodyAsString res))))
+
+      (.close client)
+      @(destroy donkey))))
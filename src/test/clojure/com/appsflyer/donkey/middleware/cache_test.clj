@@ -0,0 +1,69 @@
+;
+; Copyright 2020 AppsFlyer
+;
+; Licensed under the Apache License, Version 2.0 (the "License")
+; you may not use this file except in compliance with the License.
+; You may obtain a copy of the License at
+;
+;     http://www.apache.org/licenses/LICENSE-2.0
+;
+; Unless required by applicable law or agreed to in writing, software
+; distributed under the License is distributed on an "AS IS" BASIS,
+; WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+; See the License for the specific language governing permissions and
+; limitations under the License.
+;
+
+(ns com.appsflyer.donkey.middleware.cache-test
+  (:require [clojure.test :refer [deftest testing is]]
+            [com.appsflyer.donkey.middleware.cache :refer [cache-responses]]
+            [com.appsflyer.donkey.test-helper :as helper])
+  (:import (io.vertx.ext.web.client HttpRequest HttpResponse)))
+
+(defn- make-request [uri]
+  (let [response-promise (promise)]
+    (-> ^HttpRequest (.get helper/vertx-client uri)
+        (.send (helper/create-client-handler response-promise)))
+    response-promise))
+
+(defn- counting-routes [calls]
+  [{:path       "/cached/blocking"
+    :methods    [:get]
+    :middleware [(cache-responses {:ttl-ms 60000})]
+    :handler-mode :blocking
+    :handler    (fn [req]
+                  (Thread/sleep 100)
+                  {:status 200
+                   :body   (str (:query-string req) "-" (swap! calls inc))})}
+   {:path       "/cached/non-blocking"
+    :methods    [:get]
+    :middleware [(cache-responses {:ttl-ms 60000 :off-heap true})]
+    :handler    (fn [req respond _raise]
+                  (respond {:status 200
+                            :body   (str (:query-string req) "-" (swap! calls inc))}))}])
+
+(deftest cache-responses-test
+  (testing "it should serve the response from the cache without calling the handler"
+    (let [calls (atom 0)]
+      (helper/run-with-server-and-client
+        (fn []
+          (doseq [path ["/cached/blocking" "/cached/non-blocking"]]
+            (reset! calls 0)
+            (let [first-res (helper/wait-for-response (make-request (str path "?id=1")))
+                  second-res (helper/wait-for-response (make-request (str path "?id=1")))
+                  other-res (helper/wait-for-response (make-request (str path "?id=2")))]
+              (is (= "id=1-1" (.bodyAsString ^HttpResponse first-res)))
+              (is (= "id=1-1" (.bodyAsString ^HttpResponse second-res)))
+              (is (= "id=2-2" (.bodyAsString ^HttpResponse other-res)))
+              (is (= 2 @calls)))))
+        (counting-routes calls))))
+
+  (testing "it should call the handler once for concurrent requests"
+    (let [calls (atom 0)]
+      (helper/run-with-server-and-client
+        (fn []
+          (let [responses (doall (repeatedly 8 #(make-request "/cached/blocking")))]
+            (doseq [res responses]
+              (is (= "-1" (.bodyAsString (helper/wait-for-response res)))))
+            (is (= 1 @calls))))
+        (counting-routes calls)))))
@@ -18,12 +18,16 @@
   (:require [clojure.test :refer [deftest testing is]]
             [com.appsflyer.donkey.middleware.json :refer [make-deserialize-middleware
                                                           make-serialize-middleware]]
+            [com.appsflyer.donkey.middleware.base :as base]
             [com.appsflyer.donkey.test-helper :as helper]
             [com.appsflyer.donkey.routes :as routes]
             [jsonista.core :as jsonista])
   (:import (io.vertx.ext.web.client HttpRequest HttpResponse)
            (io.vertx.core.buffer Buffer)
-           (io.netty.handler.codec.http HttpResponseStatus)))
+           (io.netty.handler.codec.http HttpResponseStatus)
+           (io.netty.buffer ByteBuf)
+           (com.fasterxml.jackson.core JsonParser$Feature)
+           (com.fasterxml.jackson.databind DeserializationFeature ObjectMapper)))
 
 (defn- make-request [uri ^String body response-promise]
   (-> ^HttpRequest (.post helper/vertx-client uri)
@@ -32,6 +36,10 @@
         (helper/create-client-handler response-promise)))
   response-promise)
 
+(defn- execute-parse-body-test-with-body [uri body]
+  (helper/parse-response-body-when-resolved
+    (make-request uri body (promise))))
+
 (defn- execute-parse-body-test [uri]
   (helper/parse-response-body-when-resolved
     (make-request uri routes/sample-json-string (promise))))
@@ -39,7 +47,9 @@
 (deftest parse-body-with-default-mapper-test
   (testing "it should parse the request body as json. When not supplying an
   ObjectMapper, all map keys should be keywords."
-    (let [-routes [routes/serialize-body-route routes/serialize-body-non-blocking-route]]
+    (let [-routes [routes/serialize-body-route
+                   routes/serialize-body-non-blocking-route
+                   routes/serialize-body-json-mode-route]]
       (helper/run-with-server-and-client
         (fn []
           (doseq [path (mapv :path -routes)]
@@ -62,7 +72,9 @@
 
 (deftest invalid-json-test
   (testing "it should return a 400 Bad Request when `body` cannot be parsed as json"
-    (let [-routes [routes/serialize-body-route routes/serialize-body-non-blocking-route]]
+    (let [-routes [routes/serialize-body-route
+                   routes/serialize-body-non-blocking-route
+                   routes/serialize-body-json-mode-route]]
       (helper/run-with-server-and-client
         (fn []
           (doseq [path (mapv :path -routes)]
@@ -73,6 +85,33 @@
         -routes
         [(make-deserialize-middleware)]))))
 
+(deftest parse-large-body-in-json-mode-test
+  (testing "it should parse a body that arrives in many chunks in json mode"
+    (helper/run-with-server-and-client
+      (fn []
+        (let [body (vec (repeat 20000 routes/glossary-with-keywords))
+              res (execute-parse-body-test-with-body
+                    (:path routes/serialize-body-json-mode-route)
+                    (jsonista/write-value-as-string body))]
+          (is (= body res))))
+      [routes/serialize-body-json-mode-route]
+      [(make-deserialize-middleware)])))
+
+(deftest parse-body-in-json-mode-with-mapper-features-test
+  (testing "it should parse the body in json mode with the features of the
+  supplied ObjectMapper"
+    (let [mapper (doto ^ObjectMapper (jsonista/object-mapper)
+                   (.configure DeserializationFeature/USE_BIG_DECIMAL_FOR_FLOATS true)
+                   (.configure JsonParser$Feature/ALLOW_COMMENTS true))]
+      (helper/run-with-server-and-client
+        (fn []
+          (is (= {"v" 0.10000000000000000001M}
+                 (execute-parse-body-test-with-body
+                   (:path routes/serialize-body-json-mode-route)
+                   "{\"v\": /* exact */ 0.10000000000000000001}"))))
+        [routes/serialize-body-json-mode-route]
+        [(make-deserialize-middleware {:mapper mapper})]))))
+
 (deftest serialize-body-with-default-mapper-test
   (testing "it should return a response where the body is a Clojure map
    serialized into json. "
@@ -87,3 +126,42 @@
       ; The json-response route just sends back `glossary-with-keywords` in the response body
       [routes/json-response]
       [(make-serialize-middleware)])))
+
+(deftest serialize-body-into-pooled-buffers-test
+  (testing "it should serialize the body into a pooled buffer that is written
+   to the client"
+    (helper/run-with-server-and-client
+      (fn []
+        (let [^HttpResponse res (helper/wait-for-response
+                                  (make-request (:path routes/json-response) "" (promise)))
+              body (jsonista/read-value
+                     (.bodyAsString res)
+                     (jsonista/object-mapper {:decode-key-fn true}))]
+          (is (= routes/glossary-with-keywords body))))
+      [routes/json-response]
+      [(make-serialize-middleware {:pooled-buffers true})])))
+
+(deftest release-pooled-buffer-on-failure-test
+  (let [body (atom nil)
+        failing (base/ring-response-middleware
+                  {:middleware (fn [response]
+                                 (reset! body (:body response))
+                                 (throw (ex-info "failed" {})))
+                   :ex-handler (fn [{:keys [respond]}]
+                                 (if respond
+                                   (respond {:status 500})
+                                   {:status 500}))})
+        handler ((comp failing (make-serialize-middleware {:pooled-buffers true}))
+                 (fn
+                   ([_request] {:status 200 :body {:foo "bar"}})
+                   ([_request respond _raise] (respond {:status 200 :body {:foo "bar"}}))))]
+    (testing "it should release the pooled buffer when the exception handler of a
+     later middleware replaces the response"
+      (is (= {:status 500} (handler {})))
+      (is (zero? (.refCnt ^ByteBuf @body))))
+
+    (testing "it should release the pooled buffer in the three arity middleware"
+      (let [res (promise)]
+        (handler {} res (fn [_ex]))
+        (is (= {:status 500} @res))
+        (is (zero? (.refCnt ^ByteBuf @body)))))))
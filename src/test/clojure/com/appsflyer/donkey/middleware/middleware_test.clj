@@ -21,7 +21,10 @@
             [com.appsflyer.donkey.middleware.params :refer [parse-query-params
                                                             keywordize-form-params]]
             [com.appsflyer.donkey.middleware.base :refer [make-ring-request-middleware
-                                                          make-ring-response-middleware]]
+                                                          make-ring-response-middleware
+                                                          ring-request-middleware
+                                                          ring-response-middleware
+                                                          fuse-middleware]]
             [com.appsflyer.donkey.routes :as routes]
             [clojure.string])
   (:import (io.vertx.ext.web.client HttpRequest)
@@ -200,3 +203,27 @@
           (:path routes/non-blocking-exceptional-middleware-handlers)))
       [routes/blocking-exceptional-middleware-handlers
        routes/non-blocking-exceptional-middleware-handlers])))
+
+(deftest fuse-middleware-test
+  (let [append (fn [k v] #(update % k str v))
+        middleware [(ring-request-middleware {:middleware (append :steps "a")})
+                    (ring-request-middleware {:middleware (append :steps "b")})
+                    (ring-response-middleware {:middleware (append :body "c")})
+                    (ring-response-middleware {:middleware (append :body "d")})
+                    (ring-request-middleware {:middleware (append :steps "e")
+                                              :ex-handler (fn [_])})
+                    (ring-request-middleware {:middleware (append :steps "f")})]
+        handler (fn [req] {:body (:steps req)})]
+
+    (testing "it should fuse consecutive middleware of the same kind"
+      (is (= 4 (count (fuse-middleware middleware)))))
+
+    (testing "it should apply fused middleware in the same order"
+      (is (= {:body "abefdc"}
+             (((apply comp middleware) handler) {})
+             (((apply comp (fuse-middleware middleware)) handler) {})))
+
+      (let [res (promise)]
+        (((apply comp (fuse-middleware middleware)) (fn [req respond _raise] (respond (handler req))))
+         {} res #(deliver res %))
+        (is (= {:body "abefdc"} @res))))))
@@ -18,7 +18,12 @@
 (ns com.appsflyer.donkey.routes
   (:require [com.appsflyer.donkey.test-helper :as helper]
             [clojure.walk])
-  (:import (java.io File)))
+  (:import (java.io ByteArrayInputStream File InputStream)
+           (java.nio ByteBuffer)
+           (java.nio.charset StandardCharsets)
+           (io.netty.buffer Unpooled)
+           (io.vertx.core Context)
+           (io.vertx.core.buffer Buffer)))
 
 (def glossary-with-keywords
   {:glossary
@@ -131,6 +136,23 @@
    :handler      (fn [_req]
                    {:body "hit /blocking-handler"})})
 
+(def virtual-handler
+  {:path         "/virtual-handler"
+   :methods      [:get]
+   :handler-mode :virtual
+   :handler      (fn [_req]
+                   {:body (if (Context/isOnEventLoopThread)
+                            "event-loop"
+                            "hit /virtual-handler")})})
+
+(def worker-pool-handler
+  {:path         "/worker-pool-handler"
+   :methods      [:get]
+   :handler-mode :blocking
+   :worker-pool  {:name "test-route-pool" :size 2 :max-queue 10}
+   :handler      (fn [_req]
+                   {:body (.getName (Thread/currentThread))})})
+
 (def explicit-consumes-json
   {:path         "/consumes/json"
    :methods      [:post]
@@ -152,6 +174,105 @@
    :handler-mode :blocking
    :handler      (fn [_req & _args] {})})
 
+(def stream-body
+  {:path         "/stream-body"
+   :methods      [:post]
+   :handler-mode :blocking
+   :body-mode    :stream
+   :handler      (fn [req]
+                   (let [^InputStream body (:body req)
+                         buf (byte-array 4096)]
+                     {:status 200
+                      :body   (pr-str
+                                {:stream (instance? InputStream body)
+                                 :length (loop [total 0]
+                                           (let [n (.read body buf)]
+                                             (if (neg? n) total (recur (+ total n)))))})}))})
+
+(def upload-echo
+  {:path         "/upload-echo"
+   :methods      [:post]
+   :handler-mode :blocking
+   :body-mode    :stream
+   :handler      (fn [req]
+                   (let [headers (:headers req)]
+                     {:status  200
+                      :headers {"x-content-length"    (get headers "content-length" "")
+                                "x-transfer-encoding" (get headers "transfer-encoding" "")}
+                      :body    (:body req)}))})
+
+(def fail-once
+  (let [seen (atom #{})]
+    {:path    "/fail-once/:id"
+     :handler (fn [req respond _raise]
+                (let [id (get-in req [:path-params "id"])]
+                  (if (contains? (first (swap-vals! seen conj id)) id)
+                    (respond {:status 200 :body id})
+                    (respond {:status 503}))))}))
+
+(def cacheable-requests (atom []))
+
+(def cacheable
+  {:path    "/cacheable/:type"
+   :methods [:get]
+   :handler (fn [req respond _raise]
+              (let [type (get-in req [:path-params "type"])
+                    if-none-match (get-in req [:headers "if-none-match"])]
+                (swap! cacheable-requests conj [type if-none-match])
+                (cond
+                  (not= "etag" type)
+                  (respond {:status  200
+                            :headers {"cache-control" "max-age=60"}
+                            :body    type})
+
+                  (= "\"v1\"" if-none-match)
+                  (respond {:status 304 :headers {"etag" "\"v1\""}})
+
+                  :else
+                  (respond {:status  200
+                            :headers {"etag" "\"v1\"" "cache-control" "no-cache"}
+                            :body    type}))))})
+
+;; The reference counted bodies that were sent last, so tests can check
+;; they were released.
+(def sent-byte-bufs (atom []))
+
+(def off-heap-body
+  {:path    "/off-heap-body/:type"
+   :methods [:get]
+   :handler (fn [req respond _raise]
+              (let [bytes (.getBytes "hello, world!" StandardCharsets/UTF_8)]
+                (respond
+                  {:status 200
+                   :body   (case (get-in req [:path-params "type"])
+                             "buffer" (Buffer/buffer bytes)
+                             "byte-buffer" (-> (ByteBuffer/allocateDirect (alength bytes))
+                                               (.put bytes)
+                                               (.flip))
+                             "byte-buf" (let [buf (-> (Unpooled/directBuffer)
+                                                      (.writeBytes bytes))]
+                                          (reset! sent-byte-bufs [buf])
+                                          buf))})))})
+
+(def chunked-body
+  {:path    "/chunked-body/:type"
+   :methods [:get]
+   :handler (fn [req respond _raise]
+              (let [chunks (map #(str "chunk-" % "\n") (range 10000))]
+                (respond
+                  {:status 200
+                   :body   (case (get-in req [:path-params "type"])
+                             "input-stream" (ByteArrayInputStream.
+                                              (.getBytes ^String (apply str chunks)))
+                             "seq" chunks
+                             "iterator" (.iterator ^Iterable chunks)
+                             "byte-buf-seq" (let [bufs (mapv #(Unpooled/copiedBuffer
+                                                                 ^String %
+                                                                 StandardCharsets/UTF_8)
+                                                             chunks)]
+                                              (reset! sent-byte-bufs bufs)
+                                              (seq bufs)))})))})
+
 (def internal-server-error
   {:path         "/internal-server-error"
    :handler-mode :blocking
@@ -254,6 +375,11 @@
   {:path    "/serialize-body/non-blocking"
    :handler async-serialize-body-handler})
 
+(def serialize-body-json-mode-route
+  {:path      "/serialize-body/json-mode"
+   :body-mode :json
+   :handler   async-serialize-body-handler})
+
 (def json-response
   {:path         "/json"
    :handler-mode :blocking
@@ -268,6 +394,13 @@
   {:path    "/hello/json"
    :handler (fn [_ res _] (res {:status 200 :body (File. "src/main/resources/public/hello.json")}))})
 
+(def delayed-response
+  {:path    "/delayed-response"
+   :handler (fn [_ respond _]
+              (future
+                (Thread/sleep 200)
+                (respond {:status 200})))})
+
 (def redirects-to-root
   {:path    "/redirect/to/root"
    :handler (fn [_ respond _]
@@ -23,9 +23,11 @@
             [com.appsflyer.donkey.test-helper :as helper])
   (:import (clojure.lang ILookup)
            (io.netty.handler.codec.http HttpResponseStatus)
+           (io.netty.util ReferenceCounted)
            (io.vertx.core.json JsonObject)
            (io.vertx.core MultiMap)
-           (io.vertx.ext.web.client HttpRequest)
+           (io.vertx.core.http HttpVersion)
+           (io.vertx.ext.web.client HttpRequest WebClient WebClientOptions)
            (io.vertx.ext.web.multipart MultipartForm)
            (io.vertx.core.buffer Buffer)))
 
@@ -38,6 +40,8 @@
    routes/echo-route
    routes/echo-route-non-blocking
    routes/blocking-handler
+   routes/virtual-handler
+   routes/worker-pool-handler
    routes/single-path-variable
    routes/multi-path-variable
    routes/regex-path-variable
@@ -47,6 +51,9 @@
    routes/blocking-exceptional-middleware-handlers
    routes/non-blocking-exceptional-middleware-handlers
    routes/explicit-consumes-json
+   routes/stream-body
+   routes/off-heap-body
+   routes/chunked-body
    routes/explicit-consumes-multi-part-or-form-encoded-or-octet-stream])
 
 (use-fixtures :once
@@ -56,6 +63,17 @@
 
 ;; ---------- Tests ---------- ;;
 
+(defn- released?
+  "Returns true if all the buffers were released. The response can arrive
+  before the buffers are released on the server, so it waits for up to a
+  second."
+  [bufs]
+  (loop [attempts 100]
+    (cond
+      (and (seq bufs) (every? #(zero? (.refCnt ^ReferenceCounted %)) bufs)) true
+      (zero? attempts) false
+      :else (do (Thread/sleep 10) (recur (dec attempts))))))
+
 
 (deftest test-basic-functionality
   (testing "the server should return a 200 response"
@@ -91,6 +109,26 @@
                      #{"user-agent" "dnt" "host"}
                      (into #{} (keys (:headers res)))))))))))
 
+(deftest test-h2c-request
+  (testing "it should accept HTTP/2 clear text requests with prior knowledge"
+    (let [response-promise (promise)
+          client (WebClient/create
+                   (-> helper/donkey-core .-config :vertx)
+                   (doto (WebClientOptions.)
+                     (.setDefaultHost helper/DEFAULT-HOST)
+                     (.setDefaultPort (int (:port helper/default-server-options)))
+                     (.setProtocolVersion HttpVersion/HTTP_2)
+                     (.setHttp2ClearTextUpgrade false)))]
+      (try
+        (-> client
+            ^HttpRequest (.get (:path routes/ring-spec))
+            (.send (helper/create-client-handler response-promise)))
+
+        (let [^ILookup res (helper/parse-response-body-when-resolved response-promise)]
+          (is (= "HTTP/2" (:protocol res))))
+        (finally
+          (.close client))))))
+
 (deftest path-variables-test
   (testing "it should parse path variables and includes them in the request"
     (testing "Single path variable"
@@ -157,6 +195,28 @@
         (is (= (.code HttpResponseStatus/OK) (.statusCode res)))
         (is (= "hit /blocking-handler" (.bodyAsString res)))))))
 
+(deftest virtual-handler-test
+  (testing "it should call the 1 argument arity handler off the event loop"
+    (let [response-promise (promise)]
+      (-> helper/vertx-client
+          ^HttpRequest (.get "/virtual-handler")
+          (.send (helper/create-client-handler response-promise)))
+
+      (let [res (helper/wait-for-response response-promise)]
+        (is (= (.code HttpResponseStatus/OK) (.statusCode res)))
+        (is (= "hit /virtual-handler" (.bodyAsString res)))))))
+
+(deftest worker-pool-handler-test
+  (testing "it should call the handler on the route's worker pool"
+    (let [response-promise (promise)]
+      (-> helper/vertx-client
+          ^HttpRequest (.get "/worker-pool-handler")
+          (.send (helper/create-client-handler response-promise)))
+
+      (let [res (helper/wait-for-response response-promise)]
+        (is (= (.code HttpResponseStatus/OK) (.statusCode res)))
+        (is (clojure.string/starts-with? (.bodyAsString res) "test-route-pool"))))))
+
 (deftest test-consumes-content-type
   (testing "it should only accept requests with content type application/json"
     (let [response-promise (promise)]
@@ -236,6 +296,48 @@
       (let [^ILookup res (helper/parse-response-body-when-resolved response-promise)]
         (is (= "bar" (get-in res [:form-params "foo"])))))))
 
+(deftest test-stream-body
+  (testing "the body should be an InputStream when :body-mode is :stream"
+    (let [response-promise (promise)
+          length (* 4 1024 1024)]
+      (-> helper/vertx-client
+          ^HttpRequest (.post (:path routes/stream-body))
+          (.sendBuffer (Buffer/buffer (byte-array length))
+                       (helper/create-client-handler response-promise)))
+
+      (let [res (helper/parse-response-body-when-resolved response-promise)]
+        (is (= {:stream true :length length} res))))))
+
+(deftest test-off-heap-response-body
+  (testing "Buffer, ByteBuffer and ByteBuf response bodies should be sent as is"
+    (doseq [type ["buffer" "byte-buffer" "byte-buf"]]
+      (let [response-promise (promise)]
+        (-> helper/vertx-client
+            ^HttpRequest (.get (str "/off-heap-body/" type))
+            (.send (helper/create-client-handler response-promise)))
+
+        (let [res (helper/wait-for-response response-promise)]
+          (is (= (.code HttpResponseStatus/OK) (.statusCode res)))
+          (is (= "hello, world!" (.bodyAsString res))))))
+    (testing "a ByteBuf body should be released once it's written"
+      (is (released? @routes/sent-byte-bufs)))))
+
+(deftest test-chunked-response-body
+  (testing "InputStream, seq and Iterator response bodies should be sent in chunks"
+    (let [expected (apply str (map #(str "chunk-" % "\n") (range 10000)))]
+      (doseq [type ["input-stream" "seq" "iterator" "byte-buf-seq"]]
+        (let [response-promise (promise)]
+          (-> helper/vertx-client
+              ^HttpRequest (.get (str "/chunked-body/" type))
+              (.send (helper/create-client-handler response-promise)))
+
+          (let [res (helper/wait-for-response response-promise)]
+            (is (= (.code HttpResponseStatus/OK) (.statusCode res)))
+            (is (= "chunked" (.getHeader res "Transfer-Encoding")))
+            (is (= expected (.bodyAsString res))))))
+      (testing "ByteBuf chunks should be released once they're written"
+        (is (released? @routes/sent-byte-bufs))))))
+
 (defn- execute-lowercase-header-name-test [uri]
   (let [response-promise (promise)
         headers {"Content-Type"      "text/html"
@@ -145,7 +145,7 @@ public final class TestUtil {
         setConsumes(route, rd);
         setProduces(route, rd);
         addBodyHandler(route);
-        addHandler(route, rd.handler(), rd.handlerMode());
+        addHandler(route, rd);
       }
     };
   }
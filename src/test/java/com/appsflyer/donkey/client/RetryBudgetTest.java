@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryBudgetTest {
+  
+  @Test
+  void testBucketStartsFull() {
+    var budget = RetryBudget.create(0.5, 2);
+    assertTrue(budget.tryWithdraw("a:80"));
+    assertTrue(budget.tryWithdraw("a:80"));
+    assertFalse(budget.tryWithdraw("a:80"));
+  }
+  
+  @Test
+  void testRequestsDepositTokens() {
+    var budget = RetryBudget.create(0.5, 2);
+    budget.tryWithdraw("a:80");
+    budget.tryWithdraw("a:80");
+    budget.deposit("a:80");
+    assertFalse(budget.tryWithdraw("a:80"));
+    budget.deposit("a:80");
+    assertTrue(budget.tryWithdraw("a:80"));
+  }
+  
+  @Test
+  void testTokensAreCappedAndPerHost() {
+    var budget = RetryBudget.create(1, 3);
+    for (int i = 0; i < 10; i++) {
+      budget.deposit("a:80");
+    }
+    assertEquals(3, budget.tokens("a:80"));
+    budget.tryWithdraw("a:80");
+    assertEquals(2, budget.tokens("a:80"));
+    assertEquals(3, budget.tokens("b:80"));
+  }
+  
+  @Test
+  void testFullBucketsAreDropped() {
+    var budget = RetryBudget.create(0.5, 2);
+    budget.deposit("a:80");
+    assertEquals(0, budget.hosts());
+    budget.tryWithdraw("a:80");
+    assertEquals(1, budget.hosts());
+    budget.deposit("a:80");
+    assertEquals(1, budget.hosts());
+    budget.deposit("a:80");
+    assertEquals(0, budget.hosts());
+    assertEquals(2, budget.tokens("a:80"));
+    assertTrue(budget.tryWithdraw("a:80"));
+    assertEquals(1, budget.tokens("a:80"));
+  }
+  
+  @Test
+  void testNumberOfHostsIsBounded() {
+    var budget = RetryBudget.create(0, 1);
+    for (int i = 0; i < RetryBudget.MAX_HOSTS + 100; i++) {
+      assertTrue(budget.tryWithdraw("host-" + i + ":80"));
+    }
+    assertEquals(RetryBudget.MAX_HOSTS, budget.hosts());
+  }
+}
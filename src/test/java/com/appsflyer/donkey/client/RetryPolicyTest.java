@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client;
+
+import io.vertx.core.http.HttpMethod;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+  
+  @Test
+  void testBackoffIsBoundedAndJittered() {
+    var policy = RetryPolicy.builder()
+                            .initialBackoffMillis(100)
+                            .maxBackoffMillis(250)
+                            .build();
+    for (int i = 0; i < 100; i++) {
+      assertTrue(policy.backoffMillis(0) <= 100);
+      assertTrue(policy.backoffMillis(1) <= 200);
+      assertTrue(policy.backoffMillis(40) <= 250);
+      assertTrue(policy.backoffMillis(40) >= 1);
+    }
+  }
+  
+  @Test
+  void testOnlyIdempotentMethodsAreRetriedByDefault() {
+    var policy = RetryPolicy.builder().build();
+    assertTrue(policy.retries(HttpMethod.GET));
+    assertTrue(policy.retries(HttpMethod.PUT));
+    assertFalse(policy.retries(HttpMethod.POST));
+    assertFalse(policy.retries(HttpMethod.PATCH));
+    assertTrue(RetryPolicy.builder().retryNonIdempotent(true).build().retries(HttpMethod.POST));
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client.ring;
+
+import clojure.lang.PersistentArrayMap;
+import com.appsflyer.donkey.client.CircuitBreakerConfig;
+import com.codahale.metrics.MetricRegistry;
+import io.vertx.core.Future;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.appsflyer.donkey.client.ring.CircuitBreaker.REJECTED;
+import static com.appsflyer.donkey.client.ring.CircuitBreaker.State.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+  
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+  
+  private static CircuitBreaker breaker() {
+    return new CircuitBreaker(CircuitBreakerConfig.builder()
+                                                  .windowSize(4)
+                                                  .minimumCalls(4)
+                                                  .failureRateThreshold(0.5)
+                                                  .slowCallRateThreshold(0.75)
+                                                  .slowCallDurationMillis(100)
+                                                  .openDurationMillis(1000)
+                                                  .halfOpenCalls(2)
+                                                  .build());
+  }
+  
+  private static void call(CircuitBreaker breaker, boolean failed, long durationNanos, long now) {
+    long permit = breaker.tryAcquire(now);
+    assertNotEquals(REJECTED, permit);
+    breaker.onComplete(permit, failed, durationNanos, now);
+  }
+  
+  @Test
+  void testOpensOnFailureRate() {
+    var breaker = breaker();
+    call(breaker, false, 0, 0);
+    call(breaker, true, 0, 0);
+    call(breaker, false, 0, 0);
+    assertEquals(CLOSED, breaker.state());
+    call(breaker, true, 0, 0);
+    assertEquals(OPEN, breaker.state());
+    assertEquals(REJECTED, breaker.tryAcquire(SECOND / 2));
+  }
+  
+  @Test
+  void testOpensOnSlowCallRate() {
+    var breaker = breaker();
+    long slow = TimeUnit.MILLISECONDS.toNanos(100);
+    call(breaker, false, slow, 0);
+    call(breaker, false, slow, 0);
+    call(breaker, false, 0, 0);
+    call(breaker, false, slow, 0);
+    assertEquals(OPEN, breaker.state());
+  }
+  
+  @Test
+  void testOldOutcomesLeaveTheWindow() {
+    var breaker = breaker();
+    call(breaker, true, 0, 0);
+    for (int i = 0; i < 10; i++) {
+      call(breaker, false, 0, 0);
+    }
+    assertEquals(0.0, breaker.failureRate());
+    call(breaker, true, 0, 0);
+    assertEquals(0.25, breaker.failureRate());
+    assertEquals(CLOSED, breaker.state());
+  }
+  
+  @Test
+  void testHalfOpenProbesCloseTheBreaker() {
+    var breaker = breaker();
+    for (int i = 0; i < 4; i++) {
+      call(breaker, true, 0, 0);
+    }
+    long first = breaker.tryAcquire(SECOND);
+    assertNotEquals(REJECTED, first);
+    assertEquals(HALF_OPEN, breaker.state());
+    long second = breaker.tryAcquire(SECOND);
+    assertNotEquals(REJECTED, second);
+    assertEquals(REJECTED, breaker.tryAcquire(SECOND));
+    breaker.onComplete(first, false, 0, SECOND);
+    breaker.onComplete(second, false, 0, SECOND);
+    assertEquals(CLOSED, breaker.state());
+    assertEquals(0.0, breaker.failureRate());
+  }
+  
+  @Test
+  void testFailedProbeOpensTheBreaker() {
+    var breaker = breaker();
+    for (int i = 0; i < 4; i++) {
+      call(breaker, true, 0, 0);
+    }
+    long probe = breaker.tryAcquire(SECOND);
+    assertNotEquals(REJECTED, probe);
+    breaker.onComplete(probe, true, 0, SECOND);
+    assertEquals(OPEN, breaker.state());
+    assertEquals(REJECTED, breaker.tryAcquire(SECOND + SECOND / 2));
+    assertNotEquals(REJECTED, breaker.tryAcquire(2 * SECOND));
+  }
+  
+  @Test
+  void testCallsAdmittedWhileClosedAreNotProbes() {
+    var breaker = breaker();
+    long[] late = new long[2];
+    late[0] = breaker.tryAcquire(0);
+    late[1] = breaker.tryAcquire(0);
+    for (int i = 0; i < 4; i++) {
+      call(breaker, true, 0, 0);
+    }
+    assertEquals(OPEN, breaker.state());
+    long probe = breaker.tryAcquire(SECOND);
+    assertEquals(HALF_OPEN, breaker.state());
+    
+    // Successful calls from before the breaker opened don't close it
+    breaker.onComplete(late[0], false, 0, SECOND);
+    breaker.onComplete(late[1], false, 0, SECOND);
+    assertEquals(HALF_OPEN, breaker.state());
+    
+    breaker.onComplete(probe, true, 0, SECOND);
+    assertEquals(OPEN, breaker.state());
+  }
+  
+  @Test
+  void testLateProbesOfAPreviousRoundAreIgnored() {
+    var breaker = breaker();
+    for (int i = 0; i < 4; i++) {
+      call(breaker, true, 0, 0);
+    }
+    long stale = breaker.tryAcquire(SECOND);
+    // The probes never completed, so another round starts
+    long first = breaker.tryAcquire(2 * SECOND);
+    long second = breaker.tryAcquire(2 * SECOND);
+    assertNotEquals(REJECTED, second);
+    
+    breaker.onComplete(stale, true, 0, 2 * SECOND);
+    assertEquals(HALF_OPEN, breaker.state());
+    breaker.onComplete(first, false, 0, 2 * SECOND);
+    breaker.onComplete(second, false, 0, 2 * SECOND);
+    assertEquals(CLOSED, breaker.state());
+  }
+  
+  @Test
+  void testCancelledProbeIsGivenBack() {
+    var breaker = breaker();
+    for (int i = 0; i < 4; i++) {
+      call(breaker, true, 0, 0);
+    }
+    long first = breaker.tryAcquire(SECOND);
+    long second = breaker.tryAcquire(SECOND);
+    assertEquals(REJECTED, breaker.tryAcquire(SECOND));
+    
+    breaker.onCancel(first);
+    long third = breaker.tryAcquire(SECOND);
+    assertNotEquals(REJECTED, third);
+    breaker.onComplete(second, false, 0, SECOND);
+    breaker.onComplete(third, false, 0, SECOND);
+    assertEquals(CLOSED, breaker.state());
+  }
+  
+  @Test
+  void testBreakersAreBounded() {
+    var registry = new MetricRegistry();
+    var breakers = CircuitBreakers.create(CircuitBreakerConfig.builder()
+                                                              .windowSize(2)
+                                                              .minimumCalls(2)
+                                                              .build(),
+                                          registry, "donkey");
+    for (int i = 0; i < 2; i++) {
+      breakers.execute("open:80", () -> Future.failedFuture(new RuntimeException()));
+    }
+    assertEquals(OPEN, breakers.state("open:80"));
+    
+    for (int i = 0; i < CircuitBreakers.MAX_HOSTS * 2; i++) {
+      breakers.execute("host-" + i + ":80", () -> Future.succeededFuture(PersistentArrayMap.EMPTY));
+    }
+    assertEquals(CircuitBreakers.MAX_HOSTS, breakers.hosts());
+    assertEquals(CircuitBreakers.MAX_HOSTS * 4, registry.getMetrics().size());
+    assertEquals(OPEN, breakers.state("open:80"));
+    
+    breakers.close();
+    assertTrue(registry.getMetrics().isEmpty());
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client.ring;
+
+import clojure.lang.IPersistentMap;
+import clojure.lang.Keyword;
+import clojure.lang.RT;
+import com.appsflyer.donkey.client.ClientConfig;
+import com.appsflyer.donkey.client.SendOptions;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.ext.web.client.WebClientOptions;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.appsflyer.donkey.TestUtil.*;
+import static com.appsflyer.donkey.client.ring.ClojureRequestField.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("integration")
+@ExtendWith(VertxExtension.class)
+class RequestCoalescerTest {
+  
+  private static final Keyword STATUS = Keyword.intern("status");
+  private final AtomicInteger serverRequests = new AtomicInteger();
+  private RingClient client;
+  
+  @BeforeEach
+  void setUp(Vertx vertx) throws Exception {
+    HttpServer server = vertx.createHttpServer(new HttpServerOptions().setPort(DEFAULT_PORT))
+                             .requestHandler(req -> {
+                               serverRequests.incrementAndGet();
+                               vertx.setTimer(200, id -> req.response().end("ok"));
+                             });
+    server.listen().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    client = RingClient.create(ClientConfig.builder()
+                                           .vertx(vertx)
+                                           .clientOptions(new WebClientOptions()
+                                                              .setDefaultPort(DEFAULT_PORT))
+                                           .coalesceRequests(true)
+                                           .build());
+  }
+  
+  @Test
+  void testIdenticalRequestsShareOneExchange(VertxTestContext testContext) throws Throwable {
+    IPersistentMap opts = RT.map(METHOD.keyword(), Keyword.intern("get"),
+                                 URI.keyword(), "/resource",
+                                 HEADERS.keyword(), RT.map("accept", "text/plain"));
+    
+    sendAll(opts, 10).onComplete(testContext.succeeding(responses -> testContext.verify(() -> {
+      responses.<IPersistentMap>list().forEach(res -> assertEquals(200, res.valAt(STATUS)));
+      assertEquals(1, serverRequests.get());
+      testContext.completeNow();
+    })));
+    
+    assertContextSuccess(testContext);
+  }
+  
+  @Test
+  void testDifferentRequestsAreNotCoalesced(VertxTestContext testContext) throws Throwable {
+    IPersistentMap first = RT.map(METHOD.keyword(), Keyword.intern("get"),
+                                  URI.keyword(), "/resource",
+                                  QUERY_PARAMS.keyword(), RT.map("id", "1"));
+    IPersistentMap second = RT.map(METHOD.keyword(), Keyword.intern("get"),
+                                   URI.keyword(), "/resource",
+                                   QUERY_PARAMS.keyword(), RT.map("id", "2"));
+    IPersistentMap post = RT.map(METHOD.keyword(), Keyword.intern("post"),
+                                 URI.keyword(), "/resource",
+                                 QUERY_PARAMS.keyword(), RT.map("id", "1"));
+    
+    CompositeFuture.all(sendAll(first, 3), sendAll(second, 3), sendAll(post, 3))
+                   .onComplete(testContext.succeeding(v -> testContext.verify(() -> {
+                     assertEquals(5, serverRequests.get());
+                     testContext.completeNow();
+                   })));
+    
+    assertContextSuccess(testContext);
+  }
+  
+  @Test
+  void testCompletedRequestsAreSentAgain(VertxTestContext testContext) throws Throwable {
+    IPersistentMap opts = RT.map(METHOD.keyword(), Keyword.intern("get"),
+                                 URI.keyword(), "/resource");
+    
+    send(opts)
+          .compose(v -> send(opts))
+          .onComplete(testContext.succeeding(v -> testContext.verify(() -> {
+            assertEquals(2, serverRequests.get());
+            testContext.completeNow();
+          })));
+    
+    assertContextSuccess(testContext);
+  }
+  
+  @Test
+  void testRequestsWithDifferentTimeoutsAreNotCoalesced(VertxTestContext testContext) throws Throwable {
+    IPersistentMap opts = RT.map(METHOD.keyword(), Keyword.intern("get"),
+                                 URI.keyword(), "/resource");
+    
+    CompositeFuture.all(sendAll(opts, 3),
+                        sendAll(opts.assoc(TIMEOUT.keyword(), 5), 3),
+                        sendAll(opts.assoc(TIMEOUT.keyword(), 10), 3))
+                   .onComplete(testContext.succeeding(v -> testContext.verify(() -> {
+                     assertEquals(3, serverRequests.get());
+                     testContext.completeNow();
+                   })));
+    
+    assertContextSuccess(testContext);
+  }
+  
+  @Test
+  void testRequestsWithoutKeyAreNotCoalesced(VertxTestContext testContext) throws Throwable {
+    IPersistentMap opts = RT.map(METHOD.keyword(), Keyword.intern("get"),
+                                 URI.keyword(), "/resource");
+    
+    CompositeFuture.all(client.send(client.request(opts)), client.send(client.request(opts)))
+                   .onComplete(testContext.succeeding(v -> testContext.verify(() -> {
+                     assertEquals(2, serverRequests.get());
+                     testContext.completeNow();
+                   })));
+    
+    assertContextSuccess(testContext);
+  }
+  
+  private Future<IPersistentMap> send(IPersistentMap opts) {
+    return client.send(client.request(opts), SendOptions.builder().requestKey(RequestKey.of(opts)).build());
+  }
+  
+  private CompositeFuture sendAll(IPersistentMap opts, int count) {
+    List<Future<IPersistentMap>> futures = new ArrayList<>(count);
+    for (var i = 0; i < count; i++) {
+      futures.add(send(opts));
+    }
+    // CompositeFuture#all takes a list of raw futures
+    return CompositeFuture.all(Collections.unmodifiableList(futures));
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.client.ring;
+
+import clojure.lang.IPersistentMap;
+import clojure.lang.Keyword;
+import clojure.lang.RT;
+import com.appsflyer.donkey.client.ResponseBodyType;
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.ext.web.client.HttpRequest;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.impl.HttpResponseImpl;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static com.appsflyer.donkey.client.ring.ClojureRequestField.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+  
+  private static final long NOW = 1_600_000_000_000L;
+  private static Vertx vertx;
+  private static WebClient client;
+  
+  @BeforeAll
+  static void setUp() {
+    vertx = Vertx.vertx();
+    client = WebClient.create(vertx);
+  }
+  
+  @AfterAll
+  static void tearDown() {
+    client.close();
+    vertx.close();
+  }
+  
+  private static MultiMap headers(String... namesAndValues) {
+    MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      headers.add(namesAndValues[i], namesAndValues[i + 1]);
+    }
+    return headers;
+  }
+  
+  private static RequestKey key(String method, Object... fieldsAndValues) {
+    IPersistentMap opts = RT.map(METHOD.keyword(), Keyword.intern(method));
+    for (int i = 0; i < fieldsAndValues.length; i += 2) {
+      opts = opts.assoc(((ClojureRequestField) fieldsAndValues[i]).keyword(), fieldsAndValues[i + 1]);
+    }
+    return RequestKey.of(opts);
+  }
+  
+  @Test
+  void testFreshnessFromMaxAge() {
+    assertEquals(60_000, ResponseCache.freshnessMillis(headers("Cache-Control", "public, max-age=60"), NOW));
+    assertEquals(50_000, ResponseCache.freshnessMillis(
+        headers("Cache-Control", "max-age=60", "Age", "10"), NOW));
+  }
+  
+  @Test
+  void testFreshnessFromExpires() {
+    assertEquals(30_000, ResponseCache.freshnessMillis(
+        headers("Date", "Wed, 01 Jan 2020 00:00:00 GMT",
+                "Expires", "Wed, 01 Jan 2020 00:00:30 GMT"), NOW));
+  }
+  
+  @Test
+  void testNoCacheIsStale() {
+    assertTrue(ResponseCache.freshnessMillis(headers("Cache-Control", "no-cache, max-age=60"), NOW) <= 0);
+    assertTrue(ResponseCache.freshnessMillis(headers(), NOW) <= 0);
+  }
+  
+  @Test
+  void testIsCacheable() {
+    assertTrue(ResponseCache.isCacheable(key("get"), client.get("/")));
+    assertFalse(ResponseCache.isCacheable(key("head"), client.head("/")));
+    assertFalse(ResponseCache.isCacheable(key("post"), client.post("/")));
+    assertFalse(ResponseCache.isCacheable(null, client.get("/")));
+    assertFalse(ResponseCache.isCacheable(key("get"), client.get("/").putHeader("Cache-Control", "no-store")));
+  }
+  
+  @Test
+  void testRequestKey() {
+    assertEquals(key("get", URI, "/a", HEADERS, RT.map("accept", "text/plain")),
+                 key("get", URI, "/a", HEADERS, RT.map("accept", "text/plain")));
+    assertNotEquals(key("get", URI, "/a"), key("head", URI, "/a"));
+    assertNotEquals(key("get", URI, "/a"), key("get", URI, "/b"));
+    assertNotEquals(key("get", URI, "/a"), key("get", URI, "/a", TIMEOUT, 5));
+    assertNotEquals(key("get", URI, "/a", TIMEOUT, 5), key("get", URI, "/a", TIMEOUT, 10));
+    assertEquals(key("get", URI, "/a"), key("get", URI, "/a", TIMEOUT, 5).withoutTimeout());
+    assertNull(key("post", URI, "/a"));
+  }
+  
+  private static HttpResponse<Buffer> response(int status, MultiMap headers, Buffer body) {
+    return new HttpResponseImpl<>(
+        HttpVersion.HTTP_1_1, status, "", headers, MultiMap.caseInsensitiveMultiMap(), List.of(), body, List.of());
+  }
+  
+  @Test
+  void testRevalidationMergesHeaders() {
+    List<HttpRequest<Buffer>> sent = new ArrayList<>();
+    Function<HttpRequest<Buffer>, Future<HttpResponse<Buffer>>> sender = request -> {
+      sent.add(request);
+      if (sent.size() == 1) {
+        return Future.succeededFuture(response(
+            200, headers("cache-control", "max-age=0", "etag", "\"1\"", "x-version", "1"), Buffer.buffer("body")));
+      }
+      return Future.succeededFuture(response(
+          304, headers("cache-control", "max-age=60", "x-version", "2", "content-length", "0"), null));
+    };
+    ResponseCache cache = ResponseCache.create(10_000);
+    RequestKey key = key("get");
+    
+    cache.send(key, client.get("/"), ResponseBodyType.BYTES, sender);
+    IPersistentMap revalidated = cache.send(key, client.get("/"), ResponseBodyType.BYTES, sender).result();
+    assertEquals("\"1\"", sent.get(1).headers().get("if-none-match"));
+    
+    // The merged max-age makes the response fresh, so it's served from the cache
+    IPersistentMap cached = cache.send(key, client.get("/"), ResponseBodyType.BYTES, sender).result();
+    assertEquals(2, sent.size());
+    for (IPersistentMap res : List.of(revalidated, cached)) {
+      var headers = (IPersistentMap) res.valAt(RingResponseField.HEADERS.keyword());
+      assertEquals(200, res.valAt(RingResponseField.STATUS.keyword()));
+      assertEquals("2", headers.valAt("x-version"));
+      assertEquals("max-age=60", headers.valAt("cache-control"));
+      assertEquals("\"1\"", headers.valAt("etag"));
+      assertNull(headers.valAt("content-length"));
+      assertEquals("body", new String((byte[]) res.valAt(RingResponseField.BODY.keyword())));
+    }
+  }
+  
+  @Test
+  void testTimeoutIsNotPartOfTheCacheKey() {
+    List<HttpRequest<Buffer>> sent = new ArrayList<>();
+    Function<HttpRequest<Buffer>, Future<HttpResponse<Buffer>>> sender = request -> {
+      sent.add(request);
+      return Future.succeededFuture(response(200, headers("cache-control", "max-age=60"), Buffer.buffer("body")));
+    };
+    ResponseCache cache = ResponseCache.create(10_000);
+    
+    cache.send(key("get", TIMEOUT, 5), client.get("/"), ResponseBodyType.BYTES, sender);
+    cache.send(key("get", TIMEOUT, 10), client.get("/"), ResponseBodyType.BYTES, sender);
+    cache.send(key("get"), client.get("/"), ResponseBodyType.BYTES, sender);
+    assertEquals(1, sent.size());
+  }
+  
+  @Test
+  void testBufferBodiesAreNotShared() {
+    Function<HttpRequest<Buffer>, Future<HttpResponse<Buffer>>> sender = request ->
+        Future.succeededFuture(response(200, headers("cache-control", "max-age=60"), Buffer.buffer("body")));
+    ResponseCache cache = ResponseCache.create(10_000);
+    
+    var first = (Buffer) cache.send(key("get"), client.get("/"), ResponseBodyType.BUFFER, sender)
+                              .result().valAt(RingResponseField.BODY.keyword());
+    first.setString(0, "BODY");
+    var second = (Buffer) cache.send(key("get"), client.get("/"), ResponseBodyType.BUFFER, sender)
+                               .result().valAt(RingResponseField.BODY.keyword());
+    assertEquals("body", second.toString());
+  }
+  
+  @Test
+  void testConcurrentMissesShareOneExchange() {
+    List<Promise<HttpResponse<Buffer>>> sent = new ArrayList<>();
+    Function<HttpRequest<Buffer>, Future<HttpResponse<Buffer>>> sender = request -> {
+      Promise<HttpResponse<Buffer>> promise = Promise.promise();
+      sent.add(promise);
+      return promise.future();
+    };
+    ResponseCache cache = ResponseCache.create(10_000);
+    
+    Future<IPersistentMap> bytes = cache.send(key("get"), client.get("/"), ResponseBodyType.BYTES, sender);
+    Future<IPersistentMap> buffer = cache.send(key("get"), client.get("/"), ResponseBodyType.BUFFER, sender);
+    assertEquals(1, sent.size());
+    
+    sent.get(0).complete(response(200, headers("cache-control", "no-store"), Buffer.buffer("body")));
+    assertArrayEquals("body".getBytes(), (byte[]) bytes.result().valAt(RingResponseField.BODY.keyword()));
+    assertEquals(Buffer.buffer("body"), buffer.result().valAt(RingResponseField.BODY.keyword()));
+  }
+  
+  @Test
+  void testLeastRecentlyUsedEviction() {
+    List<String> sent = new ArrayList<>();
+    Function<HttpRequest<Buffer>, Future<HttpResponse<Buffer>>> sender = request -> {
+      sent.add(request.queryParams().get("id"));
+      return Future.succeededFuture(new HttpResponseImpl<>(
+          HttpVersion.HTTP_1_1, 200, "OK", headers("Cache-Control", "max-age=60"),
+          MultiMap.caseInsensitiveMultiMap(), List.of(), Buffer.buffer(new byte[300]), List.of()));
+    };
+    ResponseCache cache = ResponseCache.create(1000);
+    Function<String, HttpRequest<Buffer>> request = id -> client.get("/").addQueryParam("id", id);
+    Function<String, RequestKey> key = id -> key("get", QUERY_PARAMS, RT.map("id", id));
+    
+    cache.send(key.apply("a"), request.apply("a"), ResponseBodyType.BYTES, sender);
+    cache.send(key.apply("b"), request.apply("b"), ResponseBodyType.BYTES, sender);
+    cache.send(key.apply("a"), request.apply("a"), ResponseBodyType.BYTES, sender);
+    assertEquals(List.of("a", "b"), sent);
+    
+    cache.send(key.apply("c"), request.apply("c"), ResponseBodyType.BYTES, sender);
+    assertEquals(2, cache.size());
+    assertTrue(cache.bytes() <= 1000);
+    
+    cache.send(key.apply("a"), request.apply("a"), ResponseBodyType.BYTES, sender);
+    cache.send(key.apply("b"), request.apply("b"), ResponseBodyType.BYTES, sender);
+    assertEquals(List.of("a", "b", "c", "b"), sent);
+  }
+}
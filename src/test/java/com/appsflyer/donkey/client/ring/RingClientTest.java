@@ -21,12 +21,19 @@ import clojure.lang.IPersistentMap;
 import clojure.lang.Keyword;
 import clojure.lang.PersistentHashMap;
 import clojure.lang.RT;
+import com.appsflyer.donkey.client.CircuitBreakerConfig;
 import com.appsflyer.donkey.client.ClientConfig;
+import com.appsflyer.donkey.client.ResponseBodyType;
+import com.appsflyer.donkey.client.RetryPolicy;
+import com.appsflyer.donkey.client.SendOptions;
+import com.appsflyer.donkey.client.exception.DeadlineExceededException;
 import com.appsflyer.donkey.server.ring.handler.RingRequestAdapter;
+import com.codahale.metrics.MetricRegistry;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.VertxException;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.http.HttpServerRequest;
@@ -43,11 +50,15 @@ import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.appsflyer.donkey.TestUtil.*;
 import static com.appsflyer.donkey.client.ring.ClojureRequestField.*;
@@ -63,6 +74,8 @@ class RingClientTest {
   private static final int SSL_PORT = 8443;
   private static Vertx vertx;
   private static RingClient client;
+  private static final Promise<Void> hedgeLoserClosed = Promise.promise();
+  private static final AtomicInteger closedRequests = new AtomicInteger();
   private static final Map<String, String> headers = Map.of(
       "Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,image/apng,*/*;q=0.8,application/signed-exchange;v=b3;q=0.9",
       "Accept-Encoding", "gzip, deflate, br",
@@ -125,6 +138,11 @@ class RingClientTest {
     routeSupplier.root200(router);
     routeSupplier.echo(router);
     routeSupplier.timeout(router);
+    routeSupplier.delayedSecondChunk(router, 500);
+    routeSupplier.respondAfterFirst(router, hedgeLoserClosed::tryComplete);
+    routeSupplier.failFirst(router, 2);
+    routeSupplier.delayed(router, 100);
+    routeSupplier.closeAfter(router, 100, closedRequests);
     
     return router;
   }
@@ -337,6 +355,177 @@ class RingClientTest {
   }
   
   @SuppressWarnings("JUnitTestMethodWithNoAssertions")
+  @Test
+  void testDeadline(VertxTestContext testContext) throws Throwable {
+    IPersistentMap opts = RT.map(METHOD.keyword(), getMethod,
+                                 URI.keyword(), "/timeout",
+                                 PORT.keyword(), DEFAULT_PORT);
+    HttpRequest<Buffer> request = client.request(opts);
+    
+    long start = System.nanoTime();
+    var options = SendOptions.builder()
+                             .requestOptions(client.requestOptions(opts))
+                             .deadlineMillis(200)
+                             .build();
+    client.send(request, options)
+          .onComplete(testContext.failing(
+              ex -> testContext.verify(() -> {
+                assertTrue(ex instanceof DeadlineExceededException);
+                assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+                testContext.completeNow();
+              })));
+    
+    assertContextSuccess(testContext);
+  }
+  
+  @Test
+  void testHedgedRequest(VertxTestContext testContext) throws Throwable {
+    IPersistentMap opts = RT.map(METHOD.keyword(), getMethod,
+                                 URI.keyword(), "/respond-after-first",
+                                 PORT.keyword(), DEFAULT_PORT);
+    HttpRequest<Buffer> request = client.request(opts);
+    
+    Checkpoint responseReceived = testContext.checkpoint();
+    Checkpoint loserCancelled = testContext.checkpoint();
+    client.send(request, SendOptions.builder()
+                                    .requestOptions(client.requestOptions(opts))
+                                    .hedgeAfterMillis(50)
+                                    .maxHedges(1)
+                                    .deadlineMillis(2000)
+                                    .build())
+          .onComplete(testContext.succeeding(
+              response -> testContext.verify(() -> {
+                assert200(response);
+                assertEquals("2", new String((byte[]) response.valAt(RingResponseField.BODY.keyword())));
+                responseReceived.flag();
+              })));
+    hedgeLoserClosed.future().onComplete(v -> loserCancelled.flag());
+    
+    assertContextSuccess(testContext);
+  }
+  
+  @Test
+  void testHedgedRequestFailsWhenAllAttemptsFail(VertxTestContext testContext) throws Throwable {
+    IPersistentMap opts = RT.map(METHOD.keyword(), getMethod,
+                                 URI.keyword(), "/close-after",
+                                 PORT.keyword(), DEFAULT_PORT);
+    HttpRequest<Buffer> request = client.request(opts);
+    
+    client.send(request, SendOptions.builder()
+                                    .requestOptions(client.requestOptions(opts))
+                                    .hedgeAfterMillis(20)
+                                    .maxHedges(1)
+                                    .deadlineMillis(2000)
+                                    .build())
+          .onComplete(testContext.failing(
+              ex -> testContext.verify(() -> {
+                assertFalse(ex instanceof DeadlineExceededException);
+                assertTrue(ex instanceof VertxException, ex.toString());
+                assertEquals(2, closedRequests.get());
+                testContext.completeNow();
+              })));
+    
+    assertContextSuccess(testContext);
+  }
+  
+  @Test
+  void testCancelledHedgesDontOpenTheCircuitBreaker(VertxTestContext testContext) throws Throwable {
+    var registry = new MetricRegistry();
+    var hedgingClient = RingClient.create(
+        ClientConfig.builder()
+                    .clientOptions(new WebClientOptions())
+                    .vertx(vertx)
+                    .circuitBreakerConfig(CircuitBreakerConfig.builder()
+                                                              .windowSize(4)
+                                                              .minimumCalls(4)
+                                                              .build())
+                    .metricRegistry(registry)
+                    .build());
+    IPersistentMap opts = RT.map(METHOD.keyword(), getMethod,
+                                 URI.keyword(), "/delayed",
+                                 PORT.keyword(), DEFAULT_PORT);
+    HttpRequest<Buffer> request = hedgingClient.request(opts);
+    var options = SendOptions.builder()
+                             .requestOptions(hedgingClient.requestOptions(opts))
+                             .hedgeAfterMillis(20)
+                             .maxHedges(1)
+                             .deadlineMillis(2000)
+                             .build();
+    
+    // Each exchange sends a hedge that loses to the first request and is cancelled
+    Future<IPersistentMap> exchanges = hedgingClient.send(request, options);
+    for (int i = 0; i < 3; i++) {
+      exchanges = exchanges.compose(v -> hedgingClient.send(request, options));
+    }
+    String metricsName = "donkey.http.clients.circuit-breaker.localhost:" + DEFAULT_PORT;
+    exchanges
+        // Wait for the cancelled hedge of the last exchange to complete
+        .compose(v -> {
+          Promise<Void> delay = Promise.promise();
+          vertx.setTimer(100, id -> delay.complete());
+          return delay.future();
+        })
+        .onComplete(testContext.succeeding(v -> testContext.verify(() -> {
+          assertEquals(0, registry.getGauges().get(metricsName + ".state").getValue());
+          assertEquals(0.0, registry.getGauges().get(metricsName + ".failure-rate").getValue());
+          hedgingClient.shutdown();
+          assertTrue(registry.getNames().isEmpty());
+          testContext.completeNow();
+        })));
+    
+    assertContextSuccess(testContext);
+  }
+  
+  @Test
+  void testCircuitBreakersRequireRequestOptions(VertxTestContext testContext) throws Throwable {
+    var guardedClient = RingClient.create(
+        ClientConfig.builder()
+                    .clientOptions(new WebClientOptions())
+                    .vertx(vertx)
+                    .circuitBreakerConfig(CircuitBreakerConfig.builder().build())
+                    .metricRegistry(new MetricRegistry())
+                    .build());
+    HttpRequest<Buffer> request = guardedClient.request(
+        RT.map(METHOD.keyword(), getMethod,
+               URI.keyword(), "/",
+               PORT.keyword(), DEFAULT_PORT));
+    
+    guardedClient.send(request).onComplete(testContext.failing(
+        ex -> testContext.verify(() -> {
+          assertTrue(ex instanceof IllegalArgumentException, ex.toString());
+          guardedClient.shutdown();
+          testContext.completeNow();
+        })));
+    
+    assertContextSuccess(testContext);
+  }
+  
+  @Test
+  void testRetry(VertxTestContext testContext) throws Throwable {
+    IPersistentMap opts = RT.map(METHOD.keyword(), getMethod,
+                                 URI.keyword(), "/fail-first",
+                                 PORT.keyword(), DEFAULT_PORT);
+    HttpRequest<Buffer> request = client.request(opts);
+    
+    var retryPolicy = RetryPolicy.builder()
+                                 .maxRetries(2)
+                                 .initialBackoffMillis(10)
+                                 .build();
+    var options = SendOptions.builder()
+                             .requestOptions(client.requestOptions(opts))
+                             .retryPolicy(retryPolicy)
+                             .build();
+    client.send(request, options)
+          .onComplete(testContext.succeeding(
+              response -> testContext.verify(() -> {
+                assert200(response);
+                assertEquals("3", new String((byte[]) response.valAt(RingResponseField.BODY.keyword())));
+                testContext.completeNow();
+              })));
+    
+    assertContextSuccess(testContext);
+  }
+  
   @Test
   void testAbsoluteUrl(VertxTestContext testContext) throws
                                                      Throwable {
@@ -393,6 +582,30 @@ class RingClientTest {
     assertContextSuccess(testContext);
   }
   
+  @Test
+  void testAbsoluteUrlQueryParamsWithDeadline(VertxTestContext testContext) throws Throwable {
+    IPersistentMap opts = RT.map(METHOD.keyword(), getMethod,
+                                 URL.keyword(), "http://localhost:" + DEFAULT_PORT + "/echo?foo=bar",
+                                 QUERY_PARAMS.keyword(), RT.map("fizz", "baz"));
+    HttpRequest<Buffer> request = client.request(opts);
+    var options = SendOptions.builder()
+                             .requestOptions(client.requestOptions(opts))
+                             .deadlineMillis(2000)
+                             .build();
+    
+    client.send(request, options).onComplete(testContext.succeeding(
+        response -> testContext.verify(() -> {
+          assert200(response);
+          IPersistentMap ringRequest = (IPersistentMap) parseResponseBody(response);
+          assertEquals(DEFAULT_PORT, ringRequest.valAt("server-port"));
+          assertEquals("/echo", ringRequest.valAt("uri"));
+          assertEquals("foo=bar&fizz=baz", ringRequest.valAt("query-string"));
+          testContext.completeNow();
+        })));
+    
+    assertContextSuccess(testContext);
+  }
+  
   @Test
   void testAbsoluteUrlHeaders(VertxTestContext testContext) throws
                                                             Throwable {
@@ -412,4 +625,59 @@ class RingClientTest {
     
     assertContextSuccess(testContext);
   }
+  
+  @Test
+  void testBufferResponseBody(VertxTestContext testContext) throws Throwable {
+    HttpRequest<Buffer> request = client.request(
+        RT.map(METHOD.keyword(), getMethod,
+               URI.keyword(), "/delayed-second-chunk",
+               PORT.keyword(), DEFAULT_PORT));
+    
+    client.send(request, SendOptions.builder().bodyType(ResponseBodyType.BUFFER).build())
+          .onComplete(testContext.succeeding(
+              response -> testContext.verify(() -> {
+                assert200(response);
+                Buffer body = (Buffer) response.valAt(RingResponseField.BODY.keyword());
+                assertEquals("first-chunk,second-chunk", body.toString());
+                testContext.completeNow();
+              })));
+    
+    assertContextSuccess(testContext);
+  }
+  
+  @Test
+  void testStreamResponseBody(VertxTestContext testContext) throws Throwable {
+    IPersistentMap opts = RT.map(METHOD.keyword(), getMethod,
+                                 URI.keyword(), "/delayed-second-chunk",
+                                 PORT.keyword(), DEFAULT_PORT);
+    HttpRequest<Buffer> request = client.request(opts);
+    
+    var options = SendOptions.builder()
+                             .requestOptions(client.requestOptions(opts))
+                             .bodyType(ResponseBodyType.STREAM)
+                             .build();
+    client.send(request, options)
+          .onComplete(testContext.succeeding(
+              response -> testContext.verify(() -> {
+                long responseTime = System.nanoTime();
+                assert200(response);
+                var body = (InputStream) response.valAt(RingResponseField.BODY.keyword());
+                vertx.<String>executeBlocking(promise -> {
+                  try (body) {
+                    promise.complete(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+                  } catch (IOException ex) {
+                    promise.fail(ex);
+                  }
+                }).onComplete(testContext.succeeding(
+                    content -> testContext.verify(() -> {
+                      // The response is completed before the server sends
+                      // the second chunk.
+                      assertTrue(System.nanoTime() - responseTime > TimeUnit.MILLISECONDS.toNanos(250));
+                      assertEquals("first-chunk,second-chunk", content);
+                      testContext.completeNow();
+                    })));
+              })));
+    
+    assertContextSuccess(testContext);
+  }
 }
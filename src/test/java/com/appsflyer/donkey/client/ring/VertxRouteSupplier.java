@@ -20,11 +20,14 @@ package com.appsflyer.donkey.client.ring;
 import com.appsflyer.donkey.server.ring.handler.RingHandler;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.vertx.core.Handler;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.ext.web.Route;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static com.appsflyer.donkey.ClojureObjectMapper.serialize;
 import static io.netty.handler.codec.http.HttpHeaderValues.*;
 import static io.vertx.core.http.HttpMethod.GET;
@@ -60,6 +63,79 @@ public class VertxRouteSupplier {
                  .handler((RingHandler) ctx -> {});
   }
   
+  /**
+   * Sends the first half of the body, and the second half after {@code delayMillis}.
+   */
+  public Route delayedSecondChunk(Router router, long delayMillis) {
+    return router.route()
+                 .path("/delayed-second-chunk")
+                 .handler(ctx -> {
+                   ctx.response()
+                      .setChunked(true)
+                      .write("first-chunk,");
+                   ctx.vertx().setTimer(delayMillis, v -> ctx.response().end("second-chunk"));
+                 });
+  }
+  
+  /**
+   * Doesn't respond to the first request, and calls {@code onFirstClosed}
+   * when its connection is closed. Other requests are responded with their
+   * sequence number.
+   */
+  public Route respondAfterFirst(Router router, Handler<Void> onFirstClosed) {
+    var counter = new AtomicInteger();
+    return router.route()
+                 .path("/respond-after-first")
+                 .handler(ctx -> {
+                   int count = counter.incrementAndGet();
+                   if (count == 1) {
+                     ctx.request().connection().closeHandler(onFirstClosed);
+                   } else {
+                     ctx.response().end(String.valueOf(count));
+                   }
+                 });
+  }
+  
+  /**
+   * Responds to every request after {@code delayMillis}.
+   */
+  public Route delayed(Router router, long delayMillis) {
+    return router.route()
+                 .path("/delayed")
+                 .handler(ctx -> ctx.vertx().setTimer(delayMillis, v -> ctx.response().end()));
+  }
+  
+  /**
+   * Closes the connection of every request after {@code delayMillis}, without
+   * responding, and counts the requests with {@code counter}.
+   */
+  public Route closeAfter(Router router, long delayMillis, AtomicInteger counter) {
+    return router.route()
+                 .path("/close-after")
+                 .handler(ctx -> {
+                   counter.incrementAndGet();
+                   ctx.vertx().setTimer(delayMillis, v -> ctx.request().connection().close());
+                 });
+  }
+  
+  /**
+   * Responds with {@code 503} to the first {@code failures} requests,
+   * and with the sequence number of the request afterwards.
+   */
+  public Route failFirst(Router router, int failures) {
+    var counter = new AtomicInteger();
+    return router.route()
+                 .path("/fail-first")
+                 .handler(ctx -> {
+                   int count = counter.incrementAndGet();
+                   if (count <= failures) {
+                     ctx.response().setStatusCode(503).end();
+                   } else {
+                     ctx.response().end(String.valueOf(count));
+                   }
+                 });
+  }
+  
   public Route postFormOrFile(Router router) {
     return router.route()
                  .path("/post/form")
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.handler;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ContextBoundRoutingContextTest {
+  
+  private RoutingContext ctx;
+  private Context context;
+  private RoutingContext bound;
+  
+  @BeforeEach
+  void setUp() {
+    ctx = mock(RoutingContext.class);
+    context = mock(Context.class);
+    bound = ContextBoundRoutingContext.create(ctx, context);
+  }
+  
+  @SuppressWarnings("unchecked")
+  private void runOnContext() {
+    ArgumentCaptor<Handler<Void>> captor = ArgumentCaptor.forClass(Handler.class);
+    verify(context).runOnContext(captor.capture());
+    captor.getValue().handle(null);
+  }
+  
+  @Test
+  void testNextRunsOnTheContext() {
+    bound.next();
+    verify(ctx, never()).next();
+    runOnContext();
+    verify(ctx).next();
+  }
+  
+  @Test
+  void testFailRunsOnTheContext() {
+    var ex = new IllegalStateException();
+    bound.fail(503, ex);
+    verify(ctx, never()).fail(anyInt(), any());
+    runOnContext();
+    verify(ctx).fail(503, ex);
+  }
+  
+  @Test
+  void testOtherCallsAreDelegated() {
+    when(ctx.get("foo")).thenReturn("bar");
+    when(ctx.put("foo", "baz")).thenReturn(ctx);
+    
+    assertEquals("bar", bound.get("foo"));
+    assertSame(bound, bound.put("foo", "baz"), "The context should not escape from fluent calls");
+    verify(context, never()).runOnContext(any());
+  }
+  
+  @Test
+  void testExceptionsAreNotWrapped() {
+    when(ctx.get("foo")).thenThrow(new IllegalArgumentException("foo"));
+    assertThrows(IllegalArgumentException.class, () -> bound.get("foo"));
+  }
+}
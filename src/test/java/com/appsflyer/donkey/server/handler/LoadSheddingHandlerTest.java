@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.handler;
+
+import com.appsflyer.donkey.server.Server;
+import com.appsflyer.donkey.server.ServerImpl;
+import com.appsflyer.donkey.server.exception.ServerShutdownException;
+import com.appsflyer.donkey.server.route.HandlerMode;
+import com.appsflyer.donkey.server.route.RouteDefinition;
+import com.appsflyer.donkey.server.route.RouteList;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.appsflyer.donkey.TestUtil.*;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("integration")
+@ExtendWith(VertxExtension.class)
+class LoadSheddingHandlerTest {
+  
+  private Server server;
+  
+  @AfterEach
+  void tearDown() throws ServerShutdownException {
+    if (server != null) {
+      server.shutdownSync();
+      server = null;
+    }
+  }
+  
+  @Test
+  void testRejectsRequestsAboveTheConcurrencyLimit(Vertx vertx, VertxTestContext testContext) throws
+                                                                                             Throwable {
+    var started = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    var route = RouteDefinition
+        .create()
+        .path("/slow")
+        .handlerMode(HandlerMode.BLOCKING)
+        .handler(ctx -> {
+          started.countDown();
+          try {
+            release.await(5, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          ctx.response().end();
+        });
+    var config = new LoadSheddingConfig.Builder()
+        .minLimit(1)
+        .initialLimit(1)
+        .maxLimit(1)
+        .retryAfter(Duration.ofSeconds(3))
+        .build();
+    
+    startServer(vertx, config, route);
+    
+    // The first request is admitted and occupies the only slot
+    doGet(vertx, "/slow").onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+      assert200(response);
+      // The slot is released when the response ends
+      doGet(vertx, "/slow").onComplete(testContext.succeeding(
+          second -> testContext.verify(() -> {
+            assert200(second);
+            testContext.completeNow();
+          })));
+    })));
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    
+    doGet(vertx, "/slow").onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+      assertEquals(SERVICE_UNAVAILABLE.code(), response.statusCode());
+      assertEquals("3", response.getHeader("Retry-After"));
+      release.countDown();
+    })));
+    
+    assertContextSuccess(testContext);
+  }
+  
+  @Test
+  void testRejectsRequestsWhileTheEventLoopLags(Vertx vertx, VertxTestContext testContext) throws
+                                                                                          Throwable {
+    var blockingRoute = RouteDefinition
+        .create()
+        .path("/block-event-loop")
+        .handler(ctx -> {
+          try {
+            Thread.sleep(400);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          ctx.response().end();
+        });
+    var route = RouteDefinition
+        .create()
+        .path("/fast")
+        .handler(ctx -> ctx.response().end());
+    var config = new LoadSheddingConfig.Builder()
+        .maxEventLoopLag(Duration.ofMillis(200))
+        .build();
+    
+    startServer(vertx, config, blockingRoute, route);
+    
+    doGet(vertx, "/block-event-loop")
+        .compose(response -> {
+          testContext.verify(() -> assert200(response));
+          return doGet(vertx, "/fast");
+        })
+        .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+          assertEquals(SERVICE_UNAVAILABLE.code(), response.statusCode());
+          assertEquals("1", response.getHeader("Retry-After"));
+          // Requests are admitted again once the lag is measured to be back to normal
+          vertx.setTimer(300, timerId -> doGet(vertx, "/fast")
+              .onComplete(testContext.succeeding(recovered -> testContext.verify(() -> {
+                assert200(recovered);
+                testContext.completeNow();
+              }))));
+        })));
+    
+    assertContextSuccess(testContext);
+  }
+  
+  @Test
+  void testInvalidConfig() {
+    assertThrows(IllegalArgumentException.class,
+                 () -> new LoadSheddingConfig.Builder().minLimit(0).build());
+    assertThrows(IllegalArgumentException.class,
+                 () -> new LoadSheddingConfig.Builder().minLimit(10).maxLimit(5).build());
+    assertThrows(IllegalArgumentException.class,
+                 () -> new LoadSheddingConfig.Builder().initialLimit(2000).build());
+    assertThrows(IllegalArgumentException.class,
+                 () -> new LoadSheddingConfig.Builder().maxEventLoopLag(Duration.ZERO).build());
+  }
+  
+  private void startServer(Vertx vertx, LoadSheddingConfig config, RouteDefinition... routes) throws
+                                                                                               Exception {
+    server = ServerImpl.create(getDefaultConfigBuilder(vertx)
+                                   .routeList(RouteList.from(routes))
+                                   .loadShedding(config)
+                                   .build());
+    server.start().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+  }
+}
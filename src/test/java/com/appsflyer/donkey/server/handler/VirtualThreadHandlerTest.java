@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.handler;
+
+import com.appsflyer.donkey.server.Server;
+import com.appsflyer.donkey.server.ServerImpl;
+import com.appsflyer.donkey.server.exception.ServerShutdownException;
+import com.appsflyer.donkey.server.route.HandlerMode;
+import com.appsflyer.donkey.server.route.RouteDefinition;
+import com.appsflyer.donkey.server.route.RouteList;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.List;
+
+import static com.appsflyer.donkey.TestUtil.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+@Tag("integration")
+@ExtendWith(VertxExtension.class)
+class VirtualThreadHandlerTest {
+  
+  private static final String HANDLER_THREAD = "handler-thread";
+  private Server server;
+  
+  @AfterEach
+  void tearDown() throws ServerShutdownException {
+    if (server != null) {
+      server.shutdownSync();
+      server = null;
+    }
+  }
+  
+  @Test
+  void testHandlerRunsOffTheEventLoop(Vertx vertx, VertxTestContext testContext) {
+    var virtualRoute = RouteDefinition
+        .create()
+        .path("/virtual")
+        .handlerMode(HandlerMode.VIRTUAL)
+        .handler(ctx -> {
+          ctx.put(HANDLER_THREAD, String.valueOf(Context.isOnEventLoopThread()));
+          ctx.next();
+        });
+    
+    var nextRoute = RouteDefinition
+        .create()
+        .path("/virtual")
+        .handler(ctx -> ctx.response().end(
+            ctx.get(HANDLER_THREAD) + "," + Context.isOnEventLoopThread()));
+    
+    startServer(vertx, virtualRoute, nextRoute)
+        .onSuccess(v -> doGet(vertx, "/virtual")
+            .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+              assert200(response);
+              assertEquals("false,true", response.bodyAsString(),
+                           "The handler should run off the event loop, " +
+                           "and the next handler on the event loop");
+              testContext.completeNow();
+            }))));
+  }
+  
+  @Test
+  void testExceptionFailsTheRequest(Vertx vertx, VertxTestContext testContext) {
+    var route = RouteDefinition
+        .create()
+        .path("/virtual")
+        .handlerMode(HandlerMode.VIRTUAL)
+        .handler(ctx -> {
+          throw new IllegalStateException("Handler failed");
+        });
+    
+    startServer(vertx, route)
+        .onSuccess(v -> doGet(vertx, "/virtual")
+            .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+              assert500(response);
+              testContext.completeNow();
+            }))));
+  }
+  
+  @Test
+  void testCreateFailsWithoutVirtualThreads() {
+    assumeFalse(VirtualThreadHandler.virtualThreadsSupported());
+    assertThrows(IllegalStateException.class, () -> VirtualThreadHandler.create(RoutingContext::next));
+  }
+  
+  private Future<String> startServer(Vertx vertx, RouteDefinition... routes) {
+    server = ServerImpl.create(getDefaultConfigBuilder(vertx)
+                                   .routeList(RouteList.from(List.of(routes)))
+                                   .build());
+    return server.start();
+  }
+}
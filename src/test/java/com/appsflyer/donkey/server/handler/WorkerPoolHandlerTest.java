@@ -0,0 +1,197 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.handler;
+
+import com.appsflyer.donkey.server.Server;
+import com.appsflyer.donkey.server.ServerImpl;
+import com.appsflyer.donkey.server.exception.ServerShutdownException;
+import com.appsflyer.donkey.server.route.HandlerMode;
+import com.appsflyer.donkey.server.route.RouteDefinition;
+import com.appsflyer.donkey.server.route.RouteList;
+import com.appsflyer.donkey.server.route.WorkerPoolConfig;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.junit5.Checkpoint;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.appsflyer.donkey.TestUtil.*;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("integration")
+@ExtendWith(VertxExtension.class)
+class WorkerPoolHandlerTest {
+  
+  private Server server;
+  
+  @AfterEach
+  void tearDown() throws ServerShutdownException {
+    if (server != null) {
+      server.shutdownSync();
+      server = null;
+    }
+  }
+  
+  @Test
+  void testHandlerRunsOnDedicatedPool(Vertx vertx, VertxTestContext testContext) {
+    var route = RouteDefinition
+        .create()
+        .path("/pool")
+        .handlerMode(HandlerMode.BLOCKING)
+        .workerPool(WorkerPoolConfig.create("test-pool", 2))
+        .handler(ctx -> ctx.response().end(Thread.currentThread().getName()));
+    
+    startServer(vertx, route)
+        .onSuccess(v -> doGet(vertx, "/pool")
+            .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+              assert200(response);
+              assertTrue(response.bodyAsString().startsWith("test-pool"),
+                         "Handler should run on a 'test-pool' thread, but ran on " +
+                         response.bodyAsString());
+              testContext.completeNow();
+            }))));
+  }
+  
+  @Test
+  void testRejectsRequestsWhenQueueIsFull(Vertx vertx, VertxTestContext testContext) throws
+                                                                                     Throwable {
+    var started = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    var route = RouteDefinition
+        .create()
+        .path("/pool")
+        .handlerMode(HandlerMode.BLOCKING)
+        .workerPool(WorkerPoolConfig.create("single-thread-pool", 1, 1))
+        .handler(ctx -> {
+          started.countDown();
+          try {
+            release.await(5, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          ctx.response().end();
+        });
+    
+    startServer(vertx, route).toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    Checkpoint acceptedResponses = testContext.checkpoint(2);
+    
+    // The first request occupies the only thread of the pool
+    doGet(vertx, "/pool").onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+      assert200(response);
+      acceptedResponses.flag();
+    })));
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    
+    // The second request waits in the queue
+    doGet(vertx, "/pool").onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+      assert200(response);
+      acceptedResponses.flag();
+    })));
+    
+    // The third request is rejected
+    vertx.setTimer(500, timerId -> doGet(vertx, "/pool")
+        .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+          assertEquals(SERVICE_UNAVAILABLE.code(), response.statusCode());
+          release.countDown();
+        }))));
+    
+    assertContextSuccess(testContext);
+  }
+  
+  @Test
+  void testWorkerPoolRequiresBlockingHandler(Vertx vertx, VertxTestContext testContext) {
+    var route = RouteDefinition
+        .create()
+        .path("/pool")
+        .workerPool(WorkerPoolConfig.create("non-blocking-pool", 1))
+        .handler(ctx -> ctx.response().end());
+    
+    startServer(vertx, route)
+        .onComplete(testContext.failing(ex -> testContext.verify(() -> {
+          assertTrue(ex.getMessage().contains("non-blocking-pool"));
+          server = null;
+          testContext.completeNow();
+        })));
+  }
+  
+  @Test
+  void testConflictingPoolsFailTheServer(Vertx vertx, VertxTestContext testContext) {
+    var first = RouteDefinition
+        .create()
+        .path("/first")
+        .handlerMode(HandlerMode.BLOCKING)
+        .workerPool(WorkerPoolConfig.create("shared-pool", 2))
+        .handler(ctx -> ctx.response().end());
+    var second = RouteDefinition
+        .create()
+        .path("/second")
+        .handlerMode(HandlerMode.BLOCKING)
+        .workerPool(WorkerPoolConfig.create("shared-pool", 4))
+        .handler(ctx -> ctx.response().end());
+    
+    startServer(vertx, first, second)
+        .onComplete(testContext.failing(ex -> testContext.verify(() -> {
+          assertTrue(ex.getMessage().contains("shared-pool"));
+          assertTrue(pools(vertx).isEmpty(), "The pools should be released when the server fails to start");
+          server = null;
+          testContext.completeNow();
+        })));
+  }
+  
+  @Test
+  void testPoolsAreClosedWhenTheServerStops(Vertx vertx, VertxTestContext testContext) {
+    var route = RouteDefinition
+        .create()
+        .path("/pool")
+        .handlerMode(HandlerMode.BLOCKING)
+        .workerPool(WorkerPoolConfig.create("closed-pool", 1))
+        .handler(ctx -> ctx.response().end());
+    
+    startServer(vertx, route)
+        .compose(deploymentId -> doGet(vertx, "/pool")
+            .compose(response -> {
+              testContext.verify(() -> assertFalse(pools(vertx).isEmpty()));
+              return vertx.undeploy(deploymentId);
+            }))
+        .onComplete(testContext.succeeding(v -> testContext.verify(() -> {
+          assertTrue(pools(vertx).isEmpty());
+          server = null;
+          testContext.completeNow();
+        })));
+  }
+  
+  private static LocalMap<String, WorkerPool> pools(Vertx vertx) {
+    return vertx.sharedData().getLocalMap("__donkey.worker-pools");
+  }
+  
+  private Future<String> startServer(Vertx vertx, RouteDefinition... routes) {
+    server = ServerImpl.create(getDefaultConfigBuilder(vertx)
+                                   .routeList(RouteList.from(List.of(routes)))
+                                   .build());
+    return server.start();
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.ring.handler;
+
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServer;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.appsflyer.donkey.TestUtil.DEFAULT_PORT;
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("integration")
+@ExtendWith(VertxExtension.class)
+class ChunkedResponseWriterTest {
+  
+  /**
+   * An endless body that counts how many times it was closed.
+   */
+  private static final class EndlessStream extends InputStream {
+    
+    private final AtomicInteger closed = new AtomicInteger();
+    private final Promise<Void> onClose = Promise.promise();
+    
+    @Override
+    public int read() {
+      return 'a';
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) {
+      return len;
+    }
+    
+    @Override
+    public void close() {
+      closed.incrementAndGet();
+      onClose.tryComplete();
+    }
+  }
+  
+  @Test
+  void testBodyIsClosedWhenTheClientDisconnectsWhileWaitingToDrain(
+      Vertx vertx, VertxTestContext testContext) throws Throwable {
+    var body = new EndlessStream();
+    
+    HttpServer server = vertx.createHttpServer()
+                             .requestHandler(req -> ChunkedResponseWriter.write(vertx, req.response(), body));
+    server.listen(DEFAULT_PORT)
+          .compose(v -> vertx.createNetClient().connect(DEFAULT_PORT, "localhost"))
+          .onSuccess(socket -> {
+            // The client doesn't read the response, so the server's
+            // write queue fills up and the writer waits for it to drain.
+            socket.pause();
+            socket.write(Buffer.buffer("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n"));
+            vertx.setTimer(500, id -> socket.close());
+          })
+          .onFailure(testContext::failNow);
+    
+    body.onClose.future().onComplete(v -> vertx.setTimer(100, id -> testContext.verify(() -> {
+      assertEquals(1, body.closed.get(), "The body should be closed once");
+      server.close();
+      testContext.completeNow();
+    })));
+    
+    assertTrue(testContext.awaitCompletion(5, TimeUnit.SECONDS));
+    if (testContext.failed()) {
+      throw testContext.causeOfFailure();
+    }
+  }
+}
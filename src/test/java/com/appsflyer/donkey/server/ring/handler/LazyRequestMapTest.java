@@ -0,0 +1,198 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.appsflyer.donkey.server.ring.handler;
+
+import clojure.lang.IMapEntry;
+import clojure.lang.IPersistentMap;
+import clojure.lang.ITransientMap;
+import clojure.lang.Keyword;
+import clojure.lang.PersistentHashMap;
+import clojure.lang.RT;
+import io.vertx.core.MultiMap;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.ext.web.RoutingContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.appsflyer.donkey.server.ring.handler.RingRequestField.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class LazyRequestMapTest {
+  
+  private RoutingContext ctx;
+  private HttpServerRequest request;
+  
+  @BeforeEach
+  void setUp() {
+    ctx = mock(RoutingContext.class);
+    request = mock(HttpServerRequest.class);
+    when(ctx.request()).thenReturn(request);
+    when(ctx.pathParams()).thenReturn(Map.of("id", "1"));
+    when(request.path()).thenReturn("/foo/1");
+    when(request.method()).thenReturn(HttpMethod.GET);
+    when(request.version()).thenReturn(HttpVersion.HTTP_1_1);
+    when(request.scheme()).thenReturn("http");
+    when(request.host()).thenReturn("localhost");
+    when(request.headers()).thenReturn(MultiMap.caseInsensitiveMultiMap().add("Accept", "*/*"));
+    when(request.localAddress()).thenReturn(SocketAddress.inetSocketAddress(8080, "127.0.0.1"));
+    when(request.remoteAddress()).thenReturn(SocketAddress.inetSocketAddress(5555, "127.0.0.1"));
+  }
+  
+  @Test
+  void testFieldsAreComputedOnDemand() {
+    var map = LazyRequestMap.create(ctx);
+    
+    assertEquals("/foo/1", map.valAt(URI.keyword()));
+    assertEquals(RT.map("id", "1"), map.valAt(PATH_PARAMS.keyword()));
+    verify(request, never()).headers();
+    verify(request, never()).remoteAddress();
+  }
+  
+  @Test
+  void testFieldsAreMemoized() {
+    var map = LazyRequestMap.create(ctx);
+    
+    assertEquals("/foo/1", map.valAt(URI.keyword()));
+    assertEquals("/foo/1", map.valAt(URI.keyword()));
+    verify(request, times(1)).path();
+  }
+  
+  @Test
+  void testConcurrentReadsComputeFieldsOnce() throws Exception {
+    int threads = 8;
+    var map = LazyRequestMap.create(ctx).assoc(Keyword.intern("foo"), "bar");
+    var start = new CountDownLatch(1);
+    var executor = Executors.newFixedThreadPool(threads);
+    try {
+      var results = new ArrayList<Future<Object[]>>();
+      for (int i = 0; i < threads; i++) {
+        results.add(executor.submit(() -> {
+          start.await();
+          return new Object[]{map.valAt(HEADERS.keyword()), map.valAt(URI.keyword()), map.count()};
+        }));
+      }
+      start.countDown();
+      
+      Object[] first = results.get(0).get(5, TimeUnit.SECONDS);
+      for (var result : results) {
+        Object[] values = result.get(5, TimeUnit.SECONDS);
+        assertSame(first[0], values[0], "All the threads should see the same memoized value");
+        assertEquals("/foo/1", values[1]);
+        assertEquals(first[2], values[2]);
+      }
+      verify(request, times(1)).headers();
+      verify(request, times(1)).path();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  void testMissingFields() {
+    var map = LazyRequestMap.create(ctx);
+    
+    assertNull(map.valAt(BODY.keyword()));
+    assertEquals("default", map.valAt(BODY.keyword(), "default"));
+    assertFalse(map.containsKey(BODY.keyword()));
+    assertFalse(map.containsKey(Keyword.intern("foo")));
+    assertNull(map.entryAt(QUERY_STRING.keyword()));
+  }
+  
+  @Test
+  void testAssocDoesNotComputeFields() {
+    var foo = Keyword.intern("foo");
+    var map = LazyRequestMap.create(ctx)
+                            .assoc(foo, "bar")
+                            .assoc(URI.keyword(), "/bar");
+    
+    assertEquals("bar", map.valAt(foo));
+    assertEquals("/bar", map.valAt(URI.keyword()));
+    assertEquals(Keyword.intern("get"), map.valAt(REQUEST_METHOD.keyword()));
+    verify(request, never()).path();
+    verify(request, never()).headers();
+  }
+  
+  @Test
+  void testMaterialization() {
+    var foo = Keyword.intern("foo");
+    IPersistentMap map = LazyRequestMap.create(ctx).assoc(foo, "bar");
+    
+    assertEquals(10, map.count());
+    assertEquals("bar", map.valAt(foo));
+    assertEquals(RT.map("accept", "*/*"), map.valAt(HEADERS.keyword()));
+    assertEquals("127.0.0.1", map.valAt(REMOTE_ADDRESS.keyword()));
+    assertEquals(9, map.without(foo).count());
+  }
+  
+  @Test
+  void testTransientDoesNotComputeFields() {
+    var foo = Keyword.intern("foo");
+    ITransientMap editable = LazyRequestMap.create(ctx)
+                                           .asTransient()
+                                           .assoc(foo, "bar")
+                                           .assoc(URI.keyword(), "/bar");
+    
+    assertEquals("bar", editable.valAt(foo));
+    assertEquals(Keyword.intern("get"), editable.valAt(REQUEST_METHOD.keyword()));
+    IPersistentMap map = editable.persistent();
+    
+    assertInstanceOf(LazyRequestMap.class, map);
+    assertEquals("bar", map.valAt(foo));
+    assertEquals("/bar", map.valAt(URI.keyword()));
+    verify(request, never()).path();
+    verify(request, never()).headers();
+    assertThrows(IllegalAccessError.class, () -> editable.valAt(foo));
+  }
+  
+  @Test
+  void testTransientMaterialization() {
+    var foo = Keyword.intern("foo");
+    ITransientMap editable = LazyRequestMap.create(ctx).asTransient().assoc(foo, "bar");
+    
+    assertEquals(10, editable.count());
+    IPersistentMap map = editable.without(foo).persistent();
+    
+    assertEquals(9, map.count());
+    assertEquals("/foo/1", map.valAt(URI.keyword()));
+  }
+  
+  @Test
+  void testEquality() {
+    var map = LazyRequestMap.create(ctx);
+    IPersistentMap copy = PersistentHashMap.EMPTY;
+    for (var obj : map) {
+      var entry = (IMapEntry) obj;
+      copy = copy.assoc(entry.key(), entry.val());
+    }
+    
+    assertEquals(copy, map);
+    assertEquals(map, copy);
+    assertEquals(copy.hashCode(), map.hashCode());
+  }
+}
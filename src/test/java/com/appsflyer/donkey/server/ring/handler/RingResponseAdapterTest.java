@@ -19,6 +19,8 @@ package com.appsflyer.donkey.server.ring.handler;
 
 import clojure.lang.Keyword;
 import clojure.lang.RT;
+import io.netty.buffer.DefaultByteBufHolder;
+import io.netty.buffer.Unpooled;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
@@ -36,6 +38,7 @@ import java.io.File;
 
 import static com.appsflyer.donkey.server.ring.handler.RingHandler.RING_HANDLER_RESULT;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
@@ -106,4 +109,43 @@ class RingResponseAdapterTest {
     testContext.assertComplete(future)
                .onComplete(testContext.succeedingThenComplete());
   }
+  
+  @Test
+  void testReleasesByteBufHolderBody(VertxTestContext testContext) {
+    var body = new DefaultByteBufHolder(Unpooled.directBuffer().writeBytes(content.getBytes()));
+    var ctx = mock(RoutingContext.class);
+    var res = mockResponse(ctx, body);
+    Promise<Void> promise = Promise.promise();
+    when(res.end(any(Buffer.class))).thenAnswer(invocationOnMock -> {
+      assertEquals(content, invocationOnMock.getArgument(0));
+      assertEquals(1, body.refCnt());
+      return promise.future();
+    });
+    
+    RingResponseAdapter.create().handle(ctx);
+    promise.complete();
+    
+    testContext.verify(() -> assertEquals(0, body.refCnt()));
+    testContext.completeNow();
+  }
+  
+  @Test
+  void testReleasesByteBufBody(VertxTestContext testContext) {
+    var body = Unpooled.directBuffer().writeBytes(content.getBytes());
+    var ctx = mock(RoutingContext.class);
+    var res = mockResponse(ctx, body);
+    Promise<Void> promise = Promise.promise();
+    when(res.end(any(Buffer.class))).thenAnswer(invocationOnMock -> {
+      assertEquals(content, invocationOnMock.getArgument(0));
+      assertEquals(1, body.refCnt());
+      return promise.future();
+    });
+    
+    RingResponseAdapter.create().handle(ctx);
+    testContext.verify(() -> assertEquals(1, body.refCnt()));
+    promise.complete();
+    
+    testContext.verify(() -> assertEquals(0, body.refCnt()));
+    testContext.completeNow();
+  }
 }
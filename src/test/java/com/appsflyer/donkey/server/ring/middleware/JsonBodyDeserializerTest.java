@@ -21,10 +21,15 @@ import clojure.lang.IPersistentMap;
 import clojure.lang.RT;
 import com.appsflyer.donkey.server.exception.DeserializationException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
 import static com.appsflyer.donkey.server.ring.handler.RingResponseField.BODY;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -85,4 +90,18 @@ class JsonBodyDeserializerTest {
     assertEquals(RT.vector("foo", "bar", "fizz", "baz"),
                  middleware.handle(request2).valAt(BODY.keyword()));
   }
+  
+  @Test
+  void testBinaryBodies() {
+    byte[] json = "{\"foo\":[1,2]}".getBytes(StandardCharsets.UTF_8);
+    IPersistentMap expected = RT.map("foo", RT.vector(1, 2));
+    for (Object body : List.of(Buffer.buffer(json),
+                               Unpooled.directBuffer().writeBytes(json),
+                               Unpooled.wrappedBuffer(new byte[]{' ', ' '}, json).skipBytes(2),
+                               Buffer.buffer(Unpooled.wrappedBuffer(
+                                   Unpooled.wrappedBuffer(json, 0, 5),
+                                   Unpooled.wrappedBuffer(json, 5, json.length - 5))))) {
+      assertEquals(expected, middleware.handle(RT.map(BODY.keyword(), body)).valAt(BODY.keyword()));
+    }
+  }
 }
@@ -20,10 +20,13 @@ package com.appsflyer.donkey.server.ring.middleware;
 import clojure.lang.IPersistentMap;
 import clojure.lang.RT;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+
 import static com.appsflyer.donkey.server.ring.handler.RingResponseField.BODY;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -67,4 +70,19 @@ class JsonBodySerializerTest {
     assertArrayEquals("{\"foo\":\"bar\",\"fizz\":\"baz\"}".getBytes(),
                       (byte[])middleware.handle(response).valAt(BODY.keyword()));
   }
+  
+  @Test
+  void testPooledBuffers() {
+    var pooled = JsonBodySerializer.create(new ObjectMapper(),
+                                           new JsonBodySerializer.Options().pooledBuffers(true));
+    IPersistentMap response = RT.map(BODY.keyword(), RT.map("foo", "bar"));
+    
+    var body = (ByteBuf) pooled.handle(response).valAt(BODY.keyword());
+    try {
+      assertEquals("{\"foo\":\"bar\"}", body.toString(StandardCharsets.UTF_8));
+      assertEquals(1, body.refCnt());
+    } finally {
+      body.release();
+    }
+  }
 }
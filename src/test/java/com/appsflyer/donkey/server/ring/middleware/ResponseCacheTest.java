@@ -0,0 +1,291 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.ring.middleware;
+
+import clojure.lang.IPersistentMap;
+import clojure.lang.Keyword;
+import clojure.lang.RT;
+import io.netty.buffer.DefaultByteBufHolder;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+  
+  private static final Keyword STATUS = Keyword.intern("status");
+  private static final Keyword BODY = Keyword.intern("body");
+  
+  private static Supplier<CompletableFuture<IPersistentMap>> handler(AtomicInteger calls,
+                                                                    IPersistentMap response) {
+    return () -> {
+      calls.incrementAndGet();
+      return CompletableFuture.completedFuture(response);
+    };
+  }
+  
+  private static String body(IPersistentMap response) {
+    return ((Buffer) response.valAt(BODY)).toString();
+  }
+  
+  @Test
+  void testInvalidOptions() {
+    assertThrows(IllegalArgumentException.class,
+                 () -> ResponseCache.create(new ResponseCache.Options().ttlMillis(0)));
+    assertThrows(IllegalArgumentException.class,
+                 () -> ResponseCache.create(new ResponseCache.Options().maxEntries(0)));
+  }
+  
+  @Test
+  void testServesStoredResponse() {
+    var calls = new AtomicInteger();
+    var cache = ResponseCache.create(new ResponseCache.Options().ttlMillis(60_000));
+    var handler = handler(calls, RT.map(STATUS, 200, BODY, "hello"));
+    
+    IPersistentMap first = cache.get("key", handler).join();
+    IPersistentMap second = cache.get("key", handler).join();
+    
+    assertEquals(1, calls.get());
+    assertEquals("hello", body(first));
+    assertSame(first.valAt(BODY), second.valAt(BODY));
+  }
+  
+  @Test
+  void testStoresBodyOffHeap() {
+    var calls = new AtomicInteger();
+    var cache = ResponseCache.create(new ResponseCache.Options().ttlMillis(60_000).offHeap(true));
+    var handler = handler(calls, RT.map(STATUS, 200, BODY, "hello".getBytes()));
+    
+    IPersistentMap response = cache.get("key", handler).join();
+    
+    assertEquals("hello", body(cache.get("key", handler).join()));
+    assertTrue(((Buffer) response.valAt(BODY)).getByteBuf().isDirect());
+    assertEquals(1, calls.get());
+  }
+  
+  @Test
+  void testDoesNotStoreErrorsOrStreams() {
+    var calls = new AtomicInteger();
+    var cache = ResponseCache.create(new ResponseCache.Options().ttlMillis(60_000));
+    IPersistentMap error = RT.map(STATUS, 500, BODY, "error");
+    IPersistentMap stream = RT.map(STATUS, 200, BODY, new ByteArrayInputStream(new byte[0]));
+    
+    assertSame(error, cache.get("error", handler(calls, error)).join());
+    assertSame(error, cache.get("error", handler(calls, error)).join());
+    assertSame(stream, cache.get("stream", handler(calls, stream)).join());
+    assertEquals(3, calls.get());
+    assertEquals(0, cache.size());
+  }
+  
+  @Test
+  void testCoalescesConcurrentMisses() {
+    var calls = new AtomicInteger();
+    var cache = ResponseCache.create(new ResponseCache.Options().ttlMillis(60_000));
+    var pending = new CompletableFuture<IPersistentMap>();
+    Supplier<CompletableFuture<IPersistentMap>> handler = () -> {
+      calls.incrementAndGet();
+      return pending;
+    };
+    
+    var first = cache.get("key", handler);
+    var second = cache.get("key", handler);
+    assertFalse(second.isDone());
+    
+    pending.complete(RT.map(STATUS, 200, BODY, "hello"));
+    assertEquals("hello", body(first.join()));
+    assertEquals("hello", body(second.join()));
+    assertEquals(1, calls.get());
+  }
+  
+  @Test
+  void testConcurrentMissesThatAreNotStoredCallTheirHandlerOnTheirContext() throws Exception {
+    Vertx vertx = Vertx.vertx();
+    try {
+      var cache = ResponseCache.create(new ResponseCache.Options().ttlMillis(60_000));
+      var contexts = new ArrayList<Context>();
+      var responses = new ArrayList<CompletableFuture<IPersistentMap>>();
+      var handlerContexts = new ConcurrentHashMap<Context, Context>();
+      for (int i = 0; i < 4; i++) {
+        // A thread that isn't a Vert.x thread keeps using the context it created
+        Context context = CompletableFuture.supplyAsync(vertx::getOrCreateContext, r -> new Thread(r).start())
+                                           .get(5, TimeUnit.SECONDS);
+        var response = new CompletableFuture<IPersistentMap>();
+        contexts.add(context);
+        responses.add(response);
+        Supplier<CompletableFuture<IPersistentMap>> handler = () -> {
+          handlerContexts.put(context, Vertx.currentContext());
+          var res = new CompletableFuture<IPersistentMap>();
+          vertx.setTimer(200, id -> res.complete(RT.map(STATUS, 500, BODY, "error")));
+          return res;
+        };
+        context.runOnContext(v -> cache.get("key", handler).whenComplete((res, ex) -> response.complete(res)));
+      }
+      
+      long start = System.nanoTime();
+      CompletableFuture.allOf(responses.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+      
+      assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(800));
+      assertEquals(4, handlerContexts.size());
+      contexts.forEach(context -> assertSame(context, handlerContexts.get(context)));
+      responses.forEach(response -> assertEquals(500, response.join().valAt(STATUS)));
+    } finally {
+      vertx.close();
+    }
+  }
+  
+  @Test
+  void testConcurrentBlockingMissesThatAreNotStoredCallTheirHandler() throws Exception {
+    var cache = ResponseCache.create(new ResponseCache.Options().ttlMillis(60_000));
+    var executor = Executors.newFixedThreadPool(4);
+    try {
+      var handlerThreads = new ConcurrentHashMap<Thread, Thread>();
+      var responses = new ArrayList<Future<IPersistentMap>>();
+      long start = System.nanoTime();
+      for (int i = 0; i < 4; i++) {
+        responses.add(executor.submit(() -> cache.getBlocking("key", () -> {
+          handlerThreads.put(Thread.currentThread(), Thread.currentThread());
+          try {
+            Thread.sleep(200);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return RT.map(STATUS, 500, BODY, "error");
+        })));
+      }
+      for (Future<IPersistentMap> response : responses) {
+        assertEquals(500, response.get(5, TimeUnit.SECONDS).valAt(STATUS));
+      }
+      
+      assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(800));
+      assertEquals(4, handlerThreads.size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  void testDoesNotStoreResponsesThatSetCookies() {
+    var calls = new AtomicInteger();
+    var cache = ResponseCache.create(new ResponseCache.Options().ttlMillis(60_000));
+    IPersistentMap response = RT.map(STATUS, 200,
+                                     Keyword.intern("headers"), RT.map("Set-Cookie", "session=1"),
+                                     BODY, "hello");
+    
+    cache.get("key", handler(calls, response)).join();
+    cache.getBlocking("key", () -> {
+      calls.incrementAndGet();
+      return response;
+    });
+    
+    assertEquals(2, calls.get());
+    assertEquals(0, cache.size());
+  }
+  
+  @Test
+  void testCoalescedMissesShareFailure() {
+    var cache = ResponseCache.create(new ResponseCache.Options().ttlMillis(60_000));
+    var pending = new CompletableFuture<IPersistentMap>();
+    
+    var first = cache.get("key", () -> pending);
+    var second = cache.get("key", () -> pending);
+    pending.completeExceptionally(new IllegalStateException("failed"));
+    
+    assertTrue(first.isCompletedExceptionally());
+    assertTrue(second.isCompletedExceptionally());
+    assertEquals(0, cache.size());
+  }
+  
+  @Test
+  void testHandlerException() {
+    var cache = ResponseCache.create(new ResponseCache.Options().ttlMillis(60_000));
+    
+    var res = cache.get("key", () -> {
+      throw new IllegalStateException("failed");
+    });
+    
+    assertTrue(res.isCompletedExceptionally());
+  }
+  
+  @Test
+  void testEvictsLeastRecentlyUsed() {
+    var calls = new AtomicInteger();
+    var cache = ResponseCache.create(new ResponseCache.Options().ttlMillis(60_000).maxEntries(2));
+    var handler = handler(calls, RT.map(STATUS, 200, BODY, "hello"));
+    
+    cache.get("a", handler).join();
+    cache.get("b", handler).join();
+    cache.get("a", handler).join();
+    cache.get("c", handler).join();
+    assertEquals(3, calls.get());
+    assertEquals(2, cache.size());
+    
+    cache.get("a", handler).join();
+    assertEquals(3, calls.get());
+    cache.get("b", handler).join();
+    assertEquals(4, calls.get());
+  }
+  
+  @Test
+  void testExpiresAfterTtl() throws InterruptedException {
+    var calls = new AtomicInteger();
+    var cache = ResponseCache.create(new ResponseCache.Options().ttlMillis(20));
+    var handler = handler(calls, RT.map(STATUS, 200, BODY, "hello"));
+    
+    cache.get("key", handler).join();
+    Thread.sleep(40);
+    cache.get("key", handler).join();
+    
+    assertEquals(2, calls.get());
+  }
+  
+  @Test
+  void testReleasesStoredByteBufHolder() {
+    var calls = new AtomicInteger();
+    var cache = ResponseCache.create(new ResponseCache.Options().ttlMillis(60_000));
+    var body = new DefaultByteBufHolder(Unpooled.directBuffer().writeBytes("hello".getBytes()));
+    
+    IPersistentMap response = cache.get("key", handler(calls, RT.map(STATUS, 200, BODY, body))).join();
+    
+    assertEquals("hello", body(response));
+    assertEquals(0, body.refCnt());
+  }
+  
+  @Test
+  void testReleasesStoredByteBuf() {
+    var calls = new AtomicInteger();
+    var cache = ResponseCache.create(new ResponseCache.Options().ttlMillis(60_000));
+    var body = Unpooled.directBuffer().writeBytes("hello".getBytes());
+    
+    IPersistentMap response = cache.get("key", handler(calls, RT.map(STATUS, 200, BODY, body))).join();
+    
+    assertEquals("hello", body(response));
+    assertEquals(0, body.refCnt());
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.server.ring.middleware;
+
+import clojure.lang.IPersistentMap;
+import clojure.lang.ITransientMap;
+import clojure.lang.Keyword;
+import clojure.lang.PersistentStructMap;
+import clojure.lang.RT;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCounted;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.appsflyer.donkey.server.ring.handler.RingResponseField.BODY;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingMiddlewareChainTest {
+  
+  private static final Keyword STEPS = Keyword.intern("steps");
+  
+  /**
+   * Appends its name to the steps in the map, and records whether it was
+   * called with a transient map.
+   */
+  private static final class Step implements TransientRingMiddleware {
+    
+    private final String name;
+    private final List<String> calls;
+    
+    private Step(String name, List<String> calls) {
+      this.name = name;
+      this.calls = calls;
+    }
+    
+    @Override
+    public IPersistentMap handle(IPersistentMap map) {
+      calls.add(name);
+      return map.assoc(STEPS, map.valAt(STEPS, "") + name);
+    }
+    
+    @Override
+    public ITransientMap handleTransient(ITransientMap map) {
+      calls.add(name + "!");
+      return map.assoc(STEPS, map.valAt(STEPS, "") + name);
+    }
+  }
+  
+  @Test
+  void testNullArguments() {
+    assertThrows(NullPointerException.class, () -> RingMiddlewareChain.create(null));
+    assertThrows(NullPointerException.class, () -> RingMiddlewareChain.create(List.of()).handle(null));
+  }
+  
+  @Test
+  void testEmptyChain() {
+    IPersistentMap map = RT.map(STEPS, "");
+    assertSame(map, RingMiddlewareChain.create(List.of()).handle(map));
+  }
+  
+  @Test
+  void testAppliesMiddlewareInOrder() {
+    var calls = new ArrayList<String>();
+    RingMiddleware plain = map -> {
+      calls.add("b");
+      return map.assoc(STEPS, map.valAt(STEPS) + "b");
+    };
+    var chain = RingMiddlewareChain.create(List.of(new Step("a", calls), plain, new Step("c", calls)));
+    
+    assertEquals(RT.map(STEPS, "abc"), chain.handle(RT.map()));
+    assertEquals(List.of("a", "b", "c"), calls);
+  }
+  
+  @Test
+  void testConsecutiveTransientMiddleware() {
+    var calls = new ArrayList<String>();
+    RingMiddleware plain = map -> {
+      calls.add("c");
+      return map.assoc(STEPS, map.valAt(STEPS) + "c");
+    };
+    var chain = RingMiddlewareChain.create(
+        List.of(new Step("a", calls), new Step("b", calls), plain, new Step("d", calls)));
+    
+    assertEquals(RT.map(STEPS, "abcd"), chain.handle(RT.map()));
+    assertEquals(List.of("a!", "b!", "c", "d"), calls);
+  }
+  
+  @Test
+  void testMapThatIsNotEditable() {
+    var calls = new ArrayList<String>();
+    var chain = RingMiddlewareChain.create(List.of(new Step("a", calls), new Step("b", calls)));
+    IPersistentMap map = PersistentStructMap.construct(PersistentStructMap.createSlotMap(RT.list(STEPS)), RT.list(""));
+    
+    assertEquals("ab", chain.handle(map).valAt(STEPS));
+    assertEquals(List.of("a", "b"), calls);
+  }
+  
+  /**
+   * Records the body of the map it's called with, and throws.
+   */
+  private static final class Failing implements TransientRingMiddleware {
+    
+    private final AtomicReference<Object> body;
+    
+    private Failing(AtomicReference<Object> body) {
+      this.body = body;
+    }
+    
+    @Override
+    public IPersistentMap handle(IPersistentMap map) {
+      body.set(map.valAt(BODY.keyword()));
+      throw new IllegalStateException("failed");
+    }
+    
+    @Override
+    public ITransientMap handleTransient(ITransientMap map) {
+      body.set(map.valAt(BODY.keyword()));
+      throw new IllegalStateException("failed");
+    }
+  }
+  
+  @Test
+  void testPooledBodyIsReleasedWhenLaterMiddlewareFails() {
+    var serializer = JsonBodySerializer.create(new ObjectMapper(),
+                                               new JsonBodySerializer.Options().pooledBuffers(true));
+    var body = new AtomicReference<>();
+    RingMiddleware plain = map -> new Failing(body).handle(map);
+    IPersistentMap response = RT.map(BODY.keyword(), RT.map("foo", "bar"));
+    
+    for (RingMiddleware failing : List.of(new Failing(body), plain)) {
+      var chain = RingMiddlewareChain.create(List.of(serializer, failing));
+      assertThrows(IllegalStateException.class, () -> chain.handle(response));
+      assertEquals(0, ((ReferenceCounted) body.get()).refCnt());
+    }
+  }
+  
+  @Test
+  void testBodyOfTheGivenMapIsNotReleased() {
+    ByteBuf buf = Unpooled.buffer().writeByte(1);
+    var chain = RingMiddlewareChain.create(List.of(new Step("a", new ArrayList<>()),
+                                                   new Failing(new AtomicReference<>())));
+    
+    assertThrows(IllegalStateException.class, () -> chain.handle(RT.map(BODY.keyword(), buf)));
+    assertEquals(1, buf.refCnt());
+    buf.release();
+  }
+  
+  @Test
+  void testBuiltInMiddleware() {
+    var chain = RingMiddlewareChain.create(
+        List.of(QueryParamsParser.create(new QueryParamsParser.Options().keywordizeKeys(true)),
+                FormParamsKeywordizer.create(new FormParamsKeywordizer.Options(false))));
+    IPersistentMap request = RT.map(Keyword.intern("query-string"), "foo=bar",
+                                    Keyword.intern("form-params"), RT.map("baz", "qux"));
+    
+    IPersistentMap res = chain.handle(request);
+    
+    assertEquals(RT.map(Keyword.intern("foo"), "bar"), res.valAt(Keyword.intern("query-params")));
+    assertEquals(RT.map(Keyword.intern("baz"), "qux"), res.valAt(Keyword.intern("form-params")));
+  }
+}
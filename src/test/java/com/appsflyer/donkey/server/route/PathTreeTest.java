@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.appsflyer.donkey.server.route;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.appsflyer.donkey.server.route.PathDefinition.MatchType.REGEX;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathTreeTest {
+  
+  @Test
+  void testSupportedPaths() {
+    assertTrue(PathTree.supports(PathDefinition.create("/")));
+    assertTrue(PathTree.supports(PathDefinition.create("/foo/bar/")));
+    assertTrue(PathTree.supports(PathDefinition.create("/users/:id/orders/:order_id")));
+    assertTrue(PathTree.supports(PathDefinition.create("/static/*")));
+    
+    assertFalse(PathTree.supports(null));
+    assertFalse(PathTree.supports(PathDefinition.create("/id/(\\d+)", REGEX)));
+    assertFalse(PathTree.supports(PathDefinition.create("foo")));
+    assertFalse(PathTree.supports(PathDefinition.create("/static*")));
+    assertFalse(PathTree.supports(PathDefinition.create("/*/foo")));
+    assertFalse(PathTree.supports(PathDefinition.create("/users/:")));
+    assertFalse(PathTree.supports(PathDefinition.create("/users/:id.json")));
+    assertFalse(PathTree.supports(PathDefinition.create("/users/id:id")));
+  }
+  
+  @Test
+  void testStaticPaths() {
+    var tree = PathTree.<String>create()
+        .add("/", "root")
+        .add("/foo", "foo")
+        .add("/foo/bar", "bar")
+        .add("/foo/bar", "bar2");
+    
+    assertEquals(List.of("root"), tree.match("/"));
+    assertEquals(List.of("foo"), tree.match("/foo"));
+    assertEquals(List.of("foo"), tree.match("/foo/"));
+    assertEquals(List.of("bar", "bar2"), tree.match("/foo/bar"));
+    assertEquals(List.of(), tree.match("/foo/baz"));
+    assertEquals(List.of(), tree.match("/foo/bar/baz"));
+    assertEquals(List.of(), tree.match(""));
+    assertEquals(4, tree.size());
+  }
+  
+  @Test
+  void testPathVariables() {
+    var tree = PathTree.<String>create()
+        .add("/users/:id", "user")
+        .add("/users/:id/orders/:order", "order");
+    
+    assertEquals(List.of("user"), tree.match("/users/1"));
+    assertEquals(List.of("order"), tree.match("/users/1/orders/2"));
+    assertEquals(List.of(), tree.match("/users"));
+    assertEquals(List.of(), tree.match("/users//orders/2"));
+  }
+  
+  @Test
+  void testWildcard() {
+    var tree = PathTree.<String>create()
+        .add("/static/*", "static")
+        .add("/*", "any");
+    
+    assertEquals(List.of("static", "any"), tree.match("/static"));
+    assertEquals(List.of("static", "any"), tree.match("/static/css/main.css"));
+    assertEquals(List.of("any"), tree.match("/"));
+    assertEquals(List.of("any"), tree.match("/foo/bar"));
+  }
+  
+  @Test
+  void testMatchesAreOrderedBySpecificity() {
+    var tree = PathTree.<String>create()
+        .add("/users/*", "wildcard")
+        .add("/users/:id", "variable")
+        .add("/users/me", "static");
+    
+    assertEquals(List.of("static", "variable", "wildcard"), tree.match("/users/me"));
+    assertEquals(List.of("variable", "wildcard"), tree.match("/users/1"));
+  }
+  
+  @Test
+  void testUnsupportedPath() {
+    PathTree<String> tree = PathTree.create();
+    assertThrows(IllegalArgumentException.class, () -> tree.add("/static*", "static"));
+    assertThrows(NullPointerException.class, () -> tree.add("/", null));
+  }
+}
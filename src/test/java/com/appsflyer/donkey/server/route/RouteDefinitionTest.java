@@ -42,6 +42,7 @@ class RouteDefinitionTest {
     assertThrows(NullPointerException.class, () -> routeDefinition.addConsumes(null));
     assertThrows(NullPointerException.class, () -> routeDefinition.addProduces(null));
     assertThrows(NullPointerException.class, () -> routeDefinition.handlerMode(null));
+    assertThrows(NullPointerException.class, () -> routeDefinition.bodyMode(null));
     assertThrows(NullPointerException.class, () -> routeDefinition.handler(null));
     
     assertDoesNotThrow(() -> routeDefinition.path((String) null));
@@ -58,6 +59,7 @@ class RouteDefinitionTest {
     assertEquals(Collections.emptySet(), routeDefinition.produces());
     assertEquals(handler, routeDefinition.handler());
     assertEquals(HandlerMode.NON_BLOCKING, routeDefinition.handlerMode());
+    assertEquals(BodyMode.BUFFERED, routeDefinition.bodyMode());
   }
   
   @Test
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.appsflyer.donkey.server.router;
+
+import com.appsflyer.donkey.server.ServerConfig;
+import com.appsflyer.donkey.server.ring.route.RingRouteCreatorFactory;
+import com.appsflyer.donkey.server.ring.route.RingRouteSupplier;
+import com.appsflyer.donkey.server.route.AbstractRoutingTest;
+import com.appsflyer.donkey.server.route.RouteDefinition;
+import com.appsflyer.donkey.server.route.RouteList;
+import com.appsflyer.donkey.server.route.RouteSupplier;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.junit5.Checkpoint;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.List;
+
+import static com.appsflyer.donkey.TestUtil.*;
+import static io.vertx.core.http.HttpMethod.GET;
+import static io.vertx.core.http.HttpMethod.POST;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the routing tests with {@link RouteMatcher#RADIX_TREE}.
+ */
+@Tag("integration")
+@ExtendWith(VertxExtension.class)
+class RadixTreeRoutingTest extends AbstractRoutingTest {
+  
+  private static final RouteSupplier routeSupplier = new RingRouteSupplier();
+  
+  @Override
+  protected ServerConfig newServerConfig(Vertx vertx, RouteList routeList) {
+    return ServerConfig.builder()
+                       .vertx(vertx)
+                       .instances(4)
+                       .serverOptions(new HttpServerOptions().setPort(DEFAULT_PORT))
+                       .routeCreatorFactory(RingRouteCreatorFactory.create())
+                       .routeList(routeList)
+                       .routeMatcher(RouteMatcher.RADIX_TREE)
+                       .build();
+  }
+  
+  @Override
+  protected RouteSupplier routeSupplier() {
+    return routeSupplier;
+  }
+  
+  private static RouteDefinition respondWith(String path, String body) {
+    return respondWith(path, body, GET);
+  }
+  
+  private static RouteDefinition respondWith(String path, String body, HttpMethod method) {
+    return RouteDefinition.create()
+                          .path(path)
+                          .addMethod(method)
+                          .handler(ctx -> ctx.response().end(body));
+  }
+  
+  @Test
+  void testMostSpecificPathIsMatchedFirst(Vertx vertx, VertxTestContext testContext) throws
+                                                                                     Throwable {
+    Checkpoint responsesReceived = testContext.checkpoint(3);
+    var routes = List.of(
+        respondWith("/users/*", "wildcard"),
+        respondWith("/users/:id", "variable"),
+        respondWith("/users/me", "static"));
+    
+    startServer(vertx, RouteList.from(routes))
+        .onComplete(v -> {
+          var client = WebClient.create(vertx);
+          
+          doGet(client, "/users/me").onComplete(
+              testContext.succeeding(response -> testContext.verify(() -> {
+                assertEquals("static", response.bodyAsString());
+                responsesReceived.flag();
+              })));
+          
+          doGet(client, "/users/1").onComplete(
+              testContext.succeeding(response -> testContext.verify(() -> {
+                assertEquals("variable", response.bodyAsString());
+                responsesReceived.flag();
+              })));
+          
+          doGet(client, "/users/1/orders").onComplete(
+              testContext.succeeding(response -> testContext.verify(() -> {
+                assertEquals("wildcard", response.bodyAsString());
+                responsesReceived.flag();
+              })));
+        });
+    
+    assertContextSuccess(testContext);
+  }
+  
+  @Test
+  void testFallingBackToLessSpecificPath(Vertx vertx, VertxTestContext testContext) throws
+                                                                                    Throwable {
+    Checkpoint responsesReceived = testContext.checkpoint(2);
+    var routes = List.of(
+        respondWith("/users/:id", "variable"),
+        respondWith("/users/me", "static", POST));
+    
+    startServer(vertx, RouteList.from(routes))
+        .onComplete(v -> {
+          var client = WebClient.create(vertx);
+          
+          doGet(client, "/users/me").onComplete(
+              testContext.succeeding(response -> testContext.verify(() -> {
+                assertEquals("variable", response.bodyAsString());
+                responsesReceived.flag();
+              })));
+          
+          doPost(client, "/users/1").onComplete(
+              testContext.succeeding(response -> testContext.verify(() -> {
+                assert405(response);
+                responsesReceived.flag();
+              })));
+        });
+    
+    assertContextSuccess(testContext);
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.appsflyer.donkey.util;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.appsflyer.donkey.TestUtil.assertContextSuccess;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(VertxExtension.class)
+class InputStreamReadStreamTest {
+  
+  private static byte[] content() {
+    var content = new byte[100 * 1024];
+    new Random(0).nextBytes(content);
+    return content;
+  }
+  
+  private static class TrackingInputStream extends ByteArrayInputStream {
+    
+    private final AtomicBoolean closed = new AtomicBoolean();
+    
+    TrackingInputStream(byte[] buf) {
+      super(buf);
+    }
+    
+    @Override
+    public void close() throws IOException {
+      closed.set(true);
+      super.close();
+    }
+  }
+  
+  @Test
+  void testReadingTheEntireStream(Vertx vertx, VertxTestContext testContext) throws Throwable {
+    byte[] content = content();
+    var in = new TrackingInputStream(content);
+    var received = Buffer.buffer();
+    
+    InputStreamReadStream.create(vertx, in)
+                         .endHandler(v -> testContext.verify(() -> {
+                           assertArrayEquals(content, received.getBytes());
+                           assertTrue(in.closed.get());
+                           testContext.completeNow();
+                         }))
+                         .handler(received::appendBuffer);
+    
+    assertContextSuccess(testContext);
+  }
+  
+  @Test
+  void testNoDataIsEmittedWhilePaused(Vertx vertx, VertxTestContext testContext) throws Throwable {
+    var chunks = new AtomicInteger();
+    var stream = InputStreamReadStream.create(vertx, new ByteArrayInputStream(content()));
+    stream.endHandler(v -> testContext.completeNow())
+          .handler(chunk -> {
+            if (chunks.incrementAndGet() == 1) {
+              stream.pause();
+              vertx.setTimer(200, id -> testContext.verify(() -> {
+                assertEquals(1, chunks.get());
+                stream.resume();
+              }));
+            }
+          });
+    
+    assertContextSuccess(testContext);
+    assertTrue(chunks.get() > 1);
+  }
+  
+  @Test
+  void testReadFailure(Vertx vertx, VertxTestContext testContext) throws Throwable {
+    var in = new InputStream() {
+      @Override
+      public int read() throws IOException {
+        throw new IOException("Read failed");
+      }
+    };
+    
+    InputStreamReadStream.create(vertx, in)
+                         .exceptionHandler(ex -> testContext.verify(() -> {
+                           assertEquals("Read failed", ex.getMessage());
+                           testContext.completeNow();
+                         }))
+                         .endHandler(v -> testContext.failNow("The stream should not end"))
+                         .handler(chunk -> testContext.failNow("No data should be emitted"));
+    
+    assertContextSuccess(testContext);
+  }
+}
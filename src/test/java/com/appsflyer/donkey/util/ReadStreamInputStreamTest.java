@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 AppsFlyer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.appsflyer.donkey.util;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.junit5.VertxExtension;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(VertxExtension.class)
+class ReadStreamInputStreamTest {
+  
+  private static final byte[] content = new byte[1024 * 1024];
+  private static Path path;
+  
+  @BeforeAll
+  static void beforeAll() throws IOException {
+    new Random(0).nextBytes(content);
+    path = Files.createTempFile(null, ".bin");
+    path.toFile().deleteOnExit();
+    Files.write(path, content);
+  }
+  
+  private static InputStream openStream(Vertx vertx, int highWaterMark) throws
+                                                                        InterruptedException,
+                                                                        ExecutionException,
+                                                                        TimeoutException {
+    var res = new CompletableFuture<InputStream>();
+    var context = vertx.getOrCreateContext();
+    context.runOnContext(v -> vertx.fileSystem()
+                                   .open(path.toString(), new OpenOptions().setRead(true))
+                                   .onSuccess(file -> res.complete(
+                                       ReadStreamInputStream.create(context, file, highWaterMark)))
+                                   .onFailure(res::completeExceptionally));
+    return res.get(5, TimeUnit.SECONDS);
+  }
+  
+  @Test
+  void testReadingTheEntireStream(Vertx vertx) throws Exception {
+    try (var stream = openStream(vertx, 1024)) {
+      assertArrayEquals(content, stream.readAllBytes());
+      assertEquals(-1, stream.read());
+    }
+  }
+  
+  @Test
+  void testReadingSingleBytes(Vertx vertx) throws Exception {
+    try (var stream = openStream(vertx, ReadStreamInputStream.DEFAULT_HIGH_WATER_MARK)) {
+      for (byte b : content) {
+        assertEquals(b & 0xff, stream.read());
+      }
+      assertEquals(-1, stream.read());
+    }
+  }
+  
+  @Test
+  void testReadingAfterClose(Vertx vertx) throws Exception {
+    var stream = openStream(vertx, 1024);
+    assertEquals(content[0] & 0xff, stream.read());
+    stream.close();
+    assertThrows(IOException.class, stream::read);
+  }
+  
+  @Test
+  void testInvalidArguments(Vertx vertx) {
+    var context = vertx.getOrCreateContext();
+    assertThrows(NullPointerException.class, () -> ReadStreamInputStream.create(context, null));
+    assertThrows(NullPointerException.class, () -> ReadStreamInputStream.create(null, null));
+  }
+}
@@ -18,10 +18,12 @@
 package com.appsflyer.donkey.util;
 
 import com.appsflyer.donkey.client.exception.UnsupportedDataTypeException;
+import io.netty.buffer.Unpooled;
 import io.vertx.core.buffer.Buffer;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 import static com.appsflyer.donkey.util.TypeConverter.toBuffer;
@@ -65,6 +67,47 @@ class TypeConverterTest {
     assertEquals(bufferValue, toBuffer(new ByteArrayInputStream(byteValue)));
   }
   
+  @Test
+  void testBufferToBuffer() {
+    assertSame(bufferValue, toBuffer(bufferValue));
+  }
+  
+  @Test
+  void testByteBufferToBuffer() {
+    var heap = ByteBuffer.wrap(byteValue);
+    assertEquals(bufferValue, toBuffer(heap));
+    assertEquals(0, heap.position());
+    
+    var direct = ByteBuffer.allocateDirect(byteValue.length + 1);
+    direct.put((byte) '!').put(byteValue).flip().position(1);
+    assertEquals(bufferValue, toBuffer(direct));
+    assertEquals(1, direct.position());
+  }
+  
+  @Test
+  void testByteBufToBuffer() {
+    var byteBuf = Unpooled.directBuffer().writeByte('!').writeBytes(byteValue);
+    byteBuf.readByte();
+    assertEquals(bufferValue, toBuffer(byteBuf));
+    assertEquals(1, byteBuf.readerIndex());
+    byteBuf.release();
+  }
+  
+  @Test
+  void testWrappingDoesNotCopy() {
+    var bytes = byteValue.clone();
+    var buffer = toBuffer(bytes);
+    bytes[0] = 'j';
+    assertEquals('j', buffer.getByte(0));
+  }
+  
+  @Test
+  void testOffHeapToBytes() {
+    assertArrayEquals(byteValue, toBytes(bufferValue));
+    assertArrayEquals(byteValue, toBytes(ByteBuffer.wrap(byteValue)));
+    assertArrayEquals(byteValue, toBytes(Unpooled.wrappedBuffer(byteValue)));
+  }
+  
   @Test
   void testUnsupportedDataTypeException() {
     assertThrows(UnsupportedDataTypeException.class, () -> toBytes(new Object()));